@@ -30,7 +30,7 @@ import java.util.Iterator;
 import java.util.NoSuchElementException;
 
 /**
- * A fixed <code>Queue</code> backed by an array.
+ * A bounded <code>Queue</code> backed by a circular array.
  * @author Brad Kimmel
  */
 public final class ArrayQueue<T> extends AbstractQueue<T> {
@@ -41,12 +41,34 @@ public final class ArrayQueue<T> extends AbstractQueue<T> {
   /** The index of the next item in the queue. */
   private int next = 0;
 
+  /** The number of items in the queue. */
+  private int size;
+
   /**
-   * Creates an new <code>ArrayQueue</code> backed by the provided array.
+   * Creates an new <code>ArrayQueue</code> initialized with the items in the
+   * provided array.  The queue initially contains the items in the array
+   * (and is therefore full), and its capacity is the length of the array.
+   * The array is copied, so removing items from the queue does not affect
+   * it.
    * @param items The array of items with which to initialize the queue.
    */
   public ArrayQueue(T[] items) {
-    this.items = items;
+    this.items = items.clone();
+    this.size = items.length;
+  }
+
+  /**
+   * Creates an new empty <code>ArrayQueue</code>.
+   * @param capacity The maximum number of items the queue may hold.
+   * @throws IllegalArgumentException If <code>capacity &lt;= 0</code>.
+   */
+  @SuppressWarnings("unchecked")
+  public ArrayQueue(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive.");
+    }
+    this.items = (T[]) new Object[capacity];
+    this.size = 0;
   }
 
   /* (non-Javadoc)
@@ -56,24 +78,24 @@ public final class ArrayQueue<T> extends AbstractQueue<T> {
   public Iterator<T> iterator() {
     return new Iterator<T>() {
 
-      /** The index of the next item. */
-      private int next = ArrayQueue.this.next;
+      /** The number of items that have been returned. */
+      private int position = 0;
 
       /* (non-Javadoc)
        * @see java.util.Iterator#hasNext()
        */
       public boolean hasNext() {
-        return next < items.length;
+        return position < size;
       }
 
       /* (non-Javadoc)
        * @see java.util.Iterator#next()
        */
       public T next() {
-        if (next >= items.length) {
+        if (position >= size) {
           throw new NoSuchElementException();
         }
-        return items[next++];
+        return items[index(position++)];
       }
 
       /* (non-Javadoc)
@@ -91,28 +113,82 @@ public final class ArrayQueue<T> extends AbstractQueue<T> {
    */
   @Override
   public int size() {
-    return items.length - next;
+    return size;
+  }
+
+  /**
+   * Gets the maximum number of items this queue may hold.
+   * @return The capacity of this queue.
+   */
+  public int capacity() {
+    return items.length;
+  }
+
+  /**
+   * Gets the number of additional items this queue may accept.
+   * @return The number of additional items this queue may accept.
+   */
+  public int remainingCapacity() {
+    return items.length - size;
   }
 
   /* (non-Javadoc)
    * @see java.util.Queue#offer(java.lang.Object)
    */
   public boolean offer(T e) {
-    return false;
+    if (e == null) {
+      throw new NullPointerException();
+    }
+    if (size == items.length) {
+      return false;
+    }
+    items[index(size++)] = e;
+    return true;
   }
 
   /* (non-Javadoc)
    * @see java.util.Queue#peek()
    */
   public T peek() {
-    return next < items.length ? items[next] : null;
+    return size > 0 ? items[next] : null;
   }
 
   /* (non-Javadoc)
    * @see java.util.Queue#poll()
    */
   public T poll() {
-    return next < items.length ? items[next++] : null;
+    if (size == 0) {
+      return null;
+    }
+    T e = items[next];
+    items[next] = null;
+    if (++next == items.length) {
+      next = 0;
+    }
+    size--;
+    return e;
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.AbstractQueue#clear()
+   */
+  @Override
+  public void clear() {
+    while (size > 0) {
+      poll();
+    }
+    next = 0;
+  }
+
+  /**
+   * Gets the index into <code>items</code> of an item in the queue.
+   * @param position The position of the item relative to the head of the
+   *     queue.
+   * @return The index into <code>items</code> of the item.
+   */
+  private int index(int position) {
+    int i = next + position;
+    return i < items.length ? i : i - items.length;
   }
 
 }
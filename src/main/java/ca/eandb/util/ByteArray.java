@@ -26,6 +26,7 @@
 package ca.eandb.util;
 
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.AbstractList;
 import java.util.Collection;
 import java.util.RandomAccess;
@@ -103,6 +104,55 @@ public final class ByteArray extends AbstractList<Byte> implements
     this.size = other.size;
   }
 
+  /**
+   * Creates an <code>ByteArray</code> that uses the specified array as its
+   * storage.
+   *
+   * @param elements
+   *            The array to use as storage.
+   * @param size
+   *            The number of elements of <code>elements</code> in use.
+   */
+  private ByteArray(byte[] elements, int size) {
+    this.elements = elements;
+    this.size = size;
+  }
+
+  /**
+   * Creates an <code>ByteArray</code> that uses the specified array as its
+   * storage, without copying it.  Changes to the array are visible through
+   * the returned <code>ByteArray</code>, and vice versa, until the returned
+   * array grows beyond the length of <code>elements</code> and must
+   * reallocate its storage.
+   *
+   * @param elements
+   *            The array to use as storage.
+   * @param size
+   *            The number of elements of <code>elements</code> in use.
+   * @return The new <code>ByteArray</code>.
+   * @throws IndexOutOfBoundsException
+   *             if <code>size &lt; 0 || size &gt; elements.length</code>.
+   */
+  public static ByteArray wrap(byte[] elements, int size) {
+    if (size < 0 || size > elements.length) {
+      throw new IndexOutOfBoundsException();
+    }
+    return new ByteArray(elements, size);
+  }
+
+  /**
+   * Creates an <code>ByteArray</code> that uses the specified array as its
+   * storage, without copying it.
+   *
+   * @param elements
+   *            The array to use as storage.
+   * @return The new <code>ByteArray</code>.
+   * @see #wrap(byte[], int)
+   */
+  public static ByteArray wrap(byte[] elements) {
+    return new ByteArray(elements, elements.length);
+  }
+
   /**
    * Converts this <code>ByteArray</code> to an array of bytes.
    *
@@ -116,6 +166,59 @@ public final class ByteArray extends AbstractList<Byte> implements
     return copy;
   }
 
+  /**
+   * Gets the array currently used to store the elements of this array.  Only
+   * the first <code>size()</code> elements are in use.  The returned array is
+   * not a copy, so changes to it are visible through this
+   * <code>ByteArray</code>.  The storage is replaced whenever this array must
+   * grow, after which the returned array no longer reflects its contents.
+   *
+   * @return The array used to store the elements of this array.
+   */
+  public byte[] unsafeBackingArray() {
+    return elements;
+  }
+
+  /**
+   * Gets a <code>ByteBuffer</code> view of the elements of this array.  The
+   * returned buffer has a capacity of <code>size()</code> and shares its
+   * storage with this array, until this array must grow.
+   *
+   * @return A <code>ByteBuffer</code> view of the elements of this array.
+   */
+  public ByteBuffer asByteBuffer() {
+    return ByteBuffer.wrap(elements, 0, size).slice();
+  }
+
+  /**
+   * Appends the remaining elements of a <code>ByteBuffer</code> to the end of
+   * this array.  The position of <code>src</code> is advanced to its limit.
+   *
+   * @param src
+   *            The <code>ByteBuffer</code> containing the values to append.
+   * @return A value indicating if the array has changed.
+   */
+  public boolean put(ByteBuffer src) {
+    int length = src.remaining();
+    ensureCapacity(size + length);
+    src.get(elements, size, length);
+    size += length;
+    return length > 0;
+  }
+
+  /**
+   * Copies the elements of this array into a <code>ByteBuffer</code>.  The
+   * position of <code>dst</code> is advanced by <code>size()</code>.
+   *
+   * @param dst
+   *            The <code>ByteBuffer</code> to copy the elements into.
+   * @throws java.nio.BufferOverflowException
+   *             if <code>dst.remaining() &lt; size()</code>.
+   */
+  public void get(ByteBuffer dst) {
+    dst.put(elements, 0, size);
+  }
+
   /*
    * (non-Javadoc)
    *
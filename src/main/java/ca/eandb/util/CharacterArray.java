@@ -26,6 +26,7 @@
 package ca.eandb.util;
 
 import java.io.Serializable;
+import java.nio.CharBuffer;
 import java.util.AbstractList;
 import java.util.Collection;
 import java.util.RandomAccess;
@@ -105,6 +106,55 @@ public final class CharacterArray extends AbstractList<Character> implements
     this.size = other.size;
   }
 
+  /**
+   * Creates an <code>CharacterArray</code> that uses the specified array as its
+   * storage.
+   *
+   * @param elements
+   *            The array to use as storage.
+   * @param size
+   *            The number of elements of <code>elements</code> in use.
+   */
+  private CharacterArray(char[] elements, int size) {
+    this.elements = elements;
+    this.size = size;
+  }
+
+  /**
+   * Creates an <code>CharacterArray</code> that uses the specified array as its
+   * storage, without copying it.  Changes to the array are visible through
+   * the returned <code>CharacterArray</code>, and vice versa, until the returned
+   * array grows beyond the length of <code>elements</code> and must
+   * reallocate its storage.
+   *
+   * @param elements
+   *            The array to use as storage.
+   * @param size
+   *            The number of elements of <code>elements</code> in use.
+   * @return The new <code>CharacterArray</code>.
+   * @throws IndexOutOfBoundsException
+   *             if <code>size &lt; 0 || size &gt; elements.length</code>.
+   */
+  public static CharacterArray wrap(char[] elements, int size) {
+    if (size < 0 || size > elements.length) {
+      throw new IndexOutOfBoundsException();
+    }
+    return new CharacterArray(elements, size);
+  }
+
+  /**
+   * Creates an <code>CharacterArray</code> that uses the specified array as its
+   * storage, without copying it.
+   *
+   * @param elements
+   *            The array to use as storage.
+   * @return The new <code>CharacterArray</code>.
+   * @see #wrap(char[], int)
+   */
+  public static CharacterArray wrap(char[] elements) {
+    return new CharacterArray(elements, elements.length);
+  }
+
   /**
    * Converts this <code>CharacterArray</code> to an array of chars.
    *
@@ -118,6 +168,59 @@ public final class CharacterArray extends AbstractList<Character> implements
     return copy;
   }
 
+  /**
+   * Gets the array currently used to store the elements of this array.  Only
+   * the first <code>size()</code> elements are in use.  The returned array is
+   * not a copy, so changes to it are visible through this
+   * <code>CharacterArray</code>.  The storage is replaced whenever this array must
+   * grow, after which the returned array no longer reflects its contents.
+   *
+   * @return The array used to store the elements of this array.
+   */
+  public char[] unsafeBackingArray() {
+    return elements;
+  }
+
+  /**
+   * Gets a <code>CharBuffer</code> view of the elements of this array.  The
+   * returned buffer has a capacity of <code>size()</code> and shares its
+   * storage with this array, until this array must grow.
+   *
+   * @return A <code>CharBuffer</code> view of the elements of this array.
+   */
+  public CharBuffer asCharBuffer() {
+    return CharBuffer.wrap(elements, 0, size).slice();
+  }
+
+  /**
+   * Appends the remaining elements of a <code>CharBuffer</code> to the end of
+   * this array.  The position of <code>src</code> is advanced to its limit.
+   *
+   * @param src
+   *            The <code>CharBuffer</code> containing the values to append.
+   * @return A value indicating if the array has changed.
+   */
+  public boolean put(CharBuffer src) {
+    int length = src.remaining();
+    ensureCapacity(size + length);
+    src.get(elements, size, length);
+    size += length;
+    return length > 0;
+  }
+
+  /**
+   * Copies the elements of this array into a <code>CharBuffer</code>.  The
+   * position of <code>dst</code> is advanced by <code>size()</code>.
+   *
+   * @param dst
+   *            The <code>CharBuffer</code> to copy the elements into.
+   * @throws java.nio.BufferOverflowException
+   *             if <code>dst.remaining() &lt; size()</code>.
+   */
+  public void get(CharBuffer dst) {
+    dst.put(elements, 0, size);
+  }
+
   /*
    * (non-Javadoc)
    *
@@ -0,0 +1,480 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import ca.eandb.util.concurrent.ObjectPool;
+
+/**
+ * Caches digests of class bytecode, so that repeatedly digesting the same
+ * classes costs only a lookup.  Digests of loaded classes are cached using a
+ * <code>ClassValue</code>, so the cache does not prevent classes from being
+ * unloaded.  Digests of class files are cached by location, along with the
+ * size and modification time of the file or archive containing them, so
+ * they are recomputed only when the file changes.
+ *
+ * Whole jar files and directories of classes may be digested at once with
+ * {@link #digestJar(File)} and {@link #digestDirectory(File)}, which read
+ * and digest the classes in parallel.
+ *
+ * This class is thread-safe.
+ *
+ * @see ClassUtil#getClassDigest(Class, MessageDigest)
+ * @author Brad Kimmel
+ */
+public final class ClassDigestCache {
+
+  /** The size of files above which they are memory mapped. */
+  private static final long MAP_THRESHOLD = 64 * 1024;
+
+  /** The size of the buffer used to read class files. */
+  private static final int BUFFER_SIZE = 8192;
+
+  /** The name of the digest algorithm. */
+  private final String algorithm;
+
+  /** The pool of <code>MessageDigest</code>s. */
+  private final ObjectPool<MessageDigest> digests;
+
+  /** The digests of loaded classes. */
+  private final ClassValue<byte[]> classDigests = new ClassValue<byte[]>() {
+    @Override
+    protected byte[] computeValue(Class<?> type) {
+      URL url = ClassUtil.getClassResource(type);
+      if (url == null) {
+        return null;
+      }
+      try {
+        return getDigestInternal(url);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  };
+
+  /**
+   * The digests of class files, by location.  Only the most recently
+   * digested version of each file is retained.
+   */
+  private final ConcurrentHashMap<String, Versioned<byte[]>> resourceDigests =
+      new ConcurrentHashMap<String, Versioned<byte[]>>();
+
+  /**
+   * The digests of all classes in jar files, by jar file.  Only the most
+   * recently digested version of each jar file is retained.
+   */
+  private final ConcurrentHashMap<String, Versioned<Map<String, byte[]>>> jarDigests =
+      new ConcurrentHashMap<String, Versioned<Map<String, byte[]>>>();
+
+  /**
+   * Creates a new <code>ClassDigestCache</code>.
+   * @param algorithm The name of the digest algorithm to use.
+   * @throws IllegalArgumentException If <code>algorithm</code> is not
+   *     available.
+   * @see java.security.MessageDigest#getInstance(String)
+   */
+  public ClassDigestCache(String algorithm) {
+    this.algorithm = algorithm;
+    this.digests = ObjectPool.messageDigests(algorithm);
+  }
+
+  /**
+   * Gets the name of the digest algorithm.
+   * @return The name of the digest algorithm.
+   */
+  public String getAlgorithm() {
+    return algorithm;
+  }
+
+  /**
+   * Gets the digest of a class' bytecode.
+   * @param cl The <code>Class</code> for which to get the digest.
+   * @return The digest of the bytecode of <code>cl</code>, or
+   *     <code>null</code> if its bytecode cannot be found.
+   * @throws IOException If an error occurs while reading the bytecode.
+   */
+  public byte[] getDigest(Class<?> cl) throws IOException {
+    try {
+      byte[] digest = classDigests.get(cl);
+      return digest != null ? digest.clone() : null;
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Gets the digest of a class file.
+   * @param resource The location of the class file.
+   * @return The digest of the contents of <code>resource</code>.
+   * @throws IOException If an error occurs while reading
+   *     <code>resource</code>.
+   */
+  public byte[] getDigest(URL resource) throws IOException {
+    return getDigestInternal(resource).clone();
+  }
+
+  /**
+   * Gets the digests of all classes in a jar file.  The classes are read
+   * and digested in parallel, and the results are cached until the jar file
+   * changes.
+   * @param jar The jar file.
+   * @return A <code>Map</code> from the fully qualified name of each class
+   *     in <code>jar</code> to its digest.
+   * @throws IOException If an error occurs while reading <code>jar</code>.
+   */
+  public Map<String, byte[]> digestJar(File jar) throws IOException {
+    String path = jar.getCanonicalPath();
+    ResourceKey key = new ResourceKey(path, jar.lastModified(), jar.length());
+    Map<String, byte[]> result = lookup(jarDigests, key);
+    if (result == null) {
+      try (ZipFile zip = new ZipFile(jar)) {
+        List<ZipEntry> entries = new ArrayList<ZipEntry>();
+        zip.stream()
+            .filter(e -> !e.isDirectory() && e.getName().endsWith(".class"))
+            .forEach(entries::add);
+        result = entries.parallelStream().collect(Collectors.toMap(
+            e -> ClassUtil.getClassName(e.getName()),
+            e -> digestEntry(zip, e)));
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+      jarDigests.put(path, new Versioned<Map<String, byte[]>>(key, result));
+    }
+    return copyOf(result);
+  }
+
+  /**
+   * Gets the digests of all classes in a directory tree.  The class files
+   * are read and digested in parallel, and the digest of each file is
+   * cached until it changes.
+   * @param root The root of the directory tree.  Class names are determined
+   *     from the paths of class files relative to this directory.
+   * @return A <code>Map</code> from the fully qualified name of each class
+   *     in <code>root</code> to its digest.
+   * @throws IOException If an error occurs while reading the class files.
+   */
+  public Map<String, byte[]> digestDirectory(File root) throws IOException {
+    final Path base = root.toPath();
+    List<Path> files;
+    try (Stream<Path> walk = Files.walk(base)) {
+      files = walk
+          .filter(p -> p.toString().endsWith(".class") && Files.isRegularFile(p))
+          .collect(Collectors.toList());
+    }
+    try {
+      return files.parallelStream().collect(Collectors.toMap(
+          p -> ClassUtil.getClassName(
+              base.relativize(p).toString().replace(File.separatorChar, '/')),
+          p -> digestFile(p).clone()));
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Discards all cached digests of class files and jar files.  Digests of
+   * loaded classes remain cached until the classes are unloaded.
+   */
+  public void clear() {
+    resourceDigests.clear();
+    jarDigests.clear();
+  }
+
+  /**
+   * Gets the digest of a class file, without copying it.
+   * @param resource The location of the class file.
+   * @return The digest of the contents of <code>resource</code>.
+   * @throws IOException If an error occurs while reading
+   *     <code>resource</code>.
+   */
+  private byte[] getDigestInternal(URL resource) throws IOException {
+    ResourceKey key = keyFor(resource);
+    byte[] digest = key != null ? lookup(resourceDigests, key) : null;
+    if (digest == null) {
+      if ("file".equals(resource.getProtocol()) && key != null) {
+        try {
+          return digestFile(toFile(resource).toPath());
+        } catch (URISyntaxException e) {
+          /* keyFor would have returned null. */
+          throw new UnexpectedException(e);
+        } catch (UncheckedIOException e) {
+          throw e.getCause();
+        }
+      }
+      try (InputStream in = resource.openStream()) {
+        digest = digest(in);
+      }
+      if (key != null) {
+        resourceDigests.put(key.location, new Versioned<byte[]>(key, digest));
+      }
+    }
+    return digest;
+  }
+
+  /**
+   * Digests an entry in a zip file.
+   * @param zip The <code>ZipFile</code>.
+   * @param entry The entry to digest.
+   * @return The digest of the contents of <code>entry</code>.
+   * @throws UncheckedIOException If an error occurs while reading
+   *     <code>entry</code>.
+   */
+  private byte[] digestEntry(ZipFile zip, ZipEntry entry) {
+    try (InputStream in = zip.getInputStream(entry)) {
+      return digest(in);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Gets the digest of a file, using the cached value if the file has not
+   * changed.  Large files are memory mapped.
+   * @param file The file to digest.
+   * @return The digest of the contents of <code>file</code>.
+   * @throws UncheckedIOException If an error occurs while reading
+   *     <code>file</code>.
+   */
+  private byte[] digestFile(Path file) {
+    try {
+      File f = file.toFile();
+      long size = f.length();
+      ResourceKey key = new ResourceKey(f.toURI().toURL().toString(),
+          f.lastModified(), size);
+      byte[] digest = lookup(resourceDigests, key);
+      if (digest != null) {
+        return digest;
+      }
+      MessageDigest md = digests.borrow();
+      try {
+        if (size > MAP_THRESHOLD) {
+          try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            md.update(buffer);
+          }
+        } else {
+          md.update(Files.readAllBytes(file));
+        }
+        digest = md.digest();
+      } finally {
+        digests.release(md);
+      }
+      resourceDigests.put(key.location, new Versioned<byte[]>(key, digest));
+      return digest;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Digests the contents of a stream.
+   * @param in The <code>InputStream</code> to read.
+   * @return The digest of the contents of <code>in</code>.
+   * @throws IOException If an error occurs while reading <code>in</code>.
+   */
+  private byte[] digest(InputStream in) throws IOException {
+    MessageDigest md = digests.borrow();
+    try {
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int n;
+      while ((n = in.read(buffer)) >= 0) {
+        md.update(buffer, 0, n);
+      }
+      return md.digest();
+    } finally {
+      digests.release(md);
+    }
+  }
+
+  /**
+   * Looks up a cached value, ignoring values cached for other versions of
+   * the same resource.
+   * @param <T> The type of the cached value.
+   * @param cache The cache to search.
+   * @param key The <code>ResourceKey</code> identifying the version of the
+   *     resource.
+   * @return The cached value, or <code>null</code> if no value is cached for
+   *     this version of the resource.
+   */
+  private static <T> T lookup(ConcurrentHashMap<String, Versioned<T>> cache,
+      ResourceKey key) {
+    Versioned<T> entry = cache.get(key.location);
+    return entry != null && entry.key.equals(key) ? entry.value : null;
+  }
+
+  /**
+   * Determines the cache key for a class file.  The key includes the size
+   * and modification time of the file or of the jar file containing it.
+   * @param resource The location of the class file.
+   * @return The <code>ResourceKey</code>, or <code>null</code> if the
+   *     resource is not in the local file system.
+   */
+  private static ResourceKey keyFor(URL resource) {
+    try {
+      File file;
+      if ("file".equals(resource.getProtocol())) {
+        file = toFile(resource);
+      } else if ("jar".equals(resource.getProtocol())) {
+        String path = resource.getPath();
+        int separator = path.indexOf("!/");
+        if (separator < 0) {
+          return null;
+        }
+        URL jar = new URL(path.substring(0, separator));
+        if (!"file".equals(jar.getProtocol())) {
+          return null;
+        }
+        file = toFile(jar);
+      } else {
+        return null;
+      }
+      return new ResourceKey(resource.toString(), file.lastModified(), file.length());
+    } catch (MalformedURLException | URISyntaxException | IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Converts a file URL to a <code>File</code>.
+   * @param url The <code>URL</code> to convert.
+   * @return The <code>File</code> referred to by <code>url</code>.
+   * @throws URISyntaxException If <code>url</code> is not a valid URI.
+   */
+  private static File toFile(URL url) throws URISyntaxException {
+    return new File(url.toURI());
+  }
+
+  /**
+   * Copies a map of digests, so that callers cannot modify cached values.
+   * @param digests The map of digests to copy.
+   * @return A copy of <code>digests</code>.
+   */
+  private static Map<String, byte[]> copyOf(Map<String, byte[]> digests) {
+    Map<String, byte[]> copy = new HashMap<String, byte[]>(digests.size() * 2);
+    for (Map.Entry<String, byte[]> entry : digests.entrySet()) {
+      copy.put(entry.getKey(), entry.getValue().clone());
+    }
+    return copy;
+  }
+
+  /**
+   * Identifies a version of a file or archive entry.
+   */
+  private static final class ResourceKey {
+
+    /** The location of the resource. */
+    final String location;
+
+    /** The modification time of the file containing the resource. */
+    final long lastModified;
+
+    /** The size of the file containing the resource. */
+    final long length;
+
+    /**
+     * Creates a new <code>ResourceKey</code>.
+     * @param location The location of the resource.
+     * @param lastModified The modification time of the file containing the
+     *     resource.
+     * @param length The size of the file containing the resource.
+     */
+    ResourceKey(String location, long lastModified, long length) {
+      this.location = location;
+      this.lastModified = lastModified;
+      this.length = length;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+      return location.hashCode() * 31 + Long.hashCode(lastModified ^ length);
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof ResourceKey)) {
+        return false;
+      }
+      ResourceKey other = (ResourceKey) obj;
+      return location.equals(other.location)
+          && lastModified == other.lastModified && length == other.length;
+    }
+
+  }
+
+  /**
+   * A value computed from a particular version of a resource.
+   * @param <T> The type of the value.
+   */
+  private static final class Versioned<T> {
+
+    /** The version of the resource from which the value was computed. */
+    final ResourceKey key;
+
+    /** The value. */
+    final T value;
+
+    /**
+     * Creates a new <code>Versioned</code>.
+     * @param key The version of the resource from which <code>value</code>
+     *     was computed.
+     * @param value The value.
+     */
+    Versioned(ResourceKey key, T value) {
+      this.key = key;
+      this.value = value;
+    }
+
+  }
+
+}
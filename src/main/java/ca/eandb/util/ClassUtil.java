@@ -28,9 +28,13 @@ package ca.eandb.util;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.URL;
 import java.security.DigestOutputStream;
 import java.security.MessageDigest;
 
+import ca.eandb.util.hash.Hasher;
+import ca.eandb.util.hash.XxHash64;
+import ca.eandb.util.io.HashingOutputStream;
 import ca.eandb.util.io.NullOutputStream;
 import ca.eandb.util.io.StreamUtil;
 
@@ -80,6 +84,19 @@ public final class ClassUtil {
     return cl.getResourceAsStream(resourceName);
   }
 
+  /**
+   * Gets the location of the specified class' bytecode definition.
+   * @param cl The <code>Class</code> for which to get the location.
+   * @return The <code>URL</code> of the class' bytecode definition, or
+   *     <code>null</code> if it cannot be found.
+   */
+  public static URL getClassResource(Class<?> cl) {
+    String name = cl.getName();
+    int pos = name.lastIndexOf('.');
+    String resourceName = name.substring(pos + 1) + ".class";
+    return cl.getResource(resourceName);
+  }
+
   /**
    * Writes a class' bytecode to an <code>OutputStream</code>.
    * @param cl The <code>Class</code> to write.
@@ -87,8 +104,9 @@ public final class ClassUtil {
    * @throws IOException If unable to write to <code>out</code>.
    */
   public static void writeClassToStream(Class<?> cl, OutputStream out) throws IOException {
-    InputStream in = getClassAsStream(cl);
-    StreamUtil.writeStream(in, out);
+    try (InputStream in = getClassAsStream(cl)) {
+      StreamUtil.writeStream(in, out);
+    }
     out.flush();
   }
 
@@ -107,6 +125,34 @@ public final class ClassUtil {
     }
   }
 
+  /**
+   * Updates a non-cryptographic hash with a class' bytecode.  This is much
+   * cheaper than {@link #getClassDigest(Class, MessageDigest)}, and is
+   * suitable for detecting changes to a class.
+   * @param cl The <code>Class</code> for which to compute the hash.
+   * @param hasher The <code>Hasher</code> to update.
+   */
+  public static void getClassHash(Class<?> cl, Hasher hasher) {
+    HashingOutputStream out = new HashingOutputStream(hasher);
+    try {
+      writeClassToStream(cl, out);
+    } catch (IOException e) {
+      throw new UnexpectedException(e);
+    }
+  }
+
+  /**
+   * Computes the 64-bit xxHash of a class' bytecode.
+   * @param cl The <code>Class</code> for which to compute the hash.
+   * @return The hash of the bytecode of <code>cl</code>.
+   * @see #getClassHash(Class, Hasher)
+   */
+  public static long getClassHash(Class<?> cl) {
+    Hasher hasher = new XxHash64();
+    getClassHash(cl, hasher);
+    return hasher.getValue();
+  }
+
   /**
    * Gets the outer class (a class with no enclosing class) that contains the
    * given class.
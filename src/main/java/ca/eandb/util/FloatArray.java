@@ -26,6 +26,7 @@
 package ca.eandb.util;
 
 import java.io.Serializable;
+import java.nio.FloatBuffer;
 import java.util.AbstractList;
 import java.util.Collection;
 import java.util.RandomAccess;
@@ -103,6 +104,55 @@ public final class FloatArray extends AbstractList<Float> implements
     this.size = other.size;
   }
 
+  /**
+   * Creates an <code>FloatArray</code> that uses the specified array as its
+   * storage.
+   *
+   * @param elements
+   *            The array to use as storage.
+   * @param size
+   *            The number of elements of <code>elements</code> in use.
+   */
+  private FloatArray(float[] elements, int size) {
+    this.elements = elements;
+    this.size = size;
+  }
+
+  /**
+   * Creates an <code>FloatArray</code> that uses the specified array as its
+   * storage, without copying it.  Changes to the array are visible through
+   * the returned <code>FloatArray</code>, and vice versa, until the returned
+   * array grows beyond the length of <code>elements</code> and must
+   * reallocate its storage.
+   *
+   * @param elements
+   *            The array to use as storage.
+   * @param size
+   *            The number of elements of <code>elements</code> in use.
+   * @return The new <code>FloatArray</code>.
+   * @throws IndexOutOfBoundsException
+   *             if <code>size &lt; 0 || size &gt; elements.length</code>.
+   */
+  public static FloatArray wrap(float[] elements, int size) {
+    if (size < 0 || size > elements.length) {
+      throw new IndexOutOfBoundsException();
+    }
+    return new FloatArray(elements, size);
+  }
+
+  /**
+   * Creates an <code>FloatArray</code> that uses the specified array as its
+   * storage, without copying it.
+   *
+   * @param elements
+   *            The array to use as storage.
+   * @return The new <code>FloatArray</code>.
+   * @see #wrap(float[], int)
+   */
+  public static FloatArray wrap(float[] elements) {
+    return new FloatArray(elements, elements.length);
+  }
+
   /**
    * Converts this <code>FloatArray</code> to an array of floats.
    *
@@ -116,6 +166,59 @@ public final class FloatArray extends AbstractList<Float> implements
     return copy;
   }
 
+  /**
+   * Gets the array currently used to store the elements of this array.  Only
+   * the first <code>size()</code> elements are in use.  The returned array is
+   * not a copy, so changes to it are visible through this
+   * <code>FloatArray</code>.  The storage is replaced whenever this array must
+   * grow, after which the returned array no longer reflects its contents.
+   *
+   * @return The array used to store the elements of this array.
+   */
+  public float[] unsafeBackingArray() {
+    return elements;
+  }
+
+  /**
+   * Gets a <code>FloatBuffer</code> view of the elements of this array.  The
+   * returned buffer has a capacity of <code>size()</code> and shares its
+   * storage with this array, until this array must grow.
+   *
+   * @return A <code>FloatBuffer</code> view of the elements of this array.
+   */
+  public FloatBuffer asFloatBuffer() {
+    return FloatBuffer.wrap(elements, 0, size).slice();
+  }
+
+  /**
+   * Appends the remaining elements of a <code>FloatBuffer</code> to the end of
+   * this array.  The position of <code>src</code> is advanced to its limit.
+   *
+   * @param src
+   *            The <code>FloatBuffer</code> containing the values to append.
+   * @return A value indicating if the array has changed.
+   */
+  public boolean put(FloatBuffer src) {
+    int length = src.remaining();
+    ensureCapacity(size + length);
+    src.get(elements, size, length);
+    size += length;
+    return length > 0;
+  }
+
+  /**
+   * Copies the elements of this array into a <code>FloatBuffer</code>.  The
+   * position of <code>dst</code> is advanced by <code>size()</code>.
+   *
+   * @param dst
+   *            The <code>FloatBuffer</code> to copy the elements into.
+   * @throws java.nio.BufferOverflowException
+   *             if <code>dst.remaining() &lt; size()</code>.
+   */
+  public void get(FloatBuffer dst) {
+    dst.put(elements, 0, size);
+  }
+
   /*
    * (non-Javadoc)
    *
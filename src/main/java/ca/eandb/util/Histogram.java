@@ -0,0 +1,371 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Counts values falling into equal width bins over a fixed range, along with
+ * the number of values falling below or above the range and the minimum and
+ * maximum values seen.  Histograms with the same range and number of bins
+ * may be combined using {@link #merge(Histogram)}.
+ *
+ * <code>NaN</code> values are not binned and do not affect the minimum or
+ * maximum.  They are counted separately (see {@link #getNaNCount()}), as in
+ * {@link RunningStatistics} and {@link QuantileSketch}.
+ *
+ * This class is not thread-safe.
+ *
+ * @author Brad Kimmel
+ */
+public final class Histogram implements Serializable {
+
+  /**
+   * Serialization version ID.
+   */
+  private static final long serialVersionUID = -1907412744802035640L;
+
+  /** The lower bound of the first bin. */
+  private final double lower;
+
+  /** The upper bound of the last bin. */
+  private final double upper;
+
+  /** The number of bins per unit. */
+  private final double scale;
+
+  /** The number of values in each bin. */
+  private final long[] bins;
+
+  /** The number of values less than <code>lower</code>. */
+  private long underflow = 0;
+
+  /** The number of values greater than or equal to <code>upper</code>. */
+  private long overflow = 0;
+
+  /** The number of <code>NaN</code> values added. */
+  private long nanCount = 0;
+
+  /** The smallest value added. */
+  private double min = Double.POSITIVE_INFINITY;
+
+  /** The largest value added. */
+  private double max = Double.NEGATIVE_INFINITY;
+
+  /**
+   * Creates an empty <code>Histogram</code>.
+   * @param lower The lower bound of the first bin.
+   * @param upper The upper bound of the last bin.
+   * @param binCount The number of bins.
+   * @throws IllegalArgumentException If <code>lower &gt;= upper</code> or if
+   *     <code>binCount &lt;= 0</code>.
+   */
+  public Histogram(double lower, double upper, int binCount) {
+    if (!(lower < upper)) {
+      throw new IllegalArgumentException("lower must be less than upper.");
+    }
+    if (binCount <= 0) {
+      throw new IllegalArgumentException("binCount must be positive.");
+    }
+    this.lower = lower;
+    this.upper = upper;
+    this.scale = binCount / (upper - lower);
+    this.bins = new long[binCount];
+  }
+
+  /**
+   * Computes a histogram of an array of values, processing chunks of the
+   * array in parallel.
+   * @param values The values to count.
+   * @param lower The lower bound of the first bin.
+   * @param upper The upper bound of the last bin.
+   * @param binCount The number of bins.
+   * @return The <code>Histogram</code> of <code>values</code>.
+   */
+  public static Histogram of(DoubleArray values, final double lower,
+      final double upper, final int binCount) {
+    return Arrays.stream(values.unsafeBackingArray(), 0, values.size())
+        .parallel()
+        .collect(() -> new Histogram(lower, upper, binCount), Histogram::add,
+            Histogram::merge);
+  }
+
+  /**
+   * Computes a histogram of an array of values, processing chunks of the
+   * array in parallel.
+   * @param values The values to count.
+   * @param lower The lower bound of the first bin.
+   * @param upper The upper bound of the last bin.
+   * @param binCount The number of bins.
+   * @return The <code>Histogram</code> of <code>values</code>.
+   */
+  public static Histogram of(FloatArray values, final double lower,
+      final double upper, final int binCount) {
+    final float[] elements = values.unsafeBackingArray();
+    return IntStream.range(0, values.size())
+        .parallel()
+        .collect(() -> new Histogram(lower, upper, binCount),
+            (h, i) -> h.add(elements[i]), Histogram::merge);
+  }
+
+  /**
+   * Adds a value.  <code>NaN</code> values are counted, but otherwise
+   * ignored.
+   * @param x The value to add.
+   */
+  public void add(double x) {
+    if (x < lower) {
+      underflow++;
+    } else if (x >= upper) {
+      overflow++;
+    } else if (x >= lower) {
+      int bin = (int) ((x - lower) * scale);
+      bins[bin < bins.length ? bin : bins.length - 1]++;
+    } else {
+      nanCount++;
+      return;
+    }
+    if (x < min) {
+      min = x;
+    }
+    if (x > max) {
+      max = x;
+    }
+  }
+
+  /**
+   * Adds all values in an array.
+   * @param values The values to add.
+   */
+  public void addAll(DoubleArray values) {
+    double[] elements = values.unsafeBackingArray();
+    for (int i = 0, n = values.size(); i < n; i++) {
+      add(elements[i]);
+    }
+  }
+
+  /**
+   * Adds all values in an array.
+   * @param values The values to add.
+   */
+  public void addAll(FloatArray values) {
+    float[] elements = values.unsafeBackingArray();
+    for (int i = 0, n = values.size(); i < n; i++) {
+      add(elements[i]);
+    }
+  }
+
+  /**
+   * Combines the values counted by another <code>Histogram</code> into this
+   * one.
+   * @param other The <code>Histogram</code> to merge into this one.
+   * @throws IllegalArgumentException If <code>other</code> does not have the
+   *     same range and number of bins as this <code>Histogram</code>.
+   */
+  public void merge(Histogram other) {
+    if (other.lower != lower || other.upper != upper
+        || other.bins.length != bins.length) {
+      throw new IllegalArgumentException("Histograms are incompatible.");
+    }
+    for (int i = 0; i < bins.length; i++) {
+      bins[i] += other.bins[i];
+    }
+    underflow += other.underflow;
+    overflow += other.overflow;
+    nanCount += other.nanCount;
+    min = Math.min(min, other.min);
+    max = Math.max(max, other.max);
+  }
+
+  /**
+   * Gets the number of bins.
+   * @return The number of bins.
+   */
+  public int getBinCount() {
+    return bins.length;
+  }
+
+  /**
+   * Gets the number of values in a bin.
+   * @param bin The index of the bin.
+   * @return The number of values in the bin.
+   * @throws IndexOutOfBoundsException If <code>bin &lt; 0 || bin &gt;=
+   *     getBinCount()</code>.
+   */
+  public long getCount(int bin) {
+    return bins[bin];
+  }
+
+  /**
+   * Gets the lower bound of a bin.
+   * @param bin The index of the bin (<code>getBinCount()</code> yields the
+   *     upper bound of the last bin).
+   * @return The lower bound of the bin.
+   */
+  public double getBinLowerBound(int bin) {
+    return bin == bins.length ? upper : lower + bin / scale;
+  }
+
+  /**
+   * Gets the number of values less than the lower bound of the first bin.
+   * @return The number of values below the range of this histogram.
+   */
+  public long getUnderflow() {
+    return underflow;
+  }
+
+  /**
+   * Gets the number of values greater than or equal to the upper bound of
+   * the last bin.
+   * @return The number of values above the range of this histogram.
+   */
+  public long getOverflow() {
+    return overflow;
+  }
+
+  /**
+   * Gets the number of <code>NaN</code> values added.
+   * @return The number of <code>NaN</code> values added.
+   */
+  public long getNaNCount() {
+    return nanCount;
+  }
+
+  /**
+   * Gets the total number of values added, excluding <code>NaN</code>s.
+   * @return The total number of values added.
+   */
+  public long getTotalCount() {
+    long total = underflow + overflow;
+    for (long count : bins) {
+      total += count;
+    }
+    return total;
+  }
+
+  /**
+   * Gets the smallest value added.
+   * @return The smallest value, or <code>Double.POSITIVE_INFINITY</code> if
+   *     no values have been added.
+   */
+  public double getMinimum() {
+    return min;
+  }
+
+  /**
+   * Gets the largest value added.
+   * @return The largest value, or <code>Double.NEGATIVE_INFINITY</code> if
+   *     no values have been added.
+   */
+  public double getMaximum() {
+    return max;
+  }
+
+  /**
+   * Writes this <code>Histogram</code> in a compact binary form.  Bin counts
+   * are written as variable length integers, so sparse histograms take
+   * little space.
+   * @param out The <code>DataOutput</code> to write to.
+   * @throws IOException If an error occurs while writing to
+   *     <code>out</code>.
+   * @see #read(DataInput)
+   */
+  public void write(DataOutput out) throws IOException {
+    out.writeDouble(lower);
+    out.writeDouble(upper);
+    out.writeInt(bins.length);
+    for (long count : bins) {
+      writeVarLong(out, count);
+    }
+    writeVarLong(out, underflow);
+    writeVarLong(out, overflow);
+    writeVarLong(out, nanCount);
+    out.writeDouble(min);
+    out.writeDouble(max);
+  }
+
+  /**
+   * Reads a <code>Histogram</code> written by {@link #write(DataOutput)}.
+   * @param in The <code>DataInput</code> to read from.
+   * @return The <code>Histogram</code> that was read.
+   * @throws IOException If an error occurs while reading from
+   *     <code>in</code>.
+   */
+  public static Histogram read(DataInput in) throws IOException {
+    double lower = in.readDouble();
+    double upper = in.readDouble();
+    Histogram h = new Histogram(lower, upper, in.readInt());
+    for (int i = 0; i < h.bins.length; i++) {
+      h.bins[i] = readVarLong(in);
+    }
+    h.underflow = readVarLong(in);
+    h.overflow = readVarLong(in);
+    h.nanCount = readVarLong(in);
+    h.min = in.readDouble();
+    h.max = in.readDouble();
+    return h;
+  }
+
+  /**
+   * Writes a non-negative integer using seven bits per byte.
+   * @param out The <code>DataOutput</code> to write to.
+   * @param value The value to write.
+   * @throws IOException If an error occurs while writing to
+   *     <code>out</code>.
+   */
+  private static void writeVarLong(DataOutput out, long value) throws IOException {
+    while ((value & ~0x7fL) != 0) {
+      out.writeByte((int) ((value & 0x7f) | 0x80));
+      value >>>= 7;
+    }
+    out.writeByte((int) value);
+  }
+
+  /**
+   * Reads an integer written by {@link #writeVarLong(DataOutput, long)}.
+   * @param in The <code>DataInput</code> to read from.
+   * @return The value read.
+   * @throws IOException If an error occurs while reading from
+   *     <code>in</code>.
+   */
+  private static long readVarLong(DataInput in) throws IOException {
+    long value = 0;
+    int shift = 0;
+    int b;
+    do {
+      b = in.readUnsignedByte();
+      value |= (long) (b & 0x7f) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return value;
+  }
+
+}
@@ -26,6 +26,7 @@
 package ca.eandb.util;
 
 import java.io.Serializable;
+import java.nio.IntBuffer;
 import java.util.AbstractList;
 import java.util.Collection;
 import java.util.RandomAccess;
@@ -103,6 +104,55 @@ public final class IntegerArray extends AbstractList<Integer> implements
     this.size = other.size;
   }
 
+  /**
+   * Creates an <code>IntegerArray</code> that uses the specified array as its
+   * storage.
+   *
+   * @param elements
+   *            The array to use as storage.
+   * @param size
+   *            The number of elements of <code>elements</code> in use.
+   */
+  private IntegerArray(int[] elements, int size) {
+    this.elements = elements;
+    this.size = size;
+  }
+
+  /**
+   * Creates an <code>IntegerArray</code> that uses the specified array as its
+   * storage, without copying it.  Changes to the array are visible through
+   * the returned <code>IntegerArray</code>, and vice versa, until the returned
+   * array grows beyond the length of <code>elements</code> and must
+   * reallocate its storage.
+   *
+   * @param elements
+   *            The array to use as storage.
+   * @param size
+   *            The number of elements of <code>elements</code> in use.
+   * @return The new <code>IntegerArray</code>.
+   * @throws IndexOutOfBoundsException
+   *             if <code>size &lt; 0 || size &gt; elements.length</code>.
+   */
+  public static IntegerArray wrap(int[] elements, int size) {
+    if (size < 0 || size > elements.length) {
+      throw new IndexOutOfBoundsException();
+    }
+    return new IntegerArray(elements, size);
+  }
+
+  /**
+   * Creates an <code>IntegerArray</code> that uses the specified array as its
+   * storage, without copying it.
+   *
+   * @param elements
+   *            The array to use as storage.
+   * @return The new <code>IntegerArray</code>.
+   * @see #wrap(int[], int)
+   */
+  public static IntegerArray wrap(int[] elements) {
+    return new IntegerArray(elements, elements.length);
+  }
+
   /**
    * Converts this <code>IntegerArray</code> to an array of ints.
    *
@@ -116,6 +166,59 @@ public final class IntegerArray extends AbstractList<Integer> implements
     return copy;
   }
 
+  /**
+   * Gets the array currently used to store the elements of this array.  Only
+   * the first <code>size()</code> elements are in use.  The returned array is
+   * not a copy, so changes to it are visible through this
+   * <code>IntegerArray</code>.  The storage is replaced whenever this array must
+   * grow, after which the returned array no longer reflects its contents.
+   *
+   * @return The array used to store the elements of this array.
+   */
+  public int[] unsafeBackingArray() {
+    return elements;
+  }
+
+  /**
+   * Gets a <code>IntBuffer</code> view of the elements of this array.  The
+   * returned buffer has a capacity of <code>size()</code> and shares its
+   * storage with this array, until this array must grow.
+   *
+   * @return A <code>IntBuffer</code> view of the elements of this array.
+   */
+  public IntBuffer asIntBuffer() {
+    return IntBuffer.wrap(elements, 0, size).slice();
+  }
+
+  /**
+   * Appends the remaining elements of a <code>IntBuffer</code> to the end of
+   * this array.  The position of <code>src</code> is advanced to its limit.
+   *
+   * @param src
+   *            The <code>IntBuffer</code> containing the values to append.
+   * @return A value indicating if the array has changed.
+   */
+  public boolean put(IntBuffer src) {
+    int length = src.remaining();
+    ensureCapacity(size + length);
+    src.get(elements, size, length);
+    size += length;
+    return length > 0;
+  }
+
+  /**
+   * Copies the elements of this array into a <code>IntBuffer</code>.  The
+   * position of <code>dst</code> is advanced by <code>size()</code>.
+   *
+   * @param dst
+   *            The <code>IntBuffer</code> to copy the elements into.
+   * @throws java.nio.BufferOverflowException
+   *             if <code>dst.remaining() &lt; size()</code>.
+   */
+  public void get(IntBuffer dst) {
+    dst.put(elements, 0, size);
+  }
+
   /*
    * (non-Javadoc)
    *
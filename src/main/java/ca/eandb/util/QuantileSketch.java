@@ -0,0 +1,521 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Estimates quantiles of a stream of values using bounded memory.  This is
+ * an implementation of the KLL sketch described in "Optimal Quantile
+ * Approximation in Streams", Karnin, Lang and Liberty, 2016.  Values are held
+ * in a hierarchy of compactors.  When a compactor fills, it is sorted and
+ * every other value (starting at a random offset) is promoted to the next
+ * level with twice the weight, and the rest are discarded.  With the default
+ * parameter <code>k = 200</code>, rank estimates are typically within about
+ * 1.3% of the true rank.
+ *
+ * Sketches may be combined using {@link #merge(QuantileSketch)}, so that
+ * separate chunks of a large data set may be processed in parallel.
+ *
+ * <code>NaN</code> values have no rank, so they are excluded from the sketch
+ * and counted separately (see {@link #getNaNCount()}), as in
+ * {@link Histogram} and {@link RunningStatistics}.
+ *
+ * This class is not thread-safe.
+ *
+ * @author Brad Kimmel
+ */
+public final class QuantileSketch implements Serializable {
+
+  /**
+   * Serialization version ID.
+   */
+  private static final long serialVersionUID = 3306409003779012468L;
+
+  /** The default accuracy parameter. */
+  public static final int DEFAULT_K = 200;
+
+  /** The factor by which compactor capacity shrinks at each lower level. */
+  private static final double CAPACITY_DECAY = 2.0 / 3.0;
+
+  /** The accuracy parameter (the capacity of the top level compactor). */
+  private final int k;
+
+  /**
+   * The compactors.  The values in the compactor at index <code>h</code>
+   * each represent <code>2<sup>h</sup></code> values.
+   */
+  private final List<DoubleArray> levels = new ArrayList<DoubleArray>();
+
+  /** The number of values added, excluding <code>NaN</code>s. */
+  private long count = 0;
+
+  /** The number of <code>NaN</code> values added. */
+  private long nanCount = 0;
+
+  /** The total number of values held in all compactors. */
+  private int retained = 0;
+
+  /** The total capacity of all compactors. */
+  private int capacity;
+
+  /** The smallest value added. */
+  private double min = Double.POSITIVE_INFINITY;
+
+  /** The largest value added. */
+  private double max = Double.NEGATIVE_INFINITY;
+
+  /** The state of the random number generator used when compacting. */
+  private long seed = ThreadLocalRandom.current().nextLong() | 1L;
+
+  /**
+   * The retained values in sorted order, or <code>null</code> if the sketch
+   * has changed since they were last computed.
+   */
+  private transient double[] sortedValues;
+
+  /**
+   * The cumulative weight of the values in <code>sortedValues</code>.
+   */
+  private transient long[] sortedWeights;
+
+  /**
+   * Creates an empty <code>QuantileSketch</code> with the default accuracy.
+   */
+  public QuantileSketch() {
+    this(DEFAULT_K);
+  }
+
+  /**
+   * Creates an empty <code>QuantileSketch</code>.
+   * @param k The accuracy parameter.  The rank error decreases roughly in
+   *     proportion to <code>1/k</code>, and the memory used grows roughly in
+   *     proportion to <code>k</code>.
+   * @throws IllegalArgumentException If <code>k &lt; 8</code>.
+   */
+  public QuantileSketch(int k) {
+    if (k < 8) {
+      throw new IllegalArgumentException("k must be at least 8.");
+    }
+    this.k = k;
+    levels.add(new DoubleArray());
+    capacity = computeCapacity();
+  }
+
+  /**
+   * Builds a sketch of an array of values, processing chunks of the array in
+   * parallel.
+   * @param values The values to sketch.
+   * @return The <code>QuantileSketch</code> of <code>values</code>.
+   */
+  public static QuantileSketch of(DoubleArray values) {
+    return Arrays.stream(values.unsafeBackingArray(), 0, values.size())
+        .parallel()
+        .collect(QuantileSketch::new, QuantileSketch::add,
+            QuantileSketch::merge);
+  }
+
+  /**
+   * Builds a sketch of an array of values, processing chunks of the array in
+   * parallel.
+   * @param values The values to sketch.
+   * @return The <code>QuantileSketch</code> of <code>values</code>.
+   */
+  public static QuantileSketch of(FloatArray values) {
+    final float[] elements = values.unsafeBackingArray();
+    return IntStream.range(0, values.size())
+        .parallel()
+        .collect(QuantileSketch::new, (s, i) -> s.add(elements[i]),
+            QuantileSketch::merge);
+  }
+
+  /**
+   * Adds a value.  <code>NaN</code> values are counted, but otherwise
+   * ignored.
+   * @param x The value to add.
+   */
+  public void add(double x) {
+    if (Double.isNaN(x)) {
+      nanCount++;
+      return;
+    }
+    levels.get(0).add(x);
+    count++;
+    if (x < min) {
+      min = x;
+    }
+    if (x > max) {
+      max = x;
+    }
+    if (++retained >= capacity) {
+      compress();
+    }
+    sortedValues = null;
+  }
+
+  /**
+   * Adds all values in an array.
+   * @param values The values to add.
+   */
+  public void addAll(DoubleArray values) {
+    double[] elements = values.unsafeBackingArray();
+    for (int i = 0, n = values.size(); i < n; i++) {
+      add(elements[i]);
+    }
+  }
+
+  /**
+   * Adds all values in an array.
+   * @param values The values to add.
+   */
+  public void addAll(FloatArray values) {
+    float[] elements = values.unsafeBackingArray();
+    for (int i = 0, n = values.size(); i < n; i++) {
+      add(elements[i]);
+    }
+  }
+
+  /**
+   * Combines the values summarized by another <code>QuantileSketch</code>
+   * into this one.
+   * @param other The <code>QuantileSketch</code> to merge into this one.
+   * @throws IllegalArgumentException If <code>other</code> does not have the
+   *     same accuracy parameter as this <code>QuantileSketch</code>.
+   */
+  public void merge(QuantileSketch other) {
+    if (other.k != k) {
+      throw new IllegalArgumentException("Sketches are incompatible.");
+    }
+    nanCount += other.nanCount;
+    if (other.count == 0) {
+      return;
+    }
+    while (levels.size() < other.levels.size()) {
+      levels.add(new DoubleArray());
+    }
+    for (int h = 0; h < other.levels.size(); h++) {
+      levels.get(h).addAll(other.levels.get(h));
+    }
+    count += other.count;
+    retained += other.retained;
+    min = Math.min(min, other.min);
+    max = Math.max(max, other.max);
+    capacity = computeCapacity();
+    while (retained >= capacity) {
+      compress();
+    }
+    sortedValues = null;
+  }
+
+  /**
+   * Gets the number of values added, excluding <code>NaN</code>s.
+   * @return The number of values added.
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * Gets the number of <code>NaN</code> values added.
+   * @return The number of <code>NaN</code> values added.
+   */
+  public long getNaNCount() {
+    return nanCount;
+  }
+
+  /**
+   * Gets the number of values retained by this sketch.
+   * @return The number of values retained by this sketch.
+   */
+  public int getRetainedCount() {
+    return retained;
+  }
+
+  /**
+   * Gets the smallest value added.
+   * @return The smallest value, or <code>Double.POSITIVE_INFINITY</code> if
+   *     no values have been added.
+   */
+  public double getMinimum() {
+    return min;
+  }
+
+  /**
+   * Gets the largest value added.
+   * @return The largest value, or <code>Double.NEGATIVE_INFINITY</code> if
+   *     no values have been added.
+   */
+  public double getMaximum() {
+    return max;
+  }
+
+  /**
+   * Estimates a quantile of the values added.
+   * @param q The fraction of values that should be less than or equal to
+   *     the result (<code>0 &lt;= q &lt;= 1</code>).
+   * @return The estimated <code>q</code>-quantile, or <code>NaN</code> if
+   *     no values have been added.
+   * @throws IllegalArgumentException If <code>q</code> is not in
+   *     <code>[0, 1]</code>.
+   */
+  public double getQuantile(double q) {
+    if (!(q >= 0.0 && q <= 1.0)) {
+      throw new IllegalArgumentException("q must be in [0, 1].");
+    }
+    if (count == 0) {
+      return Double.NaN;
+    }
+    if (q == 0.0) {
+      return min;
+    } else if (q == 1.0) {
+      return max;
+    }
+    sort();
+    long total = sortedWeights[sortedWeights.length - 1];
+    long target = (long) Math.ceil(q * total);
+    int index = Arrays.binarySearch(sortedWeights, target);
+    if (index < 0) {
+      index = -(index + 1);
+    }
+    return sortedValues[Math.min(index, sortedValues.length - 1)];
+  }
+
+  /**
+   * Estimates several quantiles of the values added.
+   * @param q The quantiles to estimate.
+   * @return An array containing the estimate for each element of
+   *     <code>q</code>.
+   * @see #getQuantile(double)
+   */
+  public double[] getQuantiles(double... q) {
+    double[] result = new double[q.length];
+    for (int i = 0; i < q.length; i++) {
+      result[i] = getQuantile(q[i]);
+    }
+    return result;
+  }
+
+  /**
+   * Estimates the fraction of values added that are less than or equal to a
+   * given value.
+   * @param x The value for which to estimate the rank.
+   * @return The estimated normalized rank of <code>x</code>, or
+   *     <code>NaN</code> if no values have been added.
+   */
+  public double getRank(double x) {
+    if (count == 0) {
+      return Double.NaN;
+    }
+    sort();
+    int index = upperBound(sortedValues, x);
+    return index > 0
+        ? (double) sortedWeights[index - 1] / (double) sortedWeights[sortedWeights.length - 1]
+        : 0.0;
+  }
+
+  /**
+   * Computes the sorted view of the retained values, if necessary.
+   */
+  private void sort() {
+    if (sortedValues != null) {
+      return;
+    }
+
+    double[] values = new double[retained];
+    long[] weights = new long[retained];
+    int n = 0;
+    for (int h = 0; h < levels.size(); h++) {
+      DoubleArray level = levels.get(h);
+      System.arraycopy(level.unsafeBackingArray(), 0, values, n, level.size());
+      Arrays.fill(weights, n, n + level.size(), 1L << h);
+      n += level.size();
+    }
+
+    /* Sort the values and weights together, by value. */
+    Integer[] order = new Integer[n];
+    for (int i = 0; i < n; i++) {
+      order[i] = i;
+    }
+    final double[] v = values;
+    Arrays.sort(order, (a, b) -> Double.compare(v[a], v[b]));
+
+    sortedValues = new double[n];
+    sortedWeights = new long[n];
+    long cumulative = 0;
+    for (int i = 0; i < n; i++) {
+      sortedValues[i] = values[order[i]];
+      cumulative += weights[order[i]];
+      sortedWeights[i] = cumulative;
+    }
+  }
+
+  /**
+   * Finds the number of elements of a sorted array less than or equal to a
+   * value.
+   * @param a The sorted array.
+   * @param x The value to search for.
+   * @return The index of the first element greater than <code>x</code>.
+   */
+  private static int upperBound(double[] a, double x) {
+    int lo = 0, hi = a.length;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (a[mid] <= x) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  /**
+   * Compacts the lowest compactor that is at or above its capacity.
+   */
+  private void compress() {
+    for (int h = 0; h < levels.size(); h++) {
+      DoubleArray level = levels.get(h);
+      if (level.size() >= levelCapacity(h)) {
+        if (h + 1 == levels.size()) {
+          levels.add(new DoubleArray());
+          capacity = computeCapacity();
+        }
+        DoubleArray above = levels.get(h + 1);
+        double[] values = level.unsafeBackingArray();
+        int n = level.size();
+        Arrays.sort(values, 0, n);
+
+        /* If there are an odd number of values, the smallest stays behind
+         * so that the remaining values can be paired up.
+         */
+        int start = n & 1;
+        int offset = nextBit();
+        above.ensureCapacity(above.size() + (n - start) / 2);
+        for (int i = start + offset; i < n; i += 2) {
+          above.add(values[i]);
+        }
+        level.resize(start);
+        retained -= (n - start) / 2;
+        return;
+      }
+    }
+  }
+
+  /**
+   * Computes the capacity of a compactor.
+   * @param h The level of the compactor.
+   * @return The capacity of the compactor at level <code>h</code>.
+   */
+  private int levelCapacity(int h) {
+    int depth = levels.size() - h - 1;
+    return Math.max(2, (int) Math.ceil(k * Math.pow(CAPACITY_DECAY, depth)));
+  }
+
+  /**
+   * Computes the total capacity of all compactors.
+   * @return The total capacity of all compactors.
+   */
+  private int computeCapacity() {
+    int total = 0;
+    for (int h = 0; h < levels.size(); h++) {
+      total += levelCapacity(h);
+    }
+    return total;
+  }
+
+  /**
+   * Generates a random bit.
+   * @return Either <code>0</code> or <code>1</code>, at random.
+   */
+  private int nextBit() {
+    seed ^= seed << 13;
+    seed ^= seed >>> 7;
+    seed ^= seed << 17;
+    return (int) (seed >>> 63);
+  }
+
+  /**
+   * Writes this <code>QuantileSketch</code> in a compact binary form.
+   * @param out The <code>DataOutput</code> to write to.
+   * @throws IOException If an error occurs while writing to
+   *     <code>out</code>.
+   * @see #read(DataInput)
+   */
+  public void write(DataOutput out) throws IOException {
+    out.writeInt(k);
+    out.writeLong(count);
+    out.writeLong(nanCount);
+    out.writeDouble(min);
+    out.writeDouble(max);
+    out.writeLong(seed);
+    out.writeInt(levels.size());
+    for (DoubleArray level : levels) {
+      double[] values = level.unsafeBackingArray();
+      out.writeInt(level.size());
+      for (int i = 0, n = level.size(); i < n; i++) {
+        out.writeDouble(values[i]);
+      }
+    }
+  }
+
+  /**
+   * Reads a <code>QuantileSketch</code> written by
+   * {@link #write(DataOutput)}.
+   * @param in The <code>DataInput</code> to read from.
+   * @return The <code>QuantileSketch</code> that was read.
+   * @throws IOException If an error occurs while reading from
+   *     <code>in</code>.
+   */
+  public static QuantileSketch read(DataInput in) throws IOException {
+    QuantileSketch sketch = new QuantileSketch(in.readInt());
+    sketch.count = in.readLong();
+    sketch.nanCount = in.readLong();
+    sketch.min = in.readDouble();
+    sketch.max = in.readDouble();
+    sketch.seed = in.readLong();
+    sketch.levels.clear();
+    for (int h = 0, height = in.readInt(); h < height; h++) {
+      int n = in.readInt();
+      double[] values = new double[n];
+      for (int i = 0; i < n; i++) {
+        values[i] = in.readDouble();
+      }
+      sketch.levels.add(DoubleArray.wrap(values));
+      sketch.retained += n;
+    }
+    sketch.capacity = sketch.computeCapacity();
+    return sketch;
+  }
+
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Accumulates the count, mean, variance, minimum and maximum of a sequence of
+ * values in a single pass, using Welford's algorithm.  Two instances may be
+ * combined using {@link #merge(RunningStatistics)}, so that separate chunks
+ * of a large data set may be processed in parallel.
+ *
+ * <code>NaN</code> values are excluded from the statistics, so that a single
+ * missing value does not make the mean and variance of the whole sequence
+ * <code>NaN</code>.  They are counted separately (see {@link #getNaNCount()}),
+ * as in {@link Histogram} and {@link QuantileSketch}.
+ *
+ * This class is not thread-safe.
+ *
+ * @author Brad Kimmel
+ */
+public final class RunningStatistics implements Serializable {
+
+  /**
+   * Serialization version ID.
+   */
+  private static final long serialVersionUID = 6470123418211936717L;
+
+  /** The number of values accumulated. */
+  private long count = 0;
+
+  /** The number of <code>NaN</code> values added. */
+  private long nanCount = 0;
+
+  /** The mean of the values accumulated. */
+  private double mean = 0.0;
+
+  /** The sum of squared differences from the mean. */
+  private double m2 = 0.0;
+
+  /** The smallest value accumulated. */
+  private double min = Double.POSITIVE_INFINITY;
+
+  /** The largest value accumulated. */
+  private double max = Double.NEGATIVE_INFINITY;
+
+  /**
+   * Creates an empty <code>RunningStatistics</code>.
+   */
+  public RunningStatistics() {
+    /* nothing to do. */
+  }
+
+  /**
+   * Computes statistics for an array of values, processing chunks of the
+   * array in parallel.
+   * @param values The values for which to compute statistics.
+   * @return The <code>RunningStatistics</code> for <code>values</code>.
+   */
+  public static RunningStatistics of(DoubleArray values) {
+    return Arrays.stream(values.unsafeBackingArray(), 0, values.size())
+        .parallel()
+        .collect(RunningStatistics::new, RunningStatistics::add,
+            RunningStatistics::merge);
+  }
+
+  /**
+   * Computes statistics for an array of values, processing chunks of the
+   * array in parallel.
+   * @param values The values for which to compute statistics.
+   * @return The <code>RunningStatistics</code> for <code>values</code>.
+   */
+  public static RunningStatistics of(FloatArray values) {
+    final float[] elements = values.unsafeBackingArray();
+    return IntStream.range(0, values.size())
+        .parallel()
+        .collect(RunningStatistics::new, (s, i) -> s.add(elements[i]),
+            RunningStatistics::merge);
+  }
+
+  /**
+   * Adds a value.  <code>NaN</code> values are counted, but otherwise
+   * ignored.
+   * @param x The value to add.
+   */
+  public void add(double x) {
+    if (Double.isNaN(x)) {
+      nanCount++;
+      return;
+    }
+    count++;
+    double delta = x - mean;
+    mean += delta / count;
+    m2 += delta * (x - mean);
+    if (x < min) {
+      min = x;
+    }
+    if (x > max) {
+      max = x;
+    }
+  }
+
+  /**
+   * Adds all values in an array.
+   * @param values The values to add.
+   */
+  public void addAll(DoubleArray values) {
+    double[] elements = values.unsafeBackingArray();
+    for (int i = 0, n = values.size(); i < n; i++) {
+      add(elements[i]);
+    }
+  }
+
+  /**
+   * Adds all values in an array.
+   * @param values The values to add.
+   */
+  public void addAll(FloatArray values) {
+    float[] elements = values.unsafeBackingArray();
+    for (int i = 0, n = values.size(); i < n; i++) {
+      add(elements[i]);
+    }
+  }
+
+  /**
+   * Combines the values accumulated by another <code>RunningStatistics</code>
+   * into this one.
+   * @param other The <code>RunningStatistics</code> to merge into this one.
+   */
+  public void merge(RunningStatistics other) {
+    nanCount += other.nanCount;
+    if (other.count == 0) {
+      return;
+    }
+    if (count == 0) {
+      count = other.count;
+      mean = other.mean;
+      m2 = other.m2;
+      min = other.min;
+      max = other.max;
+      return;
+    }
+
+    long n = count + other.count;
+    double delta = other.mean - mean;
+    mean += delta * ((double) other.count / (double) n);
+    m2 += other.m2 + delta * delta * ((double) count * (double) other.count / (double) n);
+    count = n;
+    min = Math.min(min, other.min);
+    max = Math.max(max, other.max);
+  }
+
+  /**
+   * Gets the number of values accumulated, excluding <code>NaN</code>s.
+   * @return The number of values accumulated.
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * Gets the number of <code>NaN</code> values added.
+   * @return The number of <code>NaN</code> values added.
+   */
+  public long getNaNCount() {
+    return nanCount;
+  }
+
+  /**
+   * Gets the mean of the values accumulated.
+   * @return The mean of the values accumulated, or <code>NaN</code> if no
+   *     values have been added.
+   */
+  public double getMean() {
+    return count > 0 ? mean : Double.NaN;
+  }
+
+  /**
+   * Gets the population variance of the values accumulated.
+   * @return The population variance, or <code>NaN</code> if no values have
+   *     been added.
+   */
+  public double getVariance() {
+    return count > 0 ? m2 / count : Double.NaN;
+  }
+
+  /**
+   * Gets the sample variance of the values accumulated.
+   * @return The sample variance, or <code>NaN</code> if fewer than two
+   *     values have been added.
+   */
+  public double getSampleVariance() {
+    return count > 1 ? m2 / (count - 1) : Double.NaN;
+  }
+
+  /**
+   * Gets the population standard deviation of the values accumulated.
+   * @return The population standard deviation, or <code>NaN</code> if no
+   *     values have been added.
+   */
+  public double getStandardDeviation() {
+    return Math.sqrt(getVariance());
+  }
+
+  /**
+   * Gets the smallest value accumulated.
+   * @return The smallest value, or <code>Double.POSITIVE_INFINITY</code> if
+   *     no values have been added.
+   */
+  public double getMinimum() {
+    return min;
+  }
+
+  /**
+   * Gets the largest value accumulated.
+   * @return The largest value, or <code>Double.NEGATIVE_INFINITY</code> if
+   *     no values have been added.
+   */
+  public double getMaximum() {
+    return max;
+  }
+
+  /**
+   * Writes this <code>RunningStatistics</code> in a compact binary form.
+   * @param out The <code>DataOutput</code> to write to.
+   * @throws IOException If an error occurs while writing to
+   *     <code>out</code>.
+   * @see #read(DataInput)
+   */
+  public void write(DataOutput out) throws IOException {
+    out.writeLong(count);
+    out.writeLong(nanCount);
+    out.writeDouble(mean);
+    out.writeDouble(m2);
+    out.writeDouble(min);
+    out.writeDouble(max);
+  }
+
+  /**
+   * Reads a <code>RunningStatistics</code> written by
+   * {@link #write(DataOutput)}.
+   * @param in The <code>DataInput</code> to read from.
+   * @return The <code>RunningStatistics</code> that was read.
+   * @throws IOException If an error occurs while reading from
+   *     <code>in</code>.
+   */
+  public static RunningStatistics read(DataInput in) throws IOException {
+    RunningStatistics stats = new RunningStatistics();
+    stats.count = in.readLong();
+    stats.nanCount = in.readLong();
+    stats.mean = in.readDouble();
+    stats.m2 = in.readDouble();
+    stats.min = in.readDouble();
+    stats.max = in.readDouble();
+    return stats;
+  }
+
+  /* (non-Javadoc)
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public String toString() {
+    return String.format("count=%d, mean=%g, stddev=%g, min=%g, max=%g",
+        count, getMean(), getStandardDeviation(), min, max);
+  }
+
+}
@@ -0,0 +1,381 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Assigns stable integer identifiers to distinct strings.  The characters of
+ * all strings in the dictionary are stored contiguously in a single
+ * <code>CharacterArray</code>, with an <code>IntegerArray</code> of offsets
+ * marking where each string begins, and an open-addressing hash table maps
+ * strings back to their identifiers.  Identifiers are assigned sequentially
+ * starting from zero, so a column of strings may be represented as an
+ * <code>IntegerArray</code> of identifiers.
+ *
+ * This class is not thread-safe.
+ *
+ * @author Brad Kimmel
+ */
+public final class StringDictionary implements Serializable {
+
+  /**
+   * Serialization version ID.
+   */
+  private static final long serialVersionUID = -2474510219914815839L;
+
+  /** The value in the hash table marking an empty slot. */
+  private static final int EMPTY = -1;
+
+  /** The maximum fraction of hash table slots that may be occupied. */
+  private static final float LOAD_FACTOR = 0.5f;
+
+  /** The largest hash table that can be allocated. */
+  private static final int MAXIMUM_TABLE_SIZE = 1 << 30;
+
+  /** The largest expected size that the hash table can accommodate. */
+  private static final int MAXIMUM_EXPECTED_SIZE =
+      (int) (LOAD_FACTOR * MAXIMUM_TABLE_SIZE) - 1;
+
+  /** The largest initial capacity to reserve for characters. */
+  private static final int MAXIMUM_INITIAL_CHARS = Integer.MAX_VALUE - 8;
+
+  /** The characters of all strings in the dictionary. */
+  private final CharacterArray chars;
+
+  /**
+   * The index into <code>chars</code> of the first character of each
+   * string.  The last element is the total number of characters.
+   */
+  private final IntegerArray offsets;
+
+  /** The hash code of each string in the dictionary. */
+  private final IntegerArray hashes;
+
+  /**
+   * The hash table.  Each slot contains the identifier of a string, or
+   * {@link #EMPTY}.  The length is always a power of two.
+   */
+  private int[] table;
+
+  /**
+   * Creates an empty <code>StringDictionary</code>.
+   */
+  public StringDictionary() {
+    this(16);
+  }
+
+  /**
+   * Creates an empty <code>StringDictionary</code>.
+   * @param expectedSize The number of distinct strings the dictionary is
+   *     expected to hold.
+   * @throws IllegalArgumentException If <code>expectedSize</code> is
+   *     negative or too large for the hash table.
+   */
+  public StringDictionary(int expectedSize) {
+    if (expectedSize < 0) {
+      throw new IllegalArgumentException("expectedSize must be non-negative.");
+    }
+    if (expectedSize > MAXIMUM_EXPECTED_SIZE) {
+      throw new IllegalArgumentException(
+          "expectedSize must not exceed " + MAXIMUM_EXPECTED_SIZE + ".");
+    }
+    this.chars = new CharacterArray(
+        (int) Math.min(8L * expectedSize, MAXIMUM_INITIAL_CHARS));
+    this.offsets = new IntegerArray(expectedSize + 1);
+    this.hashes = new IntegerArray(expectedSize);
+    this.offsets.add(0);
+    this.table = newTable(tableSizeFor(expectedSize));
+  }
+
+  /**
+   * Gets the number of distinct strings in this dictionary.
+   * @return The number of distinct strings in this dictionary.
+   */
+  public int size() {
+    return hashes.size();
+  }
+
+  /**
+   * Gets the identifier for a string, adding it to the dictionary if it is
+   * not already present.
+   * @param s The string to look up.
+   * @return The identifier for <code>s</code>.
+   */
+  public int add(CharSequence s) {
+    int hash = hash(s);
+    int mask = table.length - 1;
+    for (int slot = mix(hash) & mask;; slot = (slot + 1) & mask) {
+      int id = table[slot];
+      if (id == EMPTY) {
+        id = append(s, hash);
+        table[slot] = id;
+        if (id + 1 > LOAD_FACTOR * table.length) {
+          rehash(2 * table.length);
+        }
+        return id;
+      } else if (matches(id, s, hash)) {
+        return id;
+      }
+    }
+  }
+
+  /**
+   * Gets the identifiers for a sequence of strings, adding them to the
+   * dictionary as necessary.
+   * @param strings The strings to look up.
+   * @return An <code>IntegerArray</code> containing the identifier of each
+   *     element of <code>strings</code>, in order.
+   */
+  public IntegerArray addAll(Iterable<? extends CharSequence> strings) {
+    IntegerArray ids = new IntegerArray();
+    for (CharSequence s : strings) {
+      ids.add(add(s));
+    }
+    return ids;
+  }
+
+  /**
+   * Gets the identifier for a string.
+   * @param s The string to look up.
+   * @return The identifier for <code>s</code>, or <code>-1</code> if
+   *     <code>s</code> is not in this dictionary.
+   */
+  public int indexOf(CharSequence s) {
+    int hash = hash(s);
+    int mask = table.length - 1;
+    for (int slot = mix(hash) & mask;; slot = (slot + 1) & mask) {
+      int id = table[slot];
+      if (id == EMPTY) {
+        return -1;
+      } else if (matches(id, s, hash)) {
+        return id;
+      }
+    }
+  }
+
+  /**
+   * Determines if this dictionary contains a string.
+   * @param s The string to look up.
+   * @return A value indicating if this dictionary contains <code>s</code>.
+   */
+  public boolean contains(CharSequence s) {
+    return indexOf(s) >= 0;
+  }
+
+  /**
+   * Gets the string with the specified identifier.
+   * @param id The identifier of the string to get.
+   * @return The string with identifier <code>id</code>.
+   * @throws IndexOutOfBoundsException If <code>id &lt; 0 || id &gt;=
+   *     size()</code>.
+   */
+  public String get(int id) {
+    rangeCheck(id);
+    int[] o = offsets.unsafeBackingArray();
+    return new String(chars.unsafeBackingArray(), o[id], o[id + 1] - o[id]);
+  }
+
+  /**
+   * Gets the length of the string with the specified identifier.
+   * @param id The identifier of the string.
+   * @return The length of the string with identifier <code>id</code>.
+   * @throws IndexOutOfBoundsException If <code>id &lt; 0 || id &gt;=
+   *     size()</code>.
+   */
+  public int length(int id) {
+    rangeCheck(id);
+    int[] o = offsets.unsafeBackingArray();
+    return o[id + 1] - o[id];
+  }
+
+  /**
+   * Appends the string with the specified identifier to a
+   * <code>StringBuilder</code>, without creating an intermediate
+   * <code>String</code>.
+   * @param id The identifier of the string.
+   * @param sb The <code>StringBuilder</code> to append to.
+   * @return <code>sb</code>.
+   * @throws IndexOutOfBoundsException If <code>id &lt; 0 || id &gt;=
+   *     size()</code>.
+   */
+  public StringBuilder appendTo(int id, StringBuilder sb) {
+    rangeCheck(id);
+    int[] o = offsets.unsafeBackingArray();
+    return sb.append(chars.unsafeBackingArray(), o[id], o[id + 1] - o[id]);
+  }
+
+  /**
+   * Reallocates storage so that there is only enough capacity to hold the
+   * strings currently in this dictionary.
+   */
+  public void trimToSize() {
+    chars.trimToSize();
+    offsets.trimToSize();
+    hashes.trimToSize();
+  }
+
+  /**
+   * Ensures that the specified identifier is valid.
+   * @param id The identifier to check.
+   * @throws IndexOutOfBoundsException If <code>id &lt; 0 || id &gt;=
+   *     size()</code>.
+   */
+  private void rangeCheck(int id) {
+    if (id < 0 || id >= size()) {
+      throw new IndexOutOfBoundsException();
+    }
+  }
+
+  /**
+   * Appends a new string to the dictionary.
+   * @param s The string to append.
+   * @param hash The hash code of <code>s</code>.
+   * @return The identifier of the new string.
+   */
+  private int append(CharSequence s, int hash) {
+    int length = s.length();
+    int start = chars.size();
+    chars.resize(start + length);
+    char[] c = chars.unsafeBackingArray();
+    if (s instanceof String) {
+      ((String) s).getChars(0, length, c, start);
+    } else {
+      for (int i = 0; i < length; i++) {
+        c[start + i] = s.charAt(i);
+      }
+    }
+    offsets.add(start + length);
+    hashes.add(hash);
+    return hashes.size() - 1;
+  }
+
+  /**
+   * Determines if the string with the specified identifier is equal to a
+   * given string.
+   * @param id The identifier of the string in the dictionary.
+   * @param s The string to compare with.
+   * @param hash The hash code of <code>s</code>.
+   * @return A value indicating if the strings are equal.
+   */
+  private boolean matches(int id, CharSequence s, int hash) {
+    if (hashes.unsafeBackingArray()[id] != hash) {
+      return false;
+    }
+    int[] o = offsets.unsafeBackingArray();
+    int start = o[id];
+    int length = o[id + 1] - start;
+    if (length != s.length()) {
+      return false;
+    }
+    char[] c = chars.unsafeBackingArray();
+    for (int i = 0; i < length; i++) {
+      if (c[start + i] != s.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Rebuilds the hash table.
+   * @param capacity The number of slots in the new table (must be a power
+   *     of two).
+   */
+  private void rehash(int capacity) {
+    int[] newTable = newTable(capacity);
+    int[] h = hashes.unsafeBackingArray();
+    int mask = capacity - 1;
+    for (int id = 0, n = size(); id < n; id++) {
+      int slot = mix(h[id]) & mask;
+      while (newTable[slot] != EMPTY) {
+        slot = (slot + 1) & mask;
+      }
+      newTable[slot] = id;
+    }
+    table = newTable;
+  }
+
+  /**
+   * Creates an empty hash table.
+   * @param capacity The number of slots in the table.
+   * @return The new hash table.
+   */
+  private static int[] newTable(int capacity) {
+    int[] t = new int[capacity];
+    Arrays.fill(t, EMPTY);
+    return t;
+  }
+
+  /**
+   * Computes the hash table size required to hold the specified number of
+   * strings.
+   * @param size The number of strings.
+   * @return The smallest power of two large enough to hold
+   *     <code>size</code> strings.
+   */
+  private static int tableSizeFor(int size) {
+    int capacity = 16;
+    while (capacity * LOAD_FACTOR < size + 1) {
+      capacity *= 2;
+    }
+    return capacity;
+  }
+
+  /**
+   * Computes the hash code of a string.  The result is the same as
+   * <code>s.toString().hashCode()</code>.
+   * @param s The string for which to compute the hash code.
+   * @return The hash code of <code>s</code>.
+   */
+  private static int hash(CharSequence s) {
+    if (s instanceof String) {
+      return s.hashCode();
+    }
+    int h = 0;
+    for (int i = 0, n = s.length(); i < n; i++) {
+      h = 31 * h + s.charAt(i);
+    }
+    return h;
+  }
+
+  /**
+   * Spreads the bits of a hash code so that the low order bits may be used
+   * to index the hash table.
+   * @param h The hash code.
+   * @return The mixed hash code.
+   */
+  private static int mix(int h) {
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h;
+  }
+
+}
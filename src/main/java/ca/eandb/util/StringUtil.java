@@ -25,15 +25,22 @@
 
 package ca.eandb.util;
 
+import ca.eandb.util.codec.HexCodec;
+
 /**
  * Utility methods for working with strings.
  * @author Brad Kimmel
  */
 public final class StringUtil {
 
-  /** The hexadecimal digits. */
-  private static final char[] hexDigits = { '0', '1', '2', '3', '4', '5',
-      '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
+  /** The two digit hex strings for each byte value. */
+  private static final String[] hexStrings = new String[256];
+
+  static {
+    for (int b = 0; b < 256; b++) {
+      hexStrings[b] = HexCodec.LOWER.encodeToString(new byte[]{ (byte) b });
+    }
+  }
 
   /**
    * Converts the specified byte value to a two digit hex string.
@@ -41,23 +48,17 @@ public final class StringUtil {
    * @return The two digit hexadecimal representation of <code>b</code>.
    */
   public static String toHex(byte b) {
-    final char[] string = { hexDigits[(b >> 4) & 0x0f], hexDigits[b & 0x0f] };
-    return new String(string);
+    return hexStrings[b & 0xff];
   }
 
   /**
    * Converts the specified array of bytes to a hex string.
    * @param bytes The array of bytes to convert to a string.
    * @return The hexadecimal representation of <code>bytes</code>.
+   * @see ca.eandb.util.codec.HexCodec
    */
   public static String toHex(byte[] bytes) {
-    final char[] string = new char[2 * bytes.length];
-    int i = 0;
-    for (byte b : bytes) {
-      string[i++] = hexDigits[(b >> 4) & 0x0f];
-      string[i++] = hexDigits[b & 0x0f];
-    }
-    return new String(string);
+    return HexCodec.LOWER.encodeToString(bytes);
   }
 
   /**
@@ -65,16 +66,18 @@ public final class StringUtil {
    * @param hex The <code>String</code> representation of the number, in
    *     hexadecimal.
    * @return The byte array represented by <code>hex</code>.
+   * @see ca.eandb.util.codec.HexCodec
    */
   public static byte[] hexToByteArray(String hex) {
     int length = hex.length();
-    byte[] result = new byte[(length / 2) + (length % 2)];
-    for (int i = length, j = result.length - 1; i > 0; i -= 2, j--) {
-      result[j] = hexToByte(hex.charAt(i - 1));
-      if (i > 1) {
-        result[j] |= (hexToByte(hex.charAt(i - 2)) << 4);
-      }
+    if ((length & 1) == 0) {
+      return HexCodec.LOWER.decode(hex);
     }
+
+    /* An odd number of digits: the first byte has only its low nibble. */
+    byte[] result = new byte[(length / 2) + 1];
+    result[0] = hexToByte(hex.charAt(0));
+    HexCodec.LOWER.decode(hex, 1, length, result, 1);
     return result;
   }
 
@@ -84,15 +87,11 @@ public final class StringUtil {
    * @return The byte value corresponding to <code>hex</code>.
    */
   public static byte hexToByte(char hex) {
-    if ('0' <= hex && hex <= '9') {
-      return (byte) (hex - '0');
-    } else if ('A' <= hex && hex <= 'F') {
-      return (byte) (10 + hex - 'A');
-    } else if ('a' <= hex && hex <= 'f') {
-      return (byte) (10 + hex - 'a');
-    } else {
+    int digit = HexCodec.digit(hex);
+    if (digit < 0) {
       throw new IllegalArgumentException(String.format("'%c' is not a hexadecimal digit.", hex));
     }
+    return (byte) digit;
   }
 
   /** Declared private to prevent this class from being instantiated. */
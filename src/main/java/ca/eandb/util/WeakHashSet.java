@@ -32,7 +32,9 @@ import java.util.Set;
 import java.util.WeakHashMap;
 
 /**
- * A hash set that holds weak references to its contents.
+ * A hash set that holds weak references to its contents.  This class is not
+ * thread-safe.
+ * @see ca.eandb.util.concurrent.ConcurrentWeakHashSet
  * @author Brad Kimmel
  */
 public final class WeakHashSet<T> extends AbstractSet<T> implements Set<T> {
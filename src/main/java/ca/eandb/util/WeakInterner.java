@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import ca.eandb.util.concurrent.ConcurrentWeakHashSet;
+
+/**
+ * Canonicalizes equal immutable objects, in the manner of
+ * <code>String.intern()</code>, so that duplicate instances may be garbage
+ * collected.  Canonical instances are held only weakly, so an instance that
+ * is no longer referenced elsewhere is collected and replaced by the next
+ * equal instance to be interned.
+ *
+ * This class is thread-safe.  The canonical instances are held in a
+ * {@link ConcurrentWeakHashSet}, which is divided into independently locked
+ * shards, and lookups of instances that are already canonical take no locks.
+ *
+ * @author Brad Kimmel
+ */
+public final class WeakInterner<T> {
+
+  /** The canonical instances. */
+  private final ConcurrentWeakHashSet<T> instances;
+
+  /** The number of calls to <code>intern</code> that found an instance. */
+  private final LongAdder hits = new LongAdder();
+
+  /** The number of calls to <code>intern</code> that added an instance. */
+  private final LongAdder misses = new LongAdder();
+
+  /**
+   * Creates a new <code>WeakInterner</code>.
+   */
+  public WeakInterner() {
+    this.instances = new ConcurrentWeakHashSet<T>();
+  }
+
+  /**
+   * Creates a new <code>WeakInterner</code>.
+   * @param initialCapacity The expected number of canonical instances.
+   * @param concurrencyLevel The estimated number of threads that will intern
+   *     new instances concurrently.  This determines the number of shards.
+   */
+  public WeakInterner(int initialCapacity, int concurrencyLevel) {
+    this.instances = new ConcurrentWeakHashSet<T>(initialCapacity, concurrencyLevel, false);
+  }
+
+  /**
+   * Gets the canonical instance equal to the specified object.  If there is
+   * none, <code>o</code> becomes the canonical instance.
+   * @param o The object to intern (may be <code>null</code>).
+   * @return The canonical instance equal to <code>o</code>, or
+   *     <code>null</code> if <code>o</code> is <code>null</code>.
+   */
+  public T intern(T o) {
+    if (o == null) {
+      return null;
+    }
+    T canonical = instances.get(o);
+    if (canonical == null) {
+      canonical = instances.addIfAbsent(o);
+      if (canonical == o) {
+        misses.increment();
+        return canonical;
+      }
+    }
+    hits.increment();
+    return canonical;
+  }
+
+  /**
+   * Gets the canonical instance equal to the specified object, without
+   * making <code>o</code> canonical if there is none.
+   * @param o The object to look up.
+   * @return The canonical instance equal to <code>o</code>, or
+   *     <code>null</code> if there is none.
+   */
+  public T getCanonical(Object o) {
+    return instances.get(o);
+  }
+
+  /**
+   * Gets the number of canonical instances.  This may include instances
+   * that have been garbage collected but not yet removed.
+   * @return The number of canonical instances.
+   */
+  public int size() {
+    return instances.size();
+  }
+
+  /**
+   * Gets the number of calls to {@link #intern(Object)} that returned an
+   * existing canonical instance.
+   * @return The number of hits.
+   */
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  /**
+   * Gets the number of calls to {@link #intern(Object)} that made their
+   * argument the canonical instance.
+   * @return The number of misses.
+   */
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  /**
+   * Gets the fraction of calls to {@link #intern(Object)} that returned an
+   * existing canonical instance.
+   * @return The hit rate, or <code>NaN</code> if <code>intern</code> has not
+   *     been called.
+   */
+  public double getHitRate() {
+    long h = hits.sum();
+    long total = h + misses.sum();
+    return total > 0 ? (double) h / (double) total : Double.NaN;
+  }
+
+  /**
+   * Resets the hit and miss counts to zero.
+   */
+  public void resetStatistics() {
+    hits.reset();
+    misses.reset();
+  }
+
+  /**
+   * Removes canonical instances that have been garbage collected.
+   */
+  public void expungeStaleEntries() {
+    instances.expungeStaleEntries();
+  }
+
+  /* (non-Javadoc)
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public String toString() {
+    return String.format("size=%d, hits=%d, misses=%d", size(),
+        getHitCount(), getMissCount());
+  }
+
+}
@@ -0,0 +1,1090 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.cache;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+import ca.eandb.util.UnexpectedException;
+
+/**
+ * The <code>Cache</code> implementation created by {@link CacheBuilder}.
+ *
+ * Entries are held in a <code>ConcurrentHashMap</code>, so lookups never
+ * block.  The eviction policy's bookkeeping (the ordering of entries by
+ * access and by write time, and the frequency sketch) is guarded by a single
+ * lock.  Writes apply their changes to the policy while holding the lock.
+ * Reads instead record the entry in one of several striped, lossy ring
+ * buffers, which are drained under the lock by whichever thread next
+ * manages to acquire it without waiting.  If a read buffer is full, the read
+ * is simply not recorded.
+ *
+ * Under the {@link EvictionPolicy#TINY_LFU} policy, new entries enter a small
+ * LRU window.  Entries leaving the window become candidates for the main
+ * region, which is split into probation and protected segments.  A
+ * candidate is admitted only if it has been used more often, according to a
+ * {@link FrequencySketch}, than the entry at the head of the probation
+ * segment that would be evicted to make room for it.  Entries in probation
+ * that are used again are promoted to the protected segment.
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values.
+ * @author Brad Kimmel
+ */
+final class BoundedCache<K, V> implements Cache<K, V> {
+
+  /** The fraction of the maximum weight allotted to the admission window. */
+  private static final double WINDOW_FRACTION = 0.01;
+
+  /** The fraction of the main region allotted to the protected segment. */
+  private static final double PROTECTED_FRACTION = 0.8;
+
+  /** The number of slots in each read buffer (must be a power of two). */
+  private static final int READ_BUFFER_SIZE = 16;
+
+  /** The maximum number of read buffers. */
+  private static final int MAX_READ_BUFFERS = 64;
+
+  /** Indicates that an entry is in the admission window (or LRU deque). */
+  private static final int WINDOW = 0;
+
+  /** Indicates that an entry is in the probation segment. */
+  private static final int PROBATION = 1;
+
+  /** Indicates that an entry is in the protected segment. */
+  private static final int PROTECTED = 2;
+
+  /** The entries in the cache. */
+  private final ConcurrentHashMap<K, Node<K, V>> map =
+      new ConcurrentHashMap<K, Node<K, V>>();
+
+  /** The loads currently in progress, by key. */
+  private final ConcurrentHashMap<K, Load<V>> loading =
+      new ConcurrentHashMap<K, Load<V>>();
+
+  /** The lock guarding the eviction policy's state. */
+  private final ReentrantLock evictionLock = new ReentrantLock();
+
+  /** The striped buffers of entries that have been read. */
+  private final ReadBuffer<K, V>[] readBuffers;
+
+  /** The <code>Weigher</code> used to weigh entries, or <code>null</code>. */
+  private final Weigher<? super K, ? super V> weigher;
+
+  /** The maximum total weight of entries, or <code>Long.MAX_VALUE</code>. */
+  private final long maximumWeight;
+
+  /** A value indicating whether the TinyLFU admission policy is used. */
+  private final boolean tinyLfu;
+
+  /** The maximum weight of the window (or LRU deque). */
+  private final long windowMaximum;
+
+  /** The maximum weight of the protected segment. */
+  private final long protectedMaximum;
+
+  /** The frequency sketch, or <code>null</code> if TinyLFU is not used. */
+  private final FrequencySketch sketch;
+
+  /**
+   * The time-to-live after writing, in nanoseconds, or
+   * <code>CacheBuilder.UNSET</code> if entries do not expire after writing.
+   */
+  private final long expireAfterWriteNanos;
+
+  /**
+   * The time-to-live after access, in nanoseconds, or
+   * <code>CacheBuilder.UNSET</code> if entries do not expire after access.
+   */
+  private final long expireAfterAccessNanos;
+
+  /** The strength of references to values. */
+  private final CacheBuilder.Strength valueStrength;
+
+  /**
+   * The queue to which collected values are enqueued, or <code>null</code>
+   * if values are strongly held.
+   */
+  private final ReferenceQueue<V> referenceQueue;
+
+  /** The window (or, for the LRU policy, the only) access-ordered deque. */
+  private final AccessDeque<K, V> window = new AccessDeque<K, V>();
+
+  /** The probation segment. */
+  private final AccessDeque<K, V> probation = new AccessDeque<K, V>();
+
+  /** The protected segment. */
+  private final AccessDeque<K, V> protectedSegment = new AccessDeque<K, V>();
+
+  /** All entries, ordered by write time. */
+  private final WriteDeque<K, V> writeOrder = new WriteDeque<K, V>();
+
+  /** The total weight of all entries. */
+  private long weightedSize = 0;
+
+  /** The total weight of entries in the window. */
+  private long windowWeight = 0;
+
+  /** The total weight of entries in the protected segment. */
+  private long protectedWeight = 0;
+
+  /** The number of cache hits. */
+  private final LongAdder hitCount = new LongAdder();
+
+  /** The number of cache misses. */
+  private final LongAdder missCount = new LongAdder();
+
+  /** The number of successful loads. */
+  private final LongAdder loadSuccessCount = new LongAdder();
+
+  /** The number of failed loads. */
+  private final LongAdder loadFailureCount = new LongAdder();
+
+  /** The total time spent loading values, in nanoseconds. */
+  private final LongAdder totalLoadTime = new LongAdder();
+
+  /** The number of entries evicted. */
+  private final LongAdder evictionCount = new LongAdder();
+
+  /**
+   * Creates a new <code>BoundedCache</code>.
+   * @param builder The <code>CacheBuilder</code> holding the settings.
+   */
+  @SuppressWarnings("unchecked")
+  BoundedCache(CacheBuilder<? super K, ? super V> builder) {
+    this.weigher = builder.weigher;
+    this.maximumWeight = builder.maximumWeight == CacheBuilder.UNSET
+        ? Long.MAX_VALUE : builder.maximumWeight;
+    this.tinyLfu = builder.policy == EvictionPolicy.TINY_LFU
+        && maximumWeight != Long.MAX_VALUE;
+    if (tinyLfu) {
+      this.windowMaximum = Math.max(1L,
+          maximumWeight - (long) ((1.0 - WINDOW_FRACTION) * maximumWeight));
+      this.protectedMaximum = (long) (PROTECTED_FRACTION
+          * Math.max(0L, maximumWeight - windowMaximum));
+      this.sketch = new FrequencySketch(maximumWeight);
+    } else {
+      this.windowMaximum = maximumWeight;
+      this.protectedMaximum = 0;
+      this.sketch = null;
+    }
+    this.expireAfterWriteNanos = builder.expireAfterWriteNanos;
+    this.expireAfterAccessNanos = builder.expireAfterAccessNanos;
+    this.valueStrength = builder.valueStrength;
+    this.referenceQueue = valueStrength == CacheBuilder.Strength.STRONG
+        ? null : new ReferenceQueue<V>();
+
+    int buffers = 1;
+    while (buffers < builder.concurrencyLevel && buffers < MAX_READ_BUFFERS) {
+      buffers <<= 1;
+    }
+    this.readBuffers = (ReadBuffer<K, V>[]) new ReadBuffer<?, ?>[buffers];
+    for (int i = 0; i < buffers; i++) {
+      readBuffers[i] = new ReadBuffer<K, V>();
+    }
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.cache.Cache#getIfPresent(java.lang.Object)
+   */
+  @Override
+  public V getIfPresent(Object key) {
+    V value = lookup(key);
+    if (value != null) {
+      hitCount.increment();
+    } else {
+      missCount.increment();
+    }
+    return value;
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.cache.Cache#get(java.lang.Object, java.util.function.Function)
+   */
+  @Override
+  public V get(K key, Function<? super K, ? extends V> loader) {
+    V value = lookup(key);
+    if (value != null) {
+      hitCount.increment();
+      return value;
+    }
+
+    Load<V> future = new Load<V>();
+    Load<V> pending = loading.putIfAbsent(key, future);
+    missCount.increment();
+    if (pending != null) {
+      if (pending.thread == Thread.currentThread()) {
+        /* Waiting would deadlock, as the load cannot complete until this
+         * call returns.
+         */
+        throw new IllegalStateException("Detected recursive load of key: " + key);
+      }
+      return await(pending);
+    }
+
+    try {
+      /* Another thread may have finished loading the value between our
+       * lookup and registering our own load.
+       */
+      value = lookup(key);
+      if (value != null) {
+        future.complete(value);
+        return value;
+      }
+
+      long start = System.nanoTime();
+      try {
+        value = loader.apply(key);
+      } catch (RuntimeException | Error e) {
+        totalLoadTime.add(System.nanoTime() - start);
+        loadFailureCount.increment();
+        future.completeExceptionally(e);
+        throw e;
+      }
+      totalLoadTime.add(System.nanoTime() - start);
+      if (value != null) {
+        loadSuccessCount.increment();
+        put(key, value);
+      } else {
+        loadFailureCount.increment();
+      }
+      future.complete(value);
+      return value;
+    } finally {
+      loading.remove(key, future);
+    }
+  }
+
+  /**
+   * Waits for a load being performed by another thread.
+   * @param future The <code>CompletableFuture</code> for the load.
+   * @return The loaded value.
+   */
+  private V await(CompletableFuture<V> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new UnexpectedException(cause);
+    }
+  }
+
+  /**
+   * Looks up a value without recording statistics.
+   * @param key The key to look up.
+   * @return The value associated with <code>key</code>, or <code>null</code>
+   *     if there is none or if it has expired or been collected.
+   */
+  private V lookup(Object key) {
+    Node<K, V> node = map.get(key);
+    if (node == null) {
+      return null;
+    }
+    long now = (expireAfterWriteNanos >= 0 || expireAfterAccessNanos >= 0)
+        ? System.nanoTime() : 0L;
+    V value = node.getValue();
+    if (value == null || isExpired(node, now)) {
+      tryMaintenance();
+      return null;
+    }
+    if (expireAfterAccessNanos >= 0) {
+      node.accessTime = now;
+    }
+    recordRead(node);
+    return value;
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.cache.Cache#put(java.lang.Object, java.lang.Object)
+   */
+  @Override
+  public void put(K key, V value) {
+    if (key == null || value == null) {
+      throw new NullPointerException();
+    }
+    int weight = weigher != null ? weigher.weigh(key, value) : 1;
+    if (weight < 0) {
+      throw new IllegalArgumentException("weight must be non-negative.");
+    }
+    long now = System.nanoTime();
+
+    evictionLock.lock();
+    try {
+      Node<K, V> node = map.get(key);
+      if (node != null) {
+        node.setValue(value, referenceQueue, valueStrength);
+        updateWeight(node, weight);
+        node.writeTime = now;
+        node.accessTime = now;
+        writeOrder.moveToBack(node);
+        onAccess(node);
+      } else {
+        node = new Node<K, V>(key, weight);
+        node.setValue(value, referenceQueue, valueStrength);
+        node.writeTime = now;
+        node.accessTime = now;
+        map.put(key, node);
+        writeOrder.addLast(node);
+        node.queue = WINDOW;
+        window.addLast(node);
+        windowWeight += weight;
+        weightedSize += weight;
+        if (sketch != null) {
+          sketch.increment(spread(key.hashCode()));
+        }
+      }
+      maintenance();
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.cache.Cache#invalidate(java.lang.Object)
+   */
+  @Override
+  public void invalidate(Object key) {
+    evictionLock.lock();
+    try {
+      Node<K, V> node = map.get(key);
+      if (node != null) {
+        remove(node);
+      }
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.cache.Cache#invalidateAll()
+   */
+  @Override
+  public void invalidateAll() {
+    evictionLock.lock();
+    try {
+      drainReadBuffers();
+      for (Node<K, V> node : map.values()) {
+        remove(node);
+      }
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.cache.Cache#size()
+   */
+  @Override
+  public long size() {
+    return map.mappingCount();
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.cache.Cache#stats()
+   */
+  @Override
+  public CacheStats stats() {
+    return new CacheStats(hitCount.sum(), missCount.sum(),
+        loadSuccessCount.sum(), loadFailureCount.sum(), totalLoadTime.sum(),
+        evictionCount.sum());
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.cache.Cache#cleanUp()
+   */
+  @Override
+  public void cleanUp() {
+    evictionLock.lock();
+    try {
+      maintenance();
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  /**
+   * Records that an entry was read, draining the read buffers if the one
+   * used by this thread is full and the eviction lock is available.
+   * @param node The entry that was read.
+   */
+  private void recordRead(Node<K, V> node) {
+    int index = spread((int) Thread.currentThread().getId())
+        & (readBuffers.length - 1);
+    if (!readBuffers[index].offer(node)) {
+      tryMaintenance();
+    }
+  }
+
+  /**
+   * Performs maintenance if the eviction lock can be acquired without
+   * waiting.
+   */
+  private void tryMaintenance() {
+    if (evictionLock.tryLock()) {
+      try {
+        maintenance();
+      } finally {
+        evictionLock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Applies buffered reads, then removes collected, expired and excess
+   * entries.  The eviction lock must be held.
+   */
+  private void maintenance() {
+    drainReadBuffers();
+    drainReferenceQueue();
+    expireEntries();
+    evictEntries();
+  }
+
+  /**
+   * Applies the reads recorded in the read buffers to the eviction policy.
+   * The eviction lock must be held.
+   */
+  private void drainReadBuffers() {
+    for (ReadBuffer<K, V> buffer : readBuffers) {
+      buffer.drainTo(this);
+    }
+  }
+
+  /**
+   * Removes entries whose values have been garbage collected.  The eviction
+   * lock must be held.
+   */
+  private void drainReferenceQueue() {
+    if (referenceQueue == null) {
+      return;
+    }
+    Reference<? extends V> ref;
+    while ((ref = referenceQueue.poll()) != null) {
+      @SuppressWarnings("unchecked")
+      ValueReference<K, V> valueRef = (ValueReference<K, V>) ref;
+      Node<K, V> node = valueRef.getNode();
+      if (node.alive && node.value == ref) {
+        remove(node);
+        evictionCount.increment();
+      }
+    }
+  }
+
+  /**
+   * Removes expired entries.  The eviction lock must be held.
+   */
+  private void expireEntries() {
+    if (expireAfterWriteNanos < 0 && expireAfterAccessNanos < 0) {
+      return;
+    }
+    long now = System.nanoTime();
+    if (expireAfterWriteNanos >= 0) {
+      Node<K, V> node;
+      while ((node = writeOrder.first) != null
+          && now - node.writeTime >= expireAfterWriteNanos) {
+        remove(node);
+        evictionCount.increment();
+      }
+    }
+    if (expireAfterAccessNanos >= 0) {
+      expireAfterAccess(window, now);
+      expireAfterAccess(probation, now);
+      expireAfterAccess(protectedSegment, now);
+    }
+  }
+
+  /**
+   * Removes entries from the head of an access-ordered deque that have not
+   * been accessed recently.  The eviction lock must be held.
+   * @param deque The <code>AccessDeque</code> to expire entries from.
+   * @param now The current time, in nanoseconds.
+   */
+  private void expireAfterAccess(AccessDeque<K, V> deque, long now) {
+    Node<K, V> node;
+    while ((node = deque.first) != null
+        && now - node.accessTime >= expireAfterAccessNanos) {
+      remove(node);
+      evictionCount.increment();
+    }
+  }
+
+  /**
+   * Determines if an entry has expired.
+   * @param node The entry to check.
+   * @param now The current time, in nanoseconds.
+   * @return A value indicating if <code>node</code> has expired.
+   */
+  private boolean isExpired(Node<K, V> node, long now) {
+    return (expireAfterWriteNanos >= 0
+            && now - node.writeTime >= expireAfterWriteNanos)
+        || (expireAfterAccessNanos >= 0
+            && now - node.accessTime >= expireAfterAccessNanos);
+  }
+
+  /**
+   * Evicts entries until the cache is within its maximum weight.  The
+   * eviction lock must be held.
+   */
+  private void evictEntries() {
+    if (!tinyLfu) {
+      Node<K, V> node;
+      while (weightedSize > maximumWeight && (node = window.first) != null) {
+        remove(node);
+        evictionCount.increment();
+      }
+      return;
+    }
+
+    /* Move entries that overflow the window to the back of probation,
+     * where they are candidates for admission to the main region.
+     */
+    int candidates = 0;
+    while (windowWeight > windowMaximum) {
+      Node<K, V> node = window.first;
+      window.remove(node);
+      windowWeight -= node.weight;
+      node.queue = PROBATION;
+      probation.addLast(node);
+      candidates++;
+    }
+
+    while (weightedSize > maximumWeight) {
+      Node<K, V> victim = probation.first;
+      if (victim == null) {
+        victim = protectedSegment.first != null ? protectedSegment.first
+            : window.first;
+        if (victim == null) {
+          break;
+        }
+        remove(victim);
+        evictionCount.increment();
+        continue;
+      }
+
+      Node<K, V> candidate = candidates > 0 ? probation.last : null;
+      if (candidate == null || candidate == victim) {
+        if (candidate != null) {
+          candidates--;
+        }
+        remove(victim);
+      } else if (admit(candidate, victim)) {
+        remove(victim);
+      } else {
+        candidates--;
+        remove(candidate);
+      }
+      evictionCount.increment();
+    }
+  }
+
+  /**
+   * Determines whether a candidate should replace a victim in the main
+   * region, based on how often each has been used recently.
+   * @param candidate The entry leaving the window.
+   * @param victim The entry at the head of the probation segment.
+   * @return A value indicating if <code>candidate</code> should be admitted.
+   */
+  private boolean admit(Node<K, V> candidate, Node<K, V> victim) {
+    int candidateFreq = sketch.frequency(spread(candidate.key.hashCode()));
+    int victimFreq = sketch.frequency(spread(victim.key.hashCode()));
+    return candidateFreq > victimFreq;
+  }
+
+  /**
+   * Updates the eviction policy for an entry that has been read or written.
+   * The eviction lock must be held.
+   * @param node The entry that was accessed.
+   */
+  private void onAccess(Node<K, V> node) {
+    if (!node.alive) {
+      return;
+    }
+    if (sketch != null) {
+      sketch.increment(spread(node.key.hashCode()));
+    }
+    switch (node.queue) {
+    case WINDOW:
+      window.moveToBack(node);
+      break;
+
+    case PROBATION:
+      probation.remove(node);
+      node.queue = PROTECTED;
+      protectedSegment.addLast(node);
+      protectedWeight += node.weight;
+      while (protectedWeight > protectedMaximum) {
+        Node<K, V> demoted = protectedSegment.first;
+        protectedSegment.remove(demoted);
+        protectedWeight -= demoted.weight;
+        demoted.queue = PROBATION;
+        probation.addLast(demoted);
+      }
+      break;
+
+    case PROTECTED:
+      protectedSegment.moveToBack(node);
+      break;
+    }
+  }
+
+  /**
+   * Changes the weight of an entry.  The eviction lock must be held.
+   * @param node The entry.
+   * @param weight The new weight of the entry.
+   */
+  private void updateWeight(Node<K, V> node, int weight) {
+    int delta = weight - node.weight;
+    node.weight = weight;
+    weightedSize += delta;
+    if (node.queue == WINDOW) {
+      windowWeight += delta;
+    } else if (node.queue == PROTECTED) {
+      protectedWeight += delta;
+    }
+  }
+
+  /**
+   * Removes an entry from the cache and from the eviction policy.  The
+   * eviction lock must be held.
+   * @param node The entry to remove.
+   */
+  private void remove(Node<K, V> node) {
+    map.remove(node.key, node);
+    writeOrder.remove(node);
+    switch (node.queue) {
+    case WINDOW:
+      window.remove(node);
+      windowWeight -= node.weight;
+      break;
+
+    case PROBATION:
+      probation.remove(node);
+      break;
+
+    case PROTECTED:
+      protectedSegment.remove(node);
+      protectedWeight -= node.weight;
+      break;
+    }
+    weightedSize -= node.weight;
+    node.alive = false;
+  }
+
+  /**
+   * Spreads the bits of a hash code.
+   * @param h The hash code.
+   * @return The mixed hash code.
+   */
+  private static int spread(int h) {
+    h ^= h >>> 16;
+    h *= 0x45d9f3b;
+    h ^= h >>> 16;
+    return h;
+  }
+
+  /**
+   * A load in progress, along with the thread performing it.
+   * @param <V> The type of the value being loaded.
+   */
+  private static final class Load<V> extends CompletableFuture<V> {
+
+    /** The thread performing the load. */
+    final Thread thread = Thread.currentThread();
+
+  }
+
+  /**
+   * An entry in the cache.
+   * @param <K> The type of the key.
+   * @param <V> The type of the value.
+   */
+  private static final class Node<K, V> {
+
+    /** The key. */
+    final K key;
+
+    /**
+     * The value, or a <code>ValueReference</code> to it if values are not
+     * strongly held.
+     */
+    volatile Object value;
+
+    /** The weight of this entry. */
+    int weight;
+
+    /** The time, in nanoseconds, at which this entry was last written. */
+    volatile long writeTime;
+
+    /** The time, in nanoseconds, at which this entry was last accessed. */
+    volatile long accessTime;
+
+    /** The access-ordered deque this entry belongs to. */
+    int queue;
+
+    /** A value indicating whether this entry is still in the cache. */
+    boolean alive = true;
+
+    /** The previous entry in access order. */
+    Node<K, V> prevAccess;
+
+    /** The next entry in access order. */
+    Node<K, V> nextAccess;
+
+    /** The previous entry in write order. */
+    Node<K, V> prevWrite;
+
+    /** The next entry in write order. */
+    Node<K, V> nextWrite;
+
+    /**
+     * Creates a new <code>Node</code>.
+     * @param key The key.
+     * @param weight The weight of the entry.
+     */
+    Node(K key, int weight) {
+      this.key = key;
+      this.weight = weight;
+    }
+
+    /**
+     * Gets the value.
+     * @return The value, or <code>null</code> if it has been collected.
+     */
+    @SuppressWarnings("unchecked")
+    V getValue() {
+      Object v = value;
+      return v instanceof ValueReference<?, ?>
+          ? ((Reference<V>) v).get() : (V) v;
+    }
+
+    /**
+     * Sets the value.
+     * @param v The new value.
+     * @param queue The <code>ReferenceQueue</code> with which to register
+     *     the reference to <code>v</code>, if it is not strongly held.
+     * @param strength The strength of the reference to hold to
+     *     <code>v</code>.
+     */
+    void setValue(V v, ReferenceQueue<V> queue, CacheBuilder.Strength strength) {
+      switch (strength) {
+      case SOFT:
+        value = new SoftValueReference<K, V>(v, queue, this);
+        break;
+
+      case WEAK:
+        value = new WeakValueReference<K, V>(v, queue, this);
+        break;
+
+      default:
+        value = v;
+        break;
+      }
+    }
+
+  }
+
+  /**
+   * A reference to a value that is not strongly held.
+   * @param <K> The type of the key.
+   * @param <V> The type of the value.
+   */
+  private interface ValueReference<K, V> {
+
+    /**
+     * Gets the entry holding this reference.
+     * @return The entry holding this reference.
+     */
+    Node<K, V> getNode();
+
+  }
+
+  /**
+   * A soft reference to a value.
+   * @param <K> The type of the key.
+   * @param <V> The type of the value.
+   */
+  private static final class SoftValueReference<K, V> extends SoftReference<V>
+      implements ValueReference<K, V> {
+
+    /** The entry holding this reference. */
+    private final Node<K, V> node;
+
+    /**
+     * Creates a new <code>SoftValueReference</code>.
+     * @param value The value to refer to.
+     * @param queue The queue with which to register the reference.
+     * @param node The entry holding the reference.
+     */
+    SoftValueReference(V value, ReferenceQueue<V> queue, Node<K, V> node) {
+      super(value, queue);
+      this.node = node;
+    }
+
+    /* (non-Javadoc)
+     * @see ca.eandb.util.cache.BoundedCache.ValueReference#getNode()
+     */
+    @Override
+    public Node<K, V> getNode() {
+      return node;
+    }
+
+  }
+
+  /**
+   * A weak reference to a value.
+   * @param <K> The type of the key.
+   * @param <V> The type of the value.
+   */
+  private static final class WeakValueReference<K, V> extends WeakReference<V>
+      implements ValueReference<K, V> {
+
+    /** The entry holding this reference. */
+    private final Node<K, V> node;
+
+    /**
+     * Creates a new <code>WeakValueReference</code>.
+     * @param value The value to refer to.
+     * @param queue The queue with which to register the reference.
+     * @param node The entry holding the reference.
+     */
+    WeakValueReference(V value, ReferenceQueue<V> queue, Node<K, V> node) {
+      super(value, queue);
+      this.node = node;
+    }
+
+    /* (non-Javadoc)
+     * @see ca.eandb.util.cache.BoundedCache.ValueReference#getNode()
+     */
+    @Override
+    public Node<K, V> getNode() {
+      return node;
+    }
+
+  }
+
+  /**
+   * A doubly linked deque of entries in access order.  Accessed only while
+   * holding the eviction lock.
+   * @param <K> The type of the keys.
+   * @param <V> The type of the values.
+   */
+  private static final class AccessDeque<K, V> {
+
+    /** The least recently accessed entry. */
+    Node<K, V> first;
+
+    /** The most recently accessed entry. */
+    Node<K, V> last;
+
+    /**
+     * Adds an entry to the back of the deque.
+     * @param node The entry to add.
+     */
+    void addLast(Node<K, V> node) {
+      node.prevAccess = last;
+      node.nextAccess = null;
+      if (last == null) {
+        first = node;
+      } else {
+        last.nextAccess = node;
+      }
+      last = node;
+    }
+
+    /**
+     * Removes an entry from the deque.
+     * @param node The entry to remove.
+     */
+    void remove(Node<K, V> node) {
+      Node<K, V> prev = node.prevAccess;
+      Node<K, V> next = node.nextAccess;
+      if (prev == null) {
+        first = next;
+      } else {
+        prev.nextAccess = next;
+      }
+      if (next == null) {
+        last = prev;
+      } else {
+        next.prevAccess = prev;
+      }
+      node.prevAccess = null;
+      node.nextAccess = null;
+    }
+
+    /**
+     * Moves an entry to the back of the deque.
+     * @param node The entry to move.
+     */
+    void moveToBack(Node<K, V> node) {
+      if (node != last) {
+        remove(node);
+        addLast(node);
+      }
+    }
+
+  }
+
+  /**
+   * A doubly linked deque of entries in write order.  Accessed only while
+   * holding the eviction lock.
+   * @param <K> The type of the keys.
+   * @param <V> The type of the values.
+   */
+  private static final class WriteDeque<K, V> {
+
+    /** The least recently written entry. */
+    Node<K, V> first;
+
+    /** The most recently written entry. */
+    Node<K, V> last;
+
+    /**
+     * Adds an entry to the back of the deque.
+     * @param node The entry to add.
+     */
+    void addLast(Node<K, V> node) {
+      node.prevWrite = last;
+      node.nextWrite = null;
+      if (last == null) {
+        first = node;
+      } else {
+        last.nextWrite = node;
+      }
+      last = node;
+    }
+
+    /**
+     * Removes an entry from the deque.
+     * @param node The entry to remove.
+     */
+    void remove(Node<K, V> node) {
+      Node<K, V> prev = node.prevWrite;
+      Node<K, V> next = node.nextWrite;
+      if (prev == null) {
+        first = next;
+      } else {
+        prev.nextWrite = next;
+      }
+      if (next == null) {
+        last = prev;
+      } else {
+        next.prevWrite = prev;
+      }
+      node.prevWrite = null;
+      node.nextWrite = null;
+    }
+
+    /**
+     * Moves an entry to the back of the deque.
+     * @param node The entry to move.
+     */
+    void moveToBack(Node<K, V> node) {
+      if (node != last) {
+        remove(node);
+        addLast(node);
+      }
+    }
+
+  }
+
+  /**
+   * A bounded, lossy, multiple-producer ring buffer of entries that have
+   * been read.  Producers claim a slot by advancing the tail.  The buffer is
+   * drained only while holding the eviction lock.
+   * @param <K> The type of the keys.
+   * @param <V> The type of the values.
+   */
+  private static final class ReadBuffer<K, V> {
+
+    /** The slots of the ring buffer. */
+    private final AtomicReferenceArray<Node<K, V>> slots =
+        new AtomicReferenceArray<Node<K, V>>(READ_BUFFER_SIZE);
+
+    /** The number of slots claimed by producers. */
+    private final AtomicLong tail = new AtomicLong();
+
+    /** The number of slots drained. */
+    private volatile long head = 0;
+
+    /**
+     * Records a read, unless the buffer is full or another thread is
+     * recording a read at the same time.
+     * @param node The entry that was read.
+     * @return A value indicating whether the buffer has room for more reads.
+     */
+    boolean offer(Node<K, V> node) {
+      long t = tail.get();
+      long size = t - head;
+      if (size >= READ_BUFFER_SIZE) {
+        return false;
+      }
+      if (tail.compareAndSet(t, t + 1)) {
+        slots.lazySet((int) t & (READ_BUFFER_SIZE - 1), node);
+        return size + 1 < READ_BUFFER_SIZE;
+      }
+      return true;
+    }
+
+    /**
+     * Applies the buffered reads to a cache's eviction policy.  The
+     * eviction lock must be held.
+     * @param cache The <code>BoundedCache</code> that owns this buffer.
+     */
+    void drainTo(BoundedCache<K, V> cache) {
+      long h = head;
+      long t = tail.get();
+      for (; h < t; h++) {
+        int index = (int) h & (READ_BUFFER_SIZE - 1);
+        Node<K, V> node = slots.get(index);
+        if (node == null) {
+          /* The producer has claimed the slot but not yet filled it. */
+          break;
+        }
+        slots.lazySet(index, null);
+        cache.onAccess(node);
+      }
+      head = h;
+    }
+
+  }
+
+}
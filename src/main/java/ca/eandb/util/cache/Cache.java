@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.cache;
+
+import java.util.function.Function;
+
+/**
+ * A bounded, thread-safe mapping from keys to values.  Entries may be evicted
+ * automatically to keep the cache within its size or weight bound, because
+ * they have expired, or (for caches holding soft or weak values) because
+ * their values have been garbage collected.  Instances are created using a
+ * {@link CacheBuilder}.
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values.
+ * @see CacheBuilder
+ * @author Brad Kimmel
+ */
+public interface Cache<K, V> {
+
+  /**
+   * Gets the value associated with a key, if it is present.
+   * @param key The key to look up.
+   * @return The value associated with <code>key</code>, or <code>null</code>
+   *     if there is none.
+   */
+  V getIfPresent(Object key);
+
+  /**
+   * Gets the value associated with a key, computing it if it is not present.
+   * If several threads request the same missing key at the same time, only
+   * one of them calls <code>loader</code> and the others wait for its
+   * result.
+   * @param key The key to look up.
+   * @param loader The <code>Function</code> used to compute the value if it
+   *     is not present.  If it returns <code>null</code>, nothing is cached.
+   * @return The value associated with <code>key</code>.
+   * @throws RuntimeException If <code>loader</code> throws an exception,
+   *     which is rethrown to all threads waiting for the value.
+   * @throws IllegalStateException If <code>loader</code> requests the
+   *     same key from this cache, which could otherwise never complete.
+   */
+  V get(K key, Function<? super K, ? extends V> loader);
+
+  /**
+   * Associates a value with a key, replacing any existing value.
+   * @param key The key.
+   * @param value The value to associate with <code>key</code>.
+   */
+  void put(K key, V value);
+
+  /**
+   * Removes the entry for a key, if present.
+   * @param key The key of the entry to remove.
+   */
+  void invalidate(Object key);
+
+  /**
+   * Removes all entries.
+   */
+  void invalidateAll();
+
+  /**
+   * Gets the approximate number of entries in the cache.  This may include
+   * entries that have expired or have been collected but not yet removed.
+   * @return The approximate number of entries in the cache.
+   */
+  long size();
+
+  /**
+   * Gets a snapshot of the statistics for this cache.
+   * @return The <code>CacheStats</code> for this cache.
+   */
+  CacheStats stats();
+
+  /**
+   * Performs any pending maintenance, such as applying buffered reads,
+   * removing expired entries and removing entries whose values have been
+   * collected.
+   */
+  void cleanUp();
+
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.cache;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configures and creates {@link Cache} instances.  For example:
+ * <pre>
+ *   Cache&lt;String, Image&gt; images = new CacheBuilder&lt;String, Image&gt;()
+ *       .maximumSize(10000)
+ *       .evictionPolicy(EvictionPolicy.TINY_LFU)
+ *       .expireAfterAccess(10, TimeUnit.MINUTES)
+ *       .softValues()
+ *       .build();
+ * </pre>
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values.
+ * @author Brad Kimmel
+ */
+public final class CacheBuilder<K, V> {
+
+  /** The value indicating that a setting has not been specified. */
+  static final long UNSET = -1;
+
+  /** The strength of references to cached values. */
+  enum Strength { STRONG, SOFT, WEAK }
+
+  /** The maximum total weight of entries, or <code>UNSET</code>. */
+  long maximumWeight = UNSET;
+
+  /** The <code>Weigher</code> used to weigh entries. */
+  Weigher<? super K, ? super V> weigher = null;
+
+  /** The policy used to choose entries to evict. */
+  EvictionPolicy policy = EvictionPolicy.TINY_LFU;
+
+  /**
+   * The time, in nanoseconds, after which entries expire once written, or
+   * <code>UNSET</code>.
+   */
+  long expireAfterWriteNanos = UNSET;
+
+  /**
+   * The time, in nanoseconds, after which entries expire once last
+   * accessed, or <code>UNSET</code>.
+   */
+  long expireAfterAccessNanos = UNSET;
+
+  /** The strength of references to cached values. */
+  Strength valueStrength = Strength.STRONG;
+
+  /** The estimated number of threads that will access the cache. */
+  int concurrencyLevel = Runtime.getRuntime().availableProcessors();
+
+  /**
+   * Creates a new <code>CacheBuilder</code> for an unbounded cache with no
+   * expiration.
+   */
+  public CacheBuilder() {
+    /* nothing to do. */
+  }
+
+  /**
+   * Bounds the number of entries in the cache.
+   * @param maximumSize The maximum number of entries.
+   * @return This <code>CacheBuilder</code>.
+   * @throws IllegalArgumentException If <code>maximumSize</code> is negative.
+   * @throws IllegalStateException If a maximum size or weight has already
+   *     been set.
+   */
+  public CacheBuilder<K, V> maximumSize(long maximumSize) {
+    if (maximumSize < 0) {
+      throw new IllegalArgumentException("maximumSize must be non-negative.");
+    }
+    if (maximumWeight != UNSET) {
+      throw new IllegalStateException("Maximum size or weight already set.");
+    }
+    this.maximumWeight = maximumSize;
+    return this;
+  }
+
+  /**
+   * Bounds the total weight of entries in the cache.
+   * @param maximumWeight The maximum total weight.
+   * @param weigher The <code>Weigher</code> used to weigh entries.
+   * @return This <code>CacheBuilder</code>.
+   * @throws IllegalArgumentException If <code>maximumWeight</code> is
+   *     negative.
+   * @throws IllegalStateException If a maximum size or weight has already
+   *     been set.
+   */
+  public CacheBuilder<K, V> maximumWeight(long maximumWeight,
+      Weigher<? super K, ? super V> weigher) {
+    if (maximumWeight < 0) {
+      throw new IllegalArgumentException("maximumWeight must be non-negative.");
+    }
+    if (this.maximumWeight != UNSET) {
+      throw new IllegalStateException("Maximum size or weight already set.");
+    }
+    this.maximumWeight = maximumWeight;
+    this.weigher = weigher;
+    return this;
+  }
+
+  /**
+   * Sets the policy used to choose entries to evict when the cache exceeds
+   * its bound.  The default is {@link EvictionPolicy#TINY_LFU}.
+   * @param policy The <code>EvictionPolicy</code> to use.
+   * @return This <code>CacheBuilder</code>.
+   */
+  public CacheBuilder<K, V> evictionPolicy(EvictionPolicy policy) {
+    if (policy == null) {
+      throw new NullPointerException();
+    }
+    this.policy = policy;
+    return this;
+  }
+
+  /**
+   * Causes entries to expire a fixed time after they are written.
+   * @param duration The length of time after which entries expire.  If
+   *     zero, entries expire immediately and are never returned.
+   * @param unit The unit of <code>duration</code>.
+   * @return This <code>CacheBuilder</code>.
+   * @throws IllegalArgumentException If <code>duration</code> is negative.
+   */
+  public CacheBuilder<K, V> expireAfterWrite(long duration, TimeUnit unit) {
+    if (duration < 0) {
+      throw new IllegalArgumentException("duration must be non-negative.");
+    }
+    this.expireAfterWriteNanos = unit.toNanos(duration);
+    return this;
+  }
+
+  /**
+   * Causes entries to expire a fixed time after they are last read or
+   * written.
+   * @param duration The length of time after which entries expire.  If
+   *     zero, entries expire immediately and are never returned.
+   * @param unit The unit of <code>duration</code>.
+   * @return This <code>CacheBuilder</code>.
+   * @throws IllegalArgumentException If <code>duration</code> is negative.
+   */
+  public CacheBuilder<K, V> expireAfterAccess(long duration, TimeUnit unit) {
+    if (duration < 0) {
+      throw new IllegalArgumentException("duration must be non-negative.");
+    }
+    this.expireAfterAccessNanos = unit.toNanos(duration);
+    return this;
+  }
+
+  /**
+   * Causes values to be held by soft references, so that they may be
+   * reclaimed when memory is low.
+   * @return This <code>CacheBuilder</code>.
+   */
+  public CacheBuilder<K, V> softValues() {
+    this.valueStrength = Strength.SOFT;
+    return this;
+  }
+
+  /**
+   * Causes values to be held by weak references, so that they are removed
+   * once no longer referenced elsewhere.
+   * @return This <code>CacheBuilder</code>.
+   */
+  public CacheBuilder<K, V> weakValues() {
+    this.valueStrength = Strength.WEAK;
+    return this;
+  }
+
+  /**
+   * Sets the estimated number of threads that will access the cache
+   * concurrently.  This determines how many read buffers are used.
+   * @param concurrencyLevel The estimated number of threads.
+   * @return This <code>CacheBuilder</code>.
+   */
+  public CacheBuilder<K, V> concurrencyLevel(int concurrencyLevel) {
+    if (concurrencyLevel <= 0) {
+      throw new IllegalArgumentException("concurrencyLevel must be positive.");
+    }
+    this.concurrencyLevel = concurrencyLevel;
+    return this;
+  }
+
+  /**
+   * Creates a new <code>Cache</code> with the configured settings.
+   * @return The new <code>Cache</code>.
+   */
+  public Cache<K, V> build() {
+    return new BoundedCache<K, V>(this);
+  }
+
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.cache;
+
+import java.io.Serializable;
+
+/**
+ * An immutable snapshot of the statistics for a {@link Cache}.
+ * @author Brad Kimmel
+ */
+public final class CacheStats implements Serializable {
+
+  /**
+   * Serialization version ID.
+   */
+  private static final long serialVersionUID = 2140470418829542434L;
+
+  /** The number of lookups that found a value. */
+  private final long hitCount;
+
+  /** The number of lookups that did not find a value. */
+  private final long missCount;
+
+  /** The number of values successfully loaded. */
+  private final long loadSuccessCount;
+
+  /** The number of loads that failed or returned <code>null</code>. */
+  private final long loadFailureCount;
+
+  /** The total time spent loading values, in nanoseconds. */
+  private final long totalLoadTime;
+
+  /** The number of entries evicted. */
+  private final long evictionCount;
+
+  /**
+   * Creates a new <code>CacheStats</code>.
+   * @param hitCount The number of lookups that found a value.
+   * @param missCount The number of lookups that did not find a value.
+   * @param loadSuccessCount The number of values successfully loaded.
+   * @param loadFailureCount The number of loads that failed or returned
+   *     <code>null</code>.
+   * @param totalLoadTime The total time spent loading values, in
+   *     nanoseconds.
+   * @param evictionCount The number of entries evicted.
+   */
+  public CacheStats(long hitCount, long missCount, long loadSuccessCount,
+      long loadFailureCount, long totalLoadTime, long evictionCount) {
+    this.hitCount = hitCount;
+    this.missCount = missCount;
+    this.loadSuccessCount = loadSuccessCount;
+    this.loadFailureCount = loadFailureCount;
+    this.totalLoadTime = totalLoadTime;
+    this.evictionCount = evictionCount;
+  }
+
+  /**
+   * Gets the number of lookups that found a value.
+   * @return The number of hits.
+   */
+  public long getHitCount() {
+    return hitCount;
+  }
+
+  /**
+   * Gets the number of lookups that did not find a value.
+   * @return The number of misses.
+   */
+  public long getMissCount() {
+    return missCount;
+  }
+
+  /**
+   * Gets the total number of lookups.
+   * @return The number of hits plus the number of misses.
+   */
+  public long getRequestCount() {
+    return hitCount + missCount;
+  }
+
+  /**
+   * Gets the fraction of lookups that found a value.
+   * @return The hit rate, or <code>1.0</code> if there have been no lookups.
+   */
+  public double getHitRate() {
+    long requests = getRequestCount();
+    return requests > 0 ? (double) hitCount / (double) requests : 1.0;
+  }
+
+  /**
+   * Gets the number of values successfully loaded.
+   * @return The number of successful loads.
+   */
+  public long getLoadSuccessCount() {
+    return loadSuccessCount;
+  }
+
+  /**
+   * Gets the number of loads that threw an exception or returned
+   * <code>null</code>.
+   * @return The number of failed loads.
+   */
+  public long getLoadFailureCount() {
+    return loadFailureCount;
+  }
+
+  /**
+   * Gets the total time spent loading values.
+   * @return The total load time, in nanoseconds.
+   */
+  public long getTotalLoadTime() {
+    return totalLoadTime;
+  }
+
+  /**
+   * Gets the mean time spent loading a value.
+   * @return The mean load time, in nanoseconds, or <code>0.0</code> if no
+   *     values have been loaded.
+   */
+  public double getAverageLoadPenalty() {
+    long loads = loadSuccessCount + loadFailureCount;
+    return loads > 0 ? (double) totalLoadTime / (double) loads : 0.0;
+  }
+
+  /**
+   * Gets the number of entries evicted because of the size or weight bound,
+   * expiration, or collection of their values.
+   * @return The number of entries evicted.
+   */
+  public long getEvictionCount() {
+    return evictionCount;
+  }
+
+  /* (non-Javadoc)
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public String toString() {
+    return String.format("hits=%d, misses=%d, loadSuccesses=%d, loadFailures=%d, totalLoadTime=%d, evictions=%d",
+        hitCount, missCount, loadSuccessCount, loadFailureCount,
+        totalLoadTime, evictionCount);
+  }
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.cache;
+
+/**
+ * Strategies for choosing which entry to evict from a bounded cache.
+ * @see CacheBuilder#evictionPolicy(EvictionPolicy)
+ * @author Brad Kimmel
+ */
+public enum EvictionPolicy {
+
+  /** Evicts the least recently used entry. */
+  LRU,
+
+  /**
+   * Window TinyLFU, as described in "TinyLFU: A Highly Efficient Cache
+   * Admission Policy", Einziger, Friedman and Manes, 2017.  New entries enter
+   * a small LRU window.  Entries leaving the window are admitted to the main
+   * segmented LRU region only if they have been used more frequently than
+   * the entry they would displace, as estimated by a compact frequency
+   * sketch.  This resists pollution by one-off accesses such as scans.
+   */
+  TINY_LFU
+
+}
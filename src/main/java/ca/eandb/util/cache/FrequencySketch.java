@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.cache;
+
+/**
+ * Estimates how often keys have been used recently, for the TinyLFU admission
+ * policy.  This is a count-min sketch of 4-bit counters, sixteen to a
+ * <code>long</code>.  When the number of increments reaches ten times the
+ * number of counters' worth of entries, all counters are halved so that the
+ * estimates favour recent activity.
+ *
+ * This class is not thread-safe; it is only used while holding the cache's
+ * eviction lock.
+ *
+ * @author Brad Kimmel
+ */
+final class FrequencySketch {
+
+  /** The seeds used to derive the four counter indices for a key. */
+  private static final long[] SEEDS = {
+      0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L,
+      0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+
+  /** The mask selecting the low bit of each 4-bit counter. */
+  private static final long ONE_MASK = 0x1111111111111111L;
+
+  /** The mask clearing the high bit of each 4-bit counter after halving. */
+  private static final long RESET_MASK = 0x7777777777777777L;
+
+  /** The counters. */
+  private final long[] table;
+
+  /** The number of increments after which the counters are halved. */
+  private final int sampleSize;
+
+  /** The number of increments since the counters were last halved. */
+  private int additions = 0;
+
+  /**
+   * Creates a new <code>FrequencySketch</code>.
+   * @param maximumSize The maximum number of entries in the cache.
+   */
+  public FrequencySketch(long maximumSize) {
+    int size = (int) Math.min(Math.max(maximumSize, 16), 1 << 26);
+    int length = 1;
+    while (length < size / 4) {
+      length <<= 1;
+    }
+    this.table = new long[Math.max(length, 4)];
+    this.sampleSize = 10 * size;
+  }
+
+  /**
+   * Estimates the number of times a key has been used recently.
+   * @param hash The hash code of the key.
+   * @return The estimated frequency (at most 15).
+   */
+  public int frequency(int hash) {
+    int min = 15;
+    for (int i = 0; i < 4; i++) {
+      min = Math.min(min, counter(hash, i));
+    }
+    return min;
+  }
+
+  /**
+   * Records a use of a key.
+   * @param hash The hash code of the key.
+   */
+  public void increment(int hash) {
+    boolean added = false;
+    for (int i = 0; i < 4; i++) {
+      int index = index(hash, i);
+      int shift = shift(hash, i);
+      if (((table[index] >>> shift) & 0xf) < 15) {
+        table[index] += 1L << shift;
+        added = true;
+      }
+    }
+    if (added && ++additions >= sampleSize) {
+      reset();
+    }
+  }
+
+  /**
+   * Halves all counters.
+   */
+  private void reset() {
+    int odd = 0;
+    for (int i = 0; i < table.length; i++) {
+      odd += Long.bitCount(table[i] & ONE_MASK);
+      table[i] = (table[i] >>> 1) & RESET_MASK;
+    }
+    additions = (additions >>> 1) - (odd >>> 2);
+  }
+
+  /**
+   * Gets one of the counters for a key.
+   * @param hash The hash code of the key.
+   * @param i Which of the four counters to get.
+   * @return The value of the counter.
+   */
+  private int counter(int hash, int i) {
+    return (int) ((table[index(hash, i)] >>> shift(hash, i)) & 0xf);
+  }
+
+  /**
+   * Computes the index into <code>table</code> of one of the counters for a
+   * key.
+   * @param hash The hash code of the key.
+   * @param i Which of the four counters.
+   * @return The index of the <code>long</code> holding the counter.
+   */
+  private int index(int hash, int i) {
+    long h = (hash + SEEDS[i]) * SEEDS[i];
+    h += h >>> 32;
+    return (int) h & (table.length - 1);
+  }
+
+  /**
+   * Computes the bit offset within its <code>long</code> of one of the
+   * counters for a key.
+   * @param hash The hash code of the key.
+   * @param i Which of the four counters.
+   * @return The bit offset of the counter.
+   */
+  private int shift(int hash, int i) {
+    return (((hash >>> (i << 3)) & 3) << 2) + (i << 4) & 63;
+  }
+
+}
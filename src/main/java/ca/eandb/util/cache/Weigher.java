@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.cache;
+
+/**
+ * Determines the weight of cache entries, for caches bounded by total weight
+ * rather than by number of entries.
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values.
+ * @see CacheBuilder#maximumWeight(long, Weigher)
+ * @author Brad Kimmel
+ */
+public interface Weigher<K, V> {
+
+  /**
+   * Computes the weight of a cache entry.  The weight of an entry does not
+   * change while it is in the cache.
+   * @param key The key of the entry.
+   * @param value The value of the entry.
+   * @return The weight of the entry (must be non-negative).
+   */
+  int weigh(K key, V value);
+
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.classloader;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * A <code>ClassLoaderStrategy</code> that can obtain several class
+ * definitions at once.  This is worthwhile for strategies with a high
+ * per-request cost, such as those that fetch classes from a remote host.
+ * @see ca.eandb.util.classloader.PrefetchingClassLoaderStrategy
+ * @author Brad Kimmel
+ */
+public interface BatchClassLoaderStrategy extends ClassLoaderStrategy {
+
+  /**
+   * Obtains the class definitions for several binary class names.
+   * @param names The binary names of the classes whose definitions to load.
+   * @return A <code>Map</code> from binary class names to class
+   *     definitions.  Classes that could not be found are omitted.
+   */
+  Map<String, ByteBuffer> getClassDefinitions(Collection<String> names);
+
+}
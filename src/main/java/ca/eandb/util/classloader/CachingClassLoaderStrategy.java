@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.classloader;
+
+import java.nio.ByteBuffer;
+
+import ca.eandb.util.cache.Cache;
+import ca.eandb.util.cache.CacheBuilder;
+import ca.eandb.util.cache.CacheStats;
+
+/**
+ * A <code>ClassLoaderStrategy</code> decorator that remembers the class
+ * definitions found by another strategy, as well as the names of classes it
+ * could not find.  Both caches are bounded: found definitions by their total
+ * size in bytes, and misses by their number.  Concurrent requests for the
+ * same class result in a single lookup from the underlying strategy.
+ *
+ * This is useful in front of strategies for which lookups are expensive
+ * (e.g., those that go to disk or to a remote host), particularly for
+ * frameworks that probe for classes that usually do not exist.
+ *
+ * @author Brad Kimmel
+ */
+public final class CachingClassLoaderStrategy implements ClassLoaderStrategy {
+
+  /** The default maximum total size of cached definitions, in bytes. */
+  public static final long DEFAULT_MAXIMUM_BYTES = 16L * 1024L * 1024L;
+
+  /** The default maximum number of misses to remember. */
+  public static final int DEFAULT_MAXIMUM_MISSES = 4096;
+
+  /** The <code>ClassLoaderStrategy</code> to obtain definitions from. */
+  private final ClassLoaderStrategy inner;
+
+  /** The class definitions that have been found. */
+  private final Cache<String, ByteBuffer> definitions;
+
+  /** The names of classes that could not be found. */
+  private final Cache<String, Boolean> misses;
+
+  /**
+   * Creates a new <code>CachingClassLoaderStrategy</code> with the default
+   * bounds.
+   * @param inner The <code>ClassLoaderStrategy</code> to obtain class
+   *     definitions from.
+   */
+  public CachingClassLoaderStrategy(ClassLoaderStrategy inner) {
+    this(inner, DEFAULT_MAXIMUM_BYTES, DEFAULT_MAXIMUM_MISSES);
+  }
+
+  /**
+   * Creates a new <code>CachingClassLoaderStrategy</code>.
+   * @param inner The <code>ClassLoaderStrategy</code> to obtain class
+   *     definitions from.
+   * @param maximumBytes The maximum total size, in bytes, of the class
+   *     definitions to cache.
+   * @param maximumMisses The maximum number of names of classes that could
+   *     not be found to remember, or zero to disable negative caching.
+   * @throws IllegalArgumentException If <code>maximumBytes</code> or
+   *     <code>maximumMisses</code> is negative.
+   */
+  public CachingClassLoaderStrategy(ClassLoaderStrategy inner,
+      long maximumBytes, int maximumMisses) {
+    this.inner = inner;
+    this.definitions = new CacheBuilder<String, ByteBuffer>()
+        .maximumWeight(maximumBytes, (name, def) -> def.remaining())
+        .build();
+    this.misses = new CacheBuilder<String, Boolean>()
+        .maximumSize(maximumMisses)
+        .build();
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.classloader.ClassLoaderStrategy#getClassDefinition(java.lang.String)
+   */
+  @Override
+  public ByteBuffer getClassDefinition(String name) {
+    ByteBuffer def = definitions.get(name, this::lookup);
+    return def != null ? def.duplicate() : null;
+  }
+
+  /**
+   * Obtains a class definition from the underlying strategy, unless it is
+   * already known to be missing.
+   * @param name The binary name of the class.
+   * @return The definition of the class, or <code>null</code> if it could
+   *     not be found.
+   */
+  private ByteBuffer lookup(String name) {
+    if (misses.getIfPresent(name) != null) {
+      return null;
+    }
+    ByteBuffer def = inner.getClassDefinition(name);
+    if (def == null) {
+      misses.put(name, Boolean.TRUE);
+      return null;
+    }
+    return def.slice();
+  }
+
+  /**
+   * Discards any cached information about a class.  This should be called
+   * if a class becomes available, or its definition changes, in the
+   * underlying strategy.
+   * @param name The binary name of the class.
+   */
+  public void invalidate(String name) {
+    definitions.invalidate(name);
+    misses.invalidate(name);
+  }
+
+  /**
+   * Discards all cached information.
+   */
+  public void invalidateAll() {
+    definitions.invalidateAll();
+    misses.invalidateAll();
+  }
+
+  /**
+   * Gets statistics for the cache of class definitions.
+   * @return The <code>CacheStats</code> for class definitions.
+   */
+  public CacheStats getDefinitionStats() {
+    return definitions.stats();
+  }
+
+  /**
+   * Gets statistics for the cache of missing classes.
+   * @return The <code>CacheStats</code> for missing classes.
+   */
+  public CacheStats getMissStats() {
+    return misses.stats();
+  }
+
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.classloader;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import ca.eandb.util.UnexpectedException;
+import ca.eandb.util.codec.HexCodec;
+
+/**
+ * A set of class definitions, each with a digest of its bytecode, that may
+ * be written to a stream in one shot.  A <code>ClassBundle</code> may be used
+ * directly as a <code>ClassLoaderStrategy</code> on the receiving end.
+ *
+ * Classes may only be added from one thread at a time, but once a bundle has
+ * been populated it may be read from any number of threads.
+ *
+ * @author Brad Kimmel
+ * @see ClassDependencyWalker
+ */
+public final class ClassBundle implements ClassLoaderStrategy {
+
+  /** The value identifying the start of a serialized bundle. */
+  private static final int MAGIC = 0x43424e44;
+
+  /**
+   * The size of the chunks in which large class definitions are read, so
+   * that a corrupt length cannot cause a large allocation before the end of
+   * the stream is reached.
+   */
+  private static final int READ_CHUNK_SIZE = 1 << 20;
+
+  /** The default digest algorithm. */
+  public static final String DEFAULT_ALGORITHM = "SHA-256";
+
+  /** The name of the digest algorithm. */
+  private final String algorithm;
+
+  /** The <code>MessageDigest</code> used to compute digests. */
+  private final MessageDigest digest;
+
+  /** The class definitions, keyed by binary name, in insertion order. */
+  private final Map<String, byte[]> definitions = new LinkedHashMap<String, byte[]>();
+
+  /** The digest of each class definition, keyed by binary name. */
+  private final Map<String, byte[]> digests = new LinkedHashMap<String, byte[]>();
+
+  /**
+   * Creates an empty <code>ClassBundle</code> using the
+   * {@link #DEFAULT_ALGORITHM default digest algorithm}.
+   */
+  public ClassBundle() {
+    this(DEFAULT_ALGORITHM);
+  }
+
+  /**
+   * Creates an empty <code>ClassBundle</code>.
+   * @param algorithm The name of the algorithm used to compute digests of
+   *     class definitions.
+   * @throws IllegalArgumentException If <code>algorithm</code> is not
+   *     available.
+   * @see java.security.MessageDigest#getInstance(String)
+   */
+  public ClassBundle(String algorithm) {
+    try {
+      this.digest = MessageDigest.getInstance(algorithm);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalArgumentException(
+          String.format("Algorithm not available: '%s'", algorithm), e);
+    }
+    this.algorithm = algorithm;
+  }
+
+  /**
+   * Adds a class definition to this bundle, replacing any existing
+   * definition of the same name.
+   * @param name The binary name of the class.
+   * @param def The bytecode definition of the class.  The array is copied.
+   */
+  public void add(String name, byte[] def) {
+    put(name, def.clone());
+  }
+
+  /**
+   * Adds a class definition to this bundle without copying it.
+   * @param name The binary name of the class.
+   * @param def The bytecode definition of the class.
+   */
+  private void put(String name, byte[] def) {
+    definitions.put(name, def);
+    digests.put(name, digest.digest(def));
+  }
+
+  /**
+   * Determines if this bundle contains the definition of a class.
+   * @param name The binary name of the class.
+   * @return A value indicating if this bundle contains the class.
+   */
+  public boolean contains(String name) {
+    return definitions.containsKey(name);
+  }
+
+  /**
+   * Gets the names of the classes in this bundle.
+   * @return An unmodifiable view of the binary names of the classes in this
+   *     bundle, in the order they were added.
+   */
+  public Set<String> getClassNames() {
+    return Collections.unmodifiableSet(definitions.keySet());
+  }
+
+  /**
+   * Gets the number of classes in this bundle.
+   * @return The number of classes in this bundle.
+   */
+  public int size() {
+    return definitions.size();
+  }
+
+  /**
+   * Gets the total size of the class definitions in this bundle.
+   * @return The total number of bytes of bytecode in this bundle.
+   */
+  public long getTotalSize() {
+    long total = 0;
+    for (byte[] def : definitions.values()) {
+      total += def.length;
+    }
+    return total;
+  }
+
+  /**
+   * Gets the name of the algorithm used to compute digests.
+   * @return The name of the digest algorithm.
+   */
+  public String getAlgorithm() {
+    return algorithm;
+  }
+
+  /**
+   * Gets the digest of a class definition.
+   * @param name The binary name of the class.
+   * @return The digest of the class' bytecode, or <code>null</code> if this
+   *     bundle does not contain the class.
+   */
+  public byte[] getDigest(String name) {
+    byte[] d = digests.get(name);
+    return d != null ? d.clone() : null;
+  }
+
+  /**
+   * Computes a fingerprint identifying the set of classes in this bundle.
+   * Two bundles containing the same class definitions have the same
+   * fingerprint, regardless of the order in which the classes were added.
+   * @return The hexadecimal fingerprint of this bundle.
+   * @see StrategyClassLoaderPool#lease(ClassBundle)
+   */
+  public String getFingerprint() {
+    MessageDigest md;
+    try {
+      md = MessageDigest.getInstance(algorithm);
+    } catch (NoSuchAlgorithmException e) {
+      throw new UnexpectedException(e);
+    }
+    for (Map.Entry<String, byte[]> entry : new TreeMap<String, byte[]>(digests).entrySet()) {
+      md.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+      md.update((byte) 0);
+      md.update(entry.getValue());
+    }
+    return HexCodec.LOWER.encodeToString(md.digest());
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.classloader.ClassLoaderStrategy#getClassDefinition(java.lang.String)
+   */
+  @Override
+  public ByteBuffer getClassDefinition(String name) {
+    byte[] def = definitions.get(name);
+    return def != null ? ByteBuffer.wrap(def).asReadOnlyBuffer() : null;
+  }
+
+  /**
+   * Writes this bundle to a stream.
+   * @param out The <code>DataOutput</code> to write to.
+   * @throws IOException If an error occurs while writing to
+   *     <code>out</code>.
+   * @see #read(DataInput)
+   */
+  public void write(DataOutput out) throws IOException {
+    out.writeInt(MAGIC);
+    out.writeUTF(algorithm);
+    out.writeInt(definitions.size());
+    for (Map.Entry<String, byte[]> entry : definitions.entrySet()) {
+      byte[] def = entry.getValue();
+      byte[] d = digests.get(entry.getKey());
+      out.writeUTF(entry.getKey());
+      out.writeInt(def.length);
+      out.write(def);
+      out.writeByte(d.length);
+      out.write(d);
+    }
+  }
+
+  /**
+   * Reads a bundle written by {@link #write(DataOutput)}.  The digest of
+   * each class definition is verified.
+   * @param in The <code>DataInput</code> to read from.
+   * @return The <code>ClassBundle</code> that was read.
+   * @throws IOException If an error occurs while reading from
+   *     <code>in</code>, if the stream does not contain a bundle, if the
+   *     bundle is corrupt or truncated, or if a class definition does not
+   *     match its digest.
+   */
+  public static ClassBundle read(DataInput in) throws IOException {
+    if (in.readInt() != MAGIC) {
+      throw new IOException("Stream does not contain a class bundle.");
+    }
+    ClassBundle bundle;
+    try {
+      bundle = new ClassBundle(in.readUTF());
+    } catch (IllegalArgumentException e) {
+      throw new IOException(e.getMessage(), e);
+    }
+    int count = in.readInt();
+    if (count < 0) {
+      throw new IOException(String.format("Invalid class count: %d.", count));
+    }
+    int digestLength = bundle.digest.getDigestLength();
+    for (int i = 0; i < count; i++) {
+      String name = in.readUTF();
+      byte[] def = readDefinition(in, name);
+      byte[] d = new byte[in.readUnsignedByte()];
+      if (digestLength > 0 && d.length != digestLength) {
+        throw new IOException(
+            String.format("Invalid digest length for class '%s'.", name));
+      }
+      in.readFully(d);
+      bundle.put(name, def);
+      if (!MessageDigest.isEqual(d, bundle.digests.get(name))) {
+        throw new IOException(
+            String.format("Digest mismatch for class '%s'.", name));
+      }
+    }
+    return bundle;
+  }
+
+  /**
+   * Reads a length-prefixed class definition.
+   * @param in The <code>DataInput</code> to read from.
+   * @param name The binary name of the class.
+   * @return The class definition.
+   * @throws IOException If an error occurs while reading from
+   *     <code>in</code>, if the length is negative, or if the stream ends
+   *     before the definition is complete.
+   */
+  private static byte[] readDefinition(DataInput in, String name) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      throw new IOException(
+          String.format("Invalid definition length for class '%s': %d.", name, length));
+    }
+    byte[] def = new byte[Math.min(length, READ_CHUNK_SIZE)];
+    int n = 0;
+    while (true) {
+      in.readFully(def, n, def.length - n);
+      n = def.length;
+      if (n == length) {
+        return def;
+      }
+      def = Arrays.copyOf(def, (int) Math.min(length, 2L * n));
+    }
+  }
+
+}
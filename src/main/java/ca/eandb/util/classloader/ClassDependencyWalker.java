@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.classloader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import ca.eandb.util.ClassUtil;
+import ca.eandb.util.io.StreamUtil;
+
+/**
+ * Computes the transitive closure of the classes referenced by a set of root
+ * classes, by parsing their class files rather than loading them.  The
+ * closure may be restricted to particular packages, and classes visible to a
+ * particular <code>ClassLoader</code> (by default, the parent of the system
+ * class loader, so that JDK classes are excluded) are omitted.  The result is
+ * a {@link ClassBundle} that may be shipped to a remote process in one shot.
+ *
+ * <pre>
+ *   ClassBundle bundle = new ClassDependencyWalker()
+ *       .includePackage("com.example.job")
+ *       .collect(MyJob.class);
+ * </pre>
+ *
+ * This class is not thread-safe.
+ *
+ * @author Brad Kimmel
+ * @see ClassFileParser
+ */
+public final class ClassDependencyWalker {
+
+  /** A <code>ClassLoader</code> that only finds bootstrap classes. */
+  private static final ClassLoader BOOTSTRAP = new ClassLoader(null) {};
+
+  /** The package prefixes to include, or empty to include all packages. */
+  private final List<String> packages = new ArrayList<String>();
+
+  /** An additional filter on binary class names. */
+  private Predicate<String> filter = null;
+
+  /**
+   * The <code>ClassLoader</code> whose classes are excluded, or
+   * <code>null</code> to exclude only the bootstrap classes.
+   */
+  private ClassLoader excludedLoader = ClassLoader.getSystemClassLoader().getParent();
+
+  /** The <code>ClassLoader</code> to read class files from. */
+  private ClassLoader loader = null;
+
+  /** The name of the algorithm used to compute digests. */
+  private String algorithm = ClassBundle.DEFAULT_ALGORITHM;
+
+  /**
+   * Restricts the closure to classes in a package or its subpackages.  May
+   * be called multiple times to include several packages.
+   * @param packageName The name of the package to include.
+   * @return This <code>ClassDependencyWalker</code>.
+   */
+  public ClassDependencyWalker includePackage(String packageName) {
+    packages.add(packageName.endsWith(".") ? packageName : packageName + ".");
+    return this;
+  }
+
+  /**
+   * Restricts the closure to classes whose names satisfy a predicate.
+   * @param filter The predicate that binary class names must satisfy.
+   * @return This <code>ClassDependencyWalker</code>.
+   */
+  public ClassDependencyWalker filter(Predicate<String> filter) {
+    this.filter = this.filter != null ? this.filter.and(filter) : filter;
+    return this;
+  }
+
+  /**
+   * Excludes classes that are visible to the specified
+   * <code>ClassLoader</code>, on the assumption that the remote process
+   * already has them.
+   * @param excludedLoader The <code>ClassLoader</code> whose classes to
+   *     exclude, or <code>null</code> to exclude only bootstrap classes.
+   * @return This <code>ClassDependencyWalker</code>.
+   */
+  public ClassDependencyWalker excludeLoader(ClassLoader excludedLoader) {
+    this.excludedLoader = excludedLoader;
+    return this;
+  }
+
+  /**
+   * Sets the <code>ClassLoader</code> from which to read class files.  By
+   * default, the loader of the first root class is used.
+   * @param loader The <code>ClassLoader</code> to read class files from.
+   * @return This <code>ClassDependencyWalker</code>.
+   */
+  public ClassDependencyWalker loader(ClassLoader loader) {
+    this.loader = loader;
+    return this;
+  }
+
+  /**
+   * Sets the algorithm used to compute digests of class definitions.
+   * @param algorithm The name of the digest algorithm.
+   * @return This <code>ClassDependencyWalker</code>.
+   * @see ClassBundle#ClassBundle(String)
+   */
+  public ClassDependencyWalker digestAlgorithm(String algorithm) {
+    this.algorithm = algorithm;
+    return this;
+  }
+
+  /**
+   * Collects the root classes and the transitive closure of the classes they
+   * reference.  Referenced classes that are excluded, or whose class files
+   * cannot be found, are not included and their references are not
+   * followed.  Root classes are always included.
+   * @param roots The classes from which to start.
+   * @return A <code>ClassBundle</code> containing the closure.
+   * @throws IOException If an error occurs while reading a class file.
+   */
+  public ClassBundle collect(Class<?>... roots) throws IOException {
+    ClassLoader cl = loader;
+    if (cl == null && roots.length > 0) {
+      cl = roots[0].getClassLoader();
+    }
+    if (cl == null) {
+      cl = ClassLoader.getSystemClassLoader();
+    }
+    String[] names = new String[roots.length];
+    for (int i = 0; i < roots.length; i++) {
+      names[i] = roots[i].getName();
+    }
+    return collect(cl, names);
+  }
+
+  /**
+   * Collects the named root classes and the transitive closure of the
+   * classes they reference.
+   * @param cl The <code>ClassLoader</code> from which to read class files.
+   * @param roots The binary names of the classes from which to start.
+   * @return A <code>ClassBundle</code> containing the closure.
+   * @throws IOException If an error occurs while reading a class file.
+   * @see #collect(Class...)
+   */
+  private ClassBundle collect(ClassLoader cl, String... roots) throws IOException {
+    ClassBundle bundle = new ClassBundle(algorithm);
+    Set<String> seen = new HashSet<String>();
+    Deque<String> pending = new ArrayDeque<String>();
+    for (String name : roots) {
+      if (seen.add(name)) {
+        pending.add(name);
+      }
+    }
+
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    while (!pending.isEmpty()) {
+      String name = pending.remove();
+      InputStream in = cl.getResourceAsStream(ClassUtil.getResourceName(name));
+      if (in == null) {
+        continue;
+      }
+      buffer.reset();
+      try {
+        StreamUtil.writeStream(in, buffer);
+      } finally {
+        in.close();
+      }
+      byte[] def = buffer.toByteArray();
+      bundle.add(name, def);
+
+      for (String ref : ClassFileParser.getReferencedClasses(def)) {
+        if (seen.add(ref) && isIncluded(ref)) {
+          pending.add(ref);
+        }
+      }
+    }
+    return bundle;
+  }
+
+  /**
+   * Determines if a referenced class should be included in the closure.
+   * @param name The binary name of the class.
+   * @return A value indicating if the class should be included.
+   */
+  private boolean isIncluded(String name) {
+    if (name.startsWith("java.")) {
+      return false;
+    }
+    if (!packages.isEmpty()) {
+      boolean match = false;
+      for (String prefix : packages) {
+        if (name.startsWith(prefix)) {
+          match = true;
+          break;
+        }
+      }
+      if (!match) {
+        return false;
+      }
+    }
+    if (filter != null && !filter.test(name)) {
+      return false;
+    }
+    String resourceName = ClassUtil.getResourceName(name);
+    ClassLoader excluded = excludedLoader != null ? excludedLoader : BOOTSTRAP;
+    return excluded.getResource(resourceName) == null;
+  }
+
+}
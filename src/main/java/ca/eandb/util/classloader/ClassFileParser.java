@@ -0,0 +1,360 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.classloader;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Extracts information from class files without loading them.  Only the
+ * constant pool and the declarations of the class, its fields and its
+ * methods are examined, so this is much cheaper than defining the class.
+ *
+ * @author Brad Kimmel
+ */
+public final class ClassFileParser {
+
+  /** The magic number at the start of every class file. */
+  private static final int MAGIC = 0xcafebabe;
+
+  static final int CONSTANT_UTF8 = 1;
+  static final int CONSTANT_INTEGER = 3;
+  private static final int CONSTANT_FLOAT = 4;
+  private static final int CONSTANT_LONG = 5;
+  private static final int CONSTANT_DOUBLE = 6;
+  static final int CONSTANT_CLASS = 7;
+  private static final int CONSTANT_STRING = 8;
+  private static final int CONSTANT_FIELDREF = 9;
+  static final int CONSTANT_METHODREF = 10;
+  private static final int CONSTANT_INTERFACE_METHODREF = 11;
+  static final int CONSTANT_NAME_AND_TYPE = 12;
+  private static final int CONSTANT_METHOD_HANDLE = 15;
+  private static final int CONSTANT_METHOD_TYPE = 16;
+  private static final int CONSTANT_DYNAMIC = 17;
+  private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+  private static final int CONSTANT_MODULE = 19;
+  private static final int CONSTANT_PACKAGE = 20;
+
+  /**
+   * Gets the binary name of the class defined by a class file.
+   * @param def The class file.  Its position is not changed.
+   * @return The binary name of the class.
+   * @throws IllegalArgumentException If <code>def</code> is not a valid
+   *     class file.
+   */
+  public static String getClassName(ByteBuffer def) {
+    ConstantPool pool = new ConstantPool(def);
+    try {
+      return pool.className(pool.buffer.getShort(pool.end + 2) & 0xffff);
+    } catch (IndexOutOfBoundsException e) {
+      throw new IllegalArgumentException("Truncated class file.", e);
+    }
+  }
+
+  /**
+   * Gets the binary name of the class defined by a class file.
+   * @param def The class file.
+   * @return The binary name of the class.
+   * @throws IllegalArgumentException If <code>def</code> is not a valid
+   *     class file.
+   */
+  public static String getClassName(byte[] def) {
+    return getClassName(ByteBuffer.wrap(def));
+  }
+
+  /**
+   * Gets the binary names of the classes referenced by a class file.  This
+   * includes the superclass and interfaces, classes named in the constant
+   * pool (including element types of arrays), and classes appearing in the
+   * descriptors of fields, methods and method references.  Classes that
+   * appear only in annotations or generic signatures are not included.
+   * @param def The class file.  Its position is not changed.
+   * @return The binary names of the referenced classes, not including the
+   *     class itself.
+   * @throws IllegalArgumentException If <code>def</code> is not a valid
+   *     class file.
+   */
+  public static Set<String> getReferencedClasses(ByteBuffer def) {
+    ConstantPool pool = new ConstantPool(def);
+    Set<String> names = new LinkedHashSet<String>();
+    try {
+      for (int i = 1; i < pool.count; i++) {
+        switch (pool.tags[i]) {
+        case CONSTANT_CLASS:
+          addClassName(pool.utf8(pool.u2(i, 0)), names);
+          break;
+
+        case CONSTANT_NAME_AND_TYPE:
+          addDescriptor(pool.utf8(pool.u2(i, 2)), names);
+          break;
+
+        case CONSTANT_METHOD_TYPE:
+          addDescriptor(pool.utf8(pool.u2(i, 0)), names);
+          break;
+        }
+      }
+
+      /* Field and method descriptors are not necessarily referenced from any
+       * NameAndType entry, so read them from the declarations.
+       */
+      ByteBuffer buf = pool.buffer;
+      int pos = pool.end;
+      int thisClass = buf.getShort(pos + 2) & 0xffff;
+      int interfaceCount = buf.getShort(pos + 6) & 0xffff;
+      pos += 8 + 2 * interfaceCount;
+      for (int member = 0; member < 2; member++) {
+        int memberCount = buf.getShort(pos) & 0xffff;
+        pos += 2;
+        for (int j = 0; j < memberCount; j++) {
+          addDescriptor(pool.utf8(buf.getShort(pos + 4) & 0xffff), names);
+          int attributeCount = buf.getShort(pos + 6) & 0xffff;
+          pos += 8;
+          for (int k = 0; k < attributeCount; k++) {
+            pos += 6 + buf.getInt(pos + 2);
+          }
+        }
+      }
+
+      /* Skip the class attributes to check that the class file is
+       * complete.
+       */
+      int attributeCount = buf.getShort(pos) & 0xffff;
+      pos += 2;
+      for (int k = 0; k < attributeCount; k++) {
+        pos += 6 + buf.getInt(pos + 2);
+      }
+      if (pos != buf.limit()) {
+        throw new IllegalArgumentException(pos > buf.limit() || pos < 0
+            ? "Truncated class file." : "Unexpected data after class file.");
+      }
+
+      names.remove(pool.className(thisClass));
+      return names;
+    } catch (IndexOutOfBoundsException e) {
+      throw new IllegalArgumentException("Truncated class file.", e);
+    }
+  }
+
+  /**
+   * Gets the binary names of the classes referenced by a class file.
+   * @param def The class file.
+   * @return The binary names of the referenced classes, not including the
+   *     class itself.
+   * @throws IllegalArgumentException If <code>def</code> is not a valid
+   *     class file.
+   * @see #getReferencedClasses(ByteBuffer)
+   */
+  public static Set<String> getReferencedClasses(byte[] def) {
+    return getReferencedClasses(ByteBuffer.wrap(def));
+  }
+
+  /**
+   * Adds the class named by a <code>CONSTANT_Class</code> entry.
+   * @param name The internal name of the class, or the descriptor of an
+   *     array type.
+   * @param names The set to add the binary name of the class to.
+   */
+  private static void addClassName(String name, Set<String> names) {
+    if (name.startsWith("[")) {
+      addDescriptor(name, names);
+    } else {
+      names.add(name.replace('/', '.'));
+    }
+  }
+
+  /**
+   * Adds the classes appearing in a field or method descriptor.
+   * @param descriptor The descriptor.
+   * @param names The set to add the binary names of the classes to.
+   */
+  private static void addDescriptor(String descriptor, Set<String> names) {
+    int length = descriptor.length();
+    for (int i = 0; i < length; i++) {
+      if (descriptor.charAt(i) == 'L') {
+        int end = descriptor.indexOf(';', i);
+        if (end < 0) {
+          throw new IllegalArgumentException("Invalid descriptor: " + descriptor);
+        }
+        names.add(descriptor.substring(i + 1, end).replace('/', '.'));
+        i = end;
+      }
+    }
+  }
+
+  /**
+   * The constant pool of a class file.
+   */
+  static final class ConstantPool {
+
+    /** The class file, in big-endian order. */
+    final ByteBuffer buffer;
+
+    /** The number of constant pool entries, plus one. */
+    final int count;
+
+    /** The tag of each entry. */
+    final byte[] tags;
+
+    /** The position of each entry's contents, following its tag. */
+    final int[] offsets;
+
+    /** The position following the constant pool. */
+    final int end;
+
+    /** The decoded <code>CONSTANT_Utf8</code> entries, as needed. */
+    private final String[] strings;
+
+    /**
+     * Parses the constant pool of a class file.
+     * @param def The class file.
+     * @throws IllegalArgumentException If <code>def</code> is not a valid
+     *     class file.
+     */
+    ConstantPool(ByteBuffer def) {
+      ByteBuffer buf = def.slice();
+      buf.order(ByteOrder.BIG_ENDIAN);
+      this.buffer = buf;
+      try {
+        if (buf.getInt(0) != MAGIC) {
+          throw new IllegalArgumentException("Not a class file.");
+        }
+        this.count = buf.getShort(8) & 0xffff;
+        this.tags = new byte[count];
+        this.offsets = new int[count];
+        this.strings = new String[count];
+        int pos = 10;
+        for (int i = 1; i < count; i++) {
+          int tag = buf.get(pos++);
+          tags[i] = (byte) tag;
+          offsets[i] = pos;
+          switch (tag) {
+          case CONSTANT_UTF8:
+            pos += 2 + (buf.getShort(pos) & 0xffff);
+            break;
+
+          case CONSTANT_CLASS:
+          case CONSTANT_STRING:
+          case CONSTANT_METHOD_TYPE:
+          case CONSTANT_MODULE:
+          case CONSTANT_PACKAGE:
+            pos += 2;
+            break;
+
+          case CONSTANT_METHOD_HANDLE:
+            pos += 3;
+            break;
+
+          case CONSTANT_INTEGER:
+          case CONSTANT_FLOAT:
+          case CONSTANT_FIELDREF:
+          case CONSTANT_METHODREF:
+          case CONSTANT_INTERFACE_METHODREF:
+          case CONSTANT_NAME_AND_TYPE:
+          case CONSTANT_DYNAMIC:
+          case CONSTANT_INVOKE_DYNAMIC:
+            pos += 4;
+            break;
+
+          case CONSTANT_LONG:
+          case CONSTANT_DOUBLE:
+            pos += 8;
+            i++;
+            break;
+
+          default:
+            throw new IllegalArgumentException(
+                String.format("Invalid constant pool tag: %d", tag));
+          }
+        }
+        this.end = pos;
+      } catch (IndexOutOfBoundsException e) {
+        throw new IllegalArgumentException("Truncated class file.", e);
+      }
+    }
+
+    /**
+     * Reads an unsigned 16-bit value from an entry.
+     * @param index The index of the entry.
+     * @param offset The offset of the value within the entry.
+     * @return The value.
+     */
+    int u2(int index, int offset) {
+      return buffer.getShort(offsets[index] + offset) & 0xffff;
+    }
+
+    /**
+     * Gets the class named by a <code>CONSTANT_Class</code> entry.
+     * @param index The index of the entry.
+     * @return The binary name of the class.
+     */
+    String className(int index) {
+      if (index <= 0 || index >= count || tags[index] != CONSTANT_CLASS) {
+        throw new IllegalArgumentException("Invalid class reference.");
+      }
+      return utf8(u2(index, 0)).replace('/', '.');
+    }
+
+    /**
+     * Decodes a <code>CONSTANT_Utf8</code> entry.
+     * @param index The index of the entry.
+     * @return The decoded string.
+     */
+    String utf8(int index) {
+      if (index <= 0 || index >= count || tags[index] != CONSTANT_UTF8) {
+        throw new IllegalArgumentException("Invalid string reference.");
+      }
+      String s = strings[index];
+      if (s == null) {
+        int pos = offsets[index];
+        int length = buffer.getShort(pos) & 0xffff;
+        char[] chars = new char[length];
+        int n = 0;
+        for (int i = pos + 2, end = i + length; i < end;) {
+          int b = buffer.get(i++) & 0xff;
+          if (b < 0x80) {
+            chars[n++] = (char) b;
+          } else if ((b & 0xe0) == 0xc0) {
+            chars[n++] = (char) (((b & 0x1f) << 6) | (buffer.get(i++) & 0x3f));
+          } else {
+            int b2 = buffer.get(i++) & 0x3f;
+            int b3 = buffer.get(i++) & 0x3f;
+            chars[n++] = (char) (((b & 0x0f) << 12) | (b2 << 6) | b3);
+          }
+        }
+        s = new String(chars, 0, n);
+        strings[index] = s;
+      }
+      return s;
+    }
+
+  }
+
+  /** Declared private to prevent this class from being instantiated. */
+  private ClassFileParser() {}
+
+}
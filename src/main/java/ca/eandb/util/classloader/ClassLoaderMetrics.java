@@ -0,0 +1,588 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.classloader;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latency histograms for class loading.  An instance is kept
+ * for each named component: each {@link InstrumentedClassLoaderStrategy},
+ * and {@link #LOADER} for the work done by {@link StrategyClassLoader}
+ * itself.  Each instance is registered as an MXBean named
+ * <code>ca.eandb.util.classloader:type=ClassLoaderMetrics,name=&lt;name&gt;</code>.
+ *
+ * Recording is disabled by default, in which case instrumented code does no
+ * more than read a flag.  It may be enabled by setting the system property
+ * {@value #ENABLED_PROPERTY} to <code>true</code>, or by calling
+ * {@link #setEnabled(boolean)}.
+ *
+ * @author Brad Kimmel
+ */
+public final class ClassLoaderMetrics implements ClassLoaderMetricsMXBean {
+
+  /** The system property that enables recording at startup. */
+  public static final String ENABLED_PROPERTY =
+      "ca.eandb.util.classloader.metrics";
+
+  /** The name of the metrics for {@link StrategyClassLoader}. */
+  public static final String LOADER = "StrategyClassLoader";
+
+  /** The domain of the MXBean names. */
+  private static final String DOMAIN = "ca.eandb.util.classloader";
+
+  /** A value indicating whether recording is enabled. */
+  private static volatile boolean enabled = Boolean.getBoolean(ENABLED_PROPERTY);
+
+  /** The metrics for each component, keyed by name. */
+  private static final Map<String, ClassLoaderMetrics> instances =
+      new ConcurrentHashMap<String, ClassLoaderMetrics>();
+
+  /** The name of the component being measured. */
+  private final String name;
+
+  /** The number of class definitions that were found. */
+  private final LongAdder hits = new LongAdder();
+
+  /** The number of class definitions that were not found. */
+  private final LongAdder misses = new LongAdder();
+
+  /** The total size of the class definitions that were found. */
+  private final LongAdder bytes = new LongAdder();
+
+  /** The time spent looking up class definitions. */
+  private final Timer lookup = new Timer();
+
+  /** The time spent defining classes. */
+  private final Timer define = new Timer();
+
+  /** The time spent resolving classes. */
+  private final Timer resolve = new Timer();
+
+  /**
+   * Creates a new <code>ClassLoaderMetrics</code>.
+   * @param name The name of the component being measured.
+   */
+  private ClassLoaderMetrics(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Determines if recording is enabled.
+   * @return A value indicating if recording is enabled.
+   */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Enables or disables recording.
+   * @param enabled A value indicating whether recording should be enabled.
+   */
+  public static void setEnabled(boolean enabled) {
+    ClassLoaderMetrics.enabled = enabled;
+  }
+
+  /**
+   * Gets the metrics for a component, creating and registering them if
+   * necessary.
+   * @param name The name of the component.
+   * @return The <code>ClassLoaderMetrics</code> for the component.
+   */
+  public static ClassLoaderMetrics forName(String name) {
+    ClassLoaderMetrics metrics = instances.get(name);
+    if (metrics == null) {
+      ClassLoaderMetrics created = new ClassLoaderMetrics(name);
+      metrics = instances.putIfAbsent(name, created);
+      if (metrics == null) {
+        metrics = created;
+        register(created);
+      }
+    }
+    return metrics;
+  }
+
+  /**
+   * Takes a snapshot of the metrics for every component.
+   * @return A <code>Map</code> from component names to snapshots.
+   */
+  public static Map<String, Snapshot> snapshotAll() {
+    Map<String, Snapshot> snapshots = new TreeMap<String, Snapshot>();
+    for (ClassLoaderMetrics metrics : instances.values()) {
+      snapshots.put(metrics.name, metrics.snapshot());
+    }
+    return snapshots;
+  }
+
+  /**
+   * Registers an MXBean with the platform <code>MBeanServer</code>.  Failure
+   * to register does not affect recording.
+   * @param metrics The <code>ClassLoaderMetrics</code> to register.
+   */
+  private static void register(ClassLoaderMetrics metrics) {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName objectName = new ObjectName(String.format(
+          "%s:type=ClassLoaderMetrics,name=%s", DOMAIN,
+          ObjectName.quote(metrics.name)));
+      server.registerMBean(metrics, objectName);
+    } catch (InstanceAlreadyExistsException e) {
+      /* Registered by another copy of this class. */
+    } catch (JMException | SecurityException e) {
+      /* JMX is unavailable, but the snapshot API still works. */
+    }
+  }
+
+  /**
+   * Records a lookup of a class definition.
+   * @param nanos The time taken by the lookup, in nanoseconds.
+   * @param size The size of the definition found, or <code>-1</code> if the
+   *     definition was not found.
+   */
+  public void recordLookup(long nanos, int size) {
+    lookup.record(nanos);
+    if (size >= 0) {
+      hits.increment();
+      bytes.add(size);
+    } else {
+      misses.increment();
+    }
+  }
+
+  /**
+   * Records the definition of a class.
+   * @param nanos The time taken to define the class, in nanoseconds.
+   */
+  public void recordDefine(long nanos) {
+    define.record(nanos);
+  }
+
+  /**
+   * Records the resolution of a class.
+   * @param nanos The time taken to resolve the class, in nanoseconds.
+   * @see ClassLoaderMetricsMXBean#getResolveTotalMicros()
+   */
+  public void recordResolve(long nanos) {
+    resolve.record(nanos);
+  }
+
+  /**
+   * Takes a snapshot of these metrics.
+   * @return A <code>Snapshot</code> of these metrics.
+   */
+  public Snapshot snapshot() {
+    return new Snapshot(this);
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.classloader.ClassLoaderMetricsMXBean#getName()
+   */
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.classloader.ClassLoaderMetricsMXBean#getHitCount()
+   */
+  @Override
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.classloader.ClassLoaderMetricsMXBean#getMissCount()
+   */
+  @Override
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.classloader.ClassLoaderMetricsMXBean#getBytesLoaded()
+   */
+  @Override
+  public long getBytesLoaded() {
+    return bytes.sum();
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.classloader.ClassLoaderMetricsMXBean#getLookupTotalMicros()
+   */
+  @Override
+  public long getLookupTotalMicros() {
+    return lookup.total.sum() / 1000L;
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.classloader.ClassLoaderMetricsMXBean#getLookupMedianMicros()
+   */
+  @Override
+  public double getLookupMedianMicros() {
+    return snapshot().getLookup().getPercentile(0.5) / 1000.0;
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.classloader.ClassLoaderMetricsMXBean#getLookup99thPercentileMicros()
+   */
+  @Override
+  public double getLookup99thPercentileMicros() {
+    return snapshot().getLookup().getPercentile(0.99) / 1000.0;
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.classloader.ClassLoaderMetricsMXBean#getLookupMaxMicros()
+   */
+  @Override
+  public double getLookupMaxMicros() {
+    return lookup.max.get() / 1000.0;
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.classloader.ClassLoaderMetricsMXBean#getDefineCount()
+   */
+  @Override
+  public long getDefineCount() {
+    return define.count.sum();
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.classloader.ClassLoaderMetricsMXBean#getDefineTotalMicros()
+   */
+  @Override
+  public long getDefineTotalMicros() {
+    return define.total.sum() / 1000L;
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.classloader.ClassLoaderMetricsMXBean#getResolveCount()
+   */
+  @Override
+  public long getResolveCount() {
+    return resolve.count.sum();
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.classloader.ClassLoaderMetricsMXBean#getResolveTotalMicros()
+   */
+  @Override
+  public long getResolveTotalMicros() {
+    return resolve.total.sum() / 1000L;
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.classloader.ClassLoaderMetricsMXBean#reset()
+   */
+  @Override
+  public void reset() {
+    hits.reset();
+    misses.reset();
+    bytes.reset();
+    lookup.reset();
+    define.reset();
+    resolve.reset();
+  }
+
+  /**
+   * Accumulates durations in buckets whose bounds are powers of two.
+   */
+  private static final class Timer {
+
+    /** The number of buckets. */
+    private static final int BUCKETS = 64;
+
+    /** The number of durations recorded. */
+    final LongAdder count = new LongAdder();
+
+    /** The total of the durations recorded, in nanoseconds. */
+    final LongAdder total = new LongAdder();
+
+    /** The longest duration recorded, in nanoseconds. */
+    final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+    /**
+     * The number of durations in each bucket.  Bucket <code>i</code> holds
+     * durations in <code>[2<sup>i-1</sup>, 2<sup>i</sup>)</code>
+     * nanoseconds.
+     */
+    final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Records a duration.
+     * @param nanos The duration, in nanoseconds.
+     */
+    void record(long nanos) {
+      if (nanos < 0) {
+        nanos = 0;
+      }
+      count.increment();
+      total.add(nanos);
+      max.accumulate(nanos);
+      buckets.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos)));
+    }
+
+    /**
+     * Resets this <code>Timer</code>.
+     */
+    void reset() {
+      count.reset();
+      total.reset();
+      max.reset();
+      for (int i = 0; i < BUCKETS; i++) {
+        buckets.set(i, 0);
+      }
+    }
+
+  }
+
+  /**
+   * An immutable copy of the durations accumulated by a timer.
+   */
+  public static final class TimerSnapshot {
+
+    /** The number of durations recorded. */
+    private final long count;
+
+    /** The total of the durations recorded, in nanoseconds. */
+    private final long total;
+
+    /** The longest duration recorded, in nanoseconds. */
+    private final long max;
+
+    /** The number of durations in each power of two bucket. */
+    private final long[] buckets;
+
+    /**
+     * Creates a new <code>TimerSnapshot</code>.
+     * @param timer The <code>Timer</code> to copy.
+     */
+    private TimerSnapshot(Timer timer) {
+      this.buckets = new long[Timer.BUCKETS];
+      long n = 0;
+      for (int i = 0; i < Timer.BUCKETS; i++) {
+        buckets[i] = timer.buckets.get(i);
+        n += buckets[i];
+      }
+      this.count = n;
+      this.total = timer.total.sum();
+      this.max = timer.max.get();
+    }
+
+    /**
+     * Gets the number of durations recorded.
+     * @return The number of durations recorded.
+     */
+    public long getCount() {
+      return count;
+    }
+
+    /**
+     * Gets the total of the durations recorded.
+     * @return The total duration, in nanoseconds.
+     */
+    public long getTotalNanos() {
+      return total;
+    }
+
+    /**
+     * Gets the mean of the durations recorded.
+     * @return The mean duration, in nanoseconds, or <code>NaN</code> if no
+     *     durations have been recorded.
+     */
+    public double getMeanNanos() {
+      return count > 0 ? (double) total / (double) count : Double.NaN;
+    }
+
+    /**
+     * Gets the longest duration recorded.
+     * @return The longest duration, in nanoseconds.
+     */
+    public long getMaxNanos() {
+      return max;
+    }
+
+    /**
+     * Gets the number of durations in a bucket.
+     * @param bucket The index of the bucket.  Bucket <code>i</code> holds
+     *     durations in <code>[2<sup>i-1</sup>, 2<sup>i</sup>)</code>
+     *     nanoseconds.
+     * @return The number of durations in the bucket.
+     */
+    public long getBucketCount(int bucket) {
+      return buckets[bucket];
+    }
+
+    /**
+     * Estimates a percentile of the durations recorded, by interpolating
+     * within the bucket containing it.
+     * @param p The fraction of durations that are to be less than the
+     *     result (between zero and one).
+     * @return The estimated percentile, in nanoseconds, or <code>NaN</code>
+     *     if no durations have been recorded.
+     */
+    public double getPercentile(double p) {
+      if (count == 0) {
+        return Double.NaN;
+      }
+      double rank = p * count;
+      long seen = 0;
+      for (int i = 0; i < buckets.length; i++) {
+        if (buckets[i] > 0 && seen + buckets[i] >= rank) {
+          double lower = i > 0 ? (double) (1L << (i - 1)) : 0.0;
+          double upper = Math.min((double) max, Math.scalb(1.0, i));
+          double f = (rank - seen) / buckets[i];
+          return lower + f * Math.max(0.0, upper - lower);
+        }
+        seen += buckets[i];
+      }
+      return max;
+    }
+
+  }
+
+  /**
+   * An immutable copy of the metrics for a component.
+   */
+  public static final class Snapshot {
+
+    /** The name of the component. */
+    private final String name;
+
+    /** The number of class definitions that were found. */
+    private final long hits;
+
+    /** The number of class definitions that were not found. */
+    private final long misses;
+
+    /** The total size of the class definitions that were found. */
+    private final long bytes;
+
+    /** The time spent looking up class definitions. */
+    private final TimerSnapshot lookup;
+
+    /** The time spent defining classes. */
+    private final TimerSnapshot define;
+
+    /** The time spent resolving classes. */
+    private final TimerSnapshot resolve;
+
+    /**
+     * Creates a new <code>Snapshot</code>.
+     * @param metrics The <code>ClassLoaderMetrics</code> to copy.
+     */
+    private Snapshot(ClassLoaderMetrics metrics) {
+      this.name = metrics.name;
+      this.hits = metrics.hits.sum();
+      this.misses = metrics.misses.sum();
+      this.bytes = metrics.bytes.sum();
+      this.lookup = new TimerSnapshot(metrics.lookup);
+      this.define = new TimerSnapshot(metrics.define);
+      this.resolve = new TimerSnapshot(metrics.resolve);
+    }
+
+    /**
+     * Gets the name of the component.
+     * @return The name of the component.
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * Gets the number of class definitions that were found.
+     * @return The number of class definitions that were found.
+     */
+    public long getHitCount() {
+      return hits;
+    }
+
+    /**
+     * Gets the number of class definitions that were not found.
+     * @return The number of class definitions that were not found.
+     */
+    public long getMissCount() {
+      return misses;
+    }
+
+    /**
+     * Gets the total size of the class definitions that were found.
+     * @return The total size of the class definitions found, in bytes.
+     */
+    public long getBytesLoaded() {
+      return bytes;
+    }
+
+    /**
+     * Gets the time spent looking up class definitions.
+     * @return The <code>TimerSnapshot</code> for lookups.
+     */
+    public TimerSnapshot getLookup() {
+      return lookup;
+    }
+
+    /**
+     * Gets the time spent defining classes.
+     * @return The <code>TimerSnapshot</code> for class definition.
+     */
+    public TimerSnapshot getDefine() {
+      return define;
+    }
+
+    /**
+     * Gets the time spent resolving classes.  On Java 9 and later this does
+     * not include the cost of linking.
+     * @return The <code>TimerSnapshot</code> for class resolution.
+     */
+    public TimerSnapshot getResolve() {
+      return resolve;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+      return String.format(
+          "%s: hits=%d, misses=%d, bytes=%d, lookup=%.1fms (p50=%.1fus, p99=%.1fus), define=%d/%.1fms, resolve=%d/%.1fms",
+          name, hits, misses, bytes, lookup.getTotalNanos() / 1e6,
+          lookup.getPercentile(0.5) / 1e3, lookup.getPercentile(0.99) / 1e3,
+          define.getCount(), define.getTotalNanos() / 1e6,
+          resolve.getCount(), resolve.getTotalNanos() / 1e6);
+    }
+
+  }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.classloader;
+
+/**
+ * The management interface for {@link ClassLoaderMetrics}.  Times are
+ * reported in microseconds.
+ * @author Brad Kimmel
+ */
+public interface ClassLoaderMetricsMXBean {
+
+  /**
+   * Gets the name of the component being measured.
+   * @return The name of the component being measured.
+   */
+  String getName();
+
+  /**
+   * Gets the number of class definitions that were found.
+   * @return The number of class definitions that were found.
+   */
+  long getHitCount();
+
+  /**
+   * Gets the number of class definitions that were not found.
+   * @return The number of class definitions that were not found.
+   */
+  long getMissCount();
+
+  /**
+   * Gets the total size of the class definitions that were found.
+   * @return The total size of the class definitions found, in bytes.
+   */
+  long getBytesLoaded();
+
+  /**
+   * Gets the total time spent looking up class definitions.
+   * @return The total lookup time, in microseconds.
+   */
+  long getLookupTotalMicros();
+
+  /**
+   * Gets the median time spent looking up a class definition.
+   * @return The approximate median lookup time, in microseconds.
+   */
+  double getLookupMedianMicros();
+
+  /**
+   * Gets the 99th percentile of the time spent looking up a class
+   * definition.
+   * @return The approximate 99th percentile lookup time, in microseconds.
+   */
+  double getLookup99thPercentileMicros();
+
+  /**
+   * Gets the longest time spent looking up a class definition.
+   * @return The longest lookup time, in microseconds.
+   */
+  double getLookupMaxMicros();
+
+  /**
+   * Gets the number of classes defined.
+   * @return The number of classes defined.
+   */
+  long getDefineCount();
+
+  /**
+   * Gets the total time spent defining classes.
+   * @return The total time spent defining classes, in microseconds.
+   */
+  long getDefineTotalMicros();
+
+  /**
+   * Gets the number of classes resolved.
+   * @return The number of classes resolved.
+   * @see #getResolveTotalMicros()
+   */
+  long getResolveCount();
+
+  /**
+   * Gets the total time spent resolving classes.  This is the time spent in
+   * <code>ClassLoader.resolveClass</code>, which does nothing on Java 9 and
+   * later (where classes are linked lazily, when first used), so on those
+   * runtimes it does not measure the cost of linking.
+   * @return The total time spent resolving classes, in microseconds.
+   */
+  long getResolveTotalMicros();
+
+  /**
+   * Resets all counters and timers to zero.
+   */
+  void reset();
+
+}
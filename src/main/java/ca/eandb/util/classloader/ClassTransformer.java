@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.classloader;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Transforms class definitions before they are defined by a
+ * {@link StrategyClassLoader}.
+ * @see StrategyClassLoader#addTransformer(ClassTransformer)
+ * @author Brad Kimmel
+ */
+public interface ClassTransformer {
+
+  /**
+   * Transforms a class definition.
+   * @param name The binary name of the class being defined.
+   * @param def The class definition, as obtained from the
+   *     <code>ClassLoaderStrategy</code> or from the previous transformer.
+   *     Its position should not be changed.
+   * @return The transformed class definition, or <code>null</code> to leave
+   *     the definition unchanged.
+   */
+  ByteBuffer transform(String name, ByteBuffer def);
+
+}
@@ -27,11 +27,21 @@ package ca.eandb.util.classloader;
 
 import java.nio.ByteBuffer;
 import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * A <code>ClassLoaderStrategy</code> that searches for a class definition from
  * a list of child <code>ClassLoaderStrategy</code>s and returns the first
  * definition that is found.
+ *
+ * Optionally, the strategy may route lookups by package.  It then remembers
+ * which child supplied the last class found in each package and asks that
+ * child first, so that a long chain of children is only searched for the
+ * first class in each package.  If packages are split across children and a
+ * class is defined by more than one of them, the definition returned may
+ * then come from a child other than the first one defining it.
+ *
  * @author Brad Kimmel
  */
 public final class CompositeClassLoaderStrategy implements ClassLoaderStrategy {
@@ -39,22 +49,47 @@ public final class CompositeClassLoaderStrategy implements ClassLoaderStrategy {
   /** The collection of <code>ClassLoaderStrategy</code>s to search. */
   private final ClassLoaderStrategy[] strategies;
 
+  /**
+   * The index into <code>strategies</code> of the child that owns each
+   * package, or <code>null</code> if lookups are not routed by package.
+   */
+  private final ConcurrentMap<String, Integer> owners;
+
   /**
    * Creates a new <code>CompositeClassLoaderStrategy</code>.
    * @param strategies The <code>Collection</code> of
    *     <code>ClassLoaderStrategy</code>s to search.
    */
   public CompositeClassLoaderStrategy(Collection<ClassLoaderStrategy> strategies) {
-    this(strategies.toArray(new ClassLoaderStrategy[strategies.size()]));
+    this(strategies, false);
+  }
+
+  /**
+   * Creates a new <code>CompositeClassLoaderStrategy</code>.
+   * @param strategies The <code>Collection</code> of
+   *     <code>ClassLoaderStrategy</code>s to search.
+   * @param routeByPackage A value indicating whether to remember which
+   *     child owns each package and search it first.
+   */
+  public CompositeClassLoaderStrategy(Collection<ClassLoaderStrategy> strategies,
+      boolean routeByPackage) {
+    this(strategies.toArray(new ClassLoaderStrategy[strategies.size()]),
+        routeByPackage);
   }
 
   /**
    * Creates a new <code>CompositeClassLoaderStrategy</code>.
    * @param strategies The collection of <code>ClassLoaderStrategy</code>s to
    *     search.
+   * @param routeByPackage A value indicating whether to remember which
+   *     child owns each package and search it first.
    */
-  private CompositeClassLoaderStrategy(ClassLoaderStrategy[] strategies) {
+  private CompositeClassLoaderStrategy(ClassLoaderStrategy[] strategies,
+      boolean routeByPackage) {
     this.strategies = strategies;
+    this.owners = routeByPackage
+        ? new ConcurrentHashMap<String, Integer>()
+        : null;
   }
 
   /* (non-Javadoc)
@@ -64,8 +99,27 @@ public final class CompositeClassLoaderStrategy implements ClassLoaderStrategy {
 
     ByteBuffer def;
 
-    for (ClassLoaderStrategy strategy : strategies) {
-      if ((def = strategy.getClassDefinition(name)) != null) {
+    if (owners == null) {
+      for (ClassLoaderStrategy strategy : strategies) {
+        if ((def = strategy.getClassDefinition(name)) != null) {
+          return def;
+        }
+      }
+      return null;
+    }
+
+    String pkg = getPackageName(name);
+    Integer owner = owners.get(pkg);
+    if (owner != null) {
+      if ((def = strategies[owner].getClassDefinition(name)) != null) {
+        return def;
+      }
+    }
+
+    for (int i = 0; i < strategies.length; i++) {
+      if ((owner == null || i != owner)
+          && (def = strategies[i].getClassDefinition(name)) != null) {
+        owners.put(pkg, i);
         return def;
       }
     }
@@ -74,4 +128,15 @@ public final class CompositeClassLoaderStrategy implements ClassLoaderStrategy {
 
   }
 
+  /**
+   * Gets the name of the package containing a class.
+   * @param name The binary name of the class.
+   * @return The name of the package, or the empty string for the default
+   *     package.
+   */
+  private static String getPackageName(String name) {
+    int pos = name.lastIndexOf('.');
+    return pos >= 0 ? name.substring(0, pos) : "";
+  }
+
 }
@@ -0,0 +1,300 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.classloader;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import ca.eandb.util.UnexpectedException;
+import ca.eandb.util.concurrent.ObjectPool;
+
+/**
+ * A <code>ClassLoaderStrategy</code> that holds class definitions in memory
+ * in compressed form.  Compressed definitions are packed into large shared
+ * blocks rather than held in individual arrays, and are inflated each time
+ * they are requested.  A preset dictionary (for example, a few
+ * representative class files concatenated together) may be supplied to
+ * improve compression of small classes.
+ *
+ * Since a class is normally only defined once by a given class loader, the
+ * strategy may optionally discard each definition once it has been
+ * requested.  A block is reclaimed once all of the definitions in it have
+ * been discarded.
+ *
+ * @author Brad Kimmel
+ */
+public final class CompressedClassLoaderStrategy implements ClassLoaderStrategy {
+
+  /** The size of the blocks in which compressed definitions are stored. */
+  private static final int BLOCK_SIZE = 256 * 1024;
+
+  /** The pool of <code>Inflater</code>s for raw DEFLATE data. */
+  private static final ObjectPool<Inflater> inflaters = ObjectPool.inflaters(true);
+
+  /** The pool of <code>Deflater</code>s used to compress definitions. */
+  private final ObjectPool<Deflater> deflaters;
+
+  /** The preset dictionary, or <code>null</code> if there is none. */
+  private final byte[] dictionary;
+
+  /** A value indicating whether to discard definitions once requested. */
+  private final boolean discardOnLoad;
+
+  /** The compressed definitions, keyed by class name. */
+  private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+  /** The block into which definitions are currently being appended. */
+  private byte[] block = new byte[0];
+
+  /** The number of bytes of <code>block</code> in use. */
+  private int blockUsed = 0;
+
+  /** A buffer to compress definitions into. */
+  private byte[] scratch = new byte[8192];
+
+  /** The total size of the compressed definitions held. */
+  private final AtomicLong compressedBytes = new AtomicLong();
+
+  /** The total size of the definitions held, before compression. */
+  private final AtomicLong uncompressedBytes = new AtomicLong();
+
+  /**
+   * Creates a new <code>CompressedClassLoaderStrategy</code> that keeps
+   * definitions until they are replaced or removed.
+   */
+  public CompressedClassLoaderStrategy() {
+    this(Deflater.DEFAULT_COMPRESSION, null, false);
+  }
+
+  /**
+   * Creates a new <code>CompressedClassLoaderStrategy</code>.
+   * @param level The compression level (0-9, or
+   *     <code>Deflater.DEFAULT_COMPRESSION</code>).
+   * @param dictionary The preset dictionary to use, or <code>null</code> to
+   *     use none.  Only the last 32 KiB are used.
+   * @param discardOnLoad A value indicating whether to discard each
+   *     definition once it has been requested.
+   * @see java.util.zip.Deflater#setDictionary(byte[])
+   */
+  public CompressedClassLoaderStrategy(int level, byte[] dictionary,
+      boolean discardOnLoad) {
+    this.deflaters = ObjectPool.deflaters(level, true);
+    this.dictionary = dictionary != null ? dictionary.clone() : null;
+    this.discardOnLoad = discardOnLoad;
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.classloader.ClassLoaderStrategy#getClassDefinition(java.lang.String)
+   */
+  @Override
+  public ByteBuffer getClassDefinition(String name) {
+    Entry entry = discardOnLoad ? entries.remove(name) : entries.get(name);
+    if (entry == null) {
+      return null;
+    }
+    if (discardOnLoad) {
+      release(entry);
+    }
+
+    byte[] def = new byte[entry.size];
+    Inflater inflater = inflaters.borrow();
+    try {
+      if (dictionary != null) {
+        inflater.setDictionary(dictionary);
+      }
+      inflater.setInput(entry.block, entry.offset, entry.length);
+      int n = 0;
+      while (n < def.length && !inflater.finished()) {
+        int inflated = inflater.inflate(def, n, def.length - n);
+        if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+        n += inflated;
+      }
+      if (n != def.length) {
+        throw new UnexpectedException(String.format(
+            "Compressed definition of class '%s' is truncated.", name));
+      }
+    } catch (DataFormatException e) {
+      throw new UnexpectedException(e);
+    } finally {
+      inflaters.release(inflater);
+    }
+    return ByteBuffer.wrap(def);
+  }
+
+  /**
+   * Sets the definition of a class.
+   * @param name The name of the class to define.
+   * @param def The definition of the class, or <code>null</code> to remove
+   *     the definition.
+   */
+  public void setClassDefinition(String name, byte[] def) {
+    setClassDefinition(name, def != null ? ByteBuffer.wrap(def) : null);
+  }
+
+  /**
+   * Sets the definition of a class.
+   * @param name The name of the class to define.
+   * @param def The definition of the class, or <code>null</code> to remove
+   *     the definition.  The buffer's position is not changed.
+   */
+  public void setClassDefinition(String name, ByteBuffer def) {
+    Entry old;
+    if (def == null) {
+      old = entries.remove(name);
+    } else {
+      old = entries.put(name, compress(def));
+    }
+    if (old != null) {
+      release(old);
+    }
+  }
+
+  /**
+   * Gets the number of definitions held.
+   * @return The number of definitions held.
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Gets the total size of the definitions held, in compressed form.
+   * @return The total size of the compressed definitions, in bytes.
+   */
+  public long getCompressedSize() {
+    return compressedBytes.get();
+  }
+
+  /**
+   * Gets the total size of the definitions held, before compression.
+   * @return The total size of the uncompressed definitions, in bytes.
+   */
+  public long getUncompressedSize() {
+    return uncompressedBytes.get();
+  }
+
+  /**
+   * Compresses a definition and appends it to the current block.
+   * @param def The definition to compress.
+   * @return The <code>Entry</code> describing the compressed definition.
+   */
+  private synchronized Entry compress(ByteBuffer def) {
+    byte[] input;
+    int offset;
+    int size = def.remaining();
+    if (def.hasArray()) {
+      input = def.array();
+      offset = def.arrayOffset() + def.position();
+    } else {
+      input = new byte[size];
+      def.duplicate().get(input);
+      offset = 0;
+    }
+
+    int length = 0;
+    Deflater deflater = deflaters.borrow();
+    try {
+      if (dictionary != null) {
+        deflater.setDictionary(dictionary);
+      }
+      deflater.setInput(input, offset, size);
+      deflater.finish();
+      while (!deflater.finished()) {
+        if (length == scratch.length) {
+          byte[] grown = new byte[2 * scratch.length];
+          System.arraycopy(scratch, 0, grown, 0, length);
+          scratch = grown;
+        }
+        length += deflater.deflate(scratch, length, scratch.length - length);
+      }
+    } finally {
+      deflaters.release(deflater);
+    }
+
+    if (length > block.length - blockUsed) {
+      block = new byte[Math.max(BLOCK_SIZE, length)];
+      blockUsed = 0;
+    }
+    System.arraycopy(scratch, 0, block, blockUsed, length);
+    Entry entry = new Entry(block, blockUsed, length, size);
+    blockUsed += length;
+
+    compressedBytes.addAndGet(length);
+    uncompressedBytes.addAndGet(size);
+    return entry;
+  }
+
+  /**
+   * Accounts for a definition that is no longer held.  Its storage is
+   * reclaimed once no entries refer to its block.
+   * @param entry The <code>Entry</code> that was removed.
+   */
+  private void release(Entry entry) {
+    compressedBytes.addAndGet(-entry.length);
+    uncompressedBytes.addAndGet(-entry.size);
+  }
+
+  /**
+   * The location of a compressed class definition.
+   */
+  private static final class Entry {
+
+    /** The block containing the compressed definition. */
+    final byte[] block;
+
+    /** The position of the compressed definition within the block. */
+    final int offset;
+
+    /** The size of the compressed definition. */
+    final int length;
+
+    /** The size of the definition before compression. */
+    final int size;
+
+    /**
+     * Creates a new <code>Entry</code>.
+     * @param block The block containing the compressed definition.
+     * @param offset The position of the compressed definition.
+     * @param length The size of the compressed definition.
+     * @param size The size of the definition before compression.
+     */
+    Entry(byte[] block, int offset, int length, int size) {
+      this.block = block;
+      this.offset = offset;
+      this.length = length;
+      this.size = size;
+    }
+
+  }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.classloader;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import ca.eandb.util.ClassUtil;
+
+/**
+ * A <code>ClassLoaderStrategy</code> that loads class definitions from a
+ * directory tree laid out by package, as on a class path.  Large class files
+ * are memory mapped rather than read.
+ *
+ * @author Brad Kimmel
+ */
+public final class DirectoryClassLoaderStrategy implements ClassLoaderStrategy {
+
+  /** The size of class files above which they are memory mapped. */
+  private static final long MAP_THRESHOLD = 16 * 1024;
+
+  /** The root of the directory tree. */
+  private final Path root;
+
+  /**
+   * Creates a new <code>DirectoryClassLoaderStrategy</code>.
+   * @param root The root of the directory tree to load classes from.
+   */
+  public DirectoryClassLoaderStrategy(File root) {
+    this.root = root.toPath();
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.classloader.ClassLoaderStrategy#getClassDefinition(java.lang.String)
+   */
+  @Override
+  public ByteBuffer getClassDefinition(String name) {
+    Path file = root.resolve(ClassUtil.getResourceName(name));
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size > MAP_THRESHOLD) {
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      }
+      ByteBuffer def = ByteBuffer.allocate((int) size);
+      while (def.hasRemaining()) {
+        if (channel.read(def) < 0) {
+          throw new EOFException(file.toString());
+        }
+      }
+      def.flip();
+      return def;
+    } catch (NoSuchFileException e) {
+      return null;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+}
@@ -0,0 +1,431 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.classloader;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+import ca.eandb.util.codec.HexCodec;
+import ca.eandb.util.concurrent.ObjectPool;
+
+/**
+ * A <code>ClassLoaderStrategy</code> that keeps the class definitions
+ * obtained from another (typically slower) strategy in a content-addressed
+ * store on the local disk.  Each definition is stored in a file named by the
+ * SHA-256 digest of its contents, and a manifest maps class names to
+ * digests, so that a class that was seen by a previous run is read from disk
+ * without consulting the underlying strategy at all.
+ *
+ * Definitions are written to a temporary file and atomically moved into
+ * place, and the manifest is only ever appended to, so several processes may
+ * share a store.  When the store grows beyond its size bound, the least
+ * recently used definitions are deleted.  Large definitions are returned as
+ * memory mapped buffers.
+ *
+ * The manifest assumes that the definition of a given class does not change
+ * in the underlying strategy.  If it may, use a separate store for each
+ * version of the underlying classes, or call {@link #invalidate(String)}.
+ *
+ * @author Brad Kimmel
+ */
+public final class DiskCacheClassLoaderStrategy implements ClassLoaderStrategy {
+
+  /** The digest algorithm used to address definitions. */
+  private static final String ALGORITHM = "SHA-256";
+
+  /** The name of the manifest file. */
+  private static final String MANIFEST = "manifest";
+
+  /** The name of the directory containing definitions. */
+  private static final String OBJECTS = "objects";
+
+  /** The name of the directory containing partially written files. */
+  private static final String TEMP = "tmp";
+
+  /** The size of stored definitions above which they are memory mapped. */
+  private static final long MAP_THRESHOLD = 16 * 1024;
+
+  /** The fraction of the size bound to shrink the store to when cleaning. */
+  private static final double CLEANUP_TARGET = 0.9;
+
+  /** The pool of <code>MessageDigest</code>s used to address definitions. */
+  private static final ObjectPool<MessageDigest> digests =
+      ObjectPool.messageDigests(ALGORITHM);
+
+  /** The <code>ClassLoaderStrategy</code> to obtain missing definitions from. */
+  private final ClassLoaderStrategy source;
+
+  /** The directory containing definitions. */
+  private final Path objects;
+
+  /** The directory containing partially written files. */
+  private final Path temp;
+
+  /** The manifest file. */
+  private final Path manifestFile;
+
+  /** The maximum total size of the stored definitions, in bytes. */
+  private final long maximumBytes;
+
+  /** The digest of each known class definition, keyed by class name. */
+  private final Map<String, String> manifest = new ConcurrentHashMap<String, String>();
+
+  /** The digests of definitions whose access time has been updated. */
+  private final Set<String> touched = ConcurrentHashMap.newKeySet();
+
+  /** The approximate total size of the stored definitions, in bytes. */
+  private final AtomicLong totalBytes = new AtomicLong();
+
+  /** The lock guarding the manifest file and cleanup. */
+  private final ReentrantLock lock = new ReentrantLock();
+
+  /**
+   * Creates a new <code>DiskCacheClassLoaderStrategy</code>.
+   * @param directory The directory in which to keep the store.  It is
+   *     created if it does not exist.
+   * @param source The <code>ClassLoaderStrategy</code> from which to obtain
+   *     definitions that are not in the store.
+   * @param maximumBytes The maximum total size, in bytes, of the stored
+   *     definitions.
+   * @throws IOException If the store cannot be created or read.
+   * @throws IllegalArgumentException If <code>maximumBytes</code> is not
+   *     positive.
+   */
+  public DiskCacheClassLoaderStrategy(File directory, ClassLoaderStrategy source,
+      long maximumBytes) throws IOException {
+    if (maximumBytes <= 0) {
+      throw new IllegalArgumentException("maximumBytes must be positive.");
+    }
+    Path root = directory.toPath();
+    this.source = source;
+    this.objects = Files.createDirectories(root.resolve(OBJECTS));
+    this.temp = Files.createDirectories(root.resolve(TEMP));
+    this.manifestFile = root.resolve(MANIFEST);
+    this.maximumBytes = maximumBytes;
+    readManifest();
+    try (Stream<Path> files = Files.walk(objects)) {
+      totalBytes.set(files.filter(Files::isRegularFile)
+          .mapToLong(DiskCacheClassLoaderStrategy::sizeOf)
+          .sum());
+    }
+  }
+
+  /**
+   * Reads the manifest file, compacting it if it contains many superseded
+   * entries.
+   * @throws IOException If the manifest file cannot be read or written.
+   */
+  private void readManifest() throws IOException {
+    int lines = 0;
+    try (BufferedReader reader = Files.newBufferedReader(manifestFile, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        int pos = line.indexOf(' ');
+        if (pos > 0 && pos < line.length() - 1) {
+          manifest.put(line.substring(pos + 1), line.substring(0, pos));
+          lines++;
+        }
+      }
+    } catch (NoSuchFileException e) {
+      return;
+    }
+    if (lines > 2 * manifest.size() + 1024) {
+      Path tmp = Files.createTempFile(temp, MANIFEST, null);
+      try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+        for (Map.Entry<String, String> entry : manifest.entrySet()) {
+          writeManifestEntry(writer, entry.getKey(), entry.getValue());
+        }
+      }
+      move(tmp, manifestFile);
+    }
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.classloader.ClassLoaderStrategy#getClassDefinition(java.lang.String)
+   */
+  @Override
+  public ByteBuffer getClassDefinition(String name) {
+    try {
+      String digest = manifest.get(name);
+      if (digest != null) {
+        ByteBuffer def = readObject(digest);
+        if (def != null) {
+          return def;
+        }
+        manifest.remove(name, digest);
+      }
+
+      ByteBuffer def = source.getClassDefinition(name);
+      if (def != null) {
+        store(name, def.duplicate());
+      }
+      return def;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Reads a stored definition.
+   * @param digest The digest of the definition.
+   * @return The definition, or <code>null</code> if it is not in the store.
+   * @throws IOException If the definition cannot be read.
+   */
+  private ByteBuffer readObject(String digest) throws IOException {
+    Path file = objectPath(digest);
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      ByteBuffer def;
+      if (size > MAP_THRESHOLD) {
+        def = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      } else {
+        def = ByteBuffer.allocate((int) size);
+        while (def.hasRemaining()) {
+          if (channel.read(def) < 0) {
+            throw new EOFException(file.toString());
+          }
+        }
+        def.flip();
+      }
+      if (touched.add(digest)) {
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+      }
+      return def;
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Adds a definition to the store.
+   * @param name The name of the class.
+   * @param def The definition of the class.
+   * @throws IOException If the definition cannot be written.
+   */
+  private void store(String name, ByteBuffer def) throws IOException {
+    String digest = digest(def.duplicate());
+    Path file = objectPath(digest);
+    if (!Files.exists(file)) {
+      Files.createDirectories(file.getParent());
+      Path tmp = Files.createTempFile(temp, digest, null);
+      try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+        while (def.hasRemaining()) {
+          channel.write(def);
+        }
+      }
+      long size = Files.size(tmp);
+
+      /* Another thread may have stored the same definition in the meantime,
+       * and moving over it would count its size twice.
+       */
+      lock.lock();
+      try {
+        if (Files.exists(file)) {
+          Files.delete(tmp);
+        } else {
+          move(tmp, file);
+          totalBytes.addAndGet(size);
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+    touched.add(digest);
+
+    lock.lock();
+    try {
+      manifest.put(name, digest);
+      try (Writer writer = Files.newBufferedWriter(manifestFile,
+          StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+          StandardOpenOption.APPEND)) {
+        writeManifestEntry(writer, name, digest);
+      }
+    } finally {
+      lock.unlock();
+    }
+
+    if (totalBytes.get() > maximumBytes) {
+      cleanUp();
+    }
+  }
+
+  /**
+   * Deletes the least recently used definitions until the store is within
+   * its size bound.  If another thread is already cleaning up, this method
+   * returns immediately.
+   * @throws IOException If the store cannot be read.
+   */
+  public void cleanUp() throws IOException {
+    if (!lock.tryLock()) {
+      return;
+    }
+    try {
+      List<Path> files = new ArrayList<Path>();
+      Map<Path, BasicFileAttributes> attributes = new HashMap<Path, BasicFileAttributes>();
+      long total = 0;
+      try (Stream<Path> stream = Files.walk(objects)) {
+        for (Path file : (Iterable<Path>) stream::iterator) {
+          BasicFileAttributes attr;
+          try {
+            attr = Files.readAttributes(file, BasicFileAttributes.class);
+          } catch (NoSuchFileException e) {
+            continue;
+          }
+          if (attr.isRegularFile()) {
+            files.add(file);
+            attributes.put(file, attr);
+            total += attr.size();
+          }
+        }
+      }
+      files.sort(Comparator.comparing(file -> attributes.get(file).lastModifiedTime()));
+
+      long target = (long) (CLEANUP_TARGET * maximumBytes);
+      for (Path file : files) {
+        if (total <= target) {
+          break;
+        }
+        if (Files.deleteIfExists(file)) {
+          touched.remove(file.getFileName().toString());
+        }
+        total -= attributes.get(file).size();
+      }
+      totalBytes.set(total);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Removes a class from the manifest, so that its definition will next be
+   * obtained from the underlying strategy.
+   * @param name The name of the class.
+   */
+  public void invalidate(String name) {
+    manifest.remove(name);
+  }
+
+  /**
+   * Gets the approximate total size of the stored definitions.
+   * @return The total size of the stored definitions, in bytes.
+   */
+  public long getTotalBytes() {
+    return totalBytes.get();
+  }
+
+  /**
+   * Gets the path of the file for a stored definition.
+   * @param digest The digest of the definition.
+   * @return The path of the file for the definition.
+   */
+  private Path objectPath(String digest) {
+    return objects.resolve(digest.substring(0, 2)).resolve(digest);
+  }
+
+  /**
+   * Computes the digest that addresses a definition.
+   * @param def The definition.
+   * @return The hexadecimal digest of <code>def</code>.
+   */
+  private static String digest(ByteBuffer def) {
+    try (ObjectPool.Lease<MessageDigest> lease = digests.lease()) {
+      MessageDigest md = lease.get();
+      md.update(def);
+      return HexCodec.LOWER.encodeToString(md.digest());
+    }
+  }
+
+  /**
+   * Moves a file into place, replacing any existing file.  The move is
+   * atomic where the file system supports it.
+   * @param from The file to move.
+   * @param to The destination.
+   * @throws IOException If the file cannot be moved.
+   */
+  private static void move(Path from, Path to) throws IOException {
+    try {
+      Files.move(from, to, StandardCopyOption.ATOMIC_MOVE);
+    } catch (FileAlreadyExistsException | AtomicMoveNotSupportedException e) {
+      Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /**
+   * Writes a line of the manifest.
+   * @param writer The <code>Writer</code> to write to.
+   * @param name The name of the class.
+   * @param digest The digest of the class' definition.
+   * @throws IOException If an error occurs while writing.
+   */
+  private static void writeManifestEntry(Writer writer, String name,
+      String digest) throws IOException {
+    writer.write(digest);
+    writer.write(' ');
+    writer.write(name);
+    writer.write('\n');
+  }
+
+  /**
+   * Gets the size of a file.
+   * @param file The file.
+   * @return The size of the file, or zero if it cannot be read.
+   */
+  private static long sizeOf(Path file) {
+    try {
+      return Files.size(file);
+    } catch (IOException e) {
+      return 0;
+    }
+  }
+
+}
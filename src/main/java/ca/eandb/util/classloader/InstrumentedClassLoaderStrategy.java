@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.classloader;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A <code>ClassLoaderStrategy</code> decorator that records the latency,
+ * hits, misses and bytes served by another strategy in a
+ * {@link ClassLoaderMetrics} instance.  When recording is disabled, lookups
+ * are passed straight through.
+ * @author Brad Kimmel
+ */
+public final class InstrumentedClassLoaderStrategy implements ClassLoaderStrategy {
+
+  /** The <code>ClassLoaderStrategy</code> being measured. */
+  private final ClassLoaderStrategy inner;
+
+  /** The <code>ClassLoaderMetrics</code> to record to. */
+  private final ClassLoaderMetrics metrics;
+
+  /**
+   * Creates a new <code>InstrumentedClassLoaderStrategy</code>.
+   * @param inner The <code>ClassLoaderStrategy</code> to measure.
+   * @param name The name under which to record metrics.  Strategies with the
+   *     same name share metrics.
+   * @see ClassLoaderMetrics#forName(String)
+   */
+  public InstrumentedClassLoaderStrategy(ClassLoaderStrategy inner, String name) {
+    this.inner = inner;
+    this.metrics = ClassLoaderMetrics.forName(name);
+  }
+
+  /**
+   * Gets the metrics recorded for this strategy.
+   * @return The <code>ClassLoaderMetrics</code> for this strategy.
+   */
+  public ClassLoaderMetrics getMetrics() {
+    return metrics;
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.classloader.ClassLoaderStrategy#getClassDefinition(java.lang.String)
+   */
+  @Override
+  public ByteBuffer getClassDefinition(String name) {
+    if (!ClassLoaderMetrics.isEnabled()) {
+      return inner.getClassDefinition(name);
+    }
+    long start = System.nanoTime();
+    ByteBuffer def = inner.getClassDefinition(name);
+    metrics.recordLookup(System.nanoTime() - start, def != null ? def.remaining() : -1);
+    return def;
+  }
+
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.classloader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import ca.eandb.util.ClassUtil;
+import ca.eandb.util.concurrent.ObjectPool;
+
+/**
+ * A <code>ClassLoaderStrategy</code> that loads class definitions from a jar
+ * file.  The jar file is memory mapped and its central directory is indexed
+ * once, when the strategy is created.  Definitions of classes stored without
+ * compression are returned as slices of the mapped file, without copying.
+ * Compressed definitions are inflated using pooled <code>Inflater</code>s.
+ *
+ * ZIP64 archives and archives larger than 2 GiB are not supported.
+ *
+ * @author Brad Kimmel
+ */
+public final class JarClassLoaderStrategy implements ClassLoaderStrategy {
+
+  /** The signature of the end of central directory record. */
+  private static final int END_SIGNATURE = 0x06054b50;
+
+  /** The signature of a central directory file header. */
+  private static final int CENTRAL_SIGNATURE = 0x02014b50;
+
+  /** The signature of a local file header. */
+  private static final int LOCAL_SIGNATURE = 0x04034b50;
+
+  /** The size of the end of central directory record, without comment. */
+  private static final int END_SIZE = 22;
+
+  /** The size of a central directory file header, without variable fields. */
+  private static final int CENTRAL_SIZE = 46;
+
+  /** The size of a local file header, without variable fields. */
+  private static final int LOCAL_SIZE = 30;
+
+  /** The compression method for entries that are not compressed. */
+  private static final int STORED = 0;
+
+  /** The compression method for entries compressed using DEFLATE. */
+  private static final int DEFLATED = 8;
+
+  /** The size of the buffers used to feed compressed data to inflaters. */
+  private static final int INPUT_BUFFER_SIZE = 8192;
+
+  /** The pool of <code>Inflater</code>s for raw DEFLATE data. */
+  private static final ObjectPool<Inflater> inflaters = ObjectPool.inflaters(true);
+
+  /** The pool of buffers used to feed compressed data to inflaters. */
+  private static final ObjectPool<byte[]> inputBuffers =
+      new ObjectPool.Builder<byte[]>(() -> new byte[INPUT_BUFFER_SIZE]).build();
+
+  /** The jar file. */
+  private final File file;
+
+  /** The contents of the jar file, in little-endian order. */
+  private final ByteBuffer mapped;
+
+  /** The class file entries, keyed by resource name. */
+  private final Map<String, Entry> entries;
+
+  /**
+   * Creates a new <code>JarClassLoaderStrategy</code>.
+   * @param file The jar file to load classes from.
+   * @throws IOException If the jar file cannot be read or is not a valid
+   *     zip archive.
+   */
+  public JarClassLoaderStrategy(File file) throws IOException {
+    this.file = file;
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new ZipException(
+            String.format("Jar file too large: '%s'", file));
+      }
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+      this.mapped = buffer;
+    }
+    this.entries = readCentralDirectory();
+  }
+
+  /**
+   * Indexes the class file entries in the central directory.
+   * @return The class file entries, keyed by resource name.
+   * @throws ZipException If the jar file is not a valid zip archive.
+   */
+  private Map<String, Entry> readCentralDirectory() throws ZipException {
+    ByteBuffer buf = mapped;
+    int end = buf.limit() - END_SIZE;
+    int stop = Math.max(0, end - 0xffff);
+    while (end >= stop && buf.getInt(end) != END_SIGNATURE) {
+      end--;
+    }
+    if (end < stop) {
+      throw new ZipException(
+          String.format("End of central directory not found: '%s'", file));
+    }
+
+    int count = buf.getShort(end + 10) & 0xffff;
+    long offset = buf.getInt(end + 16) & 0xffffffffL;
+    if (count == 0xffff || offset == 0xffffffffL) {
+      throw new ZipException(
+          String.format("ZIP64 archives are not supported: '%s'", file));
+    }
+
+    Map<String, Entry> index = new HashMap<String, Entry>(2 * count);
+    try {
+      int pos = (int) offset;
+      for (int i = 0; i < count; i++) {
+        if (buf.getInt(pos) != CENTRAL_SIGNATURE) {
+          throw new ZipException(
+              String.format("Invalid central directory: '%s'", file));
+        }
+        int nameLength = buf.getShort(pos + 28) & 0xffff;
+        int extraLength = buf.getShort(pos + 30) & 0xffff;
+        int commentLength = buf.getShort(pos + 32) & 0xffff;
+        String name = decodeName(pos + CENTRAL_SIZE, nameLength);
+        if (name.endsWith(".class")) {
+          index.put(name, new Entry(
+              buf.getShort(pos + 10) & 0xffff,
+              buf.getInt(pos + 20) & 0xffffffffL,
+              buf.getInt(pos + 24) & 0xffffffffL,
+              buf.getInt(pos + 42) & 0xffffffffL));
+        }
+        pos += CENTRAL_SIZE + nameLength + extraLength + commentLength;
+      }
+    } catch (IndexOutOfBoundsException e) {
+      throw new ZipException(
+          String.format("Truncated central directory: '%s'", file));
+    }
+    return index;
+  }
+
+  /**
+   * Decodes an entry name from the mapped jar file.
+   * @param pos The position of the name.
+   * @param length The length of the name, in bytes.
+   * @return The decoded name.
+   */
+  private String decodeName(int pos, int length) {
+    byte[] bytes = new byte[length];
+    ByteBuffer buf = mapped.duplicate();
+    buf.position(pos);
+    buf.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Gets the names of the classes in the jar file.
+   * @return An unmodifiable set of the binary names of the classes in the
+   *     jar file.
+   */
+  public Set<String> getClassNames() {
+    Set<String> names = new HashSet<String>(2 * entries.size());
+    for (String resourceName : entries.keySet()) {
+      names.add(ClassUtil.getClassName(resourceName));
+    }
+    return Collections.unmodifiableSet(names);
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.classloader.ClassLoaderStrategy#getClassDefinition(java.lang.String)
+   */
+  @Override
+  public ByteBuffer getClassDefinition(String name) {
+    Entry entry = entries.get(ClassUtil.getResourceName(name));
+    if (entry == null) {
+      return null;
+    }
+    try {
+      ByteBuffer data = getData(entry);
+      switch (entry.method) {
+      case STORED:
+        return data;
+
+      case DEFLATED:
+        return inflate(data, entry);
+
+      default:
+        throw new ZipException(String.format(
+            "Unsupported compression method %d for class '%s' in '%s'",
+            entry.method, name, file));
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Gets the (possibly compressed) data for an entry.
+   * @param entry The <code>Entry</code> to get.
+   * @return A slice of the mapped jar file containing the entry's data.
+   * @throws ZipException If the local header for the entry is invalid.
+   */
+  private ByteBuffer getData(Entry entry) throws ZipException {
+    int pos = entry.dataOffset;
+    if (pos < 0) {
+      int header = (int) entry.headerOffset;
+      if (header < 0 || header > mapped.limit() - LOCAL_SIZE
+          || mapped.getInt(header) != LOCAL_SIGNATURE) {
+        throw new ZipException(
+            String.format("Invalid local header: '%s'", file));
+      }
+      pos = header + LOCAL_SIZE + (mapped.getShort(header + 26) & 0xffff)
+          + (mapped.getShort(header + 28) & 0xffff);
+      entry.dataOffset = pos;
+    }
+    if (entry.compressedSize > mapped.limit() - pos) {
+      throw new ZipException(String.format("Truncated entry: '%s'", file));
+    }
+    ByteBuffer data = mapped.duplicate();
+    data.position(pos);
+    data.limit(pos + (int) entry.compressedSize);
+    return data.slice();
+  }
+
+  /**
+   * Inflates the data for an entry.
+   * @param data The compressed data.
+   * @param entry The <code>Entry</code> being inflated.
+   * @return A buffer containing the uncompressed data.
+   * @throws ZipException If the compressed data is invalid.
+   */
+  private ByteBuffer inflate(ByteBuffer data, Entry entry) throws ZipException {
+    if (entry.uncompressedSize > Integer.MAX_VALUE) {
+      throw new ZipException(String.format("Entry too large: '%s'", file));
+    }
+    byte[] result = new byte[(int) entry.uncompressedSize];
+    Inflater inflater = inflaters.borrow();
+    byte[] input = inputBuffers.borrow();
+    try {
+      int n = 0;
+      while (n < result.length) {
+        if (inflater.needsInput()) {
+          if (!data.hasRemaining()) {
+            throw new ZipException(String.format("Truncated entry: '%s'", file));
+          }
+          int chunk = Math.min(input.length, data.remaining());
+          data.get(input, 0, chunk);
+          inflater.setInput(input, 0, chunk);
+        }
+        int inflated = inflater.inflate(result, n, result.length - n);
+        if (inflated == 0 && (inflater.finished() || inflater.needsDictionary())) {
+          break;
+        }
+        n += inflated;
+      }
+      if (n != result.length) {
+        throw new ZipException(String.format("Truncated entry: '%s'", file));
+      }
+    } catch (DataFormatException e) {
+      ZipException ze = new ZipException(
+          String.format("Invalid compressed data: '%s'", file));
+      ze.initCause(e);
+      throw ze;
+    } finally {
+      inputBuffers.release(input);
+      inflaters.release(inflater);
+    }
+    return ByteBuffer.wrap(result);
+  }
+
+  /**
+   * The location of a class file within the jar file.
+   */
+  private static final class Entry {
+
+    /** The compression method. */
+    final int method;
+
+    /** The size of the entry's data in the jar file. */
+    final long compressedSize;
+
+    /** The size of the class file. */
+    final long uncompressedSize;
+
+    /** The position of the entry's local header. */
+    final long headerOffset;
+
+    /**
+     * The position of the entry's data, or <code>-1</code> if the local
+     * header has not been read yet.
+     */
+    volatile int dataOffset = -1;
+
+    /**
+     * Creates a new <code>Entry</code>.
+     * @param method The compression method.
+     * @param compressedSize The size of the entry's data in the jar file.
+     * @param uncompressedSize The size of the class file.
+     * @param headerOffset The position of the entry's local header.
+     */
+    Entry(int method, long compressedSize, long uncompressedSize,
+        long headerOffset) {
+      this.method = method;
+      this.compressedSize = compressedSize;
+      this.uncompressedSize = uncompressedSize;
+      this.headerOffset = headerOffset;
+    }
+
+  }
+
+}
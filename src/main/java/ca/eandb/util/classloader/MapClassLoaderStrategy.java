@@ -26,12 +26,13 @@
 package ca.eandb.util.classloader;
 
 import java.nio.ByteBuffer;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A <code>ClassLoaderStrategy</code> that loads class definitions from a
- * <code>Map</code>.
+ * <code>Map</code>.  Unless a <code>Map</code> is supplied at construction,
+ * class definitions may be set while other threads are loading classes.
  * @author Brad Kimmel
  */
 public final class MapClassLoaderStrategy implements ClassLoaderStrategy {
@@ -43,13 +44,15 @@ public final class MapClassLoaderStrategy implements ClassLoaderStrategy {
    * Creates a new <code>MapClassLoaderStrategy</code>.
    */
   public MapClassLoaderStrategy() {
-    this.classDefs = new HashMap<String, ByteBuffer>();
+    this.classDefs = new ConcurrentHashMap<String, ByteBuffer>();
   }
 
   /**
    * Creates a new <code>MapClassLoaderStrategy</code>.
    * @param classDefs The <code>Map</code> from which to get class
-   *     definitions.
+   *     definitions.  If classes are to be loaded from multiple threads
+   *     while definitions are being set, this should be a concurrent
+   *     <code>Map</code>.
    */
   public MapClassLoaderStrategy(Map<String, ByteBuffer> classDefs) {
     this.classDefs = classDefs;
@@ -59,25 +62,36 @@ public final class MapClassLoaderStrategy implements ClassLoaderStrategy {
    * @see ca.eandb.util.classloader.ClassLoaderStrategy#getClassDefinition(java.lang.String)
    */
   public ByteBuffer getClassDefinition(String name) {
-    return classDefs.get(name);
+    ByteBuffer def = classDefs.get(name);
+
+    /* Defining a class consumes the buffer, so give each caller its own
+     * position and limit.
+     */
+    return def != null ? def.duplicate() : null;
   }
 
   /**
    * Sets the definition of a class.
    * @param name The name of the class to define.
-   * @param def The definition of the class.
+   * @param def The definition of the class, or <code>null</code> to remove
+   *     the definition.
    */
   public void setClassDefinition(String name, byte[] def) {
-    classDefs.put(name, ByteBuffer.wrap(def));
+    setClassDefinition(name, def != null ? ByteBuffer.wrap(def) : null);
   }
 
   /**
    * Sets the definition of a class.
    * @param name The name of the class to define.
-   * @param def The definition of the class.
+   * @param def The definition of the class, or <code>null</code> to remove
+   *     the definition.
    */
   public void setClassDefinition(String name, ByteBuffer def) {
-    classDefs.put(name, def);
+    if (def != null) {
+      classDefs.put(name, def);
+    } else {
+      classDefs.remove(name);
+    }
   }
 
 }
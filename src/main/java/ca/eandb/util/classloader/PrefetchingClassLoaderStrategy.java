@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.classloader;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import ca.eandb.util.concurrent.BackgroundThreadFactory;
+
+/**
+ * A <code>ClassLoaderStrategy</code> decorator that anticipates which classes
+ * will be requested next.  Whenever a class definition is obtained, its
+ * constant pool is parsed and the classes it references are requested from
+ * the underlying <code>BatchClassLoaderStrategy</code> in the background, in
+ * a single batch.  The definitions found in each batch are parsed in turn,
+ * and the classes they reference are requested in the next batch, so the
+ * whole reachable set of classes is fetched in about one round trip per
+ * level of the reference graph rather than one round trip per class.
+ *
+ * Prefetched definitions are held until they are requested or until
+ * {@link #clear()} is called.  Prefetching is best effort: if a batch
+ * cannot be fetched, or a definition cannot be parsed, the affected classes
+ * are simply requested directly when they are needed.
+ *
+ * @author Brad Kimmel
+ * @see ClassFileParser
+ */
+public final class PrefetchingClassLoaderStrategy implements ClassLoaderStrategy {
+
+  /**
+   * The number of seconds that an idle thread of the shared executor waits
+   * for work before terminating.
+   */
+  private static final long KEEP_ALIVE_SECONDS = 30;
+
+  /**
+   * The <code>Executor</code> used by instances that are not given one.  Its
+   * threads are daemon threads that terminate when idle, so it need not be
+   * shut down.
+   */
+  private static final Executor sharedExecutor = createSharedExecutor();
+
+  /** The <code>BatchClassLoaderStrategy</code> to obtain definitions from. */
+  private final BatchClassLoaderStrategy source;
+
+  /** The filter selecting which referenced classes to prefetch. */
+  private final Predicate<String> filter;
+
+  /** The <code>Executor</code> on which to run batch requests. */
+  private final Executor executor;
+
+  /** The outstanding and completed prefetches, keyed by class name. */
+  private final Map<String, CompletableFuture<ByteBuffer>> prefetched =
+      new ConcurrentHashMap<String, CompletableFuture<ByteBuffer>>();
+
+  /** The names of the classes that have been requested. */
+  private final Set<String> requested = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Creates a new <code>PrefetchingClassLoaderStrategy</code> that prefetches
+   * all referenced classes outside the <code>java</code> package, using a
+   * pool of background threads shared by all such instances.
+   * @param source The <code>BatchClassLoaderStrategy</code> to obtain class
+   *     definitions from.
+   */
+  public PrefetchingClassLoaderStrategy(BatchClassLoaderStrategy source) {
+    this(source, name -> !name.startsWith("java."), sharedExecutor);
+  }
+
+  /**
+   * Creates a new <code>PrefetchingClassLoaderStrategy</code>.
+   * @param source The <code>BatchClassLoaderStrategy</code> to obtain class
+   *     definitions from.
+   * @param filter The filter selecting which referenced classes to prefetch.
+   * @param executor The <code>Executor</code> on which to run batch
+   *     requests.
+   */
+  public PrefetchingClassLoaderStrategy(BatchClassLoaderStrategy source,
+      Predicate<String> filter, Executor executor) {
+    this.source = source;
+    this.filter = filter;
+    this.executor = executor;
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.classloader.ClassLoaderStrategy#getClassDefinition(java.lang.String)
+   */
+  @Override
+  public ByteBuffer getClassDefinition(String name) {
+    ByteBuffer def = null;
+    boolean found = false;
+    CompletableFuture<ByteBuffer> future = prefetched.remove(name);
+    if (future != null) {
+      try {
+        def = future.join();
+        found = true;
+      } catch (CompletionException e) {
+        /* The batch failed, so fall back to requesting the class directly. */
+      }
+    }
+    if (!found) {
+      requested.add(name);
+      def = source.getClassDefinition(name);
+      if (def != null) {
+        prefetchReferences(Collections.singleton(def));
+      }
+    }
+    return def;
+  }
+
+  /**
+   * Discards all prefetched definitions and forgets which classes have been
+   * requested.
+   */
+  public void clear() {
+    prefetched.clear();
+    requested.clear();
+  }
+
+  /**
+   * Requests, in a single background batch, the classes referenced by some
+   * class definitions that have not already been requested.
+   * @param defs The class definitions.
+   */
+  private void prefetchReferences(Collection<ByteBuffer> defs) {
+    Set<String> refs = new LinkedHashSet<String>();
+    for (ByteBuffer def : defs) {
+      try {
+        refs.addAll(ClassFileParser.getReferencedClasses(def));
+      } catch (RuntimeException e) {
+        /* Prefetching is best effort, so skip definitions we can't parse. */
+      }
+    }
+
+    final List<String> batch = new ArrayList<String>();
+    final List<CompletableFuture<ByteBuffer>> futures =
+        new ArrayList<CompletableFuture<ByteBuffer>>();
+    try {
+      for (String ref : refs) {
+        if (filter.test(ref) && requested.add(ref)) {
+          CompletableFuture<ByteBuffer> future = new CompletableFuture<ByteBuffer>();
+          prefetched.put(ref, future);
+          batch.add(ref);
+          futures.add(future);
+        }
+      }
+
+      if (!batch.isEmpty()) {
+        executor.execute(() -> fetch(batch, futures));
+      }
+    } catch (RuntimeException e) {
+      /* The batch will never be sent, so release anyone waiting on it. */
+      fail(futures, e);
+    }
+  }
+
+  /**
+   * Fetches a batch of class definitions and completes the corresponding
+   * futures.
+   * @param batch The names of the classes to fetch.
+   * @param futures The futures to complete, in the same order as
+   *     <code>batch</code>.
+   */
+  private void fetch(List<String> batch, List<CompletableFuture<ByteBuffer>> futures) {
+    Map<String, ByteBuffer> defs;
+    try {
+      defs = source.getClassDefinitions(batch);
+    } catch (RuntimeException e) {
+      fail(futures, e);
+      return;
+    }
+
+    /* Queue the next level before handing out this one, so that the next
+     * batch is in flight while the loader defines these classes.
+     */
+    try {
+      List<ByteBuffer> found = new ArrayList<ByteBuffer>(defs.size());
+      for (ByteBuffer def : defs.values()) {
+        if (def != null) {
+          found.add(def.duplicate());
+        }
+      }
+      prefetchReferences(found);
+    } finally {
+      for (int i = 0, n = batch.size(); i < n; i++) {
+        futures.get(i).complete(defs.get(batch.get(i)));
+      }
+    }
+  }
+
+  /**
+   * Completes futures exceptionally, so that their classes are requested
+   * directly.
+   * @param futures The futures to complete.
+   * @param cause The reason that the futures could not be completed
+   *     normally.
+   */
+  private static void fail(List<CompletableFuture<ByteBuffer>> futures,
+      Throwable cause) {
+    for (CompletableFuture<ByteBuffer> future : futures) {
+      future.completeExceptionally(cause);
+    }
+  }
+
+  /**
+   * Creates the <code>Executor</code> used by instances that are not given
+   * one.
+   * @return The new <code>Executor</code>.
+   */
+  private static Executor createSharedExecutor() {
+    int threads = Runtime.getRuntime().availableProcessors();
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+        KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(), new BackgroundThreadFactory());
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+}
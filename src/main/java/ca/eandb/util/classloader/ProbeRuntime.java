@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.classloader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the call counts and times of methods instrumented by
+ * {@link ProfilingTransformer}.  Instrumented methods call
+ * {@link #enter(int)} and {@link #exit(int, long)}, which are not intended
+ * to be called directly.  Times are inclusive of the time spent in methods
+ * called by the instrumented method, including recursive calls.
+ *
+ * @author Brad Kimmel
+ */
+public final class ProbeRuntime {
+
+  /** The number of bits of a probe identifier that index within a chunk. */
+  private static final int CHUNK_BITS = 10;
+
+  /** The number of probes in each chunk. */
+  private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+  /** A value indicating whether calls are being recorded. */
+  private static volatile boolean enabled = true;
+
+  /**
+   * The registered probes, in chunks so that the table may grow without
+   * moving existing probes.  Reassigned after each registration so that
+   * readers see newly registered probes.
+   */
+  private static volatile Probe[][] chunks = new Probe[0][];
+
+  /** The number of registered probes. */
+  private static int probeCount = 0;
+
+  /**
+   * The identifiers of the registered probes, keyed by class name, method
+   * name and descriptor.  Guarded by the <code>ProbeRuntime</code> class.
+   */
+  private static final Map<String, Integer> probeIds = new HashMap<String, Integer>();
+
+  /**
+   * Registers a method to be profiled.  A method that is registered again,
+   * for example because its class is loaded by another class loader, shares
+   * the probe that was registered first.
+   * @param className The binary name of the class declaring the method.
+   * @param methodName The name of the method.
+   * @param descriptor The descriptor of the method.
+   * @return The identifier to pass to {@link #enter(int)} and
+   *     {@link #exit(int, long)}.
+   */
+  static synchronized int register(String className, String methodName,
+      String descriptor) {
+    String key = className + '.' + methodName + descriptor;
+    Integer existing = probeIds.get(key);
+    if (existing != null) {
+      return existing;
+    }
+    int id = probeCount++;
+    Probe[][] table = chunks;
+    int chunk = id >>> CHUNK_BITS;
+    if (chunk == table.length) {
+      Probe[][] grown = new Probe[chunk + 1][];
+      System.arraycopy(table, 0, grown, 0, table.length);
+      grown[chunk] = new Probe[CHUNK_SIZE];
+      table = grown;
+    }
+    table[chunk][id & (CHUNK_SIZE - 1)] = new Probe(className, methodName, descriptor);
+    chunks = table;
+    probeIds.put(key, id);
+    return id;
+  }
+
+  /**
+   * Called on entry to an instrumented method.
+   * @param id The identifier of the method.
+   * @return The time of entry, to pass to {@link #exit(int, long)}, or zero
+   *     if recording is disabled.
+   */
+  public static long enter(int id) {
+    return enabled ? System.nanoTime() : 0L;
+  }
+
+  /**
+   * Called on exit from an instrumented method, whether normally or by
+   * throwing an exception.
+   * @param id The identifier of the method.
+   * @param start The value returned by {@link #enter(int)}.
+   */
+  public static void exit(int id, long start) {
+    if (start != 0L) {
+      long elapsed = System.nanoTime() - start;
+      Probe probe = chunks[id >>> CHUNK_BITS][id & (CHUNK_SIZE - 1)];
+      probe.calls.increment();
+      probe.nanos.add(elapsed);
+    }
+  }
+
+  /**
+   * Determines if calls are being recorded.
+   * @return A value indicating if calls are being recorded.
+   */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Enables or disables recording of calls.  When disabled, instrumented
+   * methods only read this flag on entry and exit.
+   * @param enabled A value indicating whether calls should be recorded.
+   */
+  public static void setEnabled(boolean enabled) {
+    ProbeRuntime.enabled = enabled;
+  }
+
+  /**
+   * Gets the recorded profile of each method that has been called.
+   * @return The <code>MethodProfile</code>s for the methods that have been
+   *     called, in decreasing order of total time.
+   */
+  public static List<MethodProfile> snapshot() {
+    List<MethodProfile> profiles = new ArrayList<MethodProfile>();
+    Probe[][] table = chunks;
+    for (Probe[] chunk : table) {
+      for (Probe probe : chunk) {
+        if (probe != null) {
+          long calls = probe.calls.sum();
+          if (calls > 0) {
+            profiles.add(new MethodProfile(probe, calls, probe.nanos.sum()));
+          }
+        }
+      }
+    }
+    Collections.sort(profiles, (a, b) -> Long.compare(b.totalNanos, a.totalNanos));
+    return profiles;
+  }
+
+  /**
+   * Resets the call counts and times of all methods to zero.
+   */
+  public static void reset() {
+    for (Probe[] chunk : chunks) {
+      for (Probe probe : chunk) {
+        if (probe != null) {
+          probe.calls.reset();
+          probe.nanos.reset();
+        }
+      }
+    }
+  }
+
+  /**
+   * The counters for an instrumented method.
+   */
+  private static final class Probe {
+
+    /** The binary name of the class declaring the method. */
+    final String className;
+
+    /** The name of the method. */
+    final String methodName;
+
+    /** The descriptor of the method. */
+    final String descriptor;
+
+    /** The number of calls. */
+    final LongAdder calls = new LongAdder();
+
+    /** The total time spent in the method, in nanoseconds. */
+    final LongAdder nanos = new LongAdder();
+
+    /**
+     * Creates a new <code>Probe</code>.
+     * @param className The binary name of the class declaring the method.
+     * @param methodName The name of the method.
+     * @param descriptor The descriptor of the method.
+     */
+    Probe(String className, String methodName, String descriptor) {
+      this.className = className;
+      this.methodName = methodName;
+      this.descriptor = descriptor;
+    }
+
+  }
+
+  /**
+   * The recorded calls to a method.
+   */
+  public static final class MethodProfile {
+
+    /** The binary name of the class declaring the method. */
+    private final String className;
+
+    /** The name of the method. */
+    private final String methodName;
+
+    /** The descriptor of the method. */
+    private final String descriptor;
+
+    /** The number of calls. */
+    private final long calls;
+
+    /** The total time spent in the method, in nanoseconds. */
+    private final long totalNanos;
+
+    /**
+     * Creates a new <code>MethodProfile</code>.
+     * @param probe The <code>Probe</code> for the method.
+     * @param calls The number of calls.
+     * @param totalNanos The total time spent in the method.
+     */
+    private MethodProfile(Probe probe, long calls, long totalNanos) {
+      this.className = probe.className;
+      this.methodName = probe.methodName;
+      this.descriptor = probe.descriptor;
+      this.calls = calls;
+      this.totalNanos = totalNanos;
+    }
+
+    /**
+     * Gets the binary name of the class declaring the method.
+     * @return The binary name of the class declaring the method.
+     */
+    public String getClassName() {
+      return className;
+    }
+
+    /**
+     * Gets the name of the method.
+     * @return The name of the method.
+     */
+    public String getMethodName() {
+      return methodName;
+    }
+
+    /**
+     * Gets the descriptor of the method.
+     * @return The descriptor of the method.
+     */
+    public String getDescriptor() {
+      return descriptor;
+    }
+
+    /**
+     * Gets the number of calls to the method.
+     * @return The number of calls.
+     */
+    public long getCallCount() {
+      return calls;
+    }
+
+    /**
+     * Gets the total time spent in the method.
+     * @return The total time, in nanoseconds.
+     */
+    public long getTotalNanos() {
+      return totalNanos;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+      return String.format("%s.%s%s: calls=%d, total=%.3fms, mean=%.3fus",
+          className, methodName, descriptor, calls, totalNanos / 1e6,
+          totalNanos / 1e3 / calls);
+    }
+
+  }
+
+  /** Declared private to prevent this class from being instantiated. */
+  private ProbeRuntime() {}
+
+}
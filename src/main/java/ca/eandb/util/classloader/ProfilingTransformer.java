@@ -0,0 +1,684 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.classloader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import ca.eandb.util.UnexpectedException;
+
+/**
+ * A <code>ClassTransformer</code> that instruments the methods of selected
+ * classes to record their call counts and times in {@link ProbeRuntime}.
+ *
+ * Each instrumented method is renamed to
+ * <code>&lt;name&gt;$probe$original</code> and made private, leaving its
+ * code untouched, and a method with the original name, descriptor and
+ * attributes is added that calls it between calls to
+ * {@link ProbeRuntime#enter(int)} and {@link ProbeRuntime#exit(int, long)}
+ * (the latter in a <code>finally</code> block).  Constructors, static
+ * initializers, abstract, native, bridge and synthetic methods, and the
+ * methods of interfaces are not instrumented.  Renamed methods appear in
+ * stack traces and among a class' declared methods.
+ *
+ * <pre>
+ *   StrategyClassLoader loader = new StrategyClassLoader(strategy);
+ *   new ProfilingTransformer("com.example.job").install(loader);
+ *   ...
+ *   for (ProbeRuntime.MethodProfile p : ProbeRuntime.snapshot()) {
+ *     System.out.println(p);
+ *   }
+ * </pre>
+ *
+ * @author Brad Kimmel
+ */
+public final class ProfilingTransformer implements ClassTransformer {
+
+  /** The suffix appended to the names of renamed methods. */
+  private static final String SUFFIX = "$probe$original";
+
+  /** The internal name of {@link ProbeRuntime}. */
+  private static final String RUNTIME = ProbeRuntime.class.getName().replace('.', '/');
+
+  private static final int ACC_PUBLIC = 0x0001;
+  private static final int ACC_PRIVATE = 0x0002;
+  private static final int ACC_PROTECTED = 0x0004;
+  private static final int ACC_STATIC = 0x0008;
+  private static final int ACC_SYNCHRONIZED = 0x0020;
+  private static final int ACC_BRIDGE = 0x0040;
+  private static final int ACC_VARARGS = 0x0080;
+  private static final int ACC_NATIVE = 0x0100;
+  private static final int ACC_INTERFACE = 0x0200;
+  private static final int ACC_ABSTRACT = 0x0400;
+  private static final int ACC_SYNTHETIC = 0x1000;
+  private static final int ACC_MODULE = 0x8000;
+
+  /** The first class file major version that uses stack map frames. */
+  private static final int STACK_MAP_VERSION = 50;
+
+  /** The filter selecting which classes to instrument. */
+  private final Predicate<String> filter;
+
+  /**
+   * Creates a new <code>ProfilingTransformer</code> that instruments the
+   * classes in the specified packages and their subpackages.
+   * @param packages The names of the packages to instrument.
+   */
+  public ProfilingTransformer(final String... packages) {
+    this(name -> {
+      for (String pkg : packages) {
+        if (name.startsWith(pkg) && name.length() > pkg.length()
+            && name.charAt(pkg.length()) == '.') {
+          return true;
+        }
+      }
+      return false;
+    });
+  }
+
+  /**
+   * Creates a new <code>ProfilingTransformer</code>.
+   * @param filter The filter selecting, by binary name, which classes to
+   *     instrument.
+   */
+  public ProfilingTransformer(Predicate<String> filter) {
+    this.filter = filter;
+  }
+
+  /**
+   * Adds this transformer to a class loader, and makes
+   * {@link ProbeRuntime} visible to the classes it loads.
+   * @param loader The <code>StrategyClassLoader</code> to instrument.
+   */
+  public void install(StrategyClassLoader loader) {
+    loader.exportClass(ProbeRuntime.class);
+    loader.addTransformer(this);
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.classloader.ClassTransformer#transform(java.lang.String, java.nio.ByteBuffer)
+   */
+  @Override
+  public ByteBuffer transform(String name, ByteBuffer def) {
+    if (!filter.test(name)) {
+      return null;
+    }
+    try {
+      byte[] result = new Instrumenter(name, def).instrument();
+      return result != null ? ByteBuffer.wrap(result) : null;
+    } catch (IOException e) {
+      throw new UnexpectedException(e);
+    }
+  }
+
+  /**
+   * Rewrites a single class file.
+   */
+  private static final class Instrumenter {
+
+    /** The binary name of the class. */
+    private final String className;
+
+    /** The constant pool of the class file. */
+    private final ClassFileParser.ConstantPool pool;
+
+    /** The class file. */
+    private final ByteBuffer buf;
+
+    /** The constant pool entries added to the class file. */
+    private final ByteArrayOutputStream added = new ByteArrayOutputStream();
+
+    /** The output stream for <code>added</code>. */
+    private final DataOutputStream addedOut = new DataOutputStream(added);
+
+    /** The index of the next constant pool entry to add. */
+    private int nextIndex;
+
+    /** Indices of <code>CONSTANT_Utf8</code> entries, keyed by value. */
+    private final Map<String, Integer> utf8s = new HashMap<String, Integer>();
+
+    /** Indices of <code>CONSTANT_Class</code> entries, keyed by name. */
+    private final Map<String, Integer> classes = new HashMap<String, Integer>();
+
+    /** Indices of other added entries, keyed by a description. */
+    private final Map<String, Integer> others = new HashMap<String, Integer>();
+
+    /**
+     * Creates a new <code>Instrumenter</code>.
+     * @param className The binary name of the class.
+     * @param def The class file.
+     */
+    Instrumenter(String className, ByteBuffer def) {
+      this.className = className;
+      this.pool = new ClassFileParser.ConstantPool(def);
+      this.buf = pool.buffer;
+      this.nextIndex = pool.count;
+      for (int i = 1; i < pool.count; i++) {
+        if (pool.tags[i] == ClassFileParser.CONSTANT_UTF8) {
+          utf8s.putIfAbsent(pool.utf8(i), i);
+        }
+      }
+      for (int i = 1; i < pool.count; i++) {
+        if (pool.tags[i] == ClassFileParser.CONSTANT_CLASS) {
+          classes.putIfAbsent(pool.utf8(pool.u2(i, 0)), i);
+        }
+      }
+    }
+
+    /**
+     * Instruments the class.
+     * @return The instrumented class file, or <code>null</code> if there is
+     *     nothing to instrument.
+     * @throws IOException If an error occurs writing the class file.
+     */
+    byte[] instrument() throws IOException {
+      int major = buf.getShort(6) & 0xffff;
+      int pos = pool.end;
+      int accessFlags = buf.getShort(pos) & 0xffff;
+      int thisClass = buf.getShort(pos + 2) & 0xffff;
+      if ((accessFlags & (ACC_INTERFACE | ACC_MODULE)) != 0) {
+        return null;
+      }
+      pos += 6;
+      pos += 2 + 2 * (buf.getShort(pos) & 0xffff);
+
+      int fieldCount = buf.getShort(pos) & 0xffff;
+      pos += 2;
+      for (int i = 0; i < fieldCount; i++) {
+        pos = skipMember(pos);
+      }
+      int methodsStart = pos;
+
+      int methodCount = buf.getShort(pos) & 0xffff;
+      pos += 2;
+      List<byte[]> methods = new ArrayList<byte[]>();
+      List<byte[]> wrappers = new ArrayList<byte[]>();
+      for (int i = 0; i < methodCount; i++) {
+        int end = skipMember(pos);
+        if (isInstrumentable(pos)) {
+          instrumentMethod(pos, end, thisClass, major, methods, wrappers);
+        } else {
+          methods.add(copy(pos, end));
+        }
+        pos = end;
+      }
+      if (wrappers.isEmpty()) {
+        return null;
+      }
+      if (nextIndex > 0xffff) {
+        throw new IllegalArgumentException("Constant pool too large.");
+      }
+
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(buf.limit() + added.size() + 64 * wrappers.size());
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.write(copy(0, 8));
+      out.writeShort(nextIndex);
+      out.write(copy(10, pool.end));
+      added.writeTo(out);
+      out.write(copy(pool.end, methodsStart));
+      out.writeShort(methods.size() + wrappers.size());
+      for (byte[] method : methods) {
+        out.write(method);
+      }
+      for (byte[] method : wrappers) {
+        out.write(method);
+      }
+      out.write(copy(pos, buf.limit()));
+      out.flush();
+      return bytes.toByteArray();
+    }
+
+    /**
+     * Determines if a method should be instrumented.
+     * @param pos The position of the method_info structure.
+     * @return A value indicating if the method should be instrumented.
+     */
+    private boolean isInstrumentable(int pos) {
+      int access = buf.getShort(pos) & 0xffff;
+      String name = pool.utf8(buf.getShort(pos + 2) & 0xffff);
+      return (access & (ACC_ABSTRACT | ACC_NATIVE | ACC_BRIDGE | ACC_SYNTHETIC)) == 0
+          && !name.startsWith("<");
+    }
+
+    /**
+     * Renames a method and generates the wrapper that replaces it.
+     * @param pos The position of the method_info structure.
+     * @param end The position following the method_info structure.
+     * @param thisClass The constant pool index of this class.
+     * @param major The major version of the class file.
+     * @param methods The list to add the renamed method to.
+     * @param wrappers The list to add the wrapper to.
+     * @throws IOException If an error occurs writing the methods.
+     */
+    private void instrumentMethod(int pos, int end, int thisClass, int major,
+        List<byte[]> methods, List<byte[]> wrappers) throws IOException {
+      int access = buf.getShort(pos) & 0xffff;
+      String name = pool.utf8(buf.getShort(pos + 2) & 0xffff);
+      int descriptorIndex = buf.getShort(pos + 4) & 0xffff;
+      String descriptor = pool.utf8(descriptorIndex);
+      boolean isStatic = (access & ACC_STATIC) != 0;
+
+      /* Split the attributes into the Code attribute, which stays with the
+       * renamed method, and everything else, which moves to the wrapper.
+       */
+      ByteArrayOutputStream code = new ByteArrayOutputStream();
+      ByteArrayOutputStream rest = new ByteArrayOutputStream();
+      int attributeCount = buf.getShort(pos + 6) & 0xffff;
+      int restCount = 0;
+      int p = pos + 8;
+      for (int i = 0; i < attributeCount; i++) {
+        int next = p + 6 + buf.getInt(p + 2);
+        if (pool.utf8(buf.getShort(p) & 0xffff).equals("Code")) {
+          code.write(copy(p, next));
+        } else {
+          rest.write(copy(p, next));
+          restCount++;
+        }
+        p = next;
+      }
+
+      String renamed = name + SUFFIX;
+      int id = ProbeRuntime.register(className, name, descriptor);
+
+      ByteArrayOutputStream original = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(original);
+      out.writeShort((access & ~(ACC_PUBLIC | ACC_PROTECTED | ACC_VARARGS)) | ACC_PRIVATE | ACC_SYNTHETIC);
+      out.writeShort(utf8(renamed));
+      out.writeShort(descriptorIndex);
+      out.writeShort(1);
+      code.writeTo(out);
+      out.flush();
+      methods.add(original.toByteArray());
+
+      byte[] wrapperCode = generateWrapper(id, thisClass, isStatic,
+          methodRef(thisClass, renamed, descriptor), descriptor, major);
+      ByteArrayOutputStream wrapper = new ByteArrayOutputStream();
+      out = new DataOutputStream(wrapper);
+      out.writeShort(access & ~ACC_SYNCHRONIZED);
+      out.writeShort(buf.getShort(pos + 2) & 0xffff);
+      out.writeShort(descriptorIndex);
+      out.writeShort(restCount + 1);
+      rest.writeTo(out);
+      out.write(wrapperCode);
+      out.flush();
+      wrappers.add(wrapper.toByteArray());
+    }
+
+    /**
+     * Generates the Code attribute for a wrapper method.
+     * @param id The probe identifier for the method.
+     * @param thisClass The constant pool index of this class.
+     * @param isStatic A value indicating whether the method is static.
+     * @param target The constant pool index of the renamed method.
+     * @param descriptor The descriptor of the method.
+     * @param major The major version of the class file.
+     * @return The Code attribute.
+     * @throws IOException If an error occurs writing the attribute.
+     */
+    private byte[] generateWrapper(int id, int thisClass, boolean isStatic,
+        int target, String descriptor, int major) throws IOException {
+      int enter = methodRef(classIndex(RUNTIME), "enter", "(I)J");
+      int exit = methodRef(classIndex(RUNTIME), "exit", "(IJ)V");
+
+      /* Parse the parameter types and the return type. */
+      List<String> params = new ArrayList<String>();
+      int i = 1;
+      while (descriptor.charAt(i) != ')') {
+        int start = i;
+        while (descriptor.charAt(i) == '[') {
+          i++;
+        }
+        if (descriptor.charAt(i) == 'L') {
+          i = descriptor.indexOf(';', i);
+        }
+        params.add(descriptor.substring(start, ++i));
+      }
+      char returnType = descriptor.charAt(i + 1);
+
+      int argSlots = isStatic ? 0 : 1;
+      for (String param : params) {
+        argSlots += slots(param.charAt(0));
+      }
+      int timeSlot = argSlots;
+      int throwableSlot = argSlots + 2;
+
+      ByteArrayOutputStream codeBytes = new ByteArrayOutputStream();
+      DataOutputStream code = new DataOutputStream(codeBytes);
+      pushInt(code, id);
+      code.writeByte(0xb8); // invokestatic
+      code.writeShort(enter);
+      local(code, 0x37, timeSlot); // lstore
+
+      int start = codeBytes.size();
+      int slot = 0;
+      if (!isStatic) {
+        local(code, 0x19, slot++); // aload
+      }
+      for (String param : params) {
+        local(code, loadOpcode(param.charAt(0)), slot);
+        slot += slots(param.charAt(0));
+      }
+      code.writeByte(isStatic ? 0xb8 : 0xb7); // invokestatic/invokespecial
+      code.writeShort(target);
+      int end = codeBytes.size();
+
+      pushInt(code, id);
+      local(code, 0x16, timeSlot); // lload
+      code.writeByte(0xb8); // invokestatic
+      code.writeShort(exit);
+      code.writeByte(returnOpcode(returnType));
+
+      int handler = codeBytes.size();
+      local(code, 0x3a, throwableSlot); // astore
+      pushInt(code, id);
+      local(code, 0x16, timeSlot); // lload
+      code.writeByte(0xb8); // invokestatic
+      code.writeShort(exit);
+      local(code, 0x19, throwableSlot); // aload
+      code.writeByte(0xbf); // athrow
+      code.flush();
+
+      /* A full frame at the exception handler. */
+      byte[] stackMap = null;
+      if (major >= STACK_MAP_VERSION) {
+        ByteArrayOutputStream frameBytes = new ByteArrayOutputStream();
+        DataOutputStream frame = new DataOutputStream(frameBytes);
+        frame.writeShort(1);
+        frame.writeByte(255);
+        frame.writeShort(handler);
+        frame.writeShort((isStatic ? 0 : 1) + params.size() + 1);
+        if (!isStatic) {
+          frame.writeByte(7);
+          frame.writeShort(thisClass);
+        }
+        for (String param : params) {
+          writeVerificationType(frame, param);
+        }
+        frame.writeByte(4); // long
+        frame.writeShort(1);
+        frame.writeByte(7);
+        frame.writeShort(classIndex("java/lang/Throwable"));
+        frame.flush();
+        stackMap = frameBytes.toByteArray();
+      }
+
+      int maxStack = Math.max(Math.max(argSlots, 3), slots(returnType) + 3);
+      int maxLocals = throwableSlot + 1;
+
+      ByteArrayOutputStream attrBytes = new ByteArrayOutputStream();
+      DataOutputStream attr = new DataOutputStream(attrBytes);
+      int stackMapName = stackMap != null ? utf8("StackMapTable") : 0;
+      attr.writeShort(utf8("Code"));
+      attr.writeInt(12 + codeBytes.size() + 8
+          + (stackMap != null ? 6 + stackMap.length : 0));
+      attr.writeShort(maxStack);
+      attr.writeShort(maxLocals);
+      attr.writeInt(codeBytes.size());
+      codeBytes.writeTo(attr);
+      attr.writeShort(1);
+      attr.writeShort(start);
+      attr.writeShort(end);
+      attr.writeShort(handler);
+      attr.writeShort(0);
+      if (stackMap != null) {
+        attr.writeShort(1);
+        attr.writeShort(stackMapName);
+        attr.writeInt(stackMap.length);
+        attr.write(stackMap);
+      } else {
+        attr.writeShort(0);
+      }
+      attr.flush();
+      return attrBytes.toByteArray();
+    }
+
+    /**
+     * Writes the verification type for a parameter.
+     * @param out The <code>DataOutputStream</code> to write to.
+     * @param type The descriptor of the parameter type.
+     * @throws IOException If an error occurs writing.
+     */
+    private void writeVerificationType(DataOutputStream out, String type)
+        throws IOException {
+      switch (type.charAt(0)) {
+      case 'Z': case 'B': case 'C': case 'S': case 'I':
+        out.writeByte(1);
+        break;
+      case 'F':
+        out.writeByte(2);
+        break;
+      case 'D':
+        out.writeByte(3);
+        break;
+      case 'J':
+        out.writeByte(4);
+        break;
+      case 'L':
+        out.writeByte(7);
+        out.writeShort(classIndex(type.substring(1, type.length() - 1)));
+        break;
+      default:
+        out.writeByte(7);
+        out.writeShort(classIndex(type));
+        break;
+      }
+    }
+
+    /**
+     * Writes an instruction that pushes an integer constant.
+     * @param out The <code>DataOutputStream</code> to write to.
+     * @param value The value to push.
+     * @throws IOException If an error occurs writing.
+     */
+    private void pushInt(DataOutputStream out, int value) throws IOException {
+      if (value <= Short.MAX_VALUE) {
+        out.writeByte(0x11); // sipush
+        out.writeShort(value);
+      } else {
+        out.writeByte(0x13); // ldc_w
+        out.writeShort(integerIndex(value));
+      }
+    }
+
+    /**
+     * Writes an instruction that loads or stores a local variable.
+     * @param out The <code>DataOutputStream</code> to write to.
+     * @param opcode The opcode of the instruction.
+     * @param slot The index of the local variable.
+     * @throws IOException If an error occurs writing.
+     */
+    private static void local(DataOutputStream out, int opcode, int slot)
+        throws IOException {
+      if (slot <= 0xff) {
+        out.writeByte(opcode);
+        out.writeByte(slot);
+      } else {
+        out.writeByte(0xc4); // wide
+        out.writeByte(opcode);
+        out.writeShort(slot);
+      }
+    }
+
+    /**
+     * Gets the number of local variable slots occupied by a type.
+     * @param type The first character of the type descriptor.
+     * @return The number of slots.
+     */
+    private static int slots(char type) {
+      return type == 'V' ? 0 : (type == 'J' || type == 'D') ? 2 : 1;
+    }
+
+    /**
+     * Gets the opcode that loads a local variable of a given type.
+     * @param type The first character of the type descriptor.
+     * @return The load opcode.
+     */
+    private static int loadOpcode(char type) {
+      switch (type) {
+      case 'J': return 0x16; // lload
+      case 'F': return 0x17; // fload
+      case 'D': return 0x18; // dload
+      case 'L': case '[': return 0x19; // aload
+      default: return 0x15; // iload
+      }
+    }
+
+    /**
+     * Gets the opcode that returns a value of a given type.
+     * @param type The first character of the type descriptor.
+     * @return The return opcode.
+     */
+    private static int returnOpcode(char type) {
+      switch (type) {
+      case 'V': return 0xb1; // return
+      case 'J': return 0xad; // lreturn
+      case 'F': return 0xae; // freturn
+      case 'D': return 0xaf; // dreturn
+      case 'L': case '[': return 0xb0; // areturn
+      default: return 0xac; // ireturn
+      }
+    }
+
+    /**
+     * Finds the end of a field_info or method_info structure.
+     * @param pos The position of the structure.
+     * @return The position following the structure.
+     */
+    private int skipMember(int pos) {
+      int attributeCount = buf.getShort(pos + 6) & 0xffff;
+      pos += 8;
+      for (int i = 0; i < attributeCount; i++) {
+        pos += 6 + buf.getInt(pos + 2);
+      }
+      return pos;
+    }
+
+    /**
+     * Copies a range of the class file.
+     * @param from The position of the first byte to copy.
+     * @param to The position following the last byte to copy.
+     * @return The bytes in the range.
+     */
+    private byte[] copy(int from, int to) {
+      byte[] bytes = new byte[to - from];
+      ByteBuffer b = buf.duplicate();
+      b.position(from);
+      b.get(bytes);
+      return bytes;
+    }
+
+    /**
+     * Gets or adds a <code>CONSTANT_Utf8</code> entry.
+     * @param value The string.
+     * @return The constant pool index of the entry.
+     * @throws IOException If an error occurs writing the entry.
+     */
+    private int utf8(String value) throws IOException {
+      Integer index = utf8s.get(value);
+      if (index == null) {
+        addedOut.writeByte(ClassFileParser.CONSTANT_UTF8);
+        addedOut.writeUTF(value);
+        index = nextIndex++;
+        utf8s.put(value, index);
+      }
+      return index;
+    }
+
+    /**
+     * Gets or adds a <code>CONSTANT_Class</code> entry.
+     * @param name The internal name of the class, or the descriptor of an
+     *     array type.
+     * @return The constant pool index of the entry.
+     * @throws IOException If an error occurs writing the entry.
+     */
+    private int classIndex(String name) throws IOException {
+      Integer index = classes.get(name);
+      if (index == null) {
+        int nameIndex = utf8(name);
+        addedOut.writeByte(ClassFileParser.CONSTANT_CLASS);
+        addedOut.writeShort(nameIndex);
+        index = nextIndex++;
+        classes.put(name, index);
+      }
+      return index;
+    }
+
+    /**
+     * Gets or adds a <code>CONSTANT_Integer</code> entry.
+     * @param value The value.
+     * @return The constant pool index of the entry.
+     * @throws IOException If an error occurs writing the entry.
+     */
+    private int integerIndex(int value) throws IOException {
+      String key = "I" + value;
+      Integer index = others.get(key);
+      if (index == null) {
+        addedOut.writeByte(ClassFileParser.CONSTANT_INTEGER);
+        addedOut.writeInt(value);
+        index = nextIndex++;
+        others.put(key, index);
+      }
+      return index;
+    }
+
+    /**
+     * Gets or adds a <code>CONSTANT_Methodref</code> entry.
+     * @param owner The constant pool index of the declaring class.
+     * @param name The name of the method.
+     * @param descriptor The descriptor of the method.
+     * @return The constant pool index of the entry.
+     * @throws IOException If an error occurs writing the entry.
+     */
+    private int methodRef(int owner, String name, String descriptor)
+        throws IOException {
+      String key = "M" + owner + " " + name + descriptor;
+      Integer index = others.get(key);
+      if (index == null) {
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        addedOut.writeByte(ClassFileParser.CONSTANT_NAME_AND_TYPE);
+        addedOut.writeShort(nameIndex);
+        addedOut.writeShort(descriptorIndex);
+        int nameAndType = nextIndex++;
+        addedOut.writeByte(ClassFileParser.CONSTANT_METHODREF);
+        addedOut.writeShort(owner);
+        addedOut.writeShort(nameAndType);
+        index = nextIndex++;
+        others.put(key, index);
+      }
+      return index;
+    }
+
+  }
+
+}
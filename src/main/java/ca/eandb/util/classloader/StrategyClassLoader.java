@@ -28,20 +28,50 @@ package ca.eandb.util.classloader;
 import java.nio.ByteBuffer;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * A <code>ClassLoader</code> that uses a <code>ClassLoaderStrategy</code> to
  * obtain class definitions.
+ *
+ * This class loader is registered as parallel capable, so classes with
+ * different names may be loaded concurrently, with locking done per class
+ * name rather than on the loader itself.  The strategy must therefore be
+ * safe to call from multiple threads.  Subclasses that wish to remain
+ * parallel capable must also call {@link #registerAsParallelCapable()} in
+ * their static initializers.
+ *
+ * Class definitions may be passed through a pipeline of
+ * {@link ClassTransformer}s before they are defined.
+ *
  * @see ca.eandb.util.classloader.ClassLoaderStrategy
  * @author Brad Kimmel
  */
 public class StrategyClassLoader extends ClassLoader {
 
+  static {
+    registerAsParallelCapable();
+  }
+
   /**
    * The <code>ClassLoaderStrategy</code> to use to obtain class definitions.
    */
   private final ClassLoaderStrategy strategy;
 
+  /** The <code>ClassTransformer</code>s to apply, in order. */
+  private final List<ClassTransformer> transformers =
+      new CopyOnWriteArrayList<ClassTransformer>();
+
+  /**
+   * Classes from other class loaders made visible to the classes loaded by
+   * this one, keyed by name.
+   */
+  private final Map<String, Class<?>> exported =
+      new ConcurrentHashMap<String, Class<?>>();
+
   /**
    * Creates a new <code>StrategyClassLoader</code>.
    * @param strategy The <code>ClassLoaderStrategy</code> to use to obtain
@@ -62,6 +92,34 @@ public class StrategyClassLoader extends ClassLoader {
     this.strategy = strategy;
   }
 
+  /**
+   * Adds a <code>ClassTransformer</code> to the end of the pipeline.  Only
+   * classes defined after the transformer is added are affected.
+   * @param transformer The <code>ClassTransformer</code> to add.
+   */
+  public void addTransformer(ClassTransformer transformer) {
+    transformers.add(transformer);
+  }
+
+  /**
+   * Removes a <code>ClassTransformer</code> from the pipeline.
+   * @param transformer The <code>ClassTransformer</code> to remove.
+   * @return A value indicating whether the transformer was in the pipeline.
+   */
+  public boolean removeTransformer(ClassTransformer transformer) {
+    return transformers.remove(transformer);
+  }
+
+  /**
+   * Makes a class visible to the classes loaded by this class loader, even
+   * if it is not visible from the parent class loader.  This is used to
+   * expose runtime support classes referenced by transformed code.
+   * @param cl The <code>Class</code> to make visible.
+   */
+  public void exportClass(Class<?> cl) {
+    exported.put(cl.getName(), cl);
+  }
+
   /*
    * (non-Javadoc)
    * @see java.lang.ClassLoader#findClass(java.lang.String)
@@ -69,18 +127,57 @@ public class StrategyClassLoader extends ClassLoader {
   @Override
   protected Class<?> findClass(final String name) throws ClassNotFoundException {
 
+    Class<?> cl = exported.get(name);
+    if (cl != null) {
+      return cl;
+    }
+
+    boolean timed = ClassLoaderMetrics.isEnabled();
+    long start = timed ? System.nanoTime() : 0L;
+
     ByteBuffer def = AccessController.doPrivileged(new PrivilegedAction<ByteBuffer>() {
       public ByteBuffer run() {
         return strategy.getClassDefinition(name);
       }
     });
 
+    ClassLoaderMetrics metrics = null;
+    if (timed) {
+      long now = System.nanoTime();
+      metrics = ClassLoaderMetrics.forName(ClassLoaderMetrics.LOADER);
+      metrics.recordLookup(now - start, def != null ? def.remaining() : -1);
+      start = now;
+    }
+
     if (def != null) {
 
+      for (ClassTransformer transformer : transformers) {
+        ByteBuffer transformed = transformer.transform(name, def);
+        if (transformed != null) {
+          def = transformed;
+        }
+      }
+
       Class<?> result = super.defineClass(name, def, null);
 
+      if (timed) {
+        long now = System.nanoTime();
+        metrics.recordDefine(now - start);
+        start = now;
+      }
+
       if (result != null) {
+
+        /* This is a no-op on Java 9 and later, where linking happens lazily
+         * when the class is first used, so the resolve timer does not
+         * include the cost of linking there.  The portable ways to force
+         * linking also initialize the class, which must wait until it is
+         * first used.
+         */
         super.resolveClass(result);
+        if (timed) {
+          metrics.recordResolve(System.nanoTime() - start);
+        }
         return result;
       }
 
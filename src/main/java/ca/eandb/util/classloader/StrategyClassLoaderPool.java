@@ -0,0 +1,388 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.classloader;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import ca.eandb.util.concurrent.BackgroundThreadFactory;
+
+/**
+ * A pool of <code>StrategyClassLoader</code>s keyed by a fingerprint of the
+ * classes they load.  Jobs that ship the same classes share a single class
+ * loader, so classes are only defined, verified and compiled once.  Class
+ * loaders are reference counted: a loader that has not been leased for the
+ * idle timeout, or that is the least recently used when there are too many
+ * idle loaders, is dropped from the pool so that its classes may be
+ * unloaded.  Idle class loaders are dropped in the background once their
+ * timeout expires, even if the pool is not otherwise used.
+ *
+ * <pre>
+ *   try (StrategyClassLoaderPool.Lease lease = pool.lease(bundle)) {
+ *     Class&lt;?&gt; job = lease.getClassLoader().loadClass(jobClassName);
+ *     ...
+ *   }
+ * </pre>
+ *
+ * @author Brad Kimmel
+ */
+public final class StrategyClassLoaderPool {
+
+  /** The default maximum number of idle class loaders to keep. */
+  public static final int DEFAULT_MAX_IDLE = 4;
+
+  /** The default time after which idle class loaders are dropped, in minutes. */
+  public static final long DEFAULT_IDLE_TIMEOUT_MINUTES = 10;
+
+  /**
+   * The number of seconds that the idle eviction thread waits for work
+   * before terminating.
+   */
+  private static final long SCHEDULER_KEEP_ALIVE_SECONDS = 30;
+
+  /**
+   * Runs idle evictions for all pools.  Its thread is a daemon thread that
+   * terminates when there is nothing scheduled.
+   */
+  private static final ScheduledThreadPoolExecutor scheduler = createScheduler();
+
+  /** The parent of the pooled class loaders. */
+  private final ClassLoader parent;
+
+  /** The maximum number of idle class loaders to keep. */
+  private final int maxIdle;
+
+  /** The time after which idle class loaders are dropped, in nanoseconds. */
+  private final long idleTimeoutNanos;
+
+  /** The pooled class loaders, keyed by fingerprint, in access order. */
+  private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+  /** The number of pooled class loaders that are not leased. */
+  private int idleCount = 0;
+
+  /** A value indicating whether an idle eviction is scheduled. */
+  private boolean evictionScheduled = false;
+
+  /**
+   * Creates a new <code>StrategyClassLoaderPool</code> with the default
+   * limits, whose class loaders have no parent.
+   */
+  public StrategyClassLoaderPool() {
+    this(null, DEFAULT_MAX_IDLE, DEFAULT_IDLE_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+  }
+
+  /**
+   * Creates a new <code>StrategyClassLoaderPool</code>.
+   * @param parent The parent <code>ClassLoader</code> for the pooled class
+   *     loaders.
+   * @param maxIdle The maximum number of class loaders to keep when they
+   *     are not leased.
+   * @param idleTimeout The time after which a class loader that is not
+   *     leased is dropped.
+   * @param unit The <code>TimeUnit</code> of <code>idleTimeout</code>.
+   * @throws IllegalArgumentException If <code>maxIdle</code> or
+   *     <code>idleTimeout</code> is negative.
+   */
+  public StrategyClassLoaderPool(ClassLoader parent, int maxIdle,
+      long idleTimeout, TimeUnit unit) {
+    if (maxIdle < 0) {
+      throw new IllegalArgumentException("maxIdle must be non-negative.");
+    }
+    if (idleTimeout < 0) {
+      throw new IllegalArgumentException("idleTimeout must be non-negative.");
+    }
+    this.parent = parent;
+    this.maxIdle = maxIdle;
+    this.idleTimeoutNanos = unit.toNanos(idleTimeout);
+  }
+
+  /**
+   * Leases the class loader for a bundle of classes, creating it if
+   * necessary.
+   * @param bundle The <code>ClassBundle</code> containing the classes to
+   *     load.
+   * @return A <code>Lease</code> on the class loader.
+   * @see ClassBundle#getFingerprint()
+   */
+  public Lease lease(final ClassBundle bundle) {
+    return lease(bundle.getFingerprint(), () -> bundle);
+  }
+
+  /**
+   * Leases the class loader for a set of classes, creating it if necessary.
+   * @param fingerprint The fingerprint identifying the set of classes
+   *     exposed by the strategy.  Strategies with the same fingerprint must
+   *     supply identical class definitions.
+   * @param strategy Supplies the <code>ClassLoaderStrategy</code> for a new
+   *     class loader.  It is only called if there is no pooled class loader
+   *     with the given fingerprint.
+   * @return A <code>Lease</code> on the class loader.
+   */
+  public synchronized Lease lease(String fingerprint,
+      Supplier<? extends ClassLoaderStrategy> strategy) {
+    Entry entry = entries.get(fingerprint);
+    if (entry == null) {
+      entry = new Entry(fingerprint, new StrategyClassLoader(strategy.get(), parent));
+      entries.put(fingerprint, entry);
+    } else if (entry.refCount == 0) {
+      idleCount--;
+    }
+    entry.refCount++;
+    evictIdle();
+    return new Lease(entry);
+  }
+
+  /**
+   * Returns a leased class loader to the pool.
+   * @param entry The <code>Entry</code> for the class loader.
+   */
+  private synchronized void release(Entry entry) {
+    if (--entry.refCount == 0) {
+      entry.idleSince = System.nanoTime();
+      idleCount++;
+      evictIdle();
+    }
+  }
+
+  /**
+   * Drops class loaders that have been idle longer than the idle timeout,
+   * and the least recently used idle class loaders in excess of the maximum.
+   * This is done automatically whenever a class loader is leased or
+   * released, and in the background when the idle timeout of a class loader
+   * expires, so it is not normally necessary to call this method.
+   */
+  public synchronized void evictIdle() {
+    long now = System.nanoTime();
+    Iterator<Entry> i = entries.values().iterator();
+    while (i.hasNext() && idleCount > 0) {
+      Entry entry = i.next();
+      if (entry.refCount == 0
+          && (idleCount > maxIdle || now - entry.idleSince >= idleTimeoutNanos)) {
+        i.remove();
+        idleCount--;
+      }
+    }
+    scheduleEviction(now);
+  }
+
+  /**
+   * Schedules a call to {@link #evictIdle()} for when the idle timeout of
+   * the longest idle class loader expires, unless one is already scheduled
+   * or there are no idle class loaders.
+   * @param now The current value of <code>System.nanoTime()</code>.
+   */
+  private void scheduleEviction(long now) {
+    if (evictionScheduled || idleCount == 0) {
+      return;
+    }
+    long idleFor = 0;
+    for (Entry entry : entries.values()) {
+      if (entry.refCount == 0) {
+        idleFor = Math.max(idleFor, now - entry.idleSince);
+      }
+    }
+    long delay = Math.max(idleTimeoutNanos - idleFor, 0);
+    scheduler.schedule(new EvictionTask(this), delay, TimeUnit.NANOSECONDS);
+    evictionScheduled = true;
+  }
+
+  /**
+   * Performs a scheduled idle eviction.
+   */
+  private synchronized void runScheduledEviction() {
+    evictionScheduled = false;
+    evictIdle();
+  }
+
+  /**
+   * Drops all class loaders that are not leased.
+   */
+  public synchronized void clear() {
+    Iterator<Entry> i = entries.values().iterator();
+    while (i.hasNext()) {
+      if (i.next().refCount == 0) {
+        i.remove();
+      }
+    }
+    idleCount = 0;
+  }
+
+  /**
+   * Gets the number of class loaders in the pool.
+   * @return The number of class loaders in the pool, leased or not.
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * Gets the number of class loaders in the pool that are not leased.
+   * @return The number of idle class loaders.
+   */
+  public synchronized int getIdleCount() {
+    return idleCount;
+  }
+
+  /**
+   * Creates the executor on which idle evictions are run.
+   * @return The new <code>ScheduledThreadPoolExecutor</code>.
+   */
+  private static ScheduledThreadPoolExecutor createScheduler() {
+    ScheduledThreadPoolExecutor executor =
+        new ScheduledThreadPoolExecutor(1, new BackgroundThreadFactory());
+    executor.setKeepAliveTime(SCHEDULER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  /**
+   * A scheduled idle eviction.  The pool is only weakly referenced, so that
+   * a pool that is no longer in use may be garbage collected, along with
+   * its class loaders, before the eviction runs.
+   */
+  private static final class EvictionTask implements Runnable {
+
+    /** The pool in which to evict idle class loaders. */
+    private final WeakReference<StrategyClassLoaderPool> pool;
+
+    /**
+     * Creates a new <code>EvictionTask</code>.
+     * @param pool The pool in which to evict idle class loaders.
+     */
+    EvictionTask(StrategyClassLoaderPool pool) {
+      this.pool = new WeakReference<StrategyClassLoaderPool>(pool);
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Runnable#run()
+     */
+    @Override
+    public void run() {
+      StrategyClassLoaderPool p = pool.get();
+      if (p != null) {
+        p.runScheduledEviction();
+      }
+    }
+
+  }
+
+  /**
+   * A pooled class loader and its reference count.
+   */
+  private static final class Entry {
+
+    /** The fingerprint of the classes loaded by the class loader. */
+    final String fingerprint;
+
+    /** The class loader. */
+    final StrategyClassLoader loader;
+
+    /** The number of outstanding leases. */
+    int refCount = 0;
+
+    /** The time at which the last lease was released. */
+    long idleSince;
+
+    /**
+     * Creates a new <code>Entry</code>.
+     * @param fingerprint The fingerprint of the classes.
+     * @param loader The class loader.
+     */
+    Entry(String fingerprint, StrategyClassLoader loader) {
+      this.fingerprint = fingerprint;
+      this.loader = loader;
+    }
+
+  }
+
+  /**
+   * A lease on a pooled class loader.  The lease should be closed when the
+   * job using the class loader completes.
+   */
+  public final class Lease implements AutoCloseable {
+
+    /** The <code>Entry</code> for the leased class loader. */
+    private Entry entry;
+
+    /**
+     * Creates a new <code>Lease</code>.
+     * @param entry The <code>Entry</code> for the leased class loader.
+     */
+    private Lease(Entry entry) {
+      this.entry = entry;
+    }
+
+    /**
+     * Gets the leased class loader.
+     * @return The leased <code>StrategyClassLoader</code>.
+     * @throws IllegalStateException If this lease has been closed.
+     */
+    public StrategyClassLoader getClassLoader() {
+      Entry e = entry;
+      if (e == null) {
+        throw new IllegalStateException("Lease has been closed.");
+      }
+      return e.loader;
+    }
+
+    /**
+     * Gets the fingerprint of the classes loaded by the leased class loader.
+     * @return The fingerprint.
+     * @throws IllegalStateException If this lease has been closed.
+     */
+    public String getFingerprint() {
+      Entry e = entry;
+      if (e == null) {
+        throw new IllegalStateException("Lease has been closed.");
+      }
+      return e.fingerprint;
+    }
+
+    /**
+     * Returns the class loader to the pool.  Closing a lease more than once
+     * has no effect.
+     */
+    @Override
+    public void close() {
+      Entry e;
+      synchronized (StrategyClassLoaderPool.this) {
+        e = entry;
+        entry = null;
+      }
+      if (e != null) {
+        release(e);
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.codec;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Encodes binary data in Base32 (RFC 4648), eight characters for every five
+ * bytes, using lookup tables.  Decoding is case-insensitive and accepts text
+ * with or without trailing padding.
+ *
+ * @author Brad Kimmel
+ */
+public final class Base32Codec extends ByteTextCodec {
+
+  /** The codec using the standard alphabet, with padding. */
+  public static final Base32Codec STANDARD =
+      new Base32Codec("ABCDEFGHIJKLMNOPQRSTUVWXYZ234567", true);
+
+  /** The codec using the extended hex alphabet, with padding. */
+  public static final Base32Codec HEX =
+      new Base32Codec("0123456789ABCDEFGHIJKLMNOPQRSTUV", true);
+
+  /** The padding character. */
+  private static final char PAD = '=';
+
+  /** The number of characters needed for each number of trailing bytes. */
+  private static final int[] CHARS_FOR_BYTES = { 0, 2, 4, 5, 7 };
+
+  /**
+   * The number of bytes represented by each number of trailing characters,
+   * or <code>-1</code> if the number of characters is invalid.
+   */
+  private static final int[] BYTES_FOR_CHARS = { 0, -1, 1, -1, 2, 3, -1, 4 };
+
+  /** The alphabet. */
+  private final String alphabet;
+
+  /** The characters of the alphabet. */
+  private final char[] encode;
+
+  /**
+   * The value of each ASCII character in the alphabet, or <code>-1</code>.
+   */
+  private final byte[] decode = new byte[128];
+
+  /** A value indicating whether encoded text is padded. */
+  private final boolean pad;
+
+  /**
+   * Creates a new <code>Base32Codec</code>.
+   * @param alphabet The thirty-two characters of the alphabet.
+   * @param pad A value indicating whether encoded text is padded.
+   */
+  private Base32Codec(String alphabet, boolean pad) {
+    this.alphabet = alphabet;
+    this.encode = alphabet.toCharArray();
+    this.pad = pad;
+    Arrays.fill(decode, (byte) -1);
+    for (int i = 0; i < 32; i++) {
+      decode[encode[i]] = (byte) i;
+      decode[Character.toLowerCase(encode[i])] = (byte) i;
+    }
+  }
+
+  /**
+   * Gets a codec with the same alphabet that does not pad encoded text.
+   * @return A <code>Base32Codec</code> that omits padding.
+   */
+  public Base32Codec withoutPadding() {
+    return pad ? new Base32Codec(alphabet, false) : this;
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.codec.ByteTextCodec#groupSize()
+   */
+  @Override
+  int groupSize() {
+    return 5;
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.codec.ByteTextCodec#encodedLength(int)
+   */
+  @Override
+  public int encodedLength(int length) {
+    return pad ? 8 * ((length + 4) / 5)
+        : 8 * (length / 5) + CHARS_FOR_BYTES[length % 5];
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.codec.ByteTextCodec#decodedLength(java.lang.CharSequence, int, int)
+   */
+  @Override
+  public int decodedLength(CharSequence src, int start, int end) {
+    int length = end - start;
+    int padding = 0;
+    while (padding < 6 && end - padding > start
+        && src.charAt(end - padding - 1) == PAD) {
+      padding++;
+    }
+    if (padding > 0 && (length & 7) != 0) {
+      throw new IllegalArgumentException("Padded Base32 text must have a length divisible by eight.");
+    }
+    length -= padding;
+    int bytes = BYTES_FOR_CHARS[length & 7];
+    if (bytes < 0) {
+      throw new IllegalArgumentException("Invalid Base32 text length.");
+    }
+    return 5 * (length >>> 3) + bytes;
+  }
+
+  /**
+   * Reads up to five bytes as a big-endian integer, left aligned in forty
+   * bits.
+   * @param src The array containing the bytes.
+   * @param off The index of the first byte.
+   * @param n The number of bytes to read.
+   * @return The bits of the bytes read.
+   */
+  private static long group(byte[] src, int off, int n) {
+    long bits = 0;
+    for (int k = 0; k < 5; k++) {
+      bits = (bits << 8) | (k < n ? src[off + k] & 0xffL : 0L);
+    }
+    return bits;
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.codec.ByteTextCodec#encode(byte[], int, int, char[], int)
+   */
+  @Override
+  public int encode(byte[] src, int off, int len, char[] dst, int dstOff) {
+    int n = encodedLength(len);
+    if (dstOff < 0 || dstOff + n > dst.length) {
+      throw new IndexOutOfBoundsException();
+    }
+    int j = dstOff;
+    for (int i = off, end = off + len; i < end; i += 5) {
+      int bytes = Math.min(5, end - i);
+      int chars = CHARS_FOR_BYTES[bytes == 5 ? 0 : bytes];
+      long bits = group(src, i, bytes);
+      for (int k = 0, m = (bytes == 5 ? 8 : chars); k < m; k++) {
+        dst[j++] = encode[(int) (bits >>> (35 - 5 * k)) & 0x1f];
+      }
+      if (pad && bytes < 5) {
+        for (int k = chars; k < 8; k++) {
+          dst[j++] = PAD;
+        }
+      }
+    }
+    return n;
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.codec.ByteTextCodec#encode(byte[], int, int, byte[], int)
+   */
+  @Override
+  public int encode(byte[] src, int off, int len, byte[] dst, int dstOff) {
+    int n = encodedLength(len);
+    if (dstOff < 0 || dstOff + n > dst.length) {
+      throw new IndexOutOfBoundsException();
+    }
+    int j = dstOff;
+    for (int i = off, end = off + len; i < end; i += 5) {
+      int bytes = Math.min(5, end - i);
+      int chars = CHARS_FOR_BYTES[bytes == 5 ? 0 : bytes];
+      long bits = group(src, i, bytes);
+      for (int k = 0, m = (bytes == 5 ? 8 : chars); k < m; k++) {
+        dst[j++] = (byte) encode[(int) (bits >>> (35 - 5 * k)) & 0x1f];
+      }
+      if (pad && bytes < 5) {
+        for (int k = chars; k < 8; k++) {
+          dst[j++] = (byte) PAD;
+        }
+      }
+    }
+    return n;
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.codec.ByteTextCodec#encode(byte[], int, int, java.lang.Appendable)
+   */
+  @Override
+  public void encode(byte[] src, int off, int len, Appendable out)
+      throws IOException {
+    for (int i = off, end = off + len; i < end; i += 5) {
+      int bytes = Math.min(5, end - i);
+      int chars = CHARS_FOR_BYTES[bytes == 5 ? 0 : bytes];
+      long bits = group(src, i, bytes);
+      for (int k = 0, m = (bytes == 5 ? 8 : chars); k < m; k++) {
+        out.append(encode[(int) (bits >>> (35 - 5 * k)) & 0x1f]);
+      }
+      if (pad && bytes < 5) {
+        for (int k = chars; k < 8; k++) {
+          out.append(PAD);
+        }
+      }
+    }
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.codec.ByteTextCodec#decode(java.lang.CharSequence, int, int, byte[], int)
+   */
+  @Override
+  public int decode(CharSequence src, int start, int end, byte[] dst, int dstOff) {
+    int n = decodedLength(src, start, end);
+    if (dstOff < 0 || dstOff + n > dst.length) {
+      throw new IndexOutOfBoundsException();
+    }
+    int i = start;
+    for (int j = dstOff, last = dstOff + n; j < last; j += 5, i += 8) {
+      int bytes = Math.min(5, last - j);
+      int chars = bytes == 5 ? 8 : CHARS_FOR_BYTES[bytes];
+      long bits = 0;
+      for (int k = 0; k < 8; k++) {
+        bits = (bits << 5) | (k < chars ? value(src.charAt(i + k)) : 0);
+      }
+      for (int k = 0; k < bytes; k++) {
+        dst[j + k] = (byte) (bits >>> (32 - 8 * k));
+      }
+    }
+    return n;
+  }
+
+  /**
+   * Gets the value of a character in the alphabet.
+   * @param c The character.
+   * @return The value of <code>c</code>.
+   * @throws IllegalArgumentException If <code>c</code> is not in the
+   *     alphabet.
+   */
+  private int value(char c) {
+    int v = c < 128 ? decode[c] : -1;
+    if (v < 0) {
+      throw invalidCharacter(c, "Base32");
+    }
+    return v;
+  }
+
+}
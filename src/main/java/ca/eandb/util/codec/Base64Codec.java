@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.codec;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Encodes binary data in Base64 (RFC 4648), four characters for every three
+ * bytes, using lookup tables.  Decoding accepts text with or without
+ * trailing padding, but not line breaks or other whitespace.
+ *
+ * @author Brad Kimmel
+ */
+public final class Base64Codec extends ByteTextCodec {
+
+  /** The codec using the standard alphabet, with padding. */
+  public static final Base64Codec STANDARD = new Base64Codec(
+      "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/", true);
+
+  /** The codec using the URL and filename safe alphabet, with padding. */
+  public static final Base64Codec URL_SAFE = new Base64Codec(
+      "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_", true);
+
+  /** The padding character. */
+  private static final char PAD = '=';
+
+  /** The alphabet. */
+  private final String alphabet;
+
+  /** The characters of the alphabet. */
+  private final char[] encode;
+
+  /** The characters of the alphabet, as ASCII bytes. */
+  private final byte[] asciiEncode;
+
+  /**
+   * The value of each ASCII character in the alphabet, or <code>-1</code>.
+   */
+  private final byte[] decode = new byte[128];
+
+  /** A value indicating whether encoded text is padded. */
+  private final boolean pad;
+
+  /**
+   * Creates a new <code>Base64Codec</code>.
+   * @param alphabet The sixty-four characters of the alphabet.
+   * @param pad A value indicating whether encoded text is padded.
+   */
+  private Base64Codec(String alphabet, boolean pad) {
+    this.alphabet = alphabet;
+    this.encode = alphabet.toCharArray();
+    this.asciiEncode = new byte[64];
+    this.pad = pad;
+    Arrays.fill(decode, (byte) -1);
+    for (int i = 0; i < 64; i++) {
+      asciiEncode[i] = (byte) encode[i];
+      decode[encode[i]] = (byte) i;
+    }
+  }
+
+  /**
+   * Gets a codec with the same alphabet that does not pad encoded text.
+   * @return A <code>Base64Codec</code> that omits padding.
+   */
+  public Base64Codec withoutPadding() {
+    return pad ? new Base64Codec(alphabet, false) : this;
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.codec.ByteTextCodec#groupSize()
+   */
+  @Override
+  int groupSize() {
+    return 3;
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.codec.ByteTextCodec#encodedLength(int)
+   */
+  @Override
+  public int encodedLength(int length) {
+    return pad ? 4 * ((length + 2) / 3) : (4 * length + 2) / 3;
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.codec.ByteTextCodec#decodedLength(java.lang.CharSequence, int, int)
+   */
+  @Override
+  public int decodedLength(CharSequence src, int start, int end) {
+    int length = end - start;
+    int padding = 0;
+    while (padding < 2 && end - padding > start
+        && src.charAt(end - padding - 1) == PAD) {
+      padding++;
+    }
+    if (padding > 0 && (length & 3) != 0) {
+      throw new IllegalArgumentException("Padded Base64 text must have a length divisible by four.");
+    }
+    length -= padding;
+    int remainder = length & 3;
+    if (remainder == 1) {
+      throw new IllegalArgumentException("Invalid Base64 text length.");
+    }
+    return 3 * (length >>> 2) + (remainder == 0 ? 0 : remainder - 1);
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.codec.ByteTextCodec#encode(byte[], int, int, char[], int)
+   */
+  @Override
+  public int encode(byte[] src, int off, int len, char[] dst, int dstOff) {
+    int n = encodedLength(len);
+    if (dstOff < 0 || dstOff + n > dst.length) {
+      throw new IndexOutOfBoundsException();
+    }
+    int i = off;
+    int j = dstOff;
+    for (int end = off + len - len % 3; i < end; i += 3, j += 4) {
+      int bits = (src[i] & 0xff) << 16 | (src[i + 1] & 0xff) << 8 | (src[i + 2] & 0xff);
+      dst[j] = encode[bits >>> 18];
+      dst[j + 1] = encode[(bits >>> 12) & 0x3f];
+      dst[j + 2] = encode[(bits >>> 6) & 0x3f];
+      dst[j + 3] = encode[bits & 0x3f];
+    }
+    int remainder = off + len - i;
+    if (remainder > 0) {
+      int bits = (src[i] & 0xff) << 16 | (remainder > 1 ? (src[i + 1] & 0xff) << 8 : 0);
+      dst[j++] = encode[bits >>> 18];
+      dst[j++] = encode[(bits >>> 12) & 0x3f];
+      if (remainder > 1) {
+        dst[j++] = encode[(bits >>> 6) & 0x3f];
+      } else if (pad) {
+        dst[j++] = PAD;
+      }
+      if (pad) {
+        dst[j++] = PAD;
+      }
+    }
+    return n;
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.codec.ByteTextCodec#encode(byte[], int, int, byte[], int)
+   */
+  @Override
+  public int encode(byte[] src, int off, int len, byte[] dst, int dstOff) {
+    int n = encodedLength(len);
+    if (dstOff < 0 || dstOff + n > dst.length) {
+      throw new IndexOutOfBoundsException();
+    }
+    int i = off;
+    int j = dstOff;
+    for (int end = off + len - len % 3; i < end; i += 3, j += 4) {
+      int bits = (src[i] & 0xff) << 16 | (src[i + 1] & 0xff) << 8 | (src[i + 2] & 0xff);
+      dst[j] = asciiEncode[bits >>> 18];
+      dst[j + 1] = asciiEncode[(bits >>> 12) & 0x3f];
+      dst[j + 2] = asciiEncode[(bits >>> 6) & 0x3f];
+      dst[j + 3] = asciiEncode[bits & 0x3f];
+    }
+    int remainder = off + len - i;
+    if (remainder > 0) {
+      int bits = (src[i] & 0xff) << 16 | (remainder > 1 ? (src[i + 1] & 0xff) << 8 : 0);
+      dst[j++] = asciiEncode[bits >>> 18];
+      dst[j++] = asciiEncode[(bits >>> 12) & 0x3f];
+      if (remainder > 1) {
+        dst[j++] = asciiEncode[(bits >>> 6) & 0x3f];
+      } else if (pad) {
+        dst[j++] = (byte) PAD;
+      }
+      if (pad) {
+        dst[j++] = (byte) PAD;
+      }
+    }
+    return n;
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.codec.ByteTextCodec#encode(byte[], int, int, java.lang.Appendable)
+   */
+  @Override
+  public void encode(byte[] src, int off, int len, Appendable out)
+      throws IOException {
+    int i = off;
+    for (int end = off + len - len % 3; i < end; i += 3) {
+      int bits = (src[i] & 0xff) << 16 | (src[i + 1] & 0xff) << 8 | (src[i + 2] & 0xff);
+      out.append(encode[bits >>> 18])
+          .append(encode[(bits >>> 12) & 0x3f])
+          .append(encode[(bits >>> 6) & 0x3f])
+          .append(encode[bits & 0x3f]);
+    }
+    int remainder = off + len - i;
+    if (remainder > 0) {
+      int bits = (src[i] & 0xff) << 16 | (remainder > 1 ? (src[i + 1] & 0xff) << 8 : 0);
+      out.append(encode[bits >>> 18]).append(encode[(bits >>> 12) & 0x3f]);
+      if (remainder > 1) {
+        out.append(encode[(bits >>> 6) & 0x3f]);
+      } else if (pad) {
+        out.append(PAD);
+      }
+      if (pad) {
+        out.append(PAD);
+      }
+    }
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.codec.ByteTextCodec#decode(java.lang.CharSequence, int, int, byte[], int)
+   */
+  @Override
+  public int decode(CharSequence src, int start, int end, byte[] dst, int dstOff) {
+    int n = decodedLength(src, start, end);
+    if (dstOff < 0 || dstOff + n > dst.length) {
+      throw new IndexOutOfBoundsException();
+    }
+    int i = start;
+    int j = dstOff;
+    for (int last = dstOff + n - n % 3; j < last; i += 4, j += 3) {
+      int bits = value(src.charAt(i)) << 18 | value(src.charAt(i + 1)) << 12
+          | value(src.charAt(i + 2)) << 6 | value(src.charAt(i + 3));
+      dst[j] = (byte) (bits >>> 16);
+      dst[j + 1] = (byte) (bits >>> 8);
+      dst[j + 2] = (byte) bits;
+    }
+    int remainder = n % 3;
+    if (remainder > 0) {
+      int bits = value(src.charAt(i)) << 18 | value(src.charAt(i + 1)) << 12;
+      if (remainder > 1) {
+        bits |= value(src.charAt(i + 2)) << 6;
+      }
+      dst[j++] = (byte) (bits >>> 16);
+      if (remainder > 1) {
+        dst[j++] = (byte) (bits >>> 8);
+      }
+    }
+    return n;
+  }
+
+  /**
+   * Gets the value of a character in the alphabet.
+   * @param c The character.
+   * @return The value of <code>c</code>.
+   * @throws IllegalArgumentException If <code>c</code> is not in the
+   *     alphabet.
+   */
+  private int value(char c) {
+    int v = c < 128 ? decode[c] : -1;
+    if (v < 0) {
+      throw invalidCharacter(c, "Base64");
+    }
+    return v;
+  }
+
+}
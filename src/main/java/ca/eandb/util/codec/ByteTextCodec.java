@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.codec;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import ca.eandb.util.UnexpectedException;
+
+/**
+ * Converts between binary data and a text representation using a fixed
+ * alphabet of ASCII characters.  All conversions read from and write to
+ * caller-supplied arrays or buffers, so that bulk encoding and decoding need
+ * not allocate.  Encoded text may be produced as <code>char</code>s or as
+ * ASCII <code>byte</code>s.
+ *
+ * Instances are immutable and thread-safe.
+ *
+ * @author Brad Kimmel
+ */
+public abstract class ByteTextCodec {
+
+  /** The size of the chunks used when converting direct buffers. */
+  private static final int CHUNK_SIZE = 1020;
+
+  /** Declared package-private so that only codecs in this package exist. */
+  ByteTextCodec() {}
+
+  /**
+   * Gets the number of bytes encoded together as a group.
+   * @return The number of bytes in a group.
+   */
+  abstract int groupSize();
+
+  /**
+   * Computes the number of characters required to encode binary data.
+   * @param length The number of bytes to encode.
+   * @return The number of characters in the encoded text.
+   */
+  public abstract int encodedLength(int length);
+
+  /**
+   * Computes the number of bytes represented by encoded text.
+   * @param src The encoded text.
+   * @param start The index of the first character of the encoded text.
+   * @param end The index following the last character of the encoded text.
+   * @return The number of bytes represented by the text.
+   * @throws IllegalArgumentException If the text has an invalid length.
+   */
+  public abstract int decodedLength(CharSequence src, int start, int end);
+
+  /**
+   * Encodes binary data as characters.
+   * @param src The array containing the data to encode.
+   * @param off The index into <code>src</code> of the first byte to encode.
+   * @param len The number of bytes to encode.
+   * @param dst The array to write the characters to.
+   * @param dstOff The index into <code>dst</code> at which to start
+   *     writing.
+   * @return The number of characters written.
+   * @throws IndexOutOfBoundsException If <code>dst</code> is too small.
+   */
+  public abstract int encode(byte[] src, int off, int len, char[] dst, int dstOff);
+
+  /**
+   * Encodes binary data as ASCII bytes.
+   * @param src The array containing the data to encode.
+   * @param off The index into <code>src</code> of the first byte to encode.
+   * @param len The number of bytes to encode.
+   * @param dst The array to write the ASCII characters to.
+   * @param dstOff The index into <code>dst</code> at which to start
+   *     writing.
+   * @return The number of bytes written.
+   * @throws IndexOutOfBoundsException If <code>dst</code> is too small.
+   */
+  public abstract int encode(byte[] src, int off, int len, byte[] dst, int dstOff);
+
+  /**
+   * Encodes binary data, appending the characters to an
+   * <code>Appendable</code>.
+   * @param src The array containing the data to encode.
+   * @param off The index into <code>src</code> of the first byte to encode.
+   * @param len The number of bytes to encode.
+   * @param out The <code>Appendable</code> to append the characters to.
+   * @throws IOException If <code>out</code> throws an
+   *     <code>IOException</code>.
+   */
+  public abstract void encode(byte[] src, int off, int len, Appendable out)
+      throws IOException;
+
+  /**
+   * Decodes text into binary data.
+   * @param src The text to decode.
+   * @param start The index of the first character to decode.
+   * @param end The index following the last character to decode.
+   * @param dst The array to write the decoded bytes to.
+   * @param dstOff The index into <code>dst</code> at which to start
+   *     writing.
+   * @return The number of bytes written.
+   * @throws IllegalArgumentException If the text is not valid.
+   * @throws IndexOutOfBoundsException If <code>dst</code> is too small.
+   */
+  public abstract int decode(CharSequence src, int start, int end, byte[] dst, int dstOff);
+
+  /**
+   * Decodes ASCII text into binary data.
+   * @param src The array containing the ASCII text to decode.
+   * @param off The index into <code>src</code> of the first character.
+   * @param len The number of characters to decode.
+   * @param dst The array to write the decoded bytes to.
+   * @param dstOff The index into <code>dst</code> at which to start
+   *     writing.
+   * @return The number of bytes written.
+   * @throws IllegalArgumentException If the text is not valid.
+   * @throws IndexOutOfBoundsException If <code>dst</code> is too small.
+   */
+  public int decode(byte[] src, int off, int len, byte[] dst, int dstOff) {
+    return decode(new AsciiSequence(src, off, len), 0, len, dst, dstOff);
+  }
+
+  /**
+   * Encodes binary data as a <code>String</code>.
+   * @param src The data to encode.
+   * @return The encoded text.
+   */
+  public final String encodeToString(byte[] src) {
+    return encodeToString(src, 0, src.length);
+  }
+
+  /**
+   * Encodes binary data as a <code>String</code>.
+   * @param src The array containing the data to encode.
+   * @param off The index into <code>src</code> of the first byte to encode.
+   * @param len The number of bytes to encode.
+   * @return The encoded text.
+   */
+  public final String encodeToString(byte[] src, int off, int len) {
+    char[] chars = new char[encodedLength(len)];
+    encode(src, off, len, chars, 0);
+    return new String(chars);
+  }
+
+  /**
+   * Encodes binary data, appending the characters to a
+   * <code>StringBuilder</code>.
+   * @param src The array containing the data to encode.
+   * @param off The index into <code>src</code> of the first byte to encode.
+   * @param len The number of bytes to encode.
+   * @param sb The <code>StringBuilder</code> to append the characters to.
+   * @return <code>sb</code>.
+   */
+  public final StringBuilder encode(byte[] src, int off, int len, StringBuilder sb) {
+    sb.ensureCapacity(sb.length() + encodedLength(len));
+    try {
+      encode(src, off, len, (Appendable) sb);
+    } catch (IOException e) {
+      throw new UnexpectedException(e);
+    }
+    return sb;
+  }
+
+  /**
+   * Encodes the remaining bytes of a buffer as ASCII bytes in another
+   * buffer.  The positions of both buffers are advanced.  Heap buffers are
+   * converted in place; direct buffers are converted in chunks through a
+   * temporary array.
+   * @param src The <code>ByteBuffer</code> containing the data to encode.
+   * @param dst The <code>ByteBuffer</code> to write the ASCII characters to.
+   * @throws BufferOverflowException If <code>dst</code> does not
+   *     have enough space remaining.
+   */
+  public final void encode(ByteBuffer src, ByteBuffer dst) {
+    int len = src.remaining();
+    int required = encodedLength(len);
+    if (dst.remaining() < required) {
+      throw new BufferOverflowException();
+    }
+    if (src.hasArray() && dst.hasArray() && !dst.isReadOnly()) {
+      int n = encode(src.array(), src.arrayOffset() + src.position(), len,
+          dst.array(), dst.arrayOffset() + dst.position());
+      src.position(src.limit());
+      dst.position(dst.position() + n);
+      return;
+    }
+    int chunk = CHUNK_SIZE - CHUNK_SIZE % groupSize();
+    byte[] in = new byte[Math.min(chunk, len)];
+    byte[] out = new byte[encodedLength(in.length)];
+    while (src.hasRemaining()) {
+      int n = Math.min(in.length, src.remaining());
+      src.get(in, 0, n);
+      dst.put(out, 0, encode(in, 0, n, out, 0));
+    }
+  }
+
+  /**
+   * Decodes the remaining ASCII characters of a buffer into another buffer.
+   * The positions of both buffers are advanced.
+   * @param src The <code>ByteBuffer</code> containing the ASCII text.
+   * @param dst The <code>ByteBuffer</code> to write the decoded bytes to.
+   * @throws IllegalArgumentException If the text is not valid.
+   * @throws BufferOverflowException If <code>dst</code> does not
+   *     have enough space remaining.
+   */
+  public final void decode(ByteBuffer src, ByteBuffer dst) {
+    int len = src.remaining();
+    byte[] array = src.hasArray() ? src.array() : null;
+    int off = src.hasArray() ? src.arrayOffset() + src.position() : 0;
+    if (array == null) {
+      array = new byte[len];
+      src.duplicate().get(array);
+    }
+    int required = decodedLength(new AsciiSequence(array, off, len), 0, len);
+    if (dst.remaining() < required) {
+      throw new BufferOverflowException();
+    }
+    if (dst.hasArray() && !dst.isReadOnly()) {
+      int n = decode(array, off, len, dst.array(),
+          dst.arrayOffset() + dst.position());
+      dst.position(dst.position() + n);
+    } else {
+      byte[] out = new byte[required];
+      dst.put(out, 0, decode(array, off, len, out, 0));
+    }
+    src.position(src.limit());
+  }
+
+  /**
+   * Decodes text into a new byte array.
+   * @param src The text to decode.
+   * @return The decoded bytes.
+   * @throws IllegalArgumentException If the text is not valid.
+   */
+  public final byte[] decode(CharSequence src) {
+    int end = src.length();
+    byte[] result = new byte[decodedLength(src, 0, end)];
+    decode(src, 0, end, result, 0);
+    return result;
+  }
+
+  /**
+   * Creates an exception describing an invalid character.
+   * @param c The invalid character.
+   * @param name The name of the encoding.
+   * @return The <code>IllegalArgumentException</code> to throw.
+   */
+  static IllegalArgumentException invalidCharacter(char c, String name) {
+    return new IllegalArgumentException(
+        String.format("'%c' is not a valid %s character.", c, name));
+  }
+
+  /**
+   * A view of a range of an array of ASCII characters as a
+   * <code>CharSequence</code>.
+   */
+  static final class AsciiSequence implements CharSequence {
+
+    /** The array of ASCII characters. */
+    private final byte[] bytes;
+
+    /** The index of the first character. */
+    private final int offset;
+
+    /** The number of characters. */
+    private final int length;
+
+    /**
+     * Creates a new <code>AsciiSequence</code>.
+     * @param bytes The array of ASCII characters.
+     * @param offset The index of the first character.
+     * @param length The number of characters.
+     */
+    AsciiSequence(byte[] bytes, int offset, int length) {
+      if (offset < 0 || length < 0 || offset + length > bytes.length) {
+        throw new IndexOutOfBoundsException();
+      }
+      this.bytes = bytes;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.CharSequence#length()
+     */
+    @Override
+    public int length() {
+      return length;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.CharSequence#charAt(int)
+     */
+    @Override
+    public char charAt(int index) {
+      return (char) (bytes[offset + index] & 0xff);
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.CharSequence#subSequence(int, int)
+     */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+      return new AsciiSequence(bytes, offset + start, end - start);
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+      return new String(bytes, offset, length, StandardCharsets.US_ASCII);
+    }
+
+  }
+
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.codec;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Encodes binary data as hexadecimal digits, two per byte, using lookup
+ * tables.  Decoding accepts both upper and lower case digits.
+ *
+ * @author Brad Kimmel
+ */
+public final class HexCodec extends ByteTextCodec {
+
+  /** The codec producing lower case digits. */
+  public static final HexCodec LOWER = new HexCodec("0123456789abcdef");
+
+  /** The codec producing upper case digits. */
+  public static final HexCodec UPPER = new HexCodec("0123456789ABCDEF");
+
+  /**
+   * The value of each ASCII hexadecimal digit, or <code>-1</code> for
+   * characters that are not hexadecimal digits.
+   */
+  private static final byte[] DECODE = new byte[128];
+
+  static {
+    Arrays.fill(DECODE, (byte) -1);
+    for (int i = 0; i < 10; i++) {
+      DECODE['0' + i] = (byte) i;
+    }
+    for (int i = 0; i < 6; i++) {
+      DECODE['a' + i] = (byte) (10 + i);
+      DECODE['A' + i] = (byte) (10 + i);
+    }
+  }
+
+  /** The two digits for each byte value, interleaved. */
+  private final char[] pairs = new char[512];
+
+  /** The two digits for each byte value as ASCII bytes, interleaved. */
+  private final byte[] asciiPairs = new byte[512];
+
+  /**
+   * Creates a new <code>HexCodec</code>.
+   * @param digits The sixteen digits.
+   */
+  private HexCodec(String digits) {
+    for (int b = 0; b < 256; b++) {
+      pairs[2 * b] = digits.charAt(b >>> 4);
+      pairs[2 * b + 1] = digits.charAt(b & 0x0f);
+      asciiPairs[2 * b] = (byte) pairs[2 * b];
+      asciiPairs[2 * b + 1] = (byte) pairs[2 * b + 1];
+    }
+  }
+
+  /**
+   * Gets the value of a hexadecimal digit.
+   * @param c The hexadecimal digit.
+   * @return The value of <code>c</code>, or <code>-1</code> if
+   *     <code>c</code> is not a hexadecimal digit.
+   */
+  public static int digit(char c) {
+    return c < 128 ? DECODE[c] : -1;
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.codec.ByteTextCodec#groupSize()
+   */
+  @Override
+  int groupSize() {
+    return 1;
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.codec.ByteTextCodec#encodedLength(int)
+   */
+  @Override
+  public int encodedLength(int length) {
+    return 2 * length;
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.codec.ByteTextCodec#decodedLength(java.lang.CharSequence, int, int)
+   */
+  @Override
+  public int decodedLength(CharSequence src, int start, int end) {
+    int length = end - start;
+    if ((length & 1) != 0) {
+      throw new IllegalArgumentException("Hexadecimal text must have an even length.");
+    }
+    return length / 2;
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.codec.ByteTextCodec#encode(byte[], int, int, char[], int)
+   */
+  @Override
+  public int encode(byte[] src, int off, int len, char[] dst, int dstOff) {
+    if (dstOff < 0 || dstOff + 2 * len > dst.length) {
+      throw new IndexOutOfBoundsException();
+    }
+    for (int i = off, j = dstOff, end = off + len; i < end; i++, j += 2) {
+      int k = (src[i] & 0xff) << 1;
+      dst[j] = pairs[k];
+      dst[j + 1] = pairs[k + 1];
+    }
+    return 2 * len;
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.codec.ByteTextCodec#encode(byte[], int, int, byte[], int)
+   */
+  @Override
+  public int encode(byte[] src, int off, int len, byte[] dst, int dstOff) {
+    if (dstOff < 0 || dstOff + 2 * len > dst.length) {
+      throw new IndexOutOfBoundsException();
+    }
+    for (int i = off, j = dstOff, end = off + len; i < end; i++, j += 2) {
+      int k = (src[i] & 0xff) << 1;
+      dst[j] = asciiPairs[k];
+      dst[j + 1] = asciiPairs[k + 1];
+    }
+    return 2 * len;
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.codec.ByteTextCodec#encode(byte[], int, int, java.lang.Appendable)
+   */
+  @Override
+  public void encode(byte[] src, int off, int len, Appendable out)
+      throws IOException {
+    for (int i = off, end = off + len; i < end; i++) {
+      int k = (src[i] & 0xff) << 1;
+      out.append(pairs[k]).append(pairs[k + 1]);
+    }
+  }
+
+  /**
+   * Encodes a single byte, appending the two digits to an
+   * <code>Appendable</code>.
+   * @param b The byte to encode.
+   * @param out The <code>Appendable</code> to append the digits to.
+   * @throws IOException If <code>out</code> throws an
+   *     <code>IOException</code>.
+   */
+  public void encode(byte b, Appendable out) throws IOException {
+    int k = (b & 0xff) << 1;
+    out.append(pairs[k]).append(pairs[k + 1]);
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.codec.ByteTextCodec#decode(java.lang.CharSequence, int, int, byte[], int)
+   */
+  @Override
+  public int decode(CharSequence src, int start, int end, byte[] dst, int dstOff) {
+    int n = decodedLength(src, start, end);
+    if (dstOff < 0 || dstOff + n > dst.length) {
+      throw new IndexOutOfBoundsException();
+    }
+    for (int i = start, j = dstOff; i < end; i += 2, j++) {
+      char hi = src.charAt(i);
+      char lo = src.charAt(i + 1);
+      int h = digit(hi);
+      int l = digit(lo);
+      if ((h | l) < 0) {
+        throw invalidCharacter(h < 0 ? hi : lo, "hexadecimal");
+      }
+      dst[j] = (byte) ((h << 4) | l);
+    }
+    return n;
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.codec.ByteTextCodec#decode(byte[], int, int, byte[], int)
+   */
+  @Override
+  public int decode(byte[] src, int off, int len, byte[] dst, int dstOff) {
+    if ((len & 1) != 0) {
+      throw new IllegalArgumentException("Hexadecimal text must have an even length.");
+    }
+    int n = len / 2;
+    if (dstOff < 0 || dstOff + n > dst.length) {
+      throw new IndexOutOfBoundsException();
+    }
+    for (int i = off, j = dstOff, end = off + len; i < end; i += 2, j++) {
+      int hi = src[i];
+      int lo = src[i + 1];
+      int h = (hi & ~0x7f) == 0 ? DECODE[hi] : -1;
+      int l = (lo & ~0x7f) == 0 ? DECODE[lo] : -1;
+      if ((h | l) < 0) {
+        throw invalidCharacter((char) ((h < 0 ? hi : lo) & 0xff), "hexadecimal");
+      }
+      dst[j] = (byte) ((h << 4) | l);
+    }
+    return n;
+  }
+
+}
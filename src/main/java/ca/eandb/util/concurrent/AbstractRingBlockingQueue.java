@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.concurrent;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Base class for bounded, lock-free <code>BlockingQueue</code>s backed by a
+ * ring buffer.  Subclasses supply the non-blocking {@link #offer(Object)} and
+ * {@link #poll()} operations, and this class implements the blocking
+ * operations on top of them by spinning briefly, then yielding, then parking
+ * for progressively longer intervals.  Because no locks are used, waiting
+ * threads are never signalled; they simply retry after each wait.
+ * @author Brad Kimmel
+ */
+abstract class AbstractRingBlockingQueue<T> extends AbstractQueue<T>
+    implements BlockingQueue<T> {
+
+  /** The number of times to spin before yielding. */
+  private static final int SPIN_TRIES = 100;
+
+  /** The number of times to yield before parking. */
+  private static final int YIELD_TRIES = 10;
+
+  /** The maximum time, in nanoseconds, to park between retries. */
+  private static final long MAX_PARK_NANOS = 1000000L;
+
+  /** The number of slots in the ring buffer (a power of two). */
+  protected final int capacity;
+
+  /** The mask used to convert a sequence number into a ring index. */
+  protected final int mask;
+
+  /**
+   * Initializes the ring buffer parameters.
+   * @param capacity The minimum number of items the queue may hold.  The
+   *     actual capacity is rounded up to a power of two.
+   * @throws IllegalArgumentException If <code>capacity &lt;= 0</code> or
+   *     <code>capacity &gt; 2<sup>30</sup></code>.
+   */
+  protected AbstractRingBlockingQueue(int capacity) {
+    if (capacity <= 0 || capacity > (1 << 30)) {
+      throw new IllegalArgumentException("capacity must be in (0, 2^30].");
+    }
+    int c = 1;
+    while (c < capacity) {
+      c <<= 1;
+    }
+    this.capacity = c;
+    this.mask = c - 1;
+  }
+
+  /**
+   * Gets the maximum number of items this queue may hold.
+   * @return The capacity of this queue.
+   */
+  public final int capacity() {
+    return capacity;
+  }
+
+  /**
+   * Waits before retrying an operation that could not complete.
+   * @param tries The number of times the operation has been attempted.
+   * @throws InterruptedException If the current thread is interrupted.
+   */
+  private static void backoff(int tries) throws InterruptedException {
+    if (Thread.interrupted()) {
+      throw new InterruptedException();
+    }
+    if (tries < SPIN_TRIES) {
+      /* spin */
+    } else if (tries < SPIN_TRIES + YIELD_TRIES) {
+      Thread.yield();
+    } else {
+      int shift = Math.min(tries - SPIN_TRIES - YIELD_TRIES, 10);
+      LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, 1000L << shift));
+    }
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.concurrent.BlockingQueue#put(java.lang.Object)
+   */
+  public void put(T e) throws InterruptedException {
+    for (int tries = 0; !offer(e); tries++) {
+      backoff(tries);
+    }
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.concurrent.BlockingQueue#offer(java.lang.Object, long, java.util.concurrent.TimeUnit)
+   */
+  public boolean offer(T e, long timeout, TimeUnit unit)
+      throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    for (int tries = 0; !offer(e); tries++) {
+      if (System.nanoTime() - deadline >= 0) {
+        return false;
+      }
+      backoff(tries);
+    }
+    return true;
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.concurrent.BlockingQueue#take()
+   */
+  public T take() throws InterruptedException {
+    T e;
+    for (int tries = 0; (e = poll()) == null; tries++) {
+      backoff(tries);
+    }
+    return e;
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.concurrent.BlockingQueue#poll(long, java.util.concurrent.TimeUnit)
+   */
+  public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    T e;
+    for (int tries = 0; (e = poll()) == null; tries++) {
+      if (System.nanoTime() - deadline >= 0) {
+        return null;
+      }
+      backoff(tries);
+    }
+    return e;
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.concurrent.BlockingQueue#remainingCapacity()
+   */
+  public int remainingCapacity() {
+    return capacity - size();
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.concurrent.BlockingQueue#drainTo(java.util.Collection)
+   */
+  public int drainTo(Collection<? super T> c) {
+    return drainTo(c, Integer.MAX_VALUE);
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.concurrent.BlockingQueue#drainTo(java.util.Collection, int)
+   */
+  public int drainTo(Collection<? super T> c, int maxElements) {
+    if (c == this) {
+      throw new IllegalArgumentException();
+    }
+    int n = 0;
+    T e;
+    while (n < maxElements && (e = poll()) != null) {
+      c.add(e);
+      n++;
+    }
+    return n;
+  }
+
+  /**
+   * Reads the item at the specified sequence number without removing it.
+   * Used to take a weakly consistent snapshot of the queue.
+   * @param sequence The sequence number of the item.
+   * @return The item, or <code>null</code> if the slot is empty.
+   */
+  protected abstract T peekAt(long sequence);
+
+  /**
+   * Gets the sequence number of the item at the head of the queue.
+   * @return The sequence number of the item at the head of the queue.
+   */
+  protected abstract long headSequence();
+
+  /**
+   * Gets the sequence number one past the item at the tail of the queue.
+   * @return The sequence number at which the next item will be inserted.
+   */
+  protected abstract long tailSequence();
+
+  /* (non-Javadoc)
+   * @see java.util.AbstractCollection#size()
+   */
+  @Override
+  public int size() {
+    while (true) {
+      long head = headSequence();
+      long tail = tailSequence();
+      if (head == headSequence()) {
+        long size = tail - head;
+        return (int) Math.max(0, Math.min(capacity, size));
+      }
+    }
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.AbstractCollection#isEmpty()
+   */
+  @Override
+  public boolean isEmpty() {
+    return tailSequence() - headSequence() <= 0;
+  }
+
+  /**
+   * Returns an iterator over a snapshot of the items in this queue.  The
+   * iterator is weakly consistent: it may or may not reflect concurrent
+   * modifications, and it does not support removal.
+   * @return An iterator over the items in this queue.
+   */
+  @Override
+  public Iterator<T> iterator() {
+    long head = headSequence();
+    long tail = tailSequence();
+    List<T> snapshot = new ArrayList<T>((int) Math.max(0, Math.min(capacity, tail - head)));
+    for (long seq = Math.max(head, tail - capacity); seq < tail; seq++) {
+      T e = peekAt(seq);
+      if (e != null) {
+        snapshot.add(e);
+      }
+    }
+    return Collections.unmodifiableList(snapshot).iterator();
+  }
+
+}
@@ -0,0 +1,612 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.concurrent;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A thread-safe hash set that holds weak references to its contents.  The
+ * set is divided into independently locked segments, so that threads adding
+ * or removing elements in different segments do not contend, and lookups
+ * take no locks at all.  Elements that have been garbage collected are
+ * removed incrementally, from a <code>ReferenceQueue</code>, as part of
+ * subsequent updates to the same segment, rather than by sweeping the set
+ * on reads.  Consequently {@link #size()} may include elements that have
+ * been collected but not yet removed.
+ *
+ * The set may optionally compare elements by identity (<code>==</code> and
+ * <code>System.identityHashCode</code>) rather than by
+ * <code>equals</code> and <code>hashCode</code>.
+ *
+ * Iterators are weakly consistent and never throw
+ * <code>ConcurrentModificationException</code>.  Null elements are not
+ * permitted.
+ *
+ * @see ca.eandb.util.WeakHashSet
+ * @author Brad Kimmel
+ */
+public final class ConcurrentWeakHashSet<T> extends AbstractSet<T> {
+
+  /** The default number of segments. */
+  private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+  /** The default initial capacity of the set. */
+  private static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+  /** The fraction of a segment's table that may be filled before resizing. */
+  private static final float LOAD_FACTOR = 0.75f;
+
+  /**
+   * The maximum number of stale entries to remove from a segment on each
+   * update, so that the cost of expunging is spread over many operations.
+   */
+  private static final int MAX_EXPUNGE_PER_UPDATE = 64;
+
+  /** The segments of this set. */
+  private final Segment<T>[] segments;
+
+  /** The number of bits to shift a hash code to select a segment. */
+  private final int segmentShift;
+
+  /** A value indicating whether elements are compared by identity. */
+  private final boolean identity;
+
+  /**
+   * Creates a new <code>ConcurrentWeakHashSet</code> that compares elements
+   * using <code>equals</code>.
+   */
+  public ConcurrentWeakHashSet() {
+    this(DEFAULT_INITIAL_CAPACITY, DEFAULT_CONCURRENCY_LEVEL, false);
+  }
+
+  /**
+   * Creates a new <code>ConcurrentWeakHashSet</code>.
+   * @param identity A value indicating whether elements are to be compared
+   *     by identity rather than by <code>equals</code>.
+   */
+  public ConcurrentWeakHashSet(boolean identity) {
+    this(DEFAULT_INITIAL_CAPACITY, DEFAULT_CONCURRENCY_LEVEL, identity);
+  }
+
+  /**
+   * Creates a new <code>ConcurrentWeakHashSet</code> that compares elements
+   * using <code>equals</code>.
+   * @param c A <code>Collection</code> of objects to initialize the set
+   *     with.
+   */
+  public ConcurrentWeakHashSet(Collection<? extends T> c) {
+    this(Math.max((int) (c.size() / LOAD_FACTOR) + 1, DEFAULT_INITIAL_CAPACITY),
+        DEFAULT_CONCURRENCY_LEVEL, false);
+    addAll(c);
+  }
+
+  /**
+   * Creates a new <code>ConcurrentWeakHashSet</code>.
+   * @param initialCapacity The initial capacity of the set.
+   * @param concurrencyLevel The estimated number of threads that will
+   *     update the set concurrently.  This determines the number of segments.
+   * @param identity A value indicating whether elements are to be compared
+   *     by identity rather than by <code>equals</code>.
+   * @throws IllegalArgumentException If <code>initialCapacity</code> is
+   *     negative or <code>concurrencyLevel</code> is not positive.
+   */
+  public ConcurrentWeakHashSet(int initialCapacity, int concurrencyLevel,
+      boolean identity) {
+    if (initialCapacity < 0 || concurrencyLevel <= 0) {
+      throw new IllegalArgumentException();
+    }
+    int segmentCount = 1;
+    int shift = 0;
+    while (segmentCount < concurrencyLevel && segmentCount < (1 << 16)) {
+      segmentCount <<= 1;
+      shift++;
+    }
+    this.segmentShift = 32 - shift;
+    this.identity = identity;
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    Segment<T>[] segments = new Segment[segmentCount];
+    this.segments = segments;
+
+    int perSegment = Math.max(2, initialCapacity / segmentCount);
+    int tableSize = 2;
+    while (tableSize < perSegment) {
+      tableSize <<= 1;
+    }
+    for (int i = 0; i < segmentCount; i++) {
+      segments[i] = new Segment<T>(this, tableSize);
+    }
+  }
+
+  /**
+   * Determines if this set compares elements by identity.
+   * @return A value indicating whether elements are compared by identity
+   *     rather than by <code>equals</code>.
+   */
+  public boolean isIdentity() {
+    return identity;
+  }
+
+  /**
+   * Computes the hash code of an element.
+   * @param o The element.
+   * @return The spread hash code of <code>o</code>.
+   */
+  private int hash(Object o) {
+    int h = identity ? System.identityHashCode(o) : o.hashCode();
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h;
+  }
+
+  /**
+   * Determines if two elements are considered equal by this set.
+   * @param a The first element.
+   * @param b The second element.
+   * @return A value indicating if <code>a</code> and <code>b</code> are
+   *     equal.
+   */
+  private boolean matches(Object a, Object b) {
+    return a == b || (!identity && a.equals(b));
+  }
+
+  /**
+   * Gets the segment responsible for the specified hash code.
+   * @param hash The hash code.
+   * @return The <code>Segment</code> for <code>hash</code>.
+   */
+  private Segment<T> segmentFor(int hash) {
+    return segments.length == 1 ? segments[0] : segments[hash >>> segmentShift];
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.AbstractCollection#contains(java.lang.Object)
+   */
+  @Override
+  public boolean contains(Object o) {
+    if (o == null) {
+      return false;
+    }
+    int h = hash(o);
+    return segmentFor(h).find(o, h) != null;
+  }
+
+  /**
+   * Gets the element of this set that is equal to the specified object.
+   * @param o The object to look up.
+   * @return The element of this set equal to <code>o</code>, or
+   *     <code>null</code> if there is none.
+   */
+  public T get(Object o) {
+    if (o == null) {
+      return null;
+    }
+    int h = hash(o);
+    return segmentFor(h).find(o, h);
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.AbstractCollection#add(java.lang.Object)
+   */
+  @Override
+  public boolean add(T e) {
+    if (e == null) {
+      throw new NullPointerException();
+    }
+    int h = hash(e);
+    return segmentFor(h).add(e, h) == e;
+  }
+
+  /**
+   * Adds an element to this set if no equal element is already present.
+   * This is done atomically.
+   * @param e The element to add.
+   * @return The element of this set equal to <code>e</code> after the call:
+   *     either the element that was already present, or <code>e</code>.
+   * @throws NullPointerException If <code>e</code> is <code>null</code>.
+   */
+  public T addIfAbsent(T e) {
+    if (e == null) {
+      throw new NullPointerException();
+    }
+    int h = hash(e);
+    return segmentFor(h).add(e, h);
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.AbstractCollection#remove(java.lang.Object)
+   */
+  @Override
+  public boolean remove(Object o) {
+    if (o == null) {
+      return false;
+    }
+    int h = hash(o);
+    return segmentFor(h).remove(o, h);
+  }
+
+  /**
+   * Gets the number of elements in this set.  This may include elements that
+   * have been garbage collected but not yet removed.
+   * @return The number of elements in this set.
+   */
+  @Override
+  public int size() {
+    long size = 0;
+    for (Segment<T> segment : segments) {
+      size += segment.count;
+    }
+    return (int) Math.min(size, Integer.MAX_VALUE);
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.AbstractCollection#isEmpty()
+   */
+  @Override
+  public boolean isEmpty() {
+    for (Segment<T> segment : segments) {
+      if (segment.count != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.AbstractCollection#clear()
+   */
+  @Override
+  public void clear() {
+    for (Segment<T> segment : segments) {
+      segment.clear();
+    }
+  }
+
+  /**
+   * Removes all elements that have been garbage collected.
+   */
+  public void expungeStaleEntries() {
+    for (Segment<T> segment : segments) {
+      segment.lock();
+      try {
+        segment.expunge(Integer.MAX_VALUE);
+      } finally {
+        segment.unlock();
+      }
+    }
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.AbstractCollection#iterator()
+   */
+  @Override
+  public Iterator<T> iterator() {
+    return new Iterator<T>() {
+
+      /** The index of the next segment to visit. */
+      private int segmentIndex = 0;
+
+      /** The table of the current segment. */
+      private AtomicReferenceArray<Entry<T>> table = null;
+
+      /** The index of the next bucket to visit in <code>table</code>. */
+      private int bucket = 0;
+
+      /** The next entry to examine. */
+      private Entry<T> entry = null;
+
+      /**
+       * The next element to return (held strongly so that it cannot be
+       * collected between <code>hasNext</code> and <code>next</code>).
+       */
+      private T nextElement = null;
+
+      /** The element most recently returned by <code>next</code>. */
+      private T lastReturned = null;
+
+      /* (non-Javadoc)
+       * @see java.util.Iterator#hasNext()
+       */
+      public boolean hasNext() {
+        while (nextElement == null) {
+          if (entry != null) {
+            nextElement = entry.get();
+            entry = entry.next;
+          } else if (table != null && bucket < table.length()) {
+            entry = table.get(bucket++);
+          } else if (segmentIndex < segments.length) {
+            table = segments[segmentIndex++].table;
+            bucket = 0;
+          } else {
+            return false;
+          }
+        }
+        return true;
+      }
+
+      /* (non-Javadoc)
+       * @see java.util.Iterator#next()
+       */
+      public T next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        lastReturned = nextElement;
+        nextElement = null;
+        return lastReturned;
+      }
+
+      /* (non-Javadoc)
+       * @see java.util.Iterator#remove()
+       */
+      public void remove() {
+        if (lastReturned == null) {
+          throw new IllegalStateException();
+        }
+        ConcurrentWeakHashSet.this.remove(lastReturned);
+        lastReturned = null;
+      }
+
+    };
+  }
+
+  /**
+   * A weakly referenced element in a hash chain.
+   */
+  private static final class Entry<T> extends WeakReference<T> {
+
+    /** The hash code of the element. */
+    final int hash;
+
+    /** The next entry in the chain. */
+    volatile Entry<T> next;
+
+    /**
+     * Creates a new <code>Entry</code>.
+     * @param element The element.
+     * @param hash The hash code of the element.
+     * @param next The next entry in the chain.
+     * @param queue The <code>ReferenceQueue</code> to register with.
+     */
+    Entry(T element, int hash, Entry<T> next, ReferenceQueue<? super T> queue) {
+      super(element, queue);
+      this.hash = hash;
+      this.next = next;
+    }
+
+  }
+
+  /**
+   * An independently locked portion of the set.
+   */
+  private static final class Segment<T> extends ReentrantLock {
+
+    /**
+     * Serialization version ID.
+     */
+    private static final long serialVersionUID = 5235870389219305112L;
+
+    /** The set that owns this segment. */
+    private final transient ConcurrentWeakHashSet<T> owner;
+
+    /** The queue to which collected entries are posted. */
+    private final transient ReferenceQueue<T> queue = new ReferenceQueue<T>();
+
+    /** The hash table.  The length is always a power of two. */
+    transient volatile AtomicReferenceArray<Entry<T>> table;
+
+    /** The number of entries in the table. */
+    transient volatile int count = 0;
+
+    /**
+     * Creates a new <code>Segment</code>.
+     * @param owner The set that owns this segment.
+     * @param tableSize The initial size of the hash table.
+     */
+    Segment(ConcurrentWeakHashSet<T> owner, int tableSize) {
+      this.owner = owner;
+      this.table = new AtomicReferenceArray<Entry<T>>(tableSize);
+    }
+
+    /**
+     * Finds an element in this segment, without locking.
+     * @param o The object to look for.
+     * @param hash The hash code of <code>o</code>.
+     * @return The element equal to <code>o</code>, or <code>null</code> if
+     *     there is none.
+     */
+    T find(Object o, int hash) {
+      AtomicReferenceArray<Entry<T>> tab = table;
+      for (Entry<T> e = tab.get(hash & (tab.length() - 1)); e != null; e = e.next) {
+        if (e.hash == hash) {
+          T element = e.get();
+          if (element != null && owner.matches(o, element)) {
+            return element;
+          }
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Adds an element to this segment if no equal element is present.
+     * @param element The element to add.
+     * @param hash The hash code of <code>element</code>.
+     * @return The element equal to <code>element</code> that is in the
+     *     segment after the call.
+     */
+    T add(T element, int hash) {
+      lock();
+      try {
+        expunge(MAX_EXPUNGE_PER_UPDATE);
+        AtomicReferenceArray<Entry<T>> tab = table;
+        int index = hash & (tab.length() - 1);
+        Entry<T> first = tab.get(index);
+        for (Entry<T> e = first; e != null; e = e.next) {
+          if (e.hash == hash) {
+            T existing = e.get();
+            if (existing != null && owner.matches(element, existing)) {
+              return existing;
+            }
+          }
+        }
+        tab.set(index, new Entry<T>(element, hash, first, queue));
+        if (++count > LOAD_FACTOR * tab.length()) {
+          resize();
+        }
+        return element;
+      } finally {
+        unlock();
+      }
+    }
+
+    /**
+     * Removes an element from this segment.
+     * @param o The object to remove.
+     * @param hash The hash code of <code>o</code>.
+     * @return A value indicating if an element was removed.
+     */
+    boolean remove(Object o, int hash) {
+      lock();
+      try {
+        expunge(MAX_EXPUNGE_PER_UPDATE);
+        AtomicReferenceArray<Entry<T>> tab = table;
+        int index = hash & (tab.length() - 1);
+        Entry<T> prev = null;
+        for (Entry<T> e = tab.get(index); e != null; prev = e, e = e.next) {
+          if (e.hash == hash) {
+            T element = e.get();
+            if (element != null && owner.matches(o, element)) {
+              unlink(tab, index, prev, e);
+              e.clear();
+              return true;
+            }
+          }
+        }
+        return false;
+      } finally {
+        unlock();
+      }
+    }
+
+    /**
+     * Removes all entries from this segment.
+     */
+    void clear() {
+      lock();
+      try {
+        table = new AtomicReferenceArray<Entry<T>>(table.length());
+        count = 0;
+        while (queue.poll() != null) {
+          /* discard */
+        }
+      } finally {
+        unlock();
+      }
+    }
+
+    /**
+     * Removes entries whose elements have been garbage collected.  Must be
+     * called while holding the lock.
+     * @param max The maximum number of stale entries to process.
+     */
+    void expunge(int max) {
+      Reference<? extends T> ref;
+      for (int i = 0; i < max && (ref = queue.poll()) != null; i++) {
+        @SuppressWarnings("unchecked")
+        Entry<T> stale = (Entry<T>) ref;
+        AtomicReferenceArray<Entry<T>> tab = table;
+        int index = stale.hash & (tab.length() - 1);
+        Entry<T> prev = null;
+        for (Entry<T> e = tab.get(index); e != null; prev = e, e = e.next) {
+          if (e == stale) {
+            unlink(tab, index, prev, e);
+            break;
+          }
+        }
+      }
+    }
+
+    /**
+     * Removes an entry from its chain.  Must be called while holding the
+     * lock.  The removed entry's <code>next</code> pointer is left intact so
+     * that concurrent readers positioned at it may continue.
+     * @param tab The hash table.
+     * @param index The index of the chain.
+     * @param prev The entry preceding <code>e</code>, or <code>null</code> if
+     *     <code>e</code> is first in the chain.
+     * @param e The entry to remove.
+     */
+    private void unlink(AtomicReferenceArray<Entry<T>> tab, int index,
+        Entry<T> prev, Entry<T> e) {
+      if (prev == null) {
+        tab.set(index, e.next);
+      } else {
+        prev.next = e.next;
+      }
+      count--;
+    }
+
+    /**
+     * Doubles the size of the hash table.  Live entries are copied into new
+     * chains rather than relinked, so that concurrent readers of the old
+     * table are not disturbed.  Must be called while holding the lock.
+     */
+    private void resize() {
+      AtomicReferenceArray<Entry<T>> oldTable = table;
+      int newLength = oldTable.length() << 1;
+      if (newLength <= 0) {
+        return;
+      }
+      AtomicReferenceArray<Entry<T>> newTable = new AtomicReferenceArray<Entry<T>>(newLength);
+      int newCount = 0;
+      for (int i = 0; i < oldTable.length(); i++) {
+        for (Entry<T> e = oldTable.get(i); e != null; e = e.next) {
+          T element = e.get();
+          if (element != null) {
+            int index = e.hash & (newLength - 1);
+            newTable.set(index, new Entry<T>(element, e.hash, newTable.get(index), queue));
+            newCount++;
+          }
+        }
+      }
+      table = newTable;
+      count = newCount;
+    }
+
+  }
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.concurrent;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free <code>BlockingQueue</code> that supports any number of
+ * producer and consumer threads.  This is an implementation of Dmitry
+ * Vyukov's bounded MPMC queue: each slot carries a sequence number that
+ * tells producers and consumers whether the slot is ready for them, so that
+ * claiming a slot takes a single compare-and-set on the (padded) head or
+ * tail counter.
+ *
+ * @see SpscArrayBlockingQueue
+ * @author Brad Kimmel
+ */
+public final class MpmcArrayBlockingQueue<T> extends AbstractRingBlockingQueue<T> {
+
+  /** The ring buffer. */
+  private final AtomicReferenceArray<T> buffer;
+
+  /**
+   * The sequence number of each slot.  A slot whose sequence number equals
+   * the tail counter is free for a producer, and a slot whose sequence
+   * number is one greater than the head counter holds an item ready for a
+   * consumer.
+   */
+  private final AtomicLongArray sequences;
+
+  /** The sequence number of the next item to be removed. */
+  private final PaddedAtomicLong head = new PaddedAtomicLong(0);
+
+  /** The sequence number at which the next item will be inserted. */
+  private final PaddedAtomicLong tail = new PaddedAtomicLong(0);
+
+  /**
+   * Creates a new <code>MpmcArrayBlockingQueue</code>.
+   * @param capacity The minimum number of items the queue may hold.  The
+   *     actual capacity is rounded up to a power of two, and must be at
+   *     least two.
+   * @throws IllegalArgumentException If <code>capacity &lt;= 0</code> or
+   *     <code>capacity &gt; 2<sup>30</sup></code>.
+   */
+  public MpmcArrayBlockingQueue(int capacity) {
+    super(Math.max(2, capacity));
+    this.buffer = new AtomicReferenceArray<T>(this.capacity);
+    this.sequences = new AtomicLongArray(this.capacity);
+    for (int i = 0; i < this.capacity; i++) {
+      sequences.lazySet(i, i);
+    }
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.Queue#offer(java.lang.Object)
+   */
+  public boolean offer(T e) {
+    if (e == null) {
+      throw new NullPointerException();
+    }
+    long t = tail.get();
+    while (true) {
+      int index = (int) t & mask;
+      long seq = sequences.get(index);
+      long diff = seq - t;
+      if (diff == 0) {
+        if (tail.compareAndSet(t, t + 1)) {
+          buffer.lazySet(index, e);
+          sequences.set(index, t + 1);
+          return true;
+        }
+        t = tail.get();
+      } else if (diff < 0) {
+        return false;
+      } else {
+        t = tail.get();
+      }
+    }
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.Queue#poll()
+   */
+  public T poll() {
+    long h = head.get();
+    while (true) {
+      int index = (int) h & mask;
+      long seq = sequences.get(index);
+      long diff = seq - (h + 1);
+      if (diff == 0) {
+        if (head.compareAndSet(h, h + 1)) {
+          T e = buffer.get(index);
+          buffer.lazySet(index, null);
+          sequences.set(index, h + capacity);
+          return e;
+        }
+        h = head.get();
+      } else if (diff < 0) {
+        return null;
+      } else {
+        h = head.get();
+      }
+    }
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.Queue#peek()
+   */
+  public T peek() {
+    while (true) {
+      long h = head.get();
+      int index = (int) h & mask;
+      if (sequences.get(index) != h + 1) {
+        if (h == head.get()) {
+          return null;
+        }
+        continue;
+      }
+      T e = buffer.get(index);
+      if (h == head.get() && e != null) {
+        return e;
+      }
+    }
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.concurrent.AbstractRingBlockingQueue#peekAt(long)
+   */
+  @Override
+  protected T peekAt(long sequence) {
+    return buffer.get((int) sequence & mask);
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.concurrent.AbstractRingBlockingQueue#headSequence()
+   */
+  @Override
+  protected long headSequence() {
+    return head.get();
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.concurrent.AbstractRingBlockingQueue#tailSequence()
+   */
+  @Override
+  protected long tailSequence() {
+    return tail.get();
+  }
+
+}
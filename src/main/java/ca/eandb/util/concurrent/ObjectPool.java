@@ -0,0 +1,672 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.concurrent;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import ca.eandb.util.UnexpectedException;
+
+/**
+ * A pool of expensive, reusable objects.  Each thread keeps the last object
+ * it released in a thread-local slot, so a thread that repeatedly borrows
+ * and releases an object does so without any synchronization.  Other idle
+ * objects are kept on a lock-free stack shared by all threads, up to a
+ * maximum number.
+ *
+ * Objects are typically used as follows:
+ * <pre>
+ *   try (ObjectPool.Lease&lt;MessageDigest&gt; lease = pool.lease()) {
+ *     MessageDigest md = lease.get();
+ *     ...
+ *   }
+ * </pre>
+ *
+ * When leak detection is enabled, the pool records where each object was
+ * borrowed, and counts objects that become unreachable without having been
+ * released (see {@link #getLeakedCount()}).  Nothing is reported unless a
+ * handler is supplied using {@link Builder#leakHandler(Consumer)}, e.g.,
+ * <code>Throwable::printStackTrace</code>.  Leak detection is costly, so it
+ * is intended for debugging.  It may be enabled for all pools by setting the
+ * system property
+ * <code>ca.eandb.util.concurrent.ObjectPool.leakDetection</code> to
+ * <code>true</code>.
+ *
+ * @param <T> The type of object to pool.
+ * @author Brad Kimmel
+ */
+public final class ObjectPool<T> {
+
+  /**
+   * The system property that enables leak detection by default.
+   */
+  public static final String LEAK_DETECTION_PROPERTY =
+      "ca.eandb.util.concurrent.ObjectPool.leakDetection";
+
+  /** The default maximum number of idle objects on the shared stack. */
+  public static final int DEFAULT_MAX_IDLE = 64;
+
+  /** Creates new objects. */
+  private final Supplier<? extends T> factory;
+
+  /** Restores released objects to their initial state. */
+  private final Consumer<? super T> reset;
+
+  /** Determines if idle objects may still be used. */
+  private final Predicate<? super T> validate;
+
+  /** Releases the resources held by discarded objects. */
+  private final Consumer<? super T> destroy;
+
+  /** The maximum number of idle objects on the shared stack. */
+  private final int maxIdle;
+
+  /** The thread-local slots, or <code>null</code> if not used. */
+  private final ThreadLocal<Slot<T>> local;
+
+  /** The top of the shared stack of idle objects. */
+  private final AtomicReference<StackNode<T>> top =
+      new AtomicReference<StackNode<T>>();
+
+  /** The number of idle objects on the shared stack. */
+  private final AtomicInteger idleCount = new AtomicInteger();
+
+  /** The number of objects created. */
+  private final LongAdder createdCount = new LongAdder();
+
+  /** The number of objects destroyed. */
+  private final LongAdder destroyedCount = new LongAdder();
+
+  /** The number of objects detected as never having been released. */
+  private final LongAdder leakedCount = new LongAdder();
+
+  /**
+   * The sites at which outstanding objects were borrowed, or
+   * <code>null</code> if leak detection is disabled.
+   */
+  private final ConcurrentHashMap<LeakTracker, Throwable> borrowed;
+
+  /**
+   * The queue to which trackers for unreachable borrowed objects are
+   * enqueued, or <code>null</code> if leak detection is disabled.
+   */
+  private final ReferenceQueue<Object> leakQueue;
+
+  /** Receives reports of leaked objects. */
+  private final Consumer<? super Throwable> leakHandler;
+
+  /**
+   * Creates a new <code>ObjectPool</code>.
+   * @param builder The <code>Builder</code> holding the settings.
+   */
+  private ObjectPool(Builder<T> builder) {
+    this.factory = builder.factory;
+    this.reset = builder.reset;
+    this.validate = builder.validate;
+    this.destroy = builder.destroy;
+    this.maxIdle = builder.maxIdle;
+    this.local = builder.threadLocal ? ThreadLocal.withInitial(Slot::new) : null;
+    if (builder.leakDetection) {
+      this.borrowed = new ConcurrentHashMap<LeakTracker, Throwable>();
+      this.leakQueue = new ReferenceQueue<Object>();
+    } else {
+      this.borrowed = null;
+      this.leakQueue = null;
+    }
+    this.leakHandler = builder.leakHandler;
+  }
+
+  /**
+   * Creates a pool of <code>Deflater</code>s.  Discarded deflaters are
+   * ended, releasing their native resources.
+   * @param level The compression level (0-9).
+   * @param nowrap If true, use GZIP compatible compression.
+   * @return The new <code>ObjectPool</code>.
+   * @see java.util.zip.Deflater#Deflater(int, boolean)
+   */
+  public static ObjectPool<Deflater> deflaters(final int level,
+      final boolean nowrap) {
+    return new Builder<Deflater>(() -> new Deflater(level, nowrap))
+        .reset(Deflater::reset)
+        .destroy(Deflater::end)
+        .build();
+  }
+
+  /**
+   * Creates a pool of <code>Inflater</code>s.  Discarded inflaters are
+   * ended, releasing their native resources.
+   * @param nowrap If true, support GZIP compatible compression.
+   * @return The new <code>ObjectPool</code>.
+   * @see java.util.zip.Inflater#Inflater(boolean)
+   */
+  public static ObjectPool<Inflater> inflaters(final boolean nowrap) {
+    return new Builder<Inflater>(() -> new Inflater(nowrap))
+        .reset(Inflater::reset)
+        .destroy(Inflater::end)
+        .build();
+  }
+
+  /**
+   * Creates a pool of <code>MessageDigest</code>s.
+   * @param algorithm The name of the digest algorithm.
+   * @return The new <code>ObjectPool</code>.
+   * @throws IllegalArgumentException If <code>algorithm</code> is not
+   *     available.
+   * @see java.security.MessageDigest#getInstance(String)
+   */
+  public static ObjectPool<MessageDigest> messageDigests(
+      final String algorithm) {
+    try {
+      MessageDigest.getInstance(algorithm);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalArgumentException(
+          String.format("Algorithm not available: '%s'", algorithm), e);
+    }
+    return new Builder<MessageDigest>(() -> {
+      try {
+        return MessageDigest.getInstance(algorithm);
+      } catch (NoSuchAlgorithmException e) {
+        throw new UnexpectedException(e);
+      }
+    }).reset(MessageDigest::reset).build();
+  }
+
+  /**
+   * Borrows an object from the pool, creating one if none are idle.  The
+   * object should be returned using {@link #release(Object)} when it is no
+   * longer needed.
+   * @return An object from the pool.
+   */
+  public T borrow() {
+    T obj = null;
+    if (local != null) {
+      Slot<T> slot = local.get();
+      obj = slot.value;
+      slot.value = null;
+      if (obj != null && !isValid(obj)) {
+        discard(obj);
+        obj = null;
+      }
+    }
+    while (obj == null) {
+      StackNode<T> node = top.get();
+      if (node == null) {
+        obj = factory.get();
+        createdCount.increment();
+        break;
+      }
+      if (top.compareAndSet(node, node.next)) {
+        idleCount.decrementAndGet();
+        obj = node.value;
+        if (!isValid(obj)) {
+          discard(obj);
+          obj = null;
+        }
+      }
+    }
+    if (borrowed != null) {
+      trackBorrow(obj);
+    }
+    return obj;
+  }
+
+  /**
+   * Borrows an object from the pool, returning a <code>Lease</code> that
+   * releases it when closed.
+   * @return A <code>Lease</code> for an object from the pool.
+   */
+  public Lease<T> lease() {
+    return new Lease<T>(this, borrow());
+  }
+
+  /**
+   * Returns an object to the pool.  The object must not be used after it is
+   * released.
+   * @param obj The object to return.
+   * @throws IllegalStateException If leak detection is enabled and
+   *     <code>obj</code> is not currently borrowed from this pool.
+   */
+  public void release(T obj) {
+    if (obj == null) {
+      throw new NullPointerException();
+    }
+    if (borrowed != null) {
+      trackRelease(obj);
+    }
+    try {
+      reset.accept(obj);
+    } catch (RuntimeException e) {
+      discard(obj);
+      throw e;
+    }
+    if (local != null) {
+      Slot<T> slot = local.get();
+      if (slot.value == null) {
+        slot.value = obj;
+        return;
+      }
+    }
+    if (idleCount.incrementAndGet() > maxIdle) {
+      idleCount.decrementAndGet();
+      discard(obj);
+      return;
+    }
+    StackNode<T> node = new StackNode<T>(obj);
+    do {
+      node.next = top.get();
+    } while (!top.compareAndSet(node.next, node));
+  }
+
+  /**
+   * Discards all idle objects on the shared stack.  Objects held in
+   * thread-local slots are not affected.
+   */
+  public void clear() {
+    StackNode<T> node;
+    while ((node = top.get()) != null) {
+      if (top.compareAndSet(node, node.next)) {
+        idleCount.decrementAndGet();
+        discard(node.value);
+      }
+    }
+  }
+
+  /**
+   * Gets the number of idle objects on the shared stack.
+   * @return The number of idle objects on the shared stack.
+   */
+  public int getIdleCount() {
+    return idleCount.get();
+  }
+
+  /**
+   * Gets the number of objects this pool has created.
+   * @return The number of objects created.
+   */
+  public long getCreatedCount() {
+    return createdCount.sum();
+  }
+
+  /**
+   * Gets the number of objects this pool has discarded.
+   * @return The number of objects discarded.
+   */
+  public long getDestroyedCount() {
+    return destroyedCount.sum();
+  }
+
+  /**
+   * Gets the number of borrowed objects found to have become unreachable
+   * without having been released.  Leaks are detected as objects are
+   * borrowed, some time after the leaked objects are garbage collected.
+   * @return The number of leaked objects detected, or <code>-1</code> if
+   *     leak detection is disabled.
+   */
+  public long getLeakedCount() {
+    return borrowed != null ? leakedCount.sum() : -1;
+  }
+
+  /**
+   * Gets the number of objects currently borrowed.  This is only available
+   * when leak detection is enabled.
+   * @return The number of objects currently borrowed, or <code>-1</code> if
+   *     leak detection is disabled.
+   */
+  public int getBorrowedCount() {
+    return borrowed != null ? borrowed.size() : -1;
+  }
+
+  /**
+   * Determines if an idle object may still be used.
+   * @param obj The object to check.
+   * @return A value indicating if <code>obj</code> may be used.
+   */
+  private boolean isValid(T obj) {
+    return validate == null || validate.test(obj);
+  }
+
+  /**
+   * Releases the resources held by an object that will not be reused.
+   * @param obj The object to discard.
+   */
+  private void discard(T obj) {
+    destroyedCount.increment();
+    if (destroy != null) {
+      destroy.accept(obj);
+    }
+  }
+
+  /**
+   * Records where an object was borrowed, and reports any objects that were
+   * never released.
+   * @param obj The object being borrowed.
+   */
+  private void trackBorrow(T obj) {
+    LeakTracker tracker;
+    while ((tracker = (LeakTracker) leakQueue.poll()) != null) {
+      Throwable site = borrowed.remove(tracker);
+      if (site != null) {
+        leakedCount.increment();
+        leakHandler.accept(site);
+      }
+    }
+    borrowed.put(new LeakTracker(obj, leakQueue),
+        new Throwable("Pooled object borrowed here was never released"));
+  }
+
+  /**
+   * Records that an object has been released.
+   * @param obj The object being released.
+   * @throws IllegalStateException If <code>obj</code> is not currently
+   *     borrowed from this pool.
+   */
+  private void trackRelease(T obj) {
+    LeakTracker key = new LeakTracker(obj, null);
+    if (borrowed.remove(key) == null) {
+      throw new IllegalStateException(
+          "Object was not borrowed from this pool or was already released.");
+    }
+  }
+
+  /**
+   * An object borrowed from a pool, which is returned to the pool when the
+   * <code>Lease</code> is closed.
+   * @param <T> The type of the pooled object.
+   */
+  public static final class Lease<T> implements AutoCloseable {
+
+    /** The pool from which the object was borrowed. */
+    private final ObjectPool<T> pool;
+
+    /** The borrowed object, or <code>null</code> once released. */
+    private T obj;
+
+    /**
+     * Creates a new <code>Lease</code>.
+     * @param pool The pool from which the object was borrowed.
+     * @param obj The borrowed object.
+     */
+    private Lease(ObjectPool<T> pool, T obj) {
+      this.pool = pool;
+      this.obj = obj;
+    }
+
+    /**
+     * Gets the borrowed object.
+     * @return The borrowed object.
+     * @throws IllegalStateException If this <code>Lease</code> has been
+     *     closed.
+     */
+    public T get() {
+      if (obj == null) {
+        throw new IllegalStateException("Lease has been closed.");
+      }
+      return obj;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.AutoCloseable#close()
+     */
+    @Override
+    public void close() {
+      if (obj != null) {
+        T released = obj;
+        obj = null;
+        pool.release(released);
+      }
+    }
+
+  }
+
+  /**
+   * Configures and creates an <code>ObjectPool</code>.
+   * @param <T> The type of object to pool.
+   */
+  public static final class Builder<T> {
+
+    /** Creates new objects. */
+    private final Supplier<? extends T> factory;
+
+    /** Restores released objects to their initial state. */
+    private Consumer<? super T> reset = obj -> {};
+
+    /** Determines if idle objects may still be used. */
+    private Predicate<? super T> validate = null;
+
+    /** Releases the resources held by discarded objects. */
+    private Consumer<? super T> destroy = null;
+
+    /** The maximum number of idle objects on the shared stack. */
+    private int maxIdle = DEFAULT_MAX_IDLE;
+
+    /** A value indicating whether to use thread-local slots. */
+    private boolean threadLocal = true;
+
+    /** A value indicating whether to track borrowed objects. */
+    private boolean leakDetection = Boolean.getBoolean(LEAK_DETECTION_PROPERTY);
+
+    /** Receives reports of leaked objects. */
+    private Consumer<? super Throwable> leakHandler = site -> {};
+
+    /**
+     * Creates a new <code>Builder</code>.
+     * @param factory Creates new objects for the pool (must not be null).
+     * @throws IllegalArgumentException If <code>factory</code> is null.
+     */
+    public Builder(Supplier<? extends T> factory) {
+      if (factory == null) {
+        throw new IllegalArgumentException("factory must not be null.");
+      }
+      this.factory = factory;
+    }
+
+    /**
+     * Sets the action that restores a released object to its initial
+     * state.  If it throws an exception, the object is discarded.
+     * @param reset The action to apply to released objects.
+     * @return This <code>Builder</code>.
+     */
+    public Builder<T> reset(Consumer<? super T> reset) {
+      this.reset = reset != null ? reset : obj -> {};
+      return this;
+    }
+
+    /**
+     * Sets the test applied to idle objects before they are borrowed.
+     * Objects that fail the test are discarded.
+     * @param validate The test to apply to idle objects.
+     * @return This <code>Builder</code>.
+     */
+    public Builder<T> validate(Predicate<? super T> validate) {
+      this.validate = validate;
+      return this;
+    }
+
+    /**
+     * Sets the action that releases the resources held by an object that
+     * is discarded.
+     * @param destroy The action to apply to discarded objects.
+     * @return This <code>Builder</code>.
+     */
+    public Builder<T> destroy(Consumer<? super T> destroy) {
+      this.destroy = destroy;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of idle objects kept on the shared stack.
+     * Objects released when the stack is full are discarded.
+     * @param maxIdle The maximum number of idle objects.
+     * @return This <code>Builder</code>.
+     * @throws IllegalArgumentException If <code>maxIdle</code> is negative.
+     */
+    public Builder<T> maxIdle(int maxIdle) {
+      if (maxIdle < 0) {
+        throw new IllegalArgumentException("maxIdle must be non-negative.");
+      }
+      this.maxIdle = maxIdle;
+      return this;
+    }
+
+    /**
+     * Sets whether each thread keeps its most recently released object in a
+     * thread-local slot.  This is enabled by default.
+     * @param threadLocal A value indicating whether to use thread-local
+     *     slots.
+     * @return This <code>Builder</code>.
+     */
+    public Builder<T> threadLocal(boolean threadLocal) {
+      this.threadLocal = threadLocal;
+      return this;
+    }
+
+    /**
+     * Sets whether to report objects that are never released.
+     * @param leakDetection A value indicating whether to detect leaks.
+     * @return This <code>Builder</code>.
+     */
+    public Builder<T> leakDetection(boolean leakDetection) {
+      this.leakDetection = leakDetection;
+      return this;
+    }
+
+    /**
+     * Sets the action that receives reports of leaked objects.  Each report
+     * is a <code>Throwable</code> whose stack trace shows where the object
+     * was borrowed.  By default, leaks are only counted.  Pass
+     * <code>Throwable::printStackTrace</code> to print them to standard
+     * error.
+     * @param leakHandler The action that receives leak reports.
+     * @return This <code>Builder</code>.
+     */
+    public Builder<T> leakHandler(Consumer<? super Throwable> leakHandler) {
+      if (leakHandler == null) {
+        throw new IllegalArgumentException("leakHandler must not be null.");
+      }
+      this.leakHandler = leakHandler;
+      return this;
+    }
+
+    /**
+     * Creates the <code>ObjectPool</code>.
+     * @return The new <code>ObjectPool</code>.
+     */
+    public ObjectPool<T> build() {
+      return new ObjectPool<T>(this);
+    }
+
+  }
+
+  /**
+   * A thread-local slot holding an idle object.
+   * @param <T> The type of the pooled object.
+   */
+  private static final class Slot<T> {
+
+    /** The idle object, or <code>null</code>. */
+    T value;
+
+  }
+
+  /**
+   * A node on the shared stack of idle objects.
+   * @param <T> The type of the pooled object.
+   */
+  private static final class StackNode<T> {
+
+    /** The idle object. */
+    final T value;
+
+    /** The node below this one on the stack. */
+    StackNode<T> next;
+
+    /**
+     * Creates a new <code>StackNode</code>.
+     * @param value The idle object.
+     */
+    StackNode(T value) {
+      this.value = value;
+    }
+
+  }
+
+  /**
+   * A weak reference to a borrowed object that compares by the identity of
+   * its referent.
+   */
+  private static final class LeakTracker extends WeakReference<Object> {
+
+    /** The identity hash code of the referent. */
+    private final int hash;
+
+    /**
+     * Creates a new <code>LeakTracker</code>.
+     * @param obj The borrowed object.
+     * @param queue The queue with which to register the reference, or
+     *     <code>null</code>.
+     */
+    LeakTracker(Object obj, ReferenceQueue<Object> queue) {
+      super(obj, queue);
+      this.hash = System.identityHashCode(obj);
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object other) {
+      if (this == other) {
+        return true;
+      }
+      if (!(other instanceof LeakTracker)) {
+        return false;
+      }
+      Object referent = get();
+      return referent != null && referent == ((LeakTracker) other).get();
+    }
+
+  }
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.concurrent;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An <code>AtomicLong</code> padded so that it occupies its own cache line.
+ * Used for counters that are updated frequently by one thread and read by
+ * another, so that writes to neighbouring fields do not cause false sharing.
+ * @author Brad Kimmel
+ */
+final class PaddedAtomicLong extends AtomicLong {
+
+  /**
+   * Serialization version ID.
+   */
+  private static final long serialVersionUID = -3434717582516380386L;
+
+  /*
+   * Padding to fill out the remainder of the cache line.  HotSpot never
+   * eliminates unused fields, so the padding need not be read.  Subclass
+   * fields are laid out after those of the superclass, so these follow the
+   * value in <code>AtomicLong</code>.  This stands in for
+   * <code>@sun.misc.Contended</code>, which is ignored outside the JDK
+   * unless <code>-XX:-RestrictContended</code> is given.
+   */
+  @SuppressWarnings("unused")
+  private long p1, p2, p3, p4, p5, p6, p7;
+
+  /**
+   * Creates a new <code>PaddedAtomicLong</code>.
+   * @param initialValue The initial value.
+   */
+  public PaddedAtomicLong(long initialValue) {
+    super(initialValue);
+  }
+
+}
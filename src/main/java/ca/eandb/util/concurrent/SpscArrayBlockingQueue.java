@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.concurrent;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free <code>BlockingQueue</code> for handing items from
+ * exactly one producer thread to exactly one consumer thread.  The head and
+ * tail counters are each padded onto their own cache line, and each side
+ * caches the last value it read of the other side's counter so that it only
+ * touches the shared cache line when the queue appears full (or empty).
+ *
+ * At most one thread may call the insertion methods and at most one thread
+ * may call the removal methods at a time.  Use
+ * {@link MpmcArrayBlockingQueue} when there are multiple producers or
+ * consumers.
+ *
+ * @author Brad Kimmel
+ */
+public final class SpscArrayBlockingQueue<T> extends AbstractRingBlockingQueue<T> {
+
+  /** The ring buffer. */
+  private final AtomicReferenceArray<T> buffer;
+
+  /** The sequence number of the next item to be removed. */
+  private final PaddedAtomicLong head = new PaddedAtomicLong(0);
+
+  /** The sequence number at which the next item will be inserted. */
+  private final PaddedAtomicLong tail = new PaddedAtomicLong(0);
+
+  /** The producer's most recently read value of <code>head</code>. */
+  private long cachedHead = 0;
+
+  /** Padding between the producer's and consumer's cached values. */
+  @SuppressWarnings("unused")
+  private long p1, p2, p3, p4, p5, p6, p7;
+
+  /** The consumer's most recently read value of <code>tail</code>. */
+  private long cachedTail = 0;
+
+  /**
+   * Creates a new <code>SpscArrayBlockingQueue</code>.
+   * @param capacity The minimum number of items the queue may hold.  The
+   *     actual capacity is rounded up to a power of two.
+   * @throws IllegalArgumentException If <code>capacity &lt;= 0</code> or
+   *     <code>capacity &gt; 2<sup>30</sup></code>.
+   */
+  public SpscArrayBlockingQueue(int capacity) {
+    super(capacity);
+    this.buffer = new AtomicReferenceArray<T>(this.capacity);
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.Queue#offer(java.lang.Object)
+   */
+  public boolean offer(T e) {
+    if (e == null) {
+      throw new NullPointerException();
+    }
+    long t = tail.get();
+    if (t - cachedHead >= capacity) {
+      cachedHead = head.get();
+      if (t - cachedHead >= capacity) {
+        return false;
+      }
+    }
+    buffer.lazySet((int) t & mask, e);
+    tail.lazySet(t + 1);
+    return true;
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.Queue#poll()
+   */
+  public T poll() {
+    long h = head.get();
+    if (h >= cachedTail) {
+      cachedTail = tail.get();
+      if (h >= cachedTail) {
+        return null;
+      }
+    }
+    int index = (int) h & mask;
+    T e = buffer.get(index);
+    buffer.lazySet(index, null);
+    head.lazySet(h + 1);
+    return e;
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.Queue#peek()
+   */
+  public T peek() {
+    long h = head.get();
+    return h < tail.get() ? buffer.get((int) h & mask) : null;
+  }
+
+  /**
+   * Removes up to <code>maxElements</code> items and adds them to the given
+   * collection.  The head counter is published once for the whole batch.
+   * May only be called by the consumer thread.
+   */
+  @Override
+  public int drainTo(Collection<? super T> c, int maxElements) {
+    if (c == this) {
+      throw new IllegalArgumentException();
+    }
+    long h = head.get();
+    long available = tail.get() - h;
+    int n = (int) Math.min(available, maxElements);
+    for (int i = 0; i < n; i++) {
+      int index = (int) (h + i) & mask;
+      c.add(buffer.get(index));
+      buffer.lazySet(index, null);
+    }
+    if (n > 0) {
+      head.lazySet(h + n);
+    }
+    return n;
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.concurrent.AbstractRingBlockingQueue#peekAt(long)
+   */
+  @Override
+  protected T peekAt(long sequence) {
+    return buffer.get((int) sequence & mask);
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.concurrent.AbstractRingBlockingQueue#headSequence()
+   */
+  @Override
+  protected long headSequence() {
+    return head.get();
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.concurrent.AbstractRingBlockingQueue#tailSequence()
+   */
+  @Override
+  protected long tailSequence() {
+    return tail.get();
+  }
+
+}
@@ -0,0 +1,465 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.graph;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import ca.eandb.util.FloatArray;
+import ca.eandb.util.IntegerArray;
+
+/**
+ * An immutable directed graph stored in compressed sparse row (CSR) form.
+ * The vertices are numbered <code>0</code> through
+ * <code>getVertexCount() - 1</code>.  The outgoing edges of vertex
+ * <code>v</code> are numbered <code>getFirstEdge(v)</code> (inclusive)
+ * through <code>getFirstEdge(v + 1)</code> (exclusive), so that the whole
+ * graph is held in two flat arrays of ints (plus an optional array of edge
+ * weights) rather than in per-vertex lists.
+ *
+ * Instances are created using a {@link Builder}.
+ *
+ * @author Brad Kimmel
+ */
+public final class CompressedSparseRowGraph implements Serializable {
+
+  /**
+   * Serialization version ID.
+   */
+  private static final long serialVersionUID = 2926335709519454751L;
+
+  /**
+   * The value returned by {@link #breadthFirstSearch(int)} for vertices that
+   * are not reachable from the source vertex.
+   */
+  public static final int UNREACHABLE = -1;
+
+  /**
+   * The index into <code>targets</code> of the first outgoing edge of each
+   * vertex.  The last element is the number of edges.
+   */
+  private final IntegerArray offsets;
+
+  /** The target vertex of each edge. */
+  private final IntegerArray targets;
+
+  /** The weight of each edge, or <code>null</code> if unweighted. */
+  private final FloatArray weights;
+
+  /**
+   * Creates a new <code>CompressedSparseRowGraph</code>.
+   * @param offsets The index of the first outgoing edge of each vertex,
+   *     followed by the number of edges.
+   * @param targets The target vertex of each edge.
+   * @param weights The weight of each edge, or <code>null</code> if the
+   *     graph is unweighted.
+   */
+  private CompressedSparseRowGraph(IntegerArray offsets, IntegerArray targets,
+      FloatArray weights) {
+    this.offsets = offsets;
+    this.targets = targets;
+    this.weights = weights;
+  }
+
+  /**
+   * Gets the number of vertices in this graph.
+   * @return The number of vertices in this graph.
+   */
+  public int getVertexCount() {
+    return offsets.size() - 1;
+  }
+
+  /**
+   * Gets the number of edges in this graph.
+   * @return The number of edges in this graph.
+   */
+  public int getEdgeCount() {
+    return targets.size();
+  }
+
+  /**
+   * Determines if this graph has edge weights.
+   * @return A value indicating if this graph has edge weights.
+   */
+  public boolean isWeighted() {
+    return weights != null;
+  }
+
+  /**
+   * Gets the number of outgoing edges of a vertex.
+   * @param vertex The vertex for which to get the degree.
+   * @return The number of outgoing edges of <code>vertex</code>.
+   * @throws IndexOutOfBoundsException If <code>vertex</code> is not a valid
+   *     vertex index.
+   */
+  public int getDegree(int vertex) {
+    vertexCheck(vertex);
+    int[] o = offsets.unsafeBackingArray();
+    return o[vertex + 1] - o[vertex];
+  }
+
+  /**
+   * Gets the index of the first outgoing edge of a vertex.
+   * @param vertex The vertex (<code>0 &lt;= vertex &lt;=
+   *     getVertexCount()</code>).  Passing <code>getVertexCount()</code>
+   *     yields the number of edges.
+   * @return The index of the first outgoing edge of <code>vertex</code>.
+   * @throws IndexOutOfBoundsException If <code>vertex &lt; 0 || vertex &gt;
+   *     getVertexCount()</code>.
+   */
+  public int getFirstEdge(int vertex) {
+    return offsets.get(vertex);
+  }
+
+  /**
+   * Gets the vertex that an edge points to.
+   * @param edge The index of the edge.
+   * @return The target vertex of <code>edge</code>.
+   * @throws IndexOutOfBoundsException If <code>edge</code> is not a valid
+   *     edge index.
+   */
+  public int getTarget(int edge) {
+    return targets.get(edge);
+  }
+
+  /**
+   * Gets the weight of an edge.
+   * @param edge The index of the edge.
+   * @return The weight of <code>edge</code>, or <code>1.0f</code> if this
+   *     graph is unweighted.
+   * @throws IndexOutOfBoundsException If <code>edge</code> is not a valid
+   *     edge index.
+   */
+  public float getWeight(int edge) {
+    return weights != null ? weights.get(edge) : 1.0f;
+  }
+
+  /**
+   * Gets the array of edge offsets.  Element <code>v</code> is the index of
+   * the first outgoing edge of vertex <code>v</code>, and the last element
+   * is the number of edges.  The returned array must not be modified.
+   * @return The array of edge offsets.
+   */
+  public IntegerArray getOffsets() {
+    return offsets;
+  }
+
+  /**
+   * Gets the array of edge targets.  The returned array must not be
+   * modified.
+   * @return The array of edge targets.
+   */
+  public IntegerArray getTargets() {
+    return targets;
+  }
+
+  /**
+   * Gets the array of edge weights.  The returned array must not be
+   * modified.
+   * @return The array of edge weights, or <code>null</code> if this graph is
+   *     unweighted.
+   */
+  public FloatArray getWeights() {
+    return weights;
+  }
+
+  /**
+   * Calls the specified consumer for each vertex adjacent to a vertex.
+   * @param vertex The vertex whose neighbors to visit.
+   * @param action The <code>IntConsumer</code> to pass the neighbors to.
+   * @throws IndexOutOfBoundsException If <code>vertex</code> is not a valid
+   *     vertex index.
+   */
+  public void forEachNeighbor(int vertex, IntConsumer action) {
+    vertexCheck(vertex);
+    int[] o = offsets.unsafeBackingArray();
+    int[] t = targets.unsafeBackingArray();
+    for (int e = o[vertex], end = o[vertex + 1]; e < end; e++) {
+      action.accept(t[e]);
+    }
+  }
+
+  /**
+   * Gets a stream of the vertices adjacent to a vertex.
+   * @param vertex The vertex whose neighbors to get.
+   * @return An <code>IntStream</code> of the targets of the outgoing edges
+   *     of <code>vertex</code>.
+   * @throws IndexOutOfBoundsException If <code>vertex</code> is not a valid
+   *     vertex index.
+   */
+  public IntStream neighbors(int vertex) {
+    vertexCheck(vertex);
+    int[] o = offsets.unsafeBackingArray();
+    return Arrays.stream(targets.unsafeBackingArray(), o[vertex], o[vertex + 1]);
+  }
+
+  /**
+   * Gets a stream of the degrees of all vertices in this graph, in vertex
+   * order.  The stream may be made parallel using
+   * {@link IntStream#parallel()}.
+   * @return An <code>IntStream</code> of vertex degrees.
+   */
+  public IntStream degrees() {
+    final int[] o = offsets.unsafeBackingArray();
+    return IntStream.range(0, getVertexCount()).map(v -> o[v + 1] - o[v]);
+  }
+
+  /**
+   * Computes the number of edges between a source vertex and each vertex
+   * reachable from it.  The search proceeds one level at a time, and the
+   * vertices in each level are expanded in parallel using the common
+   * <code>ForkJoinPool</code>.
+   * @param source The vertex at which to start the search.
+   * @return An <code>IntegerArray</code> containing the distance from
+   *     <code>source</code> to each vertex, or {@link #UNREACHABLE} for
+   *     vertices that cannot be reached.
+   * @throws IndexOutOfBoundsException If <code>source</code> is not a valid
+   *     vertex index.
+   */
+  public IntegerArray breadthFirstSearch(int source) {
+    vertexCheck(source);
+
+    final int n = getVertexCount();
+    final int[] o = offsets.unsafeBackingArray();
+    final int[] t = targets.unsafeBackingArray();
+    final AtomicIntegerArray distance = new AtomicIntegerArray(n);
+    for (int v = 0; v < n; v++) {
+      distance.lazySet(v, UNREACHABLE);
+    }
+    distance.set(source, 0);
+
+    int[] frontier = { source };
+    int level = 0;
+    int chunks = 4 * ForkJoinPool.getCommonPoolParallelism();
+
+    while (frontier.length > 0) {
+      final int[] current = frontier;
+      final int nextLevel = ++level;
+      final int chunkSize = Math.max(64, (current.length + chunks - 1) / chunks);
+      final int chunkCount = (current.length + chunkSize - 1) / chunkSize;
+      final IntegerArray[] next = new IntegerArray[chunkCount];
+
+      IntStream.range(0, chunkCount).parallel().forEach(c -> {
+        IntegerArray found = new IntegerArray();
+        for (int i = c * chunkSize, end = Math.min(current.length, i + chunkSize); i < end; i++) {
+          int v = current[i];
+          for (int e = o[v], last = o[v + 1]; e < last; e++) {
+            int w = t[e];
+            if (distance.get(w) == UNREACHABLE
+                && distance.compareAndSet(w, UNREACHABLE, nextLevel)) {
+              found.add(w);
+            }
+          }
+        }
+        next[c] = found;
+      });
+
+      int total = 0;
+      for (IntegerArray found : next) {
+        total += found.size();
+      }
+      frontier = new int[total];
+      total = 0;
+      for (IntegerArray found : next) {
+        System.arraycopy(found.unsafeBackingArray(), 0, frontier, total, found.size());
+        total += found.size();
+      }
+    }
+
+    int[] result = new int[n];
+    for (int v = 0; v < n; v++) {
+      result[v] = distance.get(v);
+    }
+    return IntegerArray.wrap(result);
+  }
+
+  /**
+   * Ensures that the specified vertex index is valid.
+   * @param vertex The vertex index to check.
+   * @throws IndexOutOfBoundsException If <code>vertex &lt; 0 || vertex &gt;=
+   *     getVertexCount()</code>.
+   */
+  private void vertexCheck(int vertex) {
+    if (vertex < 0 || vertex >= getVertexCount()) {
+      throw new IndexOutOfBoundsException();
+    }
+  }
+
+  /**
+   * Accumulates edges, in any order, for a
+   * <code>CompressedSparseRowGraph</code>.
+   */
+  public static final class Builder {
+
+    /** The number of vertices in the graph. */
+    private int vertexCount;
+
+    /** The source vertex of each edge added. */
+    private final IntegerArray sources = new IntegerArray();
+
+    /** The target vertex of each edge added. */
+    private final IntegerArray targets = new IntegerArray();
+
+    /**
+     * The weight of each edge added, or <code>null</code> if no weighted
+     * edges have been added.
+     */
+    private FloatArray weights = null;
+
+    /**
+     * Creates a new <code>Builder</code>.  The number of vertices is one more
+     * than the largest vertex index referenced by an edge.
+     */
+    public Builder() {
+      this(0);
+    }
+
+    /**
+     * Creates a new <code>Builder</code>.
+     * @param vertexCount The minimum number of vertices in the graph.
+     */
+    public Builder(int vertexCount) {
+      if (vertexCount < 0) {
+        throw new IllegalArgumentException("vertexCount must be non-negative.");
+      }
+      this.vertexCount = vertexCount;
+    }
+
+    /**
+     * Ensures that there is room for the specified number of edges without
+     * reallocating.
+     * @param edgeCount The required edge capacity.
+     * @return This <code>Builder</code>.
+     */
+    public Builder ensureCapacity(int edgeCount) {
+      sources.ensureCapacity(edgeCount);
+      targets.ensureCapacity(edgeCount);
+      if (weights != null) {
+        weights.ensureCapacity(edgeCount);
+      }
+      return this;
+    }
+
+    /**
+     * Adds an edge with a weight of <code>1.0f</code>.
+     * @param from The source vertex.
+     * @param to The target vertex.
+     * @return This <code>Builder</code>.
+     * @throws IllegalArgumentException If <code>from</code> or
+     *     <code>to</code> is negative.
+     */
+    public Builder addEdge(int from, int to) {
+      addVertices(from, to);
+      sources.add(from);
+      targets.add(to);
+      if (weights != null) {
+        weights.add(1.0f);
+      }
+      return this;
+    }
+
+    /**
+     * Adds a weighted edge.
+     * @param from The source vertex.
+     * @param to The target vertex.
+     * @param weight The weight of the edge.
+     * @return This <code>Builder</code>.
+     * @throws IllegalArgumentException If <code>from</code> or
+     *     <code>to</code> is negative.
+     */
+    public Builder addEdge(int from, int to, float weight) {
+      addVertices(from, to);
+      if (weights == null) {
+        weights = new FloatArray(Math.max(16, sources.size() + 1));
+        weights.resize(sources.size());
+        Arrays.fill(weights.unsafeBackingArray(), 0, sources.size(), 1.0f);
+      }
+      sources.add(from);
+      targets.add(to);
+      weights.add(weight);
+      return this;
+    }
+
+    /**
+     * Ensures that the graph contains the specified vertices.
+     * @param from The source vertex of an edge.
+     * @param to The target vertex of an edge.
+     * @throws IllegalArgumentException If <code>from</code> or
+     *     <code>to</code> is negative.
+     */
+    private void addVertices(int from, int to) {
+      if (from < 0 || to < 0) {
+        throw new IllegalArgumentException("Vertex indices must be non-negative.");
+      }
+      vertexCount = Math.max(vertexCount, Math.max(from, to) + 1);
+    }
+
+    /**
+     * Creates the <code>CompressedSparseRowGraph</code>.  The edges are
+     * grouped by source vertex using a counting sort, so building takes time
+     * linear in the number of vertices and edges.  Edges leaving the same
+     * vertex retain the order in which they were added.
+     * @return The new <code>CompressedSparseRowGraph</code>.
+     */
+    public CompressedSparseRowGraph build() {
+      int n = vertexCount;
+      int m = sources.size();
+      int[] src = sources.unsafeBackingArray();
+      int[] tgt = targets.unsafeBackingArray();
+      float[] wgt = weights != null ? weights.unsafeBackingArray() : null;
+
+      int[] offsets = new int[n + 1];
+      for (int i = 0; i < m; i++) {
+        offsets[src[i] + 1]++;
+      }
+      for (int v = 0; v < n; v++) {
+        offsets[v + 1] += offsets[v];
+      }
+
+      int[] next = new int[n];
+      System.arraycopy(offsets, 0, next, 0, n);
+      int[] sortedTargets = new int[m];
+      float[] sortedWeights = wgt != null ? new float[m] : null;
+      for (int i = 0; i < m; i++) {
+        int e = next[src[i]]++;
+        sortedTargets[e] = tgt[i];
+        if (sortedWeights != null) {
+          sortedWeights[e] = wgt[i];
+        }
+      }
+
+      return new CompressedSparseRowGraph(IntegerArray.wrap(offsets),
+          IntegerArray.wrap(sortedTargets),
+          sortedWeights != null ? FloatArray.wrap(sortedWeights) : null);
+    }
+
+  }
+
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.hash;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+
+import ca.eandb.util.UnexpectedException;
+
+/**
+ * Computes the CRC-32C (Castagnoli) checksum of a sequence of bytes.  When
+ * running on Java 9 or later, this delegates to
+ * <code>java.util.zip.CRC32C</code>, which the JVM implements using
+ * hardware CRC instructions where available.  On earlier JVMs, a
+ * table-driven (slicing-by-8) implementation is used.
+ *
+ * @author Brad Kimmel
+ */
+public final class Crc32c extends Hasher {
+
+  /** The reversed Castagnoli polynomial. */
+  private static final int POLYNOMIAL = 0x82f63b78;
+
+  /**
+   * The constructor of <code>java.util.zip.CRC32C</code>, or
+   * <code>null</code> if it is not available.
+   */
+  private static final MethodHandle NATIVE_CONSTRUCTOR;
+
+  /**
+   * The <code>Checksum.update(ByteBuffer)</code> method, or
+   * <code>null</code> if it is not available.
+   */
+  private static final MethodHandle NATIVE_UPDATE_BUFFER;
+
+  static {
+    MethodHandle constructor = null;
+    MethodHandle updateBuffer = null;
+    try {
+      MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+      Class<?> cls = Class.forName("java.util.zip.CRC32C");
+      constructor = lookup.findConstructor(cls, MethodType.methodType(void.class))
+          .asType(MethodType.methodType(Checksum.class));
+      updateBuffer = lookup.findVirtual(Checksum.class, "update",
+          MethodType.methodType(void.class, ByteBuffer.class));
+    } catch (ReflectiveOperationException e) {
+      constructor = null;
+      updateBuffer = null;
+    }
+    NATIVE_CONSTRUCTOR = constructor;
+    NATIVE_UPDATE_BUFFER = updateBuffer;
+  }
+
+  /** The lookup tables for the slicing-by-8 implementation. */
+  private static final int[][] TABLES = createTables();
+
+  /**
+   * The JDK implementation, or <code>null</code> if it is not available.
+   */
+  private final Checksum delegate;
+
+  /** The current (inverted) CRC, if <code>delegate</code> is null. */
+  private int crc;
+
+  /**
+   * Creates a new <code>Crc32c</code>.
+   */
+  public Crc32c() {
+    this(true);
+  }
+
+  /**
+   * Creates a new <code>Crc32c</code>.
+   * @param allowNative A value indicating whether to use the JDK
+   *     implementation if it is available.  If <code>false</code>, the
+   *     table-driven implementation is always used.
+   */
+  Crc32c(boolean allowNative) {
+    if (allowNative && NATIVE_CONSTRUCTOR != null) {
+      try {
+        this.delegate = (Checksum) NATIVE_CONSTRUCTOR.invokeExact();
+      } catch (Throwable e) {
+        throw new UnexpectedException(e);
+      }
+    } else {
+      this.delegate = null;
+    }
+    reset();
+  }
+
+  /**
+   * Determines whether the JDK implementation of CRC-32C is being used.
+   * @return A value indicating if <code>java.util.zip.CRC32C</code> is
+   *     available.
+   */
+  public static boolean isNative() {
+    return NATIVE_CONSTRUCTOR != null;
+  }
+
+  /**
+   * Computes the CRC-32C of a range of bytes.
+   * @param b The array containing the bytes.
+   * @param off The index of the first byte.
+   * @param len The number of bytes.
+   * @return The checksum.
+   */
+  public static long hash(byte[] b, int off, int len) {
+    Crc32c crc = new Crc32c();
+    crc.update(b, off, len);
+    return crc.getValue();
+  }
+
+  /**
+   * Computes the CRC-32C of an array of bytes.
+   * @param b The bytes.
+   * @return The checksum.
+   */
+  public static long hash(byte[] b) {
+    return hash(b, 0, b.length);
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.hash.Hasher#update(int)
+   */
+  @Override
+  public void update(int b) {
+    if (delegate != null) {
+      delegate.update(b);
+    } else {
+      crc = (crc >>> 8) ^ TABLES[0][(crc ^ b) & 0xff];
+    }
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.hash.Hasher#update(byte[], int, int)
+   */
+  @Override
+  public void update(byte[] b, int off, int len) {
+    if (off < 0 || len < 0 || off + len > b.length) {
+      throw new IndexOutOfBoundsException();
+    }
+    if (delegate != null) {
+      delegate.update(b, off, len);
+      return;
+    }
+    int[] t0 = TABLES[0], t1 = TABLES[1], t2 = TABLES[2], t3 = TABLES[3];
+    int[] t4 = TABLES[4], t5 = TABLES[5], t6 = TABLES[6], t7 = TABLES[7];
+    int c = crc;
+    int end = off + len;
+    for (int limit = end - 8; off <= limit; off += 8) {
+      int lo = c ^ ((b[off] & 0xff) | (b[off + 1] & 0xff) << 8
+          | (b[off + 2] & 0xff) << 16 | (b[off + 3] & 0xff) << 24);
+      c = t7[lo & 0xff] ^ t6[(lo >>> 8) & 0xff]
+          ^ t5[(lo >>> 16) & 0xff] ^ t4[lo >>> 24]
+          ^ t3[b[off + 4] & 0xff] ^ t2[b[off + 5] & 0xff]
+          ^ t1[b[off + 6] & 0xff] ^ t0[b[off + 7] & 0xff];
+    }
+    for (; off < end; off++) {
+      c = (c >>> 8) ^ t0[(c ^ b[off]) & 0xff];
+    }
+    crc = c;
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.hash.Hasher#update(java.nio.ByteBuffer)
+   */
+  @Override
+  public void update(ByteBuffer buffer) {
+    if (delegate != null && NATIVE_UPDATE_BUFFER != null && buffer.isDirect()) {
+      try {
+        NATIVE_UPDATE_BUFFER.invokeExact(delegate, buffer);
+      } catch (RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable e) {
+        throw new UnexpectedException(e);
+      }
+    } else {
+      super.update(buffer);
+    }
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.hash.Hasher#getValue()
+   */
+  @Override
+  public long getValue() {
+    return delegate != null ? delegate.getValue() : ~crc & 0xffffffffL;
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.hash.Hasher#reset()
+   */
+  @Override
+  public void reset() {
+    if (delegate != null) {
+      delegate.reset();
+    } else {
+      crc = ~0;
+    }
+  }
+
+  /**
+   * Creates the lookup tables for the slicing-by-8 implementation.
+   * @return The lookup tables.
+   */
+  private static int[][] createTables() {
+    int[][] tables = new int[8][256];
+    for (int i = 0; i < 256; i++) {
+      int c = i;
+      for (int k = 0; k < 8; k++) {
+        c = (c & 1) != 0 ? (c >>> 1) ^ POLYNOMIAL : c >>> 1;
+      }
+      tables[0][i] = c;
+    }
+    for (int i = 0; i < 256; i++) {
+      int c = tables[0][i];
+      for (int t = 1; t < 8; t++) {
+        c = (c >>> 8) ^ tables[0][c & 0xff];
+        tables[t][i] = c;
+      }
+    }
+    return tables;
+  }
+
+}
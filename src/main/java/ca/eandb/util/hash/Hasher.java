@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.hash;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+
+import ca.eandb.util.ByteArray;
+
+/**
+ * Computes a non-cryptographic hash of a sequence of bytes incrementally.
+ * The bytes may be supplied in pieces of any size, from arrays, buffers or
+ * streams, and the result is the same as if they had been hashed all at
+ * once.  Hashers are suitable for change detection and deduplication, but
+ * not where an adversary may choose the input.
+ *
+ * A <code>Hasher</code> is a <code>java.util.zip.Checksum</code>, so it may
+ * be used with <code>java.util.zip.CheckedInputStream</code> and
+ * <code>java.util.zip.CheckedOutputStream</code>.
+ *
+ * This class is not thread-safe.
+ *
+ * @see ca.eandb.util.io.HashingOutputStream
+ * @author Brad Kimmel
+ */
+public abstract class Hasher implements Checksum {
+
+  /** The size of the buffer used to copy from direct buffers and streams. */
+  private static final int SCRATCH_SIZE = 8192;
+
+  /** A buffer used to copy from direct buffers and streams. */
+  private byte[] scratch;
+
+  /* (non-Javadoc)
+   * @see java.util.zip.Checksum#update(int)
+   */
+  @Override
+  public abstract void update(int b);
+
+  /* (non-Javadoc)
+   * @see java.util.zip.Checksum#update(byte[], int, int)
+   */
+  @Override
+  public abstract void update(byte[] b, int off, int len);
+
+  /**
+   * Gets the hash of the bytes supplied since this <code>Hasher</code> was
+   * created or last reset.  This does not change the state of the
+   * <code>Hasher</code>, so more bytes may be supplied afterwards.
+   * @return The hash value.
+   */
+  @Override
+  public abstract long getValue();
+
+  /**
+   * Restores this <code>Hasher</code> to its initial state.
+   */
+  @Override
+  public abstract void reset();
+
+  /**
+   * Updates the hash with all bytes in an array.
+   * @param b The bytes to hash.
+   */
+  public void update(byte[] b) {
+    update(b, 0, b.length);
+  }
+
+  /**
+   * Updates the hash with the contents of a <code>ByteArray</code>.
+   * @param bytes The <code>ByteArray</code> to hash.
+   */
+  public void update(ByteArray bytes) {
+    update(bytes.unsafeBackingArray(), 0, bytes.size());
+  }
+
+  /**
+   * Updates the hash with the remaining bytes of a buffer, advancing its
+   * position to its limit.
+   * @param buffer The <code>ByteBuffer</code> to hash.
+   */
+  public void update(ByteBuffer buffer) {
+    if (buffer.hasArray()) {
+      int pos = buffer.position();
+      update(buffer.array(), buffer.arrayOffset() + pos, buffer.limit() - pos);
+      buffer.position(buffer.limit());
+      return;
+    }
+    byte[] buf = scratch();
+    while (buffer.hasRemaining()) {
+      int n = Math.min(buf.length, buffer.remaining());
+      buffer.get(buf, 0, n);
+      update(buf, 0, n);
+    }
+  }
+
+  /**
+   * Updates the hash with the remaining contents of a stream.  The stream is
+   * not closed.
+   * @param in The <code>InputStream</code> to hash.
+   * @return The number of bytes read from <code>in</code>.
+   * @throws IOException If an error occurs while reading from
+   *     <code>in</code>.
+   */
+  public long update(InputStream in) throws IOException {
+    byte[] buf = scratch();
+    long total = 0;
+    int n;
+    while ((n = in.read(buf)) >= 0) {
+      update(buf, 0, n);
+      total += n;
+    }
+    return total;
+  }
+
+  /**
+   * Gets the buffer used to copy from direct buffers and streams.
+   * @return The scratch buffer.
+   */
+  private byte[] scratch() {
+    if (scratch == null) {
+      scratch = new byte[SCRATCH_SIZE];
+    }
+    return scratch;
+  }
+
+  /**
+   * Reads a little-endian <code>long</code> from an array.
+   * @param b The array.
+   * @param i The index of the first byte.
+   * @return The <code>long</code> value.
+   */
+  static long getLong(byte[] b, int i) {
+    return (b[i] & 0xffL)
+        | (b[i + 1] & 0xffL) << 8
+        | (b[i + 2] & 0xffL) << 16
+        | (b[i + 3] & 0xffL) << 24
+        | (b[i + 4] & 0xffL) << 32
+        | (b[i + 5] & 0xffL) << 40
+        | (b[i + 6] & 0xffL) << 48
+        | (b[i + 7] & 0xffL) << 56;
+  }
+
+  /**
+   * Reads a little-endian unsigned <code>int</code> from an array.
+   * @param b The array.
+   * @param i The index of the first byte.
+   * @return The unsigned <code>int</code> value.
+   */
+  static long getUnsignedInt(byte[] b, int i) {
+    return (b[i] & 0xffL)
+        | (b[i + 1] & 0xffL) << 8
+        | (b[i + 2] & 0xffL) << 16
+        | (b[i + 3] & 0xffL) << 24;
+  }
+
+}
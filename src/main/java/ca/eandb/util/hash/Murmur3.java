@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.hash;
+
+/**
+ * Computes the 128-bit MurmurHash3 (the x64 variant) of a sequence of bytes.
+ * {@link #getValue()} returns the first 64 bits of the hash, and
+ * {@link #getHighValue()} the remaining 64 bits.
+ *
+ * @author Brad Kimmel
+ */
+public final class Murmur3 extends Hasher {
+
+  /** The first mixing constant. */
+  private static final long C1 = 0x87c37b91114253d5L;
+
+  /** The second mixing constant. */
+  private static final long C2 = 0x4cf5ad432745937fL;
+
+  /** The number of bytes consumed by each round of the main loop. */
+  private static final int BLOCK = 16;
+
+  /** The seed. */
+  private final long seed;
+
+  /** The first half of the state. */
+  private long h1;
+
+  /** The second half of the state. */
+  private long h2;
+
+  /** Input not yet consumed, less than one block. */
+  private final byte[] buffer = new byte[BLOCK];
+
+  /** The number of bytes in <code>buffer</code>. */
+  private int buffered;
+
+  /** The total number of bytes supplied. */
+  private long totalLength;
+
+  /**
+   * Creates a new <code>Murmur3</code> with a seed of zero.
+   */
+  public Murmur3() {
+    this(0);
+  }
+
+  /**
+   * Creates a new <code>Murmur3</code>.
+   * @param seed The seed.
+   */
+  public Murmur3(int seed) {
+    this.seed = seed & 0xffffffffL;
+    reset();
+  }
+
+  /**
+   * Computes the first 64 bits of the hash of a range of bytes with a seed
+   * of zero.
+   * @param b The array containing the bytes to hash.
+   * @param off The index of the first byte to hash.
+   * @param len The number of bytes to hash.
+   * @return The first 64 bits of the hash.
+   */
+  public static long hash(byte[] b, int off, int len) {
+    Murmur3 m = new Murmur3();
+    m.update(b, off, len);
+    return m.getValue();
+  }
+
+  /**
+   * Computes the first 64 bits of the hash of an array of bytes with a seed
+   * of zero.
+   * @param b The bytes to hash.
+   * @return The first 64 bits of the hash.
+   */
+  public static long hash(byte[] b) {
+    return hash(b, 0, b.length);
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.hash.Hasher#update(int)
+   */
+  @Override
+  public void update(int b) {
+    buffer[buffered++] = (byte) b;
+    totalLength++;
+    if (buffered == BLOCK) {
+      consume(buffer, 0);
+      buffered = 0;
+    }
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.hash.Hasher#update(byte[], int, int)
+   */
+  @Override
+  public void update(byte[] b, int off, int len) {
+    if (off < 0 || len < 0 || off + len > b.length) {
+      throw new IndexOutOfBoundsException();
+    }
+    totalLength += len;
+    int end = off + len;
+    if (buffered > 0) {
+      int n = Math.min(BLOCK - buffered, len);
+      System.arraycopy(b, off, buffer, buffered, n);
+      buffered += n;
+      off += n;
+      if (buffered < BLOCK) {
+        return;
+      }
+      consume(buffer, 0);
+      buffered = 0;
+    }
+    for (int limit = end - BLOCK; off <= limit; off += BLOCK) {
+      consume(b, off);
+    }
+    buffered = end - off;
+    System.arraycopy(b, off, buffer, 0, buffered);
+  }
+
+  /**
+   * Gets the first 64 bits of the hash.
+   * @return The first 64 bits of the hash.
+   */
+  @Override
+  public long getValue() {
+    return finish(false);
+  }
+
+  /**
+   * Gets the last 64 bits of the hash.
+   * @return The last 64 bits of the hash.
+   */
+  public long getHighValue() {
+    return finish(true);
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.hash.Hasher#reset()
+   */
+  @Override
+  public void reset() {
+    h1 = seed;
+    h2 = seed;
+    buffered = 0;
+    totalLength = 0;
+  }
+
+  /**
+   * Consumes one block of input.
+   * @param b The array containing the block.
+   * @param i The index of the first byte of the block.
+   */
+  private void consume(byte[] b, int i) {
+    h1 ^= mixK1(getLong(b, i));
+    h1 = Long.rotateLeft(h1, 27);
+    h1 += h2;
+    h1 = h1 * 5 + 0x52dce729;
+
+    h2 ^= mixK2(getLong(b, i + 8));
+    h2 = Long.rotateLeft(h2, 31);
+    h2 += h1;
+    h2 = h2 * 5 + 0x38495ab5;
+  }
+
+  /**
+   * Computes the hash from the current state, without changing it.
+   * @param high A value indicating whether to return the last 64 bits of
+   *     the hash rather than the first.
+   * @return The requested half of the hash.
+   */
+  private long finish(boolean high) {
+    long a = h1;
+    long b = h2;
+    long k1 = 0;
+    long k2 = 0;
+    for (int i = buffered - 1; i >= 8; i--) {
+      k2 = (k2 << 8) | (buffer[i] & 0xffL);
+    }
+    for (int i = Math.min(buffered, 8) - 1; i >= 0; i--) {
+      k1 = (k1 << 8) | (buffer[i] & 0xffL);
+    }
+    if (buffered > 8) {
+      b ^= mixK2(k2);
+    }
+    if (buffered > 0) {
+      a ^= mixK1(k1);
+    }
+
+    a ^= totalLength;
+    b ^= totalLength;
+    a += b;
+    b += a;
+    a = fmix(a);
+    b = fmix(b);
+    a += b;
+    return high ? b + a : a;
+  }
+
+  /**
+   * Mixes the first half of a block.
+   * @param k The first eight bytes of the block.
+   * @return The mixed value.
+   */
+  private static long mixK1(long k) {
+    k *= C1;
+    k = Long.rotateLeft(k, 31);
+    return k * C2;
+  }
+
+  /**
+   * Mixes the second half of a block.
+   * @param k The last eight bytes of the block.
+   * @return The mixed value.
+   */
+  private static long mixK2(long k) {
+    k *= C2;
+    k = Long.rotateLeft(k, 33);
+    return k * C1;
+  }
+
+  /**
+   * Applies the final avalanche to one half of the hash.
+   * @param k The value to mix.
+   * @return The mixed value.
+   */
+  private static long fmix(long k) {
+    k ^= k >>> 33;
+    k *= 0xff51afd7ed558ccdL;
+    k ^= k >>> 33;
+    k *= 0xc4ceb9fe1a85ec53L;
+    k ^= k >>> 33;
+    return k;
+  }
+
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.hash;
+
+/**
+ * Computes the 64-bit xxHash (XXH64) of a sequence of bytes.
+ *
+ * @author Brad Kimmel
+ */
+public final class XxHash64 extends Hasher {
+
+  /** Prime number 1 of XXH64. */
+  private static final long PRIME1 = 0x9e3779b185ebca87L;
+  /** Prime number 2 of XXH64. */
+  private static final long PRIME2 = 0xc2b2ae3d27d4eb4fL;
+  /** Prime number 3 of XXH64. */
+  private static final long PRIME3 = 0x165667b19e3779f9L;
+  /** Prime number 4 of XXH64. */
+  private static final long PRIME4 = 0x85ebca77c2b2ae63L;
+  /** Prime number 5 of XXH64. */
+  private static final long PRIME5 = 0x27d4eb2f165667c5L;
+
+  /** The number of bytes consumed by each round of the main loop. */
+  private static final int STRIPE = 32;
+
+  /** The seed. */
+  private final long seed;
+
+  /** The first accumulator. */
+  private long v1;
+
+  /** The second accumulator. */
+  private long v2;
+
+  /** The third accumulator. */
+  private long v3;
+
+  /** The fourth accumulator. */
+  private long v4;
+
+  /** Input not yet consumed, less than one stripe. */
+  private final byte[] buffer = new byte[STRIPE];
+
+  /** The number of bytes in <code>buffer</code>. */
+  private int buffered;
+
+  /** The total number of bytes supplied. */
+  private long totalLength;
+
+  /**
+   * Creates a new <code>XxHash64</code> with a seed of zero.
+   */
+  public XxHash64() {
+    this(0L);
+  }
+
+  /**
+   * Creates a new <code>XxHash64</code>.
+   * @param seed The seed.
+   */
+  public XxHash64(long seed) {
+    this.seed = seed;
+    reset();
+  }
+
+  /**
+   * Computes the hash of a range of bytes.
+   * @param b The array containing the bytes to hash.
+   * @param off The index of the first byte to hash.
+   * @param len The number of bytes to hash.
+   * @param seed The seed.
+   * @return The hash value.
+   */
+  public static long hash(byte[] b, int off, int len, long seed) {
+    if (off < 0 || len < 0 || off + len > b.length) {
+      throw new IndexOutOfBoundsException();
+    }
+    int end = off + len;
+    int i = off;
+    long h;
+    if (len >= STRIPE) {
+      long a1 = seed + PRIME1 + PRIME2;
+      long a2 = seed + PRIME2;
+      long a3 = seed;
+      long a4 = seed - PRIME1;
+      for (int limit = end - STRIPE; i <= limit; i += STRIPE) {
+        a1 = round(a1, getLong(b, i));
+        a2 = round(a2, getLong(b, i + 8));
+        a3 = round(a3, getLong(b, i + 16));
+        a4 = round(a4, getLong(b, i + 24));
+      }
+      h = converge(a1, a2, a3, a4);
+    } else {
+      h = seed + PRIME5;
+    }
+    h += len;
+    return finish(h, b, i, end);
+  }
+
+  /**
+   * Computes the hash of a range of bytes with a seed of zero.
+   * @param b The array containing the bytes to hash.
+   * @param off The index of the first byte to hash.
+   * @param len The number of bytes to hash.
+   * @return The hash value.
+   */
+  public static long hash(byte[] b, int off, int len) {
+    return hash(b, off, len, 0L);
+  }
+
+  /**
+   * Computes the hash of an array of bytes with a seed of zero.
+   * @param b The bytes to hash.
+   * @return The hash value.
+   */
+  public static long hash(byte[] b) {
+    return hash(b, 0, b.length, 0L);
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.hash.Hasher#update(int)
+   */
+  @Override
+  public void update(int b) {
+    buffer[buffered++] = (byte) b;
+    totalLength++;
+    if (buffered == STRIPE) {
+      consume(buffer, 0);
+      buffered = 0;
+    }
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.hash.Hasher#update(byte[], int, int)
+   */
+  @Override
+  public void update(byte[] b, int off, int len) {
+    if (off < 0 || len < 0 || off + len > b.length) {
+      throw new IndexOutOfBoundsException();
+    }
+    totalLength += len;
+    int end = off + len;
+    if (buffered > 0) {
+      int n = Math.min(STRIPE - buffered, len);
+      System.arraycopy(b, off, buffer, buffered, n);
+      buffered += n;
+      off += n;
+      if (buffered < STRIPE) {
+        return;
+      }
+      consume(buffer, 0);
+      buffered = 0;
+    }
+    for (int limit = end - STRIPE; off <= limit; off += STRIPE) {
+      consume(b, off);
+    }
+    buffered = end - off;
+    System.arraycopy(b, off, buffer, 0, buffered);
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.hash.Hasher#getValue()
+   */
+  @Override
+  public long getValue() {
+    long h = totalLength >= STRIPE ? converge(v1, v2, v3, v4) : seed + PRIME5;
+    h += totalLength;
+    return finish(h, buffer, 0, buffered);
+  }
+
+  /* (non-Javadoc)
+   * @see ca.eandb.util.hash.Hasher#reset()
+   */
+  @Override
+  public void reset() {
+    v1 = seed + PRIME1 + PRIME2;
+    v2 = seed + PRIME2;
+    v3 = seed;
+    v4 = seed - PRIME1;
+    buffered = 0;
+    totalLength = 0;
+  }
+
+  /**
+   * Consumes one stripe of input.
+   * @param b The array containing the stripe.
+   * @param i The index of the first byte of the stripe.
+   */
+  private void consume(byte[] b, int i) {
+    v1 = round(v1, getLong(b, i));
+    v2 = round(v2, getLong(b, i + 8));
+    v3 = round(v3, getLong(b, i + 16));
+    v4 = round(v4, getLong(b, i + 24));
+  }
+
+  /**
+   * Mixes eight bytes of input into an accumulator.
+   * @param acc The accumulator.
+   * @param input The input.
+   * @return The new value of the accumulator.
+   */
+  private static long round(long acc, long input) {
+    acc += input * PRIME2;
+    acc = Long.rotateLeft(acc, 31);
+    return acc * PRIME1;
+  }
+
+  /**
+   * Merges an accumulator into the hash.
+   * @param h The hash.
+   * @param acc The accumulator.
+   * @return The new hash.
+   */
+  private static long merge(long h, long acc) {
+    h ^= round(0, acc);
+    return h * PRIME1 + PRIME4;
+  }
+
+  /**
+   * Combines the four accumulators.
+   * @param a1 The first accumulator.
+   * @param a2 The second accumulator.
+   * @param a3 The third accumulator.
+   * @param a4 The fourth accumulator.
+   * @return The combined hash.
+   */
+  private static long converge(long a1, long a2, long a3, long a4) {
+    long h = Long.rotateLeft(a1, 1) + Long.rotateLeft(a2, 7)
+        + Long.rotateLeft(a3, 12) + Long.rotateLeft(a4, 18);
+    h = merge(h, a1);
+    h = merge(h, a2);
+    h = merge(h, a3);
+    return merge(h, a4);
+  }
+
+  /**
+   * Mixes the remaining input (less than one stripe) into the hash and
+   * applies the final avalanche.
+   * @param h The hash.
+   * @param b The array containing the remaining input.
+   * @param i The index of the first remaining byte.
+   * @param end The index following the last remaining byte.
+   * @return The final hash.
+   */
+  private static long finish(long h, byte[] b, int i, int end) {
+    for (; i + 8 <= end; i += 8) {
+      h ^= round(0, getLong(b, i));
+      h = Long.rotateLeft(h, 27) * PRIME1 + PRIME4;
+    }
+    if (i + 4 <= end) {
+      h ^= getUnsignedInt(b, i) * PRIME1;
+      h = Long.rotateLeft(h, 23) * PRIME2 + PRIME3;
+      i += 4;
+    }
+    for (; i < end; i++) {
+      h ^= (b[i] & 0xffL) * PRIME5;
+      h = Long.rotateLeft(h, 11) * PRIME1;
+    }
+    h ^= h >>> 33;
+    h *= PRIME2;
+    h ^= h >>> 29;
+    h *= PRIME3;
+    h ^= h >>> 32;
+    return h;
+  }
+
+}
@@ -29,18 +29,53 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectStreamClass;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * An <code>ObjectInputStream</code> that uses a provided
- * <code>ClassLoader</code> to load new classes.
+ * <code>ClassLoader</code> to load new classes.  Resolved classes are
+ * remembered for each <code>ClassLoader</code> across all streams, so that
+ * reading many small streams against the same loader does not repeatedly
+ * go through the loader.  The cache holds the loaders and classes weakly,
+ * so it does not prevent them from being unloaded.
  * @author Brad Kimmel
  */
 public final class AlternateClassLoaderObjectInputStream extends
     ObjectInputStream {
 
+  /** The primitive types, keyed by name. */
+  private static final Map<String, Class<?>> primitives = new HashMap<String, Class<?>>();
+
+  static {
+    for (Class<?> type : new Class<?>[] {
+        boolean.class, byte.class, char.class, short.class, int.class,
+        long.class, float.class, double.class, void.class }) {
+      primitives.put(type.getName(), type);
+    }
+  }
+
+  /** The resolved classes for each <code>ClassLoader</code>. */
+  private static final Map<ClassLoader, ConcurrentMap<String, WeakReference<Class<?>>>> caches =
+      Collections.synchronizedMap(new WeakHashMap<ClassLoader, ConcurrentMap<String, WeakReference<Class<?>>>>());
+
+  /** The resolved classes for the bootstrap class loader. */
+  private static final ConcurrentMap<String, WeakReference<Class<?>>> bootstrapCache =
+      new ConcurrentHashMap<String, WeakReference<Class<?>>>();
+
   /** The <code>ClassLoader</code> to use. */
   private final ClassLoader loader;
 
+  /** The resolved classes for <code>loader</code>. */
+  private final ConcurrentMap<String, WeakReference<Class<?>>> cache;
+
   /**
    * Creates a new <code>AlternateClassLoaderObjectInputStream</code>.
    * @param in The <code>InputStream</code> to read from.
@@ -51,6 +86,47 @@ public final class AlternateClassLoaderObjectInputStream extends
       throws IOException {
     super(in);
     this.loader = loader;
+    this.cache = getCache(loader);
+  }
+
+  /**
+   * Gets the resolved classes for a <code>ClassLoader</code>.
+   * @param loader The <code>ClassLoader</code>, or <code>null</code> for the
+   *     bootstrap class loader.
+   * @return The resolved classes for <code>loader</code>, keyed by name.
+   */
+  private static ConcurrentMap<String, WeakReference<Class<?>>> getCache(ClassLoader loader) {
+    if (loader == null) {
+      return bootstrapCache;
+    }
+    synchronized (caches) {
+      ConcurrentMap<String, WeakReference<Class<?>>> cache = caches.get(loader);
+      if (cache == null) {
+        cache = new ConcurrentHashMap<String, WeakReference<Class<?>>>();
+        caches.put(loader, cache);
+      }
+      return cache;
+    }
+  }
+
+  /**
+   * Resolves a class by name, using the cache if possible.
+   * @param name The binary name of the class, the name of a primitive type,
+   *     or the descriptor of an array type.
+   * @return The resolved <code>Class</code>.
+   * @throws ClassNotFoundException If the class cannot be found.
+   */
+  private Class<?> resolve(String name) throws ClassNotFoundException {
+    WeakReference<Class<?>> ref = cache.get(name);
+    Class<?> cl = ref != null ? ref.get() : null;
+    if (cl == null) {
+      cl = primitives.get(name);
+      if (cl == null) {
+        cl = Class.forName(name, true, loader);
+        cache.put(name, new WeakReference<Class<?>>(cl));
+      }
+    }
+    return cl;
   }
 
   /* (non-Javadoc)
@@ -59,7 +135,37 @@ public final class AlternateClassLoaderObjectInputStream extends
   @Override
   protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException,
       ClassNotFoundException {
-    return Class.forName(desc.getName(), true, loader);
+    return resolve(desc.getName());
+  }
+
+  /* (non-Javadoc)
+   * @see java.io.ObjectInputStream#resolveProxyClass(java.lang.String[])
+   */
+  @Override
+  @SuppressWarnings("deprecation")
+  protected Class<?> resolveProxyClass(String[] interfaces) throws IOException,
+      ClassNotFoundException {
+    ClassLoader nonPublicLoader = null;
+    boolean hasNonPublicInterface = false;
+    Class<?>[] classes = new Class<?>[interfaces.length];
+    for (int i = 0; i < interfaces.length; i++) {
+      Class<?> cl = resolve(interfaces[i]);
+      if (!Modifier.isPublic(cl.getModifiers())) {
+        if (hasNonPublicInterface && nonPublicLoader != cl.getClassLoader()) {
+          throw new IllegalAccessError(
+              "conflicting non-public interface class loaders");
+        }
+        nonPublicLoader = cl.getClassLoader();
+        hasNonPublicInterface = true;
+      }
+      classes[i] = cl;
+    }
+    try {
+      return Proxy.getProxyClass(
+          hasNonPublicInterface ? nonPublicLoader : loader, classes);
+    } catch (IllegalArgumentException e) {
+      throw new ClassNotFoundException(null, e);
+    }
   }
 
 }
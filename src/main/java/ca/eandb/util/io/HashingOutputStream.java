@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import ca.eandb.util.hash.Hasher;
+
+/**
+ * An <code>OutputStream</code> that updates a {@link Hasher} with the bytes
+ * written to it, optionally passing them on to another
+ * <code>OutputStream</code>.  Without an underlying stream, this is a cheap
+ * replacement for a <code>java.security.DigestOutputStream</code> wrapping a
+ * {@link NullOutputStream} when a cryptographic digest is not required.
+ * @author Brad Kimmel
+ */
+public final class HashingOutputStream extends OutputStream {
+
+  /** The <code>Hasher</code> to update. */
+  private final Hasher hasher;
+
+  /** The <code>OutputStream</code> to write to, or <code>null</code>. */
+  private final OutputStream out;
+
+  /**
+   * Creates a new <code>HashingOutputStream</code> that discards the bytes
+   * written to it after hashing them.
+   * @param hasher The <code>Hasher</code> to update.
+   */
+  public HashingOutputStream(Hasher hasher) {
+    this(null, hasher);
+  }
+
+  /**
+   * Creates a new <code>HashingOutputStream</code>.
+   * @param out The <code>OutputStream</code> to write to, or
+   *     <code>null</code> to discard the bytes after hashing them.
+   * @param hasher The <code>Hasher</code> to update.
+   */
+  public HashingOutputStream(OutputStream out, Hasher hasher) {
+    if (hasher == null) {
+      throw new IllegalArgumentException("hasher must not be null.");
+    }
+    this.out = out;
+    this.hasher = hasher;
+  }
+
+  /**
+   * Gets the <code>Hasher</code> updated by this stream.
+   * @return The <code>Hasher</code>.
+   */
+  public Hasher getHasher() {
+    return hasher;
+  }
+
+  /**
+   * Gets the hash of the bytes written so far.
+   * @return The hash value.
+   */
+  public long getValue() {
+    return hasher.getValue();
+  }
+
+  /* (non-Javadoc)
+   * @see java.io.OutputStream#write(int)
+   */
+  @Override
+  public void write(int b) throws IOException {
+    hasher.update(b);
+    if (out != null) {
+      out.write(b);
+    }
+  }
+
+  /* (non-Javadoc)
+   * @see java.io.OutputStream#write(byte[], int, int)
+   */
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    hasher.update(b, off, len);
+    if (out != null) {
+      out.write(b, off, len);
+    }
+  }
+
+  /* (non-Javadoc)
+   * @see java.io.OutputStream#flush()
+   */
+  @Override
+  public void flush() throws IOException {
+    if (out != null) {
+      out.flush();
+    }
+  }
+
+  /* (non-Javadoc)
+   * @see java.io.OutputStream#close()
+   */
+  @Override
+  public void close() throws IOException {
+    if (out != null) {
+      out.close();
+    }
+  }
+
+}
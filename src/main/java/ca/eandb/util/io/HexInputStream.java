@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.io;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import ca.eandb.util.codec.HexCodec;
+
+/**
+ * An <code>InputStream</code> that decodes hexadecimal digits, read as ASCII
+ * characters from an underlying <code>InputStream</code>.  Whitespace
+ * between digits is ignored.
+ * @see HexOutputStream
+ * @author Brad Kimmel
+ */
+public final class HexInputStream extends FilterInputStream {
+
+  /** The size of the buffer of encoded characters. */
+  private static final int BUFFER_SIZE = 8192;
+
+  /** The buffer holding encoded characters. */
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+
+  /** The index of the next character in <code>buffer</code>. */
+  private int position = 0;
+
+  /** The number of characters in <code>buffer</code>. */
+  private int limit = 0;
+
+  /**
+   * Creates a new <code>HexInputStream</code>.
+   * @param in The <code>InputStream</code> to read hexadecimal digits from.
+   */
+  public HexInputStream(InputStream in) {
+    super(in);
+  }
+
+  /* (non-Javadoc)
+   * @see java.io.FilterInputStream#read()
+   */
+  @Override
+  public int read() throws IOException {
+    int hi = nextDigit();
+    if (hi < 0) {
+      return -1;
+    }
+    int lo = nextDigit();
+    if (lo < 0) {
+      throw new EOFException("Odd number of hexadecimal digits.");
+    }
+    return (hi << 4) | lo;
+  }
+
+  /* (non-Javadoc)
+   * @see java.io.FilterInputStream#read(byte[], int, int)
+   */
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (off < 0 || len < 0 || off + len > b.length) {
+      throw new IndexOutOfBoundsException();
+    }
+    if (len == 0) {
+      return 0;
+    }
+    int n = 0;
+    while (n < len) {
+
+      /* Decode runs of digits directly from the buffer. */
+      while (n < len && limit - position >= 2) {
+        int h = HexCodec.digit((char) (buffer[position] & 0xff));
+        int l = HexCodec.digit((char) (buffer[position + 1] & 0xff));
+        if ((h | l) < 0) {
+          break;
+        }
+        b[off + n++] = (byte) ((h << 4) | l);
+        position += 2;
+      }
+      if (n == len) {
+        break;
+      }
+
+      /* Avoid blocking once some bytes have been read. */
+      if (n > 0 && limit - position < 2 && in.available() <= 0) {
+        break;
+      }
+
+      /* Fall back to reading a digit at a time around whitespace and
+       * buffer boundaries.
+       */
+      int c = read();
+      if (c < 0) {
+        break;
+      }
+      b[off + n++] = (byte) c;
+    }
+    return n > 0 ? n : -1;
+  }
+
+  /* (non-Javadoc)
+   * @see java.io.FilterInputStream#skip(long)
+   */
+  @Override
+  public long skip(long n) throws IOException {
+    long skipped = 0;
+    while (skipped < n && read() >= 0) {
+      skipped++;
+    }
+    return skipped;
+  }
+
+  /**
+   * Gets the number of bytes that can be decoded from the characters
+   * already buffered, without reading from the underlying stream.
+   * Whitespace is not counted, and counting stops at the first character
+   * that is not a hexadecimal digit.
+   * @return A lower bound on the number of bytes that may be read without
+   *     blocking.
+   */
+  @Override
+  public int available() throws IOException {
+    int digits = 0;
+    for (int i = position; i < limit; i++) {
+      char c = (char) (buffer[i] & 0xff);
+      if (HexCodec.digit(c) >= 0) {
+        digits++;
+      } else if (!Character.isWhitespace(c)) {
+        break;
+      }
+    }
+    return digits / 2;
+  }
+
+  /* (non-Javadoc)
+   * @see java.io.FilterInputStream#markSupported()
+   */
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+
+  /* (non-Javadoc)
+   * @see java.io.FilterInputStream#mark(int)
+   */
+  @Override
+  public synchronized void mark(int readlimit) {
+    /* Marking is not supported, as the underlying stream's position does
+     * not reflect the characters already buffered.
+     */
+  }
+
+  /* (non-Javadoc)
+   * @see java.io.FilterInputStream#reset()
+   */
+  @Override
+  public synchronized void reset() throws IOException {
+    throw new IOException("mark/reset not supported");
+  }
+
+  /**
+   * Reads the next hexadecimal digit, skipping whitespace.
+   * @return The value of the digit, or <code>-1</code> at the end of the
+   *     stream.
+   * @throws IOException If an error occurs while reading from the
+   *     underlying stream, or if a character is neither a hexadecimal digit
+   *     nor whitespace.
+   */
+  private int nextDigit() throws IOException {
+    while (true) {
+      if (position == limit) {
+        int n = in.read(buffer, 0, buffer.length);
+        if (n < 0) {
+          return -1;
+        }
+        position = 0;
+        limit = n;
+        continue;
+      }
+      char c = (char) (buffer[position++] & 0xff);
+      int digit = HexCodec.digit(c);
+      if (digit >= 0) {
+        return digit;
+      } else if (!Character.isWhitespace(c)) {
+        throw new IOException(String.format("'%c' is not a hexadecimal digit.", c));
+      }
+    }
+  }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.io;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import ca.eandb.util.codec.HexCodec;
+
+/**
+ * An <code>OutputStream</code> that writes the hexadecimal representation of
+ * the bytes written to it, as ASCII characters, to an underlying
+ * <code>OutputStream</code>.
+ * @see HexInputStream
+ * @author Brad Kimmel
+ */
+public final class HexOutputStream extends FilterOutputStream {
+
+  /** The number of bytes encoded at a time. */
+  private static final int CHUNK_SIZE = 4096;
+
+  /** The codec used to encode bytes. */
+  private final HexCodec codec;
+
+  /** The buffer holding encoded characters. */
+  private final byte[] buffer = new byte[2 * CHUNK_SIZE];
+
+  /**
+   * Creates a new <code>HexOutputStream</code> that writes lower case
+   * digits.
+   * @param out The <code>OutputStream</code> to write to.
+   */
+  public HexOutputStream(OutputStream out) {
+    this(out, HexCodec.LOWER);
+  }
+
+  /**
+   * Creates a new <code>HexOutputStream</code>.
+   * @param out The <code>OutputStream</code> to write to.
+   * @param codec The <code>HexCodec</code> to use to encode bytes.
+   */
+  public HexOutputStream(OutputStream out, HexCodec codec) {
+    super(out);
+    this.codec = codec;
+  }
+
+  /* (non-Javadoc)
+   * @see java.io.FilterOutputStream#write(int)
+   */
+  @Override
+  public void write(int b) throws IOException {
+    buffer[0] = (byte) b;
+    codec.encode(buffer, 0, 1, buffer, 1);
+    out.write(buffer, 1, 2);
+  }
+
+  /* (non-Javadoc)
+   * @see java.io.FilterOutputStream#write(byte[], int, int)
+   */
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    if (off < 0 || len < 0 || off + len > b.length) {
+      throw new IndexOutOfBoundsException();
+    }
+    while (len > 0) {
+      int n = Math.min(len, CHUNK_SIZE);
+      out.write(buffer, 0, codec.encode(b, off, n, buffer, 0));
+      off += n;
+      len -= n;
+    }
+  }
+
+}
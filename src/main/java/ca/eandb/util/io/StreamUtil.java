@@ -39,6 +39,9 @@ import java.nio.ByteBuffer;
  */
 public final class StreamUtil {
 
+  /** The size of the buffer used to copy streams. */
+  private static final int COPY_BUFFER_SIZE = 8192;
+
   /**
    * Reads a null-terminated string of bytes from the specified input stream.
    * @param in The <code>InputStream</code> to read from.
@@ -80,9 +83,10 @@ public final class StreamUtil {
    *     <code>out</code>.
    */
   public static void writeStream(InputStream in, OutputStream out) throws IOException {
-    int c;
-    while ((c = in.read()) >= 0) {
-      out.write((byte) c);
+    byte[] buffer = new byte[COPY_BUFFER_SIZE];
+    int n;
+    while ((n = in.read(buffer)) >= 0) {
+      out.write(buffer, 0, n);
     }
   }
 
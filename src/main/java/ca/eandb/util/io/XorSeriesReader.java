@@ -0,0 +1,431 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.io;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.NoSuchElementException;
+
+import ca.eandb.util.DoubleArray;
+import ca.eandb.util.FloatArray;
+
+/**
+ * Reads a series of floating point values written by a
+ * {@link XorSeriesWriter}.
+ * @see XorSeriesWriter
+ * @author Brad Kimmel
+ */
+public final class XorSeriesReader implements Closeable {
+
+  /** The <code>DataInputStream</code> to read from. */
+  private final DataInputStream in;
+
+  /**
+   * A value indicating whether values are stored as single precision
+   * (<code>float</code>) values.
+   */
+  private final boolean singlePrecision;
+
+  /** The bits of the current block. */
+  private byte[] block = new byte[256];
+
+  /** The number of bytes in the current block. */
+  private int blockLength = 0;
+
+  /** The index of the next bit to read from <code>block</code>. */
+  private long bitPosition;
+
+  /** The number of values remaining in the current block. */
+  private int remaining = 0;
+
+  /** The number of values in the current block that have been read. */
+  private int blockPosition = 0;
+
+  /** The number of values that have been read or skipped. */
+  private long position = 0;
+
+  /**
+   * A value indicating whether the end of the underlying stream has been
+   * reached.
+   */
+  private boolean eof = false;
+
+  /** The bits of the most recently read value. */
+  private long previous;
+
+  /**
+   * The number of leading zeros in the most recently read XOR value, or
+   * <code>-1</code> if no XOR value has been read in the current block.
+   */
+  private int previousLeading;
+
+  /** The number of trailing zeros in the most recently read XOR value. */
+  private int previousTrailing;
+
+  /**
+   * Creates a new <code>XorSeriesReader</code>.
+   * @param in The <code>InputStream</code> to read from.
+   * @throws IOException If an error occurs while reading the header from
+   *     <code>in</code>, or if <code>in</code> does not contain an XOR
+   *     compressed series.
+   */
+  public XorSeriesReader(InputStream in) throws IOException {
+    this.in = in instanceof DataInputStream ? (DataInputStream) in : new DataInputStream(in);
+    if (this.in.readInt() != XorSeriesWriter.MAGIC) {
+      throw new IOException("Stream does not contain an XOR compressed series.");
+    }
+    this.singlePrecision = this.in.readBoolean();
+    this.in.readInt(); // block size
+  }
+
+  /**
+   * Reads an entire XOR compressed series into a <code>DoubleArray</code>.
+   * @param in The <code>InputStream</code> to read from.
+   * @return The <code>DoubleArray</code> containing the values read.
+   * @throws IOException If an error occurs while reading from
+   *     <code>in</code>.
+   */
+  public static DoubleArray decode(InputStream in) throws IOException {
+    DoubleArray values = new DoubleArray();
+    new XorSeriesReader(in).read(values);
+    return values;
+  }
+
+  /**
+   * Reads an entire single precision XOR compressed series into a
+   * <code>FloatArray</code>.
+   * @param in The <code>InputStream</code> to read from.
+   * @return The <code>FloatArray</code> containing the values read.
+   * @throws IllegalStateException If the series holds double precision
+   *     values.
+   * @throws IOException If an error occurs while reading from
+   *     <code>in</code>.
+   * @see XorSeriesWriter#encode(FloatArray, java.io.OutputStream)
+   */
+  public static FloatArray decodeFloats(InputStream in) throws IOException {
+    FloatArray values = new FloatArray();
+    new XorSeriesReader(in).read(values);
+    return values;
+  }
+
+  /**
+   * Determines whether values are stored as single precision values.
+   * @return A value indicating whether values are stored as single precision
+   *     (<code>float</code>) values.
+   */
+  public boolean isSinglePrecision() {
+    return singlePrecision;
+  }
+
+  /**
+   * Gets the index of the next value in the series.
+   * @return The number of values that have been read or skipped.
+   */
+  public long position() {
+    return position;
+  }
+
+  /**
+   * Determines if there are more values to read.
+   * @return A value indicating if there are more values to read.
+   * @throws IOException If an error occurs while reading from the underlying
+   *     stream.
+   */
+  public boolean hasNext() throws IOException {
+    return remaining > 0 || nextBlock();
+  }
+
+  /**
+   * Reads the next value in the series.
+   * @return The next value.
+   * @throws NoSuchElementException If the end of the series has been
+   *     reached.
+   * @throws IOException If an error occurs while reading from the underlying
+   *     stream.
+   */
+  public double readDouble() throws IOException {
+    long bits = next();
+    return singlePrecision ? Float.intBitsToFloat((int) bits) : Double.longBitsToDouble(bits);
+  }
+
+  /**
+   * Reads the next value in the series.
+   * @return The next value.
+   * @throws IllegalStateException If the series holds double precision
+   *     values.
+   * @throws NoSuchElementException If the end of the series has been
+   *     reached.
+   * @throws IOException If an error occurs while reading from the underlying
+   *     stream.
+   */
+  public float readFloat() throws IOException {
+    if (!singlePrecision) {
+      throw new IllegalStateException("Cannot read single precision values from a double precision series.");
+    }
+    return Float.intBitsToFloat((int) next());
+  }
+
+  /**
+   * Reads the remaining values in the series into a <code>DoubleArray</code>.
+   * @param values The <code>DoubleArray</code> to append the values to.
+   * @return The number of values read.
+   * @throws IOException If an error occurs while reading from the underlying
+   *     stream.
+   */
+  public int read(DoubleArray values) throws IOException {
+    int n = 0;
+    while (hasNext()) {
+      values.ensureCapacity(values.size() + remaining);
+      do {
+        values.add(readDouble());
+        n++;
+      } while (remaining > 0);
+    }
+    return n;
+  }
+
+  /**
+   * Reads the remaining values in the series into a <code>FloatArray</code>.
+   * @param values The <code>FloatArray</code> to append the values to.
+   * @return The number of values read.
+   * @throws IllegalStateException If the series holds double precision
+   *     values.
+   * @throws IOException If an error occurs while reading from the underlying
+   *     stream.
+   */
+  public int read(FloatArray values) throws IOException {
+    int n = 0;
+    while (hasNext()) {
+      values.ensureCapacity(values.size() + remaining);
+      do {
+        values.add(readFloat());
+        n++;
+      } while (remaining > 0);
+    }
+    return n;
+  }
+
+  /**
+   * Skips over values in the series.  Whole blocks are skipped without being
+   * decoded.
+   * @param n The number of values to skip.
+   * @return The number of values actually skipped, which is less than
+   *     <code>n</code> only if the end of the series was reached.
+   * @throws IOException If an error occurs while reading from the underlying
+   *     stream.
+   */
+  public long skip(long n) throws IOException {
+    long skipped = 0;
+
+    /* Finish the current block by decoding. */
+    while (skipped < n && remaining > 0) {
+      next();
+      skipped++;
+    }
+
+    /* Skip entire blocks by reading only their headers. */
+    while (skipped < n && !eof) {
+      int count = readBlockHeader();
+      if (count < 0) {
+        break;
+      }
+      int length = in.readInt();
+      if (skipped + count <= n) {
+        skipFully(length);
+        skipped += count;
+        position += count;
+      } else {
+        readBlockBody(count, length);
+        while (skipped < n) {
+          next();
+          skipped++;
+        }
+      }
+    }
+
+    return skipped;
+  }
+
+  /**
+   * Reads the next value in the series.
+   * @return The raw bits of the next value.
+   * @throws NoSuchElementException If the end of the series has been
+   *     reached.
+   * @throws IOException If an error occurs while reading from the underlying
+   *     stream.
+   */
+  private long next() throws IOException {
+    if (remaining == 0 && !nextBlock()) {
+      throw new NoSuchElementException();
+    }
+
+    int width = singlePrecision ? 32 : 64;
+    long value;
+
+    if (blockPosition == 0) {
+      value = readBits(width);
+      previousLeading = -1;
+    } else if (readBits(1) == 0) {
+      value = previous;
+    } else if (readBits(1) == 0) {
+      if (previousLeading < 0) {
+        throw new IOException("Corrupt XOR compressed series.");
+      }
+      int significant = width - previousLeading - previousTrailing;
+      value = previous ^ (readBits(significant) << previousTrailing);
+    } else {
+      int leading = (int) readBits(width == 64 ? 5 : 4);
+      int significant = (int) readBits(width == 64 ? 6 : 5) + 1;
+      int trailing = width - leading - significant;
+      if (trailing < 0) {
+        throw new IOException("Corrupt XOR compressed series.");
+      }
+      value = previous ^ (readBits(significant) << trailing);
+      previousLeading = leading;
+      previousTrailing = trailing;
+    }
+
+    previous = value;
+    blockPosition++;
+    remaining--;
+    position++;
+    return value;
+  }
+
+  /**
+   * Reads the next block from the underlying stream.
+   * @return A value indicating whether a block was read (<code>false</code>
+   *     indicates that the end of the series has been reached).
+   * @throws IOException If an error occurs while reading from the underlying
+   *     stream.
+   */
+  private boolean nextBlock() throws IOException {
+    while (!eof) {
+      int count = readBlockHeader();
+      if (count < 0) {
+        break;
+      }
+      int length = in.readInt();
+      if (count > 0) {
+        readBlockBody(count, length);
+        return true;
+      }
+      skipFully(length);
+    }
+    return false;
+  }
+
+  /**
+   * Reads the number of values in the next block.
+   * @return The number of values in the next block, or <code>-1</code> if
+   *     the end of the stream has been reached.
+   * @throws IOException If an error occurs while reading from the underlying
+   *     stream.
+   */
+  private int readBlockHeader() throws IOException {
+    int b = in.read();
+    if (b < 0) {
+      eof = true;
+      return -1;
+    }
+    return (b << 24) | (in.readUnsignedByte() << 16)
+        | (in.readUnsignedByte() << 8) | in.readUnsignedByte();
+  }
+
+  /**
+   * Reads the contents of a block from the underlying stream.
+   * @param count The number of values in the block.
+   * @param length The number of bytes in the block.
+   * @throws IOException If an error occurs while reading from the underlying
+   *     stream.
+   */
+  private void readBlockBody(int count, int length) throws IOException {
+    if (length > block.length) {
+      block = new byte[Math.max(length, 2 * block.length)];
+    }
+    in.readFully(block, 0, length);
+    blockLength = length;
+    bitPosition = 0;
+    remaining = count;
+    blockPosition = 0;
+  }
+
+  /**
+   * Skips the specified number of bytes in the underlying stream.
+   * @param length The number of bytes to skip.
+   * @throws EOFException If the end of the stream is reached before
+   *     <code>length</code> bytes could be skipped.
+   * @throws IOException If an error occurs while reading from the underlying
+   *     stream.
+   */
+  private void skipFully(int length) throws IOException {
+    while (length > 0) {
+      int skipped = in.skipBytes(length);
+      if (skipped <= 0) {
+        if (in.read() < 0) {
+          throw new EOFException();
+        }
+        skipped = 1;
+      }
+      length -= skipped;
+    }
+  }
+
+  /**
+   * Reads bits from the current block, most significant bit first.
+   * @param n The number of bits to read (<code>0 &lt;= n &lt;= 64</code>).
+   * @return The bits read, in the low order bits of the result.
+   * @throws IOException If the block does not contain enough bits.
+   */
+  private long readBits(int n) throws IOException {
+    long result = 0;
+    while (n > 0) {
+      int index = (int) (bitPosition >>> 3);
+      if (index >= blockLength) {
+        throw new IOException("Corrupt XOR compressed series.");
+      }
+      int offset = (int) (bitPosition & 7);
+      int available = 8 - offset;
+      int take = Math.min(available, n);
+      int bits = ((block[index] & 0xff) >>> (available - take)) & ((1 << take) - 1);
+      result = (result << take) | bits;
+      bitPosition += take;
+      n -= take;
+    }
+    return result;
+  }
+
+  /* (non-Javadoc)
+   * @see java.io.Closeable#close()
+   */
+  public void close() throws IOException {
+    in.close();
+  }
+
+}
@@ -0,0 +1,415 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.io;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import ca.eandb.util.DoubleArray;
+import ca.eandb.util.FloatArray;
+
+/**
+ * Writes a series of floating point values to an <code>OutputStream</code>
+ * using XOR-with-previous compression (as described in "Gorilla: A Fast,
+ * Scalable, In-Memory Time Series Database", Pelkonen et al., 2015).  Each
+ * value is XORed with the one before it, and only the meaningful bits of the
+ * result are stored, so slowly changing series compress to a few bits per
+ * value.
+ *
+ * The values are grouped into blocks.  Each block begins with a header giving
+ * the number of values and the number of bytes in the block, and the first
+ * value of each block is stored verbatim.  This allows a
+ * {@link XorSeriesReader} to skip over entire blocks without decoding them.
+ *
+ * @see XorSeriesReader
+ * @author Brad Kimmel
+ */
+public final class XorSeriesWriter implements Closeable, Flushable {
+
+  /** The value identifying the start of an XOR compressed series. */
+  static final int MAGIC = 0x584f5231; // "XOR1"
+
+  /** The default number of values to store in each block. */
+  public static final int DEFAULT_BLOCK_SIZE = 1024;
+
+  /** The <code>DataOutputStream</code> to write to. */
+  private final DataOutputStream out;
+
+  /**
+   * A value indicating whether values are stored as single precision
+   * (<code>float</code>) values.
+   */
+  private final boolean singlePrecision;
+
+  /** The maximum number of values to store in each block. */
+  private final int blockSize;
+
+  /** The bits of the block currently being written. */
+  private final BitWriter bits = new BitWriter();
+
+  /** The number of values in the current block. */
+  private int count = 0;
+
+  /** The bits of the most recently written value. */
+  private long previous;
+
+  /**
+   * The number of leading zeros in the most recently stored XOR value, or
+   * <code>-1</code> if no XOR value has been stored in the current block.
+   */
+  private int previousLeading;
+
+  /** The number of trailing zeros in the most recently stored XOR value. */
+  private int previousTrailing;
+
+  /**
+   * Creates a new <code>XorSeriesWriter</code> that stores double precision
+   * values.
+   * @param out The <code>OutputStream</code> to write to.
+   * @throws IOException If an error occurs while writing the header to
+   *     <code>out</code>.
+   */
+  public XorSeriesWriter(OutputStream out) throws IOException {
+    this(out, false, DEFAULT_BLOCK_SIZE);
+  }
+
+  /**
+   * Creates a new <code>XorSeriesWriter</code>.
+   * @param out The <code>OutputStream</code> to write to.
+   * @param singlePrecision A value indicating whether values are to be stored
+   *     as single precision (<code>float</code>) values.
+   * @throws IOException If an error occurs while writing the header to
+   *     <code>out</code>.
+   */
+  public XorSeriesWriter(OutputStream out, boolean singlePrecision)
+      throws IOException {
+    this(out, singlePrecision, DEFAULT_BLOCK_SIZE);
+  }
+
+  /**
+   * Creates a new <code>XorSeriesWriter</code>.
+   * @param out The <code>OutputStream</code> to write to.
+   * @param singlePrecision A value indicating whether values are to be stored
+   *     as single precision (<code>float</code>) values.
+   * @param blockSize The maximum number of values to store in each block.
+   * @throws IllegalArgumentException If <code>blockSize &lt;= 0</code>.
+   * @throws IOException If an error occurs while writing the header to
+   *     <code>out</code>.
+   */
+  public XorSeriesWriter(OutputStream out, boolean singlePrecision,
+      int blockSize) throws IOException {
+    if (blockSize <= 0) {
+      throw new IllegalArgumentException("blockSize must be positive.");
+    }
+    this.out = out instanceof DataOutputStream ? (DataOutputStream) out : new DataOutputStream(out);
+    this.singlePrecision = singlePrecision;
+    this.blockSize = blockSize;
+    this.out.writeInt(MAGIC);
+    this.out.writeBoolean(singlePrecision);
+    this.out.writeInt(blockSize);
+  }
+
+  /**
+   * Writes an array of doubles to the specified <code>OutputStream</code> as
+   * a complete XOR compressed series.
+   * @param values The <code>DoubleArray</code> to write.
+   * @param out The <code>OutputStream</code> to write to.
+   * @throws IOException If an error occurs while writing to
+   *     <code>out</code>.
+   */
+  public static void encode(DoubleArray values, OutputStream out) throws IOException {
+    XorSeriesWriter writer = new XorSeriesWriter(out, false);
+    writer.write(values);
+    writer.flush();
+  }
+
+  /**
+   * Writes an array of floats to the specified <code>OutputStream</code> as
+   * a complete XOR compressed series.
+   * @param values The <code>FloatArray</code> to write.
+   * @param out The <code>OutputStream</code> to write to.
+   * @throws IOException If an error occurs while writing to
+   *     <code>out</code>.
+   */
+  public static void encode(FloatArray values, OutputStream out) throws IOException {
+    XorSeriesWriter writer = new XorSeriesWriter(out, true);
+    writer.write(values);
+    writer.flush();
+  }
+
+  /**
+   * Determines whether values are stored as single precision values.
+   * @return A value indicating whether values are stored as single precision
+   *     (<code>float</code>) values.
+   */
+  public boolean isSinglePrecision() {
+    return singlePrecision;
+  }
+
+  /**
+   * Appends a value to the series.
+   * @param value The value to append.
+   * @throws IllegalStateException If this writer stores single precision
+   *     values.
+   * @throws IOException If an error occurs while writing to the underlying
+   *     stream.
+   */
+  public void write(double value) throws IOException {
+    if (singlePrecision) {
+      throw new IllegalStateException("Cannot write double precision values to a single precision series.");
+    }
+    append(Double.doubleToRawLongBits(value), 64);
+  }
+
+  /**
+   * Appends a value to the series.
+   * @param value The value to append.
+   * @throws IOException If an error occurs while writing to the underlying
+   *     stream.
+   */
+  public void write(float value) throws IOException {
+    if (singlePrecision) {
+      append(Float.floatToRawIntBits(value) & 0xffffffffL, 32);
+    } else {
+      append(Double.doubleToRawLongBits(value), 64);
+    }
+  }
+
+  /**
+   * Appends an array of values to the series.
+   * @param values The values to append.
+   * @throws IllegalStateException If this writer stores single precision
+   *     values.
+   * @throws IOException If an error occurs while writing to the underlying
+   *     stream.
+   */
+  public void write(DoubleArray values) throws IOException {
+    double[] elements = values.unsafeBackingArray();
+    for (int i = 0, n = values.size(); i < n; i++) {
+      write(elements[i]);
+    }
+  }
+
+  /**
+   * Appends an array of values to the series.
+   * @param values The values to append.
+   * @throws IOException If an error occurs while writing to the underlying
+   *     stream.
+   */
+  public void write(FloatArray values) throws IOException {
+    float[] elements = values.unsafeBackingArray();
+    for (int i = 0, n = values.size(); i < n; i++) {
+      write(elements[i]);
+    }
+  }
+
+  /**
+   * Appends the raw bits of a value to the current block.
+   * @param value The bits of the value to append.
+   * @param width The number of significant bits in <code>value</code> (32
+   *     or 64).
+   * @throws IOException If an error occurs while writing to the underlying
+   *     stream.
+   */
+  private void append(long value, int width) throws IOException {
+    if (count == 0) {
+      bits.write(value, width);
+      previousLeading = -1;
+    } else {
+      long xor = value ^ previous;
+      if (xor == 0) {
+        bits.write(0, 1);
+      } else {
+
+        /* The leading zero count is stored in 5 bits (4 for single
+         * precision), so clamp it to the largest value that will fit.
+         */
+        int leading = Long.numberOfLeadingZeros(xor) - (64 - width);
+        int trailing = Long.numberOfTrailingZeros(xor);
+        int maxLeading = width == 64 ? 31 : 15;
+        if (leading > maxLeading) {
+          leading = maxLeading;
+        }
+
+        if (previousLeading >= 0 && leading >= previousLeading
+            && trailing >= previousTrailing) {
+
+          /* The meaningful bits fit within the previous window. */
+          bits.write(0x2, 2);
+          bits.write(xor >>> previousTrailing,
+              width - previousLeading - previousTrailing);
+
+        } else {
+
+          int significant = width - leading - trailing;
+          bits.write(0x3, 2);
+          bits.write(leading, width == 64 ? 5 : 4);
+          bits.write(significant - 1, width == 64 ? 6 : 5);
+          bits.write(xor >>> trailing, significant);
+          previousLeading = leading;
+          previousTrailing = trailing;
+
+        }
+      }
+    }
+
+    previous = value;
+    if (++count == blockSize) {
+      writeBlock();
+    }
+  }
+
+  /**
+   * Writes the current block to the underlying stream and starts a new
+   * block.
+   * @throws IOException If an error occurs while writing to the underlying
+   *     stream.
+   */
+  private void writeBlock() throws IOException {
+    if (count > 0) {
+      bits.flush();
+      out.writeInt(count);
+      out.writeInt(bits.size());
+      bits.writeTo(out);
+      bits.clear();
+      count = 0;
+    }
+  }
+
+  /**
+   * Ends the current block and flushes the underlying stream.  Values written
+   * after this call begin a new block.
+   * @throws IOException If an error occurs while writing to the underlying
+   *     stream.
+   */
+  public void flush() throws IOException {
+    writeBlock();
+    out.flush();
+  }
+
+  /* (non-Javadoc)
+   * @see java.io.Closeable#close()
+   */
+  public void close() throws IOException {
+    writeBlock();
+    out.close();
+  }
+
+  /**
+   * Accumulates a sequence of bits into a byte buffer, most significant bit
+   * first.
+   */
+  private static final class BitWriter {
+
+    /** The completed bytes. */
+    private byte[] buffer = new byte[256];
+
+    /** The number of completed bytes in <code>buffer</code>. */
+    private int size = 0;
+
+    /** Bits that have not yet been written to <code>buffer</code>. */
+    private long pending = 0;
+
+    /** The number of bits in <code>pending</code>. */
+    private int pendingBits = 0;
+
+    /**
+     * Writes the low order bits of a value.
+     * @param value The value containing the bits to write.
+     * @param n The number of bits to write (<code>0 &lt;= n &lt;= 64</code>).
+     */
+    public void write(long value, int n) {
+      if (n > 32) {
+        write(value >>> 32, n - 32);
+        n = 32;
+      }
+      if (n > 0) {
+        pending = (pending << n) | (value & (-1L >>> (64 - n)));
+        pendingBits += n;
+        while (pendingBits >= 8) {
+          pendingBits -= 8;
+          put((byte) (pending >>> pendingBits));
+        }
+      }
+    }
+
+    /**
+     * Pads the pending bits with zeros to complete the final byte.
+     */
+    public void flush() {
+      if (pendingBits > 0) {
+        put((byte) (pending << (8 - pendingBits)));
+        pendingBits = 0;
+      }
+      pending = 0;
+    }
+
+    /**
+     * Gets the number of completed bytes.
+     * @return The number of completed bytes.
+     */
+    public int size() {
+      return size;
+    }
+
+    /**
+     * Writes the completed bytes to an <code>OutputStream</code>.
+     * @param out The <code>OutputStream</code> to write to.
+     * @throws IOException If an error occurs while writing to
+     *     <code>out</code>.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+      out.write(buffer, 0, size);
+    }
+
+    /**
+     * Discards all bits.
+     */
+    public void clear() {
+      size = 0;
+      pending = 0;
+      pendingBits = 0;
+    }
+
+    /**
+     * Appends a completed byte to the buffer.
+     * @param b The byte to append.
+     */
+    private void put(byte b) {
+      if (size == buffer.length) {
+        byte[] newBuffer = new byte[2 * buffer.length];
+        System.arraycopy(buffer, 0, newBuffer, 0, size);
+        buffer = newBuffer;
+      }
+      buffer[size++] = b;
+    }
+
+  }
+
+}
@@ -0,0 +1,381 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.sketch;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Bloom filter in which all bits for an item fall within a single 512-bit
+ * block, the size of a typical cache line, so that adding or testing an item
+ * touches only one line of memory.  This costs a slightly higher false
+ * positive rate than a standard Bloom filter of the same size, since some
+ * blocks receive more items than others, so filters sized for a target
+ * false positive probability are made correspondingly larger.
+ *
+ * Items may be added concurrently from multiple threads.
+ *
+ * @author Brad Kimmel
+ */
+public final class BlockedBloomFilter implements Serializable {
+
+  /**
+   * Serialization version ID.
+   */
+  private static final long serialVersionUID = 3519868412076604728L;
+
+  /** The number of <code>long</code>s in a block. */
+  private static final int WORDS_PER_BLOCK = 8;
+
+  /** The number of bits in a block. */
+  private static final int BITS_PER_BLOCK = 64 * WORDS_PER_BLOCK;
+
+  /** The multiplier of the generator that selects bits within a block. */
+  private static final long BIT_MULTIPLIER = 0x9e3779b97f4a7c15L;
+
+  /** The increment of the generator that selects bits within a block. */
+  private static final long BIT_INCREMENT = 0xd1b54a32d192ed03L;
+
+  /** The number of blocks. */
+  private final int blockCount;
+
+  /** The number of bits set for each item. */
+  private final int hashCount;
+
+  /** The bits of the filter. */
+  private final AtomicLongArray bits;
+
+  /**
+   * Creates an empty <code>BlockedBloomFilter</code> sized for the expected
+   * number of items and desired false positive probability.
+   * @param expectedItems The number of items expected to be added.
+   * @param fpp The desired false positive probability.
+   * @throws IllegalArgumentException If <code>expectedItems &lt;= 0</code>
+   *     or if <code>fpp</code> is not in <code>(0, 1)</code>.
+   */
+  public BlockedBloomFilter(long expectedItems, double fpp) {
+    this(blocksFor(expectedItems, fpp), hashesFor(expectedItems, fpp));
+  }
+
+  /**
+   * Creates an empty <code>BlockedBloomFilter</code>.
+   * @param blockCount The number of 512-bit blocks.
+   * @param hashCount The number of bits to set for each item.
+   * @throws IllegalArgumentException If <code>blockCount</code> is not
+   *     positive or <code>hashCount</code> is not in <code>[1, 16]</code>.
+   */
+  public BlockedBloomFilter(int blockCount, int hashCount) {
+    if (blockCount <= 0 || blockCount > Integer.MAX_VALUE / WORDS_PER_BLOCK) {
+      throw new IllegalArgumentException("blockCount out of range.");
+    }
+    if (hashCount < 1 || hashCount > 16) {
+      throw new IllegalArgumentException("hashCount must be in [1, 16].");
+    }
+    this.blockCount = blockCount;
+    this.hashCount = hashCount;
+    this.bits = new AtomicLongArray(blockCount * WORDS_PER_BLOCK);
+  }
+
+  /**
+   * Computes the number of blocks required.
+   * @param n The expected number of items.
+   * @param fpp The desired false positive probability.
+   * @return The number of blocks.
+   */
+  private static int blocksFor(long n, double fpp) {
+    checkParameters(n, fpp);
+    int k = hashesFor(n, fpp);
+    double m = -n * Math.log(fpp) / (Math.log(2) * Math.log(2));
+    long blocks = Math.max(1, (long) Math.ceil(m / BITS_PER_BLOCK));
+
+    /* Start from the size of a standard Bloom filter and grow until the
+     * uneven loading of the blocks is accounted for.
+     */
+    while (blocks <= Integer.MAX_VALUE / WORDS_PER_BLOCK
+        && blockedFpp(n, blocks, k) > fpp) {
+      blocks = Math.max(blocks + 1, (long) (blocks * 1.01));
+    }
+    if (blocks > Integer.MAX_VALUE / WORDS_PER_BLOCK) {
+      throw new IllegalArgumentException("Filter would be too large.");
+    }
+    return (int) blocks;
+  }
+
+  /**
+   * Computes the false positive probability of a blocked Bloom filter.  The
+   * number of items in a block is approximately Poisson distributed, so the
+   * result is the average over that distribution of the false positive
+   * probability of a standard Bloom filter the size of one block.
+   * @param n The number of items.
+   * @param blocks The number of blocks.
+   * @param k The number of bits set for each item.
+   * @return The false positive probability.
+   */
+  private static double blockedFpp(long n, long blocks, int k) {
+    double lambda = (double) n / (double) blocks;
+    double logLambda = Math.log(lambda);
+    double logMiss = k * Math.log1p(-1.0 / BITS_PER_BLOCK);
+    int limit = (int) Math.ceil(lambda + 12.0 * Math.sqrt(lambda) + 20.0);
+    double logFactorial = 0.0;
+    double fpp = 0.0;
+    for (int i = 0; i <= limit; i++) {
+      if (i > 0) {
+        logFactorial += Math.log(i);
+      }
+      double p = Math.exp(i * logLambda - lambda - logFactorial);
+      fpp += p * Math.pow(-Math.expm1(i * logMiss), k);
+    }
+    return fpp;
+  }
+
+  /**
+   * Computes the optimal number of bits to set for each item.
+   * @param n The expected number of items.
+   * @param fpp The desired false positive probability.
+   * @return The number of bits to set for each item.
+   */
+  private static int hashesFor(long n, double fpp) {
+    checkParameters(n, fpp);
+    int k = (int) Math.round(-Math.log(fpp) / Math.log(2));
+    return Math.max(1, Math.min(16, k));
+  }
+
+  /**
+   * Validates the sizing parameters.
+   * @param n The expected number of items.
+   * @param fpp The desired false positive probability.
+   */
+  private static void checkParameters(long n, double fpp) {
+    if (n <= 0) {
+      throw new IllegalArgumentException("expectedItems must be positive.");
+    }
+    if (!(fpp > 0.0 && fpp < 1.0)) {
+      throw new IllegalArgumentException("fpp must be in (0, 1).");
+    }
+  }
+
+  /**
+   * Adds an item.
+   * @param item The item to add.
+   * @return A value indicating if any bits changed, i.e., if the item was
+   *     definitely not present before.
+   */
+  public boolean add(long item) {
+    return addHash(Hashing.hash(item));
+  }
+
+  /**
+   * Adds an item.
+   * @param item The item to add.
+   * @return A value indicating if any bits changed, i.e., if the item was
+   *     definitely not present before.
+   */
+  public boolean add(CharSequence item) {
+    return addHash(Hashing.hash(item));
+  }
+
+  /**
+   * Adds an item.
+   * @param item The bytes of the item to add.
+   * @return A value indicating if any bits changed, i.e., if the item was
+   *     definitely not present before.
+   */
+  public boolean add(byte[] item) {
+    return addHash(Hashing.hash(item, 0, item.length));
+  }
+
+  /**
+   * Determines if an item might have been added.
+   * @param item The item to test.
+   * @return <code>false</code> if <code>item</code> has definitely not been
+   *     added, <code>true</code> if it probably has.
+   */
+  public boolean mightContain(long item) {
+    return containsHash(Hashing.hash(item));
+  }
+
+  /**
+   * Determines if an item might have been added.
+   * @param item The item to test.
+   * @return <code>false</code> if <code>item</code> has definitely not been
+   *     added, <code>true</code> if it probably has.
+   */
+  public boolean mightContain(CharSequence item) {
+    return containsHash(Hashing.hash(item));
+  }
+
+  /**
+   * Determines if an item might have been added.
+   * @param item The bytes of the item to test.
+   * @return <code>false</code> if <code>item</code> has definitely not been
+   *     added, <code>true</code> if it probably has.
+   */
+  public boolean mightContain(byte[] item) {
+    return containsHash(Hashing.hash(item, 0, item.length));
+  }
+
+  /**
+   * Sets the bits for a hash.  The high half of the hash selects the block,
+   * and the bits within it are taken from the top of a linear congruential
+   * generator seeded with the hash, which, unlike double hashing, does not
+   * confine them to an arithmetic progression.
+   * @param hash The 64-bit hash of the item.
+   * @return A value indicating if any bits changed.
+   */
+  private boolean addHash(long hash) {
+    int base = Hashing.reduce((int) (hash >>> 32), blockCount) * WORDS_PER_BLOCK;
+    long x = hash;
+    boolean changed = false;
+    for (int i = 0; i < hashCount; i++) {
+      x = x * BIT_MULTIPLIER + BIT_INCREMENT;
+      int bit = (int) (x >>> 55);
+      int index = base + (bit >>> 6);
+      long mask = 1L << bit;
+      long word;
+      while (((word = bits.get(index)) & mask) == 0) {
+        if (bits.compareAndSet(index, word, word | mask)) {
+          changed = true;
+          break;
+        }
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * Tests the bits for a hash.
+   * @param hash The 64-bit hash of the item.
+   * @return A value indicating if all bits are set.
+   */
+  private boolean containsHash(long hash) {
+    int base = Hashing.reduce((int) (hash >>> 32), blockCount) * WORDS_PER_BLOCK;
+    long x = hash;
+    for (int i = 0; i < hashCount; i++) {
+      x = x * BIT_MULTIPLIER + BIT_INCREMENT;
+      int bit = (int) (x >>> 55);
+      if ((bits.get(base + (bit >>> 6)) & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Adds all items in another filter to this one.
+   * @param other The <code>BlockedBloomFilter</code> to merge into this one.
+   * @throws IllegalArgumentException If <code>other</code> does not have the
+   *     same number of blocks and hashes as this filter.
+   */
+  public void merge(BlockedBloomFilter other) {
+    if (other.blockCount != blockCount || other.hashCount != hashCount) {
+      throw new IllegalArgumentException("Filters are incompatible.");
+    }
+    for (int i = 0, n = bits.length(); i < n; i++) {
+      long mask = other.bits.get(i);
+      if (mask != 0) {
+        bits.getAndAccumulate(i, mask, (a, b) -> a | b);
+      }
+    }
+  }
+
+  /**
+   * Gets the number of 512-bit blocks.
+   * @return The number of blocks.
+   */
+  public int getBlockCount() {
+    return blockCount;
+  }
+
+  /**
+   * Gets the number of bits set for each item.
+   * @return The number of bits set for each item.
+   */
+  public int getHashCount() {
+    return hashCount;
+  }
+
+  /**
+   * Gets the size of this filter.
+   * @return The number of bits in this filter.
+   */
+  public long getBitSize() {
+    return (long) blockCount * BITS_PER_BLOCK;
+  }
+
+  /**
+   * Estimates the current false positive probability from the fraction of
+   * bits that are set in each block.
+   * @return The estimated false positive probability.
+   */
+  public double getExpectedFpp() {
+    double sum = 0.0;
+    for (int block = 0; block < blockCount; block++) {
+      int set = 0;
+      for (int i = block * WORDS_PER_BLOCK, end = i + WORDS_PER_BLOCK; i < end; i++) {
+        set += Long.bitCount(bits.get(i));
+      }
+      sum += Math.pow((double) set / (double) BITS_PER_BLOCK, hashCount);
+    }
+    return sum / blockCount;
+  }
+
+  /**
+   * Writes this <code>BlockedBloomFilter</code> in a compact binary form.
+   * @param out The <code>DataOutput</code> to write to.
+   * @throws IOException If an error occurs while writing to
+   *     <code>out</code>.
+   * @see #read(DataInput)
+   */
+  public void write(DataOutput out) throws IOException {
+    out.writeInt(blockCount);
+    out.writeByte(hashCount);
+    for (int i = 0, n = bits.length(); i < n; i++) {
+      out.writeLong(bits.get(i));
+    }
+  }
+
+  /**
+   * Reads a <code>BlockedBloomFilter</code> written by
+   * {@link #write(DataOutput)}.
+   * @param in The <code>DataInput</code> to read from.
+   * @return The <code>BlockedBloomFilter</code> that was read.
+   * @throws IOException If an error occurs while reading from
+   *     <code>in</code>.
+   */
+  public static BlockedBloomFilter read(DataInput in) throws IOException {
+    int blockCount = in.readInt();
+    int hashCount = in.readUnsignedByte();
+    BlockedBloomFilter filter = new BlockedBloomFilter(blockCount, hashCount);
+    for (int i = 0, n = filter.bits.length(); i < n; i++) {
+      filter.bits.set(i, in.readLong());
+    }
+    return filter;
+  }
+
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.sketch;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Estimates how many times each item has been added, using a fixed amount of
+ * memory.  Estimates never undercount; with probability at least
+ * <code>1 - delta</code>, an estimate exceeds the true count by at most
+ * <code>epsilon</code> times the total count of all items.
+ *
+ * Items may be added concurrently from multiple threads.
+ *
+ * @author Brad Kimmel
+ */
+public final class CountMinSketch implements Serializable {
+
+  /**
+   * Serialization version ID.
+   */
+  private static final long serialVersionUID = -8412359000457190343L;
+
+  /** The number of counters in each row (a power of two). */
+  private final int width;
+
+  /** The number of rows. */
+  private final int depth;
+
+  /** The counters, stored row by row. */
+  private final AtomicLongArray counters;
+
+  /** The total count of all items added. */
+  private final LongAdder totalCount = new LongAdder();
+
+  /**
+   * Creates an empty <code>CountMinSketch</code> with the specified error
+   * bounds.
+   * @param epsilon The maximum overestimate, as a fraction of the total
+   *     count.
+   * @param delta The probability that an estimate exceeds the error bound.
+   * @throws IllegalArgumentException If <code>epsilon</code> or
+   *     <code>delta</code> is not in <code>(0, 1)</code>.
+   */
+  public CountMinSketch(double epsilon, double delta) {
+    this(widthFor(epsilon), depthFor(delta));
+  }
+
+  /**
+   * Creates an empty <code>CountMinSketch</code>.
+   * @param width The number of counters in each row.  This is rounded up to
+   *     a power of two.
+   * @param depth The number of rows.
+   * @throws IllegalArgumentException If <code>width</code> or
+   *     <code>depth</code> is out of range.
+   */
+  public CountMinSketch(int width, int depth) {
+    if (width <= 0 || width > (1 << 30)) {
+      throw new IllegalArgumentException("width out of range.");
+    }
+    if (depth <= 0 || depth > 32) {
+      throw new IllegalArgumentException("depth must be in [1, 32].");
+    }
+    int w = Integer.highestOneBit(width);
+    if (w < width) {
+      w <<= 1;
+    }
+    if ((long) w * depth > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Sketch would be too large.");
+    }
+    this.width = w;
+    this.depth = depth;
+    this.counters = new AtomicLongArray(w * depth);
+  }
+
+  /**
+   * Computes the row width required for an error bound.
+   * @param epsilon The maximum overestimate, as a fraction of the total
+   *     count.
+   * @return The number of counters in each row.
+   */
+  private static int widthFor(double epsilon) {
+    if (!(epsilon > 0.0 && epsilon < 1.0)) {
+      throw new IllegalArgumentException("epsilon must be in (0, 1).");
+    }
+    return (int) Math.min(1 << 30, Math.ceil(Math.E / epsilon));
+  }
+
+  /**
+   * Computes the number of rows required for a confidence bound.
+   * @param delta The probability that an estimate exceeds the error bound.
+   * @return The number of rows.
+   */
+  private static int depthFor(double delta) {
+    if (!(delta > 0.0 && delta < 1.0)) {
+      throw new IllegalArgumentException("delta must be in (0, 1).");
+    }
+    return (int) Math.min(32, Math.max(1, Math.ceil(Math.log(1.0 / delta))));
+  }
+
+  /**
+   * Adds an item once.
+   * @param item The item to add.
+   */
+  public void add(long item) {
+    addHash(Hashing.hash(item), 1);
+  }
+
+  /**
+   * Adds an item.
+   * @param item The item to add.
+   * @param count The number of times to add <code>item</code>.
+   */
+  public void add(long item, long count) {
+    addHash(Hashing.hash(item), count);
+  }
+
+  /**
+   * Adds an item once.
+   * @param item The item to add.
+   */
+  public void add(CharSequence item) {
+    addHash(Hashing.hash(item), 1);
+  }
+
+  /**
+   * Adds an item.
+   * @param item The item to add.
+   * @param count The number of times to add <code>item</code>.
+   */
+  public void add(CharSequence item, long count) {
+    addHash(Hashing.hash(item), count);
+  }
+
+  /**
+   * Adds an item.
+   * @param item The bytes of the item to add.
+   * @param count The number of times to add <code>item</code>.
+   */
+  public void add(byte[] item, long count) {
+    addHash(Hashing.hash(item, 0, item.length), count);
+  }
+
+  /**
+   * Estimates the number of times an item has been added.
+   * @param item The item.
+   * @return An estimate that is at least the true count.
+   */
+  public long estimateCount(long item) {
+    return estimateHash(Hashing.hash(item));
+  }
+
+  /**
+   * Estimates the number of times an item has been added.
+   * @param item The item.
+   * @return An estimate that is at least the true count.
+   */
+  public long estimateCount(CharSequence item) {
+    return estimateHash(Hashing.hash(item));
+  }
+
+  /**
+   * Estimates the number of times an item has been added.
+   * @param item The bytes of the item.
+   * @return An estimate that is at least the true count.
+   */
+  public long estimateCount(byte[] item) {
+    return estimateHash(Hashing.hash(item, 0, item.length));
+  }
+
+  /**
+   * Increments the counters for a hash.
+   * @param hash The 64-bit hash of the item.
+   * @param count The amount to add.
+   */
+  private void addHash(long hash, long count) {
+    if (count < 0) {
+      throw new IllegalArgumentException("count must be non-negative.");
+    }
+    int h1 = (int) (hash >>> 32);
+    int h2 = (int) hash | 1;
+    for (int row = 0; row < depth; row++, h1 += h2) {
+      counters.getAndAdd(row * width + (h1 & (width - 1)), count);
+    }
+    totalCount.add(count);
+  }
+
+  /**
+   * Finds the smallest counter for a hash.
+   * @param hash The 64-bit hash of the item.
+   * @return The value of the smallest counter.
+   */
+  private long estimateHash(long hash) {
+    int h1 = (int) (hash >>> 32);
+    int h2 = (int) hash | 1;
+    long min = Long.MAX_VALUE;
+    for (int row = 0; row < depth; row++, h1 += h2) {
+      min = Math.min(min, counters.get(row * width + (h1 & (width - 1))));
+    }
+    return min;
+  }
+
+  /**
+   * Adds all counts from another <code>CountMinSketch</code> to this one.
+   * @param other The <code>CountMinSketch</code> to merge into this one.
+   * @throws IllegalArgumentException If <code>other</code> does not have the
+   *     same width and depth as this sketch.
+   */
+  public void merge(CountMinSketch other) {
+    if (other.width != width || other.depth != depth) {
+      throw new IllegalArgumentException("Sketches are incompatible.");
+    }
+    for (int i = 0, n = counters.length(); i < n; i++) {
+      long count = other.counters.get(i);
+      if (count != 0) {
+        counters.getAndAdd(i, count);
+      }
+    }
+    totalCount.add(other.totalCount.sum());
+  }
+
+  /**
+   * Gets the number of counters in each row.
+   * @return The number of counters in each row.
+   */
+  public int getWidth() {
+    return width;
+  }
+
+  /**
+   * Gets the number of rows.
+   * @return The number of rows.
+   */
+  public int getDepth() {
+    return depth;
+  }
+
+  /**
+   * Gets the total count of all items added.
+   * @return The total count of all items added.
+   */
+  public long getTotalCount() {
+    return totalCount.sum();
+  }
+
+  /**
+   * Writes this <code>CountMinSketch</code> in a compact binary form.
+   * Counters are written as variable length integers, so sparse sketches
+   * take little space.
+   * @param out The <code>DataOutput</code> to write to.
+   * @throws IOException If an error occurs while writing to
+   *     <code>out</code>.
+   * @see #read(DataInput)
+   */
+  public void write(DataOutput out) throws IOException {
+    out.writeInt(width);
+    out.writeInt(depth);
+    out.writeLong(totalCount.sum());
+    for (int i = 0, n = counters.length(); i < n; i++) {
+      writeVarLong(out, counters.get(i));
+    }
+  }
+
+  /**
+   * Reads a <code>CountMinSketch</code> written by
+   * {@link #write(DataOutput)}.
+   * @param in The <code>DataInput</code> to read from.
+   * @return The <code>CountMinSketch</code> that was read.
+   * @throws IOException If an error occurs while reading from
+   *     <code>in</code>.
+   */
+  public static CountMinSketch read(DataInput in) throws IOException {
+    int width = in.readInt();
+    int depth = in.readInt();
+    CountMinSketch sketch = new CountMinSketch(width, depth);
+    sketch.totalCount.add(in.readLong());
+    for (int i = 0, n = sketch.counters.length(); i < n; i++) {
+      sketch.counters.set(i, readVarLong(in));
+    }
+    return sketch;
+  }
+
+  /**
+   * Writes a non-negative integer using seven bits per byte.
+   * @param out The <code>DataOutput</code> to write to.
+   * @param value The value to write.
+   * @throws IOException If an error occurs while writing to
+   *     <code>out</code>.
+   */
+  private static void writeVarLong(DataOutput out, long value) throws IOException {
+    while ((value & ~0x7fL) != 0) {
+      out.writeByte((int) ((value & 0x7f) | 0x80));
+      value >>>= 7;
+    }
+    out.writeByte((int) value);
+  }
+
+  /**
+   * Reads an integer written by {@link #writeVarLong(DataOutput, long)}.
+   * @param in The <code>DataInput</code> to read from.
+   * @return The value read.
+   * @throws IOException If an error occurs while reading from
+   *     <code>in</code>.
+   */
+  private static long readVarLong(DataInput in) throws IOException {
+    long value = 0;
+    int shift = 0;
+    int b;
+    do {
+      b = in.readUnsignedByte();
+      value |= (long) (b & 0x7f) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return value;
+  }
+
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.sketch;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Bloom filter with 4-bit counters in place of bits, so that items may be
+ * removed as well as added.  Counters saturate at fifteen; a saturated
+ * counter is never decremented, since the number of items sharing it is no
+ * longer known.  Removing an item that was never added may introduce false
+ * negatives.
+ *
+ * Items may be added and removed concurrently from multiple threads.
+ *
+ * @author Brad Kimmel
+ */
+public final class CountingBloomFilter implements Serializable {
+
+  /**
+   * Serialization version ID.
+   */
+  private static final long serialVersionUID = -5460150823364371946L;
+
+  /** The maximum value of a counter. */
+  private static final int MAX_COUNT = 15;
+
+  /** The number of counters. */
+  private final int counterCount;
+
+  /** The number of counters used for each item. */
+  private final int hashCount;
+
+  /** The counters, sixteen to a <code>long</code>. */
+  private final AtomicLongArray counters;
+
+  /**
+   * Creates an empty <code>CountingBloomFilter</code> sized for the expected
+   * number of items and desired false positive probability.
+   * @param expectedItems The number of items expected to be present at once.
+   * @param fpp The desired false positive probability.
+   * @throws IllegalArgumentException If <code>expectedItems &lt;= 0</code>
+   *     or if <code>fpp</code> is not in <code>(0, 1)</code>.
+   */
+  public CountingBloomFilter(long expectedItems, double fpp) {
+    this(countersFor(expectedItems, fpp),
+        Math.max(1, Math.min(16, (int) Math.round(-Math.log(fpp) / Math.log(2)))));
+  }
+
+  /**
+   * Creates an empty <code>CountingBloomFilter</code>.
+   * @param counterCount The number of counters.
+   * @param hashCount The number of counters used for each item.
+   * @throws IllegalArgumentException If <code>counterCount</code> is not
+   *     positive or <code>hashCount</code> is not in <code>[1, 16]</code>.
+   */
+  public CountingBloomFilter(int counterCount, int hashCount) {
+    if (counterCount <= 0) {
+      throw new IllegalArgumentException("counterCount must be positive.");
+    }
+    if (hashCount < 1 || hashCount > 16) {
+      throw new IllegalArgumentException("hashCount must be in [1, 16].");
+    }
+    this.counterCount = counterCount;
+    this.hashCount = hashCount;
+    this.counters = new AtomicLongArray((int) ((counterCount + 15L) >>> 4));
+  }
+
+  /**
+   * Computes the number of counters required.
+   * @param n The expected number of items.
+   * @param fpp The desired false positive probability.
+   * @return The number of counters.
+   */
+  private static int countersFor(long n, double fpp) {
+    if (n <= 0) {
+      throw new IllegalArgumentException("expectedItems must be positive.");
+    }
+    if (!(fpp > 0.0 && fpp < 1.0)) {
+      throw new IllegalArgumentException("fpp must be in (0, 1).");
+    }
+    double m = Math.ceil(-n * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+    if (m > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Filter would be too large.");
+    }
+    return (int) Math.max(1, m);
+  }
+
+  /**
+   * Adds an item.
+   * @param item The item to add.
+   */
+  public void add(long item) {
+    update(Hashing.hash(item), 1);
+  }
+
+  /**
+   * Adds an item.
+   * @param item The item to add.
+   */
+  public void add(CharSequence item) {
+    update(Hashing.hash(item), 1);
+  }
+
+  /**
+   * Adds an item.
+   * @param item The bytes of the item to add.
+   */
+  public void add(byte[] item) {
+    update(Hashing.hash(item, 0, item.length), 1);
+  }
+
+  /**
+   * Removes an item that was previously added.
+   * @param item The item to remove.
+   */
+  public void remove(long item) {
+    update(Hashing.hash(item), -1);
+  }
+
+  /**
+   * Removes an item that was previously added.
+   * @param item The item to remove.
+   */
+  public void remove(CharSequence item) {
+    update(Hashing.hash(item), -1);
+  }
+
+  /**
+   * Removes an item that was previously added.
+   * @param item The bytes of the item to remove.
+   */
+  public void remove(byte[] item) {
+    update(Hashing.hash(item, 0, item.length), -1);
+  }
+
+  /**
+   * Determines if an item might be present.
+   * @param item The item to test.
+   * @return <code>false</code> if <code>item</code> is definitely not
+   *     present, <code>true</code> if it probably is.
+   */
+  public boolean mightContain(long item) {
+    return containsHash(Hashing.hash(item));
+  }
+
+  /**
+   * Determines if an item might be present.
+   * @param item The item to test.
+   * @return <code>false</code> if <code>item</code> is definitely not
+   *     present, <code>true</code> if it probably is.
+   */
+  public boolean mightContain(CharSequence item) {
+    return containsHash(Hashing.hash(item));
+  }
+
+  /**
+   * Determines if an item might be present.
+   * @param item The bytes of the item to test.
+   * @return <code>false</code> if <code>item</code> is definitely not
+   *     present, <code>true</code> if it probably is.
+   */
+  public boolean mightContain(byte[] item) {
+    return containsHash(Hashing.hash(item, 0, item.length));
+  }
+
+  /**
+   * Increments or decrements the counters for a hash.
+   * @param hash The 64-bit hash of the item.
+   * @param delta <code>1</code> to increment, <code>-1</code> to decrement.
+   */
+  private void update(long hash, int delta) {
+    int h1 = (int) (hash >>> 32);
+    int h2 = (int) hash | 1;
+    for (int i = 0; i < hashCount; i++, h1 += h2) {
+      int counter = Hashing.reduce(h1, counterCount);
+      int index = counter >>> 4;
+      int shift = (counter & 15) << 2;
+      while (true) {
+        long word = counters.get(index);
+        int count = (int) ((word >>> shift) & 0xf);
+        if (count == MAX_COUNT || (delta < 0 && count == 0)) {
+          break;
+        }
+        long updated = word + ((long) delta << shift);
+        if (counters.compareAndSet(index, word, updated)) {
+          break;
+        }
+      }
+    }
+  }
+
+  /**
+   * Tests the counters for a hash.
+   * @param hash The 64-bit hash of the item.
+   * @return A value indicating if all counters are non-zero.
+   */
+  private boolean containsHash(long hash) {
+    int h1 = (int) (hash >>> 32);
+    int h2 = (int) hash | 1;
+    for (int i = 0; i < hashCount; i++, h1 += h2) {
+      int counter = Hashing.reduce(h1, counterCount);
+      if (((counters.get(counter >>> 4) >>> ((counter & 15) << 2)) & 0xf) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Adds all items in another filter to this one.  Counters that would
+   * exceed their maximum value saturate.
+   * @param other The <code>CountingBloomFilter</code> to merge into this one.
+   * @throws IllegalArgumentException If <code>other</code> does not have the
+   *     same number of counters and hashes as this filter.
+   */
+  public void merge(CountingBloomFilter other) {
+    if (other.counterCount != counterCount || other.hashCount != hashCount) {
+      throw new IllegalArgumentException("Filters are incompatible.");
+    }
+    for (int i = 0, n = counters.length(); i < n; i++) {
+      long add = other.counters.get(i);
+      if (add != 0) {
+        counters.getAndAccumulate(i, add, CountingBloomFilter::saturatingAdd);
+      }
+    }
+  }
+
+  /**
+   * Adds sixteen pairs of 4-bit counters, saturating at fifteen.
+   * @param a The first set of counters.
+   * @param b The second set of counters.
+   * @return The sums of the counters.
+   */
+  private static long saturatingAdd(long a, long b) {
+    long result = 0;
+    for (int shift = 0; shift < 64; shift += 4) {
+      long sum = ((a >>> shift) & 0xf) + ((b >>> shift) & 0xf);
+      result |= Math.min(sum, MAX_COUNT) << shift;
+    }
+    return result;
+  }
+
+  /**
+   * Gets the number of counters.
+   * @return The number of counters.
+   */
+  public int getCounterCount() {
+    return counterCount;
+  }
+
+  /**
+   * Gets the number of counters used for each item.
+   * @return The number of counters used for each item.
+   */
+  public int getHashCount() {
+    return hashCount;
+  }
+
+  /**
+   * Writes this <code>CountingBloomFilter</code> in a compact binary form.
+   * @param out The <code>DataOutput</code> to write to.
+   * @throws IOException If an error occurs while writing to
+   *     <code>out</code>.
+   * @see #read(DataInput)
+   */
+  public void write(DataOutput out) throws IOException {
+    out.writeInt(counterCount);
+    out.writeByte(hashCount);
+    for (int i = 0, n = counters.length(); i < n; i++) {
+      out.writeLong(counters.get(i));
+    }
+  }
+
+  /**
+   * Reads a <code>CountingBloomFilter</code> written by
+   * {@link #write(DataOutput)}.
+   * @param in The <code>DataInput</code> to read from.
+   * @return The <code>CountingBloomFilter</code> that was read.
+   * @throws IOException If an error occurs while reading from
+   *     <code>in</code>.
+   */
+  public static CountingBloomFilter read(DataInput in) throws IOException {
+    int counterCount = in.readInt();
+    int hashCount = in.readUnsignedByte();
+    CountingBloomFilter filter = new CountingBloomFilter(counterCount, hashCount);
+    for (int i = 0, n = filter.counters.length(); i < n; i++) {
+      filter.counters.set(i, in.readLong());
+    }
+    return filter;
+  }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.sketch;
+
+import java.nio.charset.StandardCharsets;
+
+import ca.eandb.util.hash.Murmur3;
+
+/**
+ * Hash functions shared by the sketches in this package.  All items are
+ * reduced to a well mixed 64-bit hash, from which the sketches derive the
+ * indices they need.
+ *
+ * @author Brad Kimmel
+ */
+final class Hashing {
+
+  /** The seed used to hash <code>long</code> values. */
+  private static final long SEED = 0x9747b28c5f3a1e2dL;
+
+  /**
+   * Computes the 64-bit hash of a <code>long</code>.
+   * @param value The value to hash.
+   * @return The hash of <code>value</code>.
+   */
+  static long hash(long value) {
+    long h = value + SEED;
+    h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+    h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+    return h ^ (h >>> 33);
+  }
+
+  /**
+   * Computes the 64-bit hash of a <code>CharSequence</code>, as encoded in
+   * UTF-8.
+   * @param s The <code>CharSequence</code> to hash.
+   * @return The hash of <code>s</code>.
+   */
+  static long hash(CharSequence s) {
+    byte[] bytes = s.toString().getBytes(StandardCharsets.UTF_8);
+    return hash(bytes, 0, bytes.length);
+  }
+
+  /**
+   * Computes the 64-bit hash of a range of bytes, using the first 64 bits
+   * of MurmurHash3 (x64, 128-bit variant).
+   * @param data The array containing the bytes to hash.
+   * @param off The index of the first byte to hash.
+   * @param len The number of bytes to hash.
+   * @return The hash of the specified bytes.
+   * @see ca.eandb.util.hash.Murmur3#hash(byte[], int, int)
+   */
+  static long hash(byte[] data, int off, int len) {
+    return Murmur3.hash(data, off, len);
+  }
+
+  /**
+   * Maps a 32-bit hash uniformly onto a range, without division.
+   * @param hash The hash.
+   * @param n The size of the range.
+   * @return A value in <code>[0, n)</code>.
+   */
+  static int reduce(int hash, int n) {
+    return (int) (((hash & 0xffffffffL) * n) >>> 32);
+  }
+
+  /** Declared private to prevent this class from being instantiated. */
+  private Hashing() {}
+
+}
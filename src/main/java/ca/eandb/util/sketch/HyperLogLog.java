@@ -0,0 +1,326 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.sketch;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Estimates the number of distinct items added, using a fixed amount of
+ * memory: <code>2<sup>p</sup></code> registers for precision <code>p</code>
+ * (one byte each in memory and six bits each when serialized), giving a
+ * relative standard error of about <code>1.04 / sqrt(2<sup>p</sup>)</code>.
+ *
+ * As in HyperLogLog++, items are reduced to 64-bit hashes, so no correction
+ * for hash collisions is needed at large cardinalities.  Rather than the
+ * empirical bias correction tables of HyperLogLog++, the cardinality is
+ * computed using the improved estimator of Ertl ("New cardinality estimation
+ * algorithms for HyperLogLog sketches", 2017), which is nearly unbiased over
+ * the whole range, including small cardinalities.
+ *
+ * Items may be added concurrently from multiple threads.
+ *
+ * @author Brad Kimmel
+ */
+public final class HyperLogLog implements Serializable {
+
+  /**
+   * Serialization version ID.
+   */
+  private static final long serialVersionUID = 4204955922357622123L;
+
+  /** The minimum precision. */
+  public static final int MIN_PRECISION = 4;
+
+  /** The maximum precision. */
+  public static final int MAX_PRECISION = 24;
+
+  /** The default precision (a relative standard error of about 0.8%). */
+  public static final int DEFAULT_PRECISION = 14;
+
+  /** The number of bits in a register. */
+  private static final int REGISTER_BITS = 6;
+
+  /** The number of registers packed into a <code>long</code>. */
+  private static final int REGISTERS_PER_WORD = 8;
+
+  /** The number of index bits. */
+  private final int p;
+
+  /** The registers, one per byte, eight to a <code>long</code>. */
+  private final AtomicLongArray registers;
+
+  /**
+   * Creates an empty <code>HyperLogLog</code> with the default precision.
+   */
+  public HyperLogLog() {
+    this(DEFAULT_PRECISION);
+  }
+
+  /**
+   * Creates an empty <code>HyperLogLog</code>.
+   * @param precision The number of bits of each hash used to select a
+   *     register.
+   * @throws IllegalArgumentException If <code>precision</code> is not in
+   *     <code>[MIN_PRECISION, MAX_PRECISION]</code>.
+   */
+  public HyperLogLog(int precision) {
+    if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+      throw new IllegalArgumentException("precision out of range.");
+    }
+    this.p = precision;
+    this.registers = new AtomicLongArray((1 << p) / REGISTERS_PER_WORD);
+  }
+
+  /**
+   * Adds an item.
+   * @param item The item to add.
+   */
+  public void add(long item) {
+    addHash(Hashing.hash(item));
+  }
+
+  /**
+   * Adds an item.
+   * @param item The item to add.
+   */
+  public void add(CharSequence item) {
+    addHash(Hashing.hash(item));
+  }
+
+  /**
+   * Adds an item.
+   * @param item The bytes of the item to add.
+   */
+  public void add(byte[] item) {
+    addHash(Hashing.hash(item, 0, item.length));
+  }
+
+  /**
+   * Updates the register for a hash.
+   * @param hash The 64-bit hash of the item.
+   */
+  private void addHash(long hash) {
+    int register = (int) (hash >>> (64 - p));
+    int rank = Math.min(Long.numberOfLeadingZeros(hash << p), 64 - p) + 1;
+    int index = register / REGISTERS_PER_WORD;
+    int shift = (register % REGISTERS_PER_WORD) * 8;
+    while (true) {
+      long word = registers.get(index);
+      if (((word >>> shift) & 0xff) >= rank) {
+        return;
+      }
+      long updated = (word & ~(0xffL << shift)) | ((long) rank << shift);
+      if (registers.compareAndSet(index, word, updated)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Gets the value of a register.
+   * @param register The index of the register.
+   * @return The value of the register.
+   */
+  private int get(int register) {
+    return (int) (registers.get(register / REGISTERS_PER_WORD)
+        >>> ((register % REGISTERS_PER_WORD) * 8)) & 0xff;
+  }
+
+  /**
+   * Estimates the number of distinct items added.
+   * @return The estimated number of distinct items.
+   */
+  public long cardinality() {
+    int q = 64 - p;
+    int m = 1 << p;
+    int[] histogram = new int[q + 2];
+    for (int i = 0, n = registers.length(); i < n; i++) {
+      long word = registers.get(i);
+      for (int j = 0; j < REGISTERS_PER_WORD; j++, word >>>= 8) {
+        histogram[(int) (word & 0xff)]++;
+      }
+    }
+
+    double z = m * tau(1.0 - (double) histogram[q + 1] / m);
+    for (int k = q; k >= 1; k--) {
+      z = 0.5 * (z + histogram[k]);
+    }
+    z += m * sigma((double) histogram[0] / m);
+    return Math.round(m * (m / (2.0 * Math.log(2.0))) / z);
+  }
+
+  /**
+   * Evaluates the sigma function of Ertl's estimator, which accounts for
+   * registers that are still zero.
+   * @param x The fraction of registers that are zero.
+   * @return The value of the sigma function at <code>x</code>.
+   */
+  private static double sigma(double x) {
+    if (x == 1.0) {
+      return Double.POSITIVE_INFINITY;
+    }
+    double y = 1.0;
+    double z = x;
+    double zPrev;
+    do {
+      x *= x;
+      zPrev = z;
+      z += x * y;
+      y += y;
+    } while (z != zPrev);
+    return z;
+  }
+
+  /**
+   * Evaluates the tau function of Ertl's estimator, which accounts for
+   * registers that have reached their maximum value.
+   * @param x One minus the fraction of registers at their maximum value.
+   * @return The value of the tau function at <code>x</code>.
+   */
+  private static double tau(double x) {
+    if (x == 0.0 || x == 1.0) {
+      return 0.0;
+    }
+    double y = 1.0;
+    double z = 1.0 - x;
+    double zPrev;
+    do {
+      x = Math.sqrt(x);
+      zPrev = z;
+      y *= 0.5;
+      z -= (1.0 - x) * (1.0 - x) * y;
+    } while (z != zPrev);
+    return z / 3.0;
+  }
+
+  /**
+   * Adds all items counted by another <code>HyperLogLog</code> to this one.
+   * @param other The <code>HyperLogLog</code> to merge into this one.
+   * @throws IllegalArgumentException If <code>other</code> does not have the
+   *     same precision as this one.
+   */
+  public void merge(HyperLogLog other) {
+    if (other.p != p) {
+      throw new IllegalArgumentException("Precisions differ.");
+    }
+    for (int i = 0, n = registers.length(); i < n; i++) {
+      long theirs = other.registers.get(i);
+      if (theirs != 0) {
+        registers.getAndAccumulate(i, theirs, HyperLogLog::max);
+      }
+    }
+  }
+
+  /**
+   * Computes the byte-wise maximum of two words of registers.
+   * @param a The first word.
+   * @param b The second word.
+   * @return The word holding the larger of each pair of registers.
+   */
+  private static long max(long a, long b) {
+    long result = 0;
+    for (int shift = 0; shift < 64; shift += 8) {
+      result |= Math.max((a >>> shift) & 0xff, (b >>> shift) & 0xff) << shift;
+    }
+    return result;
+  }
+
+  /**
+   * Gets the precision.
+   * @return The number of bits of each hash used to select a register.
+   */
+  public int getPrecision() {
+    return p;
+  }
+
+  /**
+   * Gets the relative standard error of the estimates.
+   * @return The relative standard error.
+   */
+  public double getRelativeError() {
+    return 1.04 / Math.sqrt(1 << p);
+  }
+
+  /**
+   * Writes this <code>HyperLogLog</code> in a compact binary form, packing
+   * six bits per register.
+   * @param out The <code>DataOutput</code> to write to.
+   * @throws IOException If an error occurs while writing to
+   *     <code>out</code>.
+   * @see #read(DataInput)
+   */
+  public void write(DataOutput out) throws IOException {
+    out.writeByte(p);
+    int m = 1 << p;
+    int buffer = 0;
+    int bits = 0;
+    for (int i = 0; i < m; i++) {
+      buffer = (buffer << REGISTER_BITS) | get(i);
+      bits += REGISTER_BITS;
+      if (bits >= 8) {
+        bits -= 8;
+        out.writeByte(buffer >>> bits);
+      }
+    }
+    if (bits > 0) {
+      out.writeByte(buffer << (8 - bits));
+    }
+  }
+
+  /**
+   * Reads a <code>HyperLogLog</code> written by {@link #write(DataOutput)}.
+   * @param in The <code>DataInput</code> to read from.
+   * @return The <code>HyperLogLog</code> that was read.
+   * @throws IOException If an error occurs while reading from
+   *     <code>in</code>.
+   */
+  public static HyperLogLog read(DataInput in) throws IOException {
+    HyperLogLog hll = new HyperLogLog(in.readUnsignedByte());
+    int m = 1 << hll.p;
+    int buffer = 0;
+    int bits = 0;
+    long word = 0;
+    for (int i = 0; i < m; i++) {
+      if (bits < REGISTER_BITS) {
+        buffer = (buffer << 8) | in.readUnsignedByte();
+        bits += 8;
+      }
+      bits -= REGISTER_BITS;
+      long value = (buffer >>> bits) & ((1 << REGISTER_BITS) - 1);
+      word |= value << ((i % REGISTERS_PER_WORD) * 8);
+      if (i % REGISTERS_PER_WORD == REGISTERS_PER_WORD - 1) {
+        hll.registers.set(i / REGISTERS_PER_WORD, word);
+        word = 0;
+      }
+    }
+    return hll;
+  }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link ArrayQueue}.
+ *
+ * @author Brad Kimmel
+ */
+public final class ArrayQueueTest {
+
+  @Test
+  public void testArrayConstructorIsFull() {
+    Integer[] items = { 1, 2, 3 };
+    ArrayQueue<Integer> queue = new ArrayQueue<Integer>(items);
+    assertEquals(3, queue.size());
+    assertEquals(0, queue.remainingCapacity());
+    assertFalse(queue.offer(4));
+    assertEquals(Integer.valueOf(1), queue.poll());
+    assertTrue(queue.offer(4));
+    assertArrayEquals(new Object[] { 2, 3, 4 }, queue.toArray());
+
+    /* The array is copied. */
+    assertArrayEquals(new Integer[] { 1, 2, 3 }, items);
+  }
+
+  @Test
+  public void testWrapsAround() {
+    ArrayQueue<Integer> queue = new ArrayQueue<Integer>(5);
+    int next = 0, expected = 0;
+    for (int round = 0; round < 100; round++) {
+      while (queue.offer(next)) {
+        next++;
+        assertTrue(queue.size() <= queue.capacity());
+      }
+      assertEquals(5, queue.size());
+      for (int i = 0, n = round % 5 + 1; i < n; i++) {
+        assertEquals(Integer.valueOf(expected++), queue.poll());
+      }
+    }
+    while (!queue.isEmpty()) {
+      assertEquals(Integer.valueOf(expected++), queue.poll());
+    }
+    assertEquals(next, expected);
+    assertNull(queue.poll());
+    assertNull(queue.peek());
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void testRejectsNull() {
+    new ArrayQueue<Object>(1).offer(null);
+  }
+
+  /**
+   * <code>ArrayQueue</code> is not thread-safe, but must behave correctly
+   * when access is externally synchronized.
+   */
+  @Test
+  public void testSynchronizedProducersAndConsumers() throws InterruptedException {
+    final int producers = 4, consumers = 4, perProducer = 5000;
+    final ArrayQueue<Integer> queue = new ArrayQueue<Integer>(7);
+    final AtomicIntegerArray seen = new AtomicIntegerArray(producers * perProducer);
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int p = 0; p < producers; p++) {
+      final int base = p * perProducer;
+      threads.add(new Thread(() -> {
+        for (int i = 0; i < perProducer;) {
+          boolean accepted;
+          synchronized (queue) {
+            assertTrue(queue.size() <= queue.capacity());
+            accepted = queue.offer(base + i);
+          }
+          if (accepted) {
+            i++;
+          } else {
+            Thread.yield();
+          }
+        }
+      }));
+    }
+    for (int c = 0; c < consumers; c++) {
+      threads.add(new Thread(() -> {
+        for (int i = 0; i < perProducer;) {
+          Integer e;
+          synchronized (queue) {
+            e = queue.poll();
+          }
+          if (e != null) {
+            seen.incrementAndGet(e);
+            i++;
+          } else {
+            Thread.yield();
+          }
+        }
+      }));
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertTrue(queue.isEmpty());
+    for (int i = 0; i < seen.length(); i++) {
+      assertEquals(1, seen.get(i));
+    }
+  }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+import org.junit.Test;
+
+import ca.eandb.util.hash.Crc32c;
+import ca.eandb.util.hash.XxHash64;
+
+/**
+ * Tests for {@link ClassUtil}.
+ *
+ * @author Brad Kimmel
+ */
+public final class ClassUtilTest {
+
+  /** Reads the class file of a class directly from its resource. */
+  private static byte[] readClassFile(Class<?> cl) throws IOException {
+    String name = cl.getName();
+    String resource = name.substring(name.lastIndexOf('.') + 1) + ".class";
+    try (InputStream in = cl.getResourceAsStream(resource)) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      int n;
+      while ((n = in.read(buffer)) >= 0) {
+        out.write(buffer, 0, n);
+      }
+      return out.toByteArray();
+    }
+  }
+
+  @Test
+  public void testGetClassHash() throws IOException {
+    for (Class<?> cl : new Class<?>[] {
+        ClassUtil.class, ClassUtilTest.class, DoubleArray.class, String.class }) {
+      byte[] bytes = readClassFile(cl);
+      assertEquals(XxHash64.hash(bytes), ClassUtil.getClassHash(cl));
+
+      Crc32c crc = new Crc32c();
+      ClassUtil.getClassHash(cl, crc);
+      assertEquals(Crc32c.hash(bytes), crc.getValue());
+    }
+    assertNotEquals(ClassUtil.getClassHash(ClassUtil.class),
+        ClassUtil.getClassHash(ClassUtilTest.class));
+  }
+
+  @Test
+  public void testNestedClass() throws IOException {
+    assertEquals(XxHash64.hash(readClassFile(Map.Entry.class)),
+        ClassUtil.getClassHash(Map.Entry.class));
+  }
+
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link QuantileSketch}.
+ *
+ * @author Brad Kimmel
+ */
+public final class QuantileSketchTest {
+
+  /** The number of values to summarize. */
+  private static final int N = 1000000;
+
+  /**
+   * The largest acceptable error in a normalized rank.  With the default
+   * <code>k = 200</code>, errors are typically about 1%, so this bound is
+   * exceeded only with negligible probability.
+   */
+  private static final double RANK_TOLERANCE = 0.025;
+
+  /**
+   * Creates a random permutation of <code>0, 1, ..., n - 1</code>, so that
+   * the true normalized rank of <code>x</code> is <code>(x + 1) / n</code>.
+   */
+  private static double[] permutation(int n, long seed) {
+    double[] values = new double[n];
+    for (int i = 0; i < n; i++) {
+      values[i] = i;
+    }
+    Random random = new Random(seed);
+    for (int i = n - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      double t = values[i];
+      values[i] = values[j];
+      values[j] = t;
+    }
+    return values;
+  }
+
+  /**
+   * Computes the largest error in the estimated normalized rank of a
+   * sketch of a permutation of <code>0, 1, ..., n - 1</code>.
+   */
+  private static double maximumRankError(QuantileSketch sketch, int n) {
+    double maxError = 0.0;
+    for (int i = 0; i <= 1000; i++) {
+      double x = Math.min((double) i * n / 1000, n - 1);
+      double trueRank = (x + 1) / n;
+      maxError = Math.max(maxError, Math.abs(sketch.getRank(x) - trueRank));
+    }
+    return maxError;
+  }
+
+  @Test
+  public void testRankErrorBound() {
+    double[] values = permutation(N, 1);
+    QuantileSketch sketch = new QuantileSketch();
+    for (double x : values) {
+      sketch.add(x);
+    }
+    assertEquals(N, sketch.getCount());
+    assertTrue(sketch.getRetainedCount() < 2000);
+    assertTrue(maximumRankError(sketch, N) < RANK_TOLERANCE);
+    assertEquals(0.0, sketch.getMinimum(), 0.0);
+    assertEquals(N - 1, sketch.getMaximum(), 0.0);
+    assertEquals(N / 2, sketch.getQuantile(0.5), RANK_TOLERANCE * N);
+  }
+
+  @Test
+  public void testMergedRankErrorBound() {
+    double[] values = permutation(N, 2);
+    QuantileSketch merged = new QuantileSketch();
+    int chunks = 97;
+    for (int c = 0; c < chunks; c++) {
+      QuantileSketch chunk = new QuantileSketch();
+      for (int i = c * N / chunks, end = (c + 1) * N / chunks; i < end; i++) {
+        chunk.add(values[i]);
+      }
+      merged.merge(chunk);
+    }
+    assertEquals(N, merged.getCount());
+    assertTrue(merged.getRetainedCount() < 2000);
+    assertTrue(maximumRankError(merged, N) < RANK_TOLERANCE);
+
+    QuantileSketch parallel = QuantileSketch.of(DoubleArray.wrap(values));
+    assertEquals(N, parallel.getCount());
+    assertTrue(maximumRankError(parallel, N) < RANK_TOLERANCE);
+  }
+
+  @Test
+  public void testSmallInputIsExact() {
+    QuantileSketch sketch = new QuantileSketch();
+    for (int i = 1; i <= 100; i++) {
+      sketch.add(i);
+    }
+    assertEquals(50.0, sketch.getQuantile(0.5), 0.0);
+    assertEquals(0.25, sketch.getRank(25.0), 0.0);
+    assertEquals(1.0, sketch.getQuantile(0.0), 0.0);
+    assertEquals(100.0, sketch.getQuantile(1.0), 0.0);
+  }
+
+  @Test
+  public void testNaNIsCountedButIgnored() {
+    QuantileSketch a = new QuantileSketch();
+    QuantileSketch b = new QuantileSketch();
+    a.add(1.0);
+    a.add(Double.NaN);
+    b.add(Double.NaN);
+    b.add(Double.NaN);
+    a.merge(b);
+    assertEquals(1, a.getCount());
+    assertEquals(3, a.getNaNCount());
+    assertEquals(1.0, a.getQuantile(0.5), 0.0);
+  }
+
+  @Test
+  public void testEmpty() {
+    QuantileSketch sketch = new QuantileSketch();
+    assertTrue(Double.isNaN(sketch.getQuantile(0.5)));
+    assertTrue(Double.isNaN(sketch.getRank(0.0)));
+    assertEquals(Double.POSITIVE_INFINITY, sketch.getMinimum(), 0.0);
+    assertEquals(Double.NEGATIVE_INFINITY, sketch.getMaximum(), 0.0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMergeRejectsDifferentK() {
+    new QuantileSketch(100).merge(new QuantileSketch(200));
+  }
+
+  @Test
+  public void testWriteRead() throws IOException {
+    QuantileSketch sketch = QuantileSketch.of(DoubleArray.wrap(permutation(10000, 3)));
+    sketch.add(Double.NaN);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    sketch.write(new DataOutputStream(bytes));
+    QuantileSketch copy = QuantileSketch.read(
+        new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    assertEquals(sketch.getCount(), copy.getCount());
+    assertEquals(1, copy.getNaNCount());
+    for (double q = 0.0; q <= 1.0; q += 0.125) {
+      assertEquals(sketch.getQuantile(q), copy.getQuantile(q), 0.0);
+    }
+  }
+
+}
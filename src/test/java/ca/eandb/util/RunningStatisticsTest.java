@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link RunningStatistics}.
+ *
+ * @author Brad Kimmel
+ */
+public final class RunningStatisticsTest {
+
+  /** Computes the mean and population variance using two passes. */
+  private static double[] twoPass(double[] values) {
+    double sum = 0.0;
+    for (double x : values) {
+      sum += x;
+    }
+    double mean = sum / values.length;
+    double ss = 0.0;
+    for (double x : values) {
+      ss += (x - mean) * (x - mean);
+    }
+    return new double[] { mean, ss / values.length };
+  }
+
+  private static double[] randomValues(int n, long seed) {
+    Random random = new Random(seed);
+    double[] values = new double[n];
+    for (int i = 0; i < n; i++) {
+      values[i] = 1e6 + random.nextGaussian() * 3.0;
+    }
+    return values;
+  }
+
+  @Test
+  public void testMatchesTwoPass() {
+    double[] values = randomValues(100000, 1);
+    RunningStatistics stats = new RunningStatistics();
+    stats.addAll(DoubleArray.wrap(values));
+    double[] expected = twoPass(values);
+    assertEquals(values.length, stats.getCount());
+    assertEquals(expected[0], stats.getMean(), 1e-9 * Math.abs(expected[0]));
+    assertEquals(expected[1], stats.getVariance(), 1e-9 * expected[1]);
+    assertEquals(expected[1] * values.length / (values.length - 1),
+        stats.getSampleVariance(), 1e-9 * expected[1]);
+  }
+
+  @Test
+  public void testMergeMatchesSequential() {
+    double[] values = randomValues(100003, 2);
+    double[] expected = twoPass(values);
+
+    /* Merge uneven chunks, including empty ones and single values. */
+    int[] bounds = { 0, 0, 1, 2, 17, 5000, 5000, 73001, 100002, 100003 };
+    RunningStatistics merged = new RunningStatistics();
+    for (int c = 0; c + 1 < bounds.length; c++) {
+      RunningStatistics chunk = new RunningStatistics();
+      for (int i = bounds[c]; i < bounds[c + 1]; i++) {
+        chunk.add(values[i]);
+      }
+      merged.merge(chunk);
+    }
+    assertEquals(values.length, merged.getCount());
+    assertEquals(expected[0], merged.getMean(), 1e-9 * Math.abs(expected[0]));
+    assertEquals(expected[1], merged.getVariance(), 1e-9 * expected[1]);
+
+    RunningStatistics parallel = RunningStatistics.of(DoubleArray.wrap(values));
+    assertEquals(values.length, parallel.getCount());
+    assertEquals(expected[0], parallel.getMean(), 1e-9 * Math.abs(expected[0]));
+    assertEquals(expected[1], parallel.getVariance(), 1e-9 * expected[1]);
+
+    double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+    for (double x : values) {
+      min = Math.min(min, x);
+      max = Math.max(max, x);
+    }
+    assertEquals(min, parallel.getMinimum(), 0.0);
+    assertEquals(max, parallel.getMaximum(), 0.0);
+  }
+
+  @Test
+  public void testNaNIsCountedButIgnored() {
+    RunningStatistics a = new RunningStatistics();
+    a.add(1.0);
+    a.add(Double.NaN);
+    a.add(3.0);
+    RunningStatistics b = new RunningStatistics();
+    b.add(Double.NaN);
+    a.merge(b);
+    assertEquals(2, a.getCount());
+    assertEquals(2, a.getNaNCount());
+    assertEquals(2.0, a.getMean(), 0.0);
+    assertEquals(1.0, a.getVariance(), 0.0);
+    assertEquals(1.0, a.getMinimum(), 0.0);
+    assertEquals(3.0, a.getMaximum(), 0.0);
+
+    /* Histogram and QuantileSketch treat NaN the same way. */
+    Histogram h = new Histogram(0.0, 4.0, 4);
+    QuantileSketch q = new QuantileSketch();
+    for (double x : new double[] { 1.0, Double.NaN, 3.0, Double.NaN }) {
+      h.add(x);
+      q.add(x);
+    }
+    assertEquals(2, h.getTotalCount());
+    assertEquals(2, h.getNaNCount());
+    assertEquals(3.0, h.getMaximum(), 0.0);
+    assertEquals(2, q.getCount());
+    assertEquals(2, q.getNaNCount());
+    assertEquals(3.0, q.getMaximum(), 0.0);
+  }
+
+  @Test
+  public void testEmpty() {
+    RunningStatistics stats = new RunningStatistics();
+    assertTrue(Double.isNaN(stats.getMean()));
+    assertTrue(Double.isNaN(stats.getVariance()));
+    stats.merge(new RunningStatistics());
+    assertEquals(0, stats.getCount());
+  }
+
+  @Test
+  public void testWriteRead() throws IOException {
+    RunningStatistics stats = RunningStatistics.of(DoubleArray.wrap(randomValues(1000, 3)));
+    stats.add(Double.NaN);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    stats.write(new DataOutputStream(bytes));
+    RunningStatistics copy = RunningStatistics.read(
+        new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    assertEquals(stats.getCount(), copy.getCount());
+    assertEquals(1, copy.getNaNCount());
+    assertEquals(stats.getMean(), copy.getMean(), 0.0);
+    assertEquals(stats.getVariance(), copy.getVariance(), 0.0);
+  }
+
+}
@@ -0,0 +1,339 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests for the {@link Cache} created by {@link CacheBuilder}.
+ *
+ * @author Brad Kimmel
+ */
+public final class BoundedCacheTest {
+
+  /**
+   * Counts the number of keys in a range that are present in a cache.
+   * @param cache The <code>Cache</code> to check.
+   * @param from The first key (inclusive).
+   * @param to The last key (exclusive).
+   * @return The number of keys present.
+   */
+  private static int countPresent(Cache<Integer, Integer> cache, int from, int to) {
+    int count = 0;
+    for (int key = from; key < to; key++) {
+      if (cache.getIfPresent(key) != null) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  @Test
+  public void testSizeBound() {
+    for (EvictionPolicy policy : EvictionPolicy.values()) {
+      Cache<Integer, Integer> cache = new CacheBuilder<Integer, Integer>()
+          .maximumSize(100)
+          .evictionPolicy(policy)
+          .build();
+      for (int i = 0; i < 10000; i++) {
+        cache.put(i, i);
+        assertTrue(policy.toString(), cache.size() <= 100);
+      }
+      cache.cleanUp();
+      assertEquals(policy.toString(), 100, cache.size());
+      assertEquals(policy.toString(), 9900, cache.stats().getEvictionCount());
+    }
+  }
+
+  @Test
+  public void testWeightBound() {
+    Cache<Integer, String> cache = new CacheBuilder<Integer, String>()
+        .maximumWeight(1000, (key, value) -> value.length())
+        .build();
+    int total = 0;
+    for (int i = 0; i < 1000; i++) {
+      cache.put(i, new String(new char[i % 50]));
+    }
+    cache.cleanUp();
+    for (int i = 0; i < 1000; i++) {
+      String value = cache.getIfPresent(i);
+      if (value != null) {
+        total += value.length();
+      }
+    }
+    assertTrue(total <= 1000);
+    assertTrue(total > 500);
+  }
+
+  @Test
+  public void testZeroMaximumSize() {
+    Cache<Integer, Integer> cache = new CacheBuilder<Integer, Integer>()
+        .maximumSize(0)
+        .build();
+    cache.put(1, 1);
+    assertNull(cache.getIfPresent(1));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testHotSetSurvivesScan() {
+    Cache<Integer, Integer> cache = new CacheBuilder<Integer, Integer>()
+        .maximumSize(100)
+        .evictionPolicy(EvictionPolicy.TINY_LFU)
+        .build();
+
+    /* Establish a hot set that fits comfortably in the protected segment. */
+    for (int round = 0; round < 20; round++) {
+      for (int key = 0; key < 50; key++) {
+        cache.get(key, k -> k);
+      }
+      cache.cleanUp();
+    }
+
+    /* Scan many keys, each used only once. */
+    for (int key = 1000; key < 101000; key++) {
+      cache.get(key, k -> k);
+    }
+    cache.cleanUp();
+
+    assertTrue(countPresent(cache, 0, 50) >= 45);
+  }
+
+  @Test
+  public void testLruLosesHotSetToScan() {
+    Cache<Integer, Integer> cache = new CacheBuilder<Integer, Integer>()
+        .maximumSize(100)
+        .evictionPolicy(EvictionPolicy.LRU)
+        .build();
+    for (int round = 0; round < 20; round++) {
+      for (int key = 0; key < 50; key++) {
+        cache.get(key, k -> k);
+      }
+    }
+    for (int key = 1000; key < 2000; key++) {
+      cache.get(key, k -> k);
+    }
+    cache.cleanUp();
+    assertEquals(0, countPresent(cache, 0, 50));
+  }
+
+  @Test
+  public void testExpireAfterWrite() throws InterruptedException {
+    Cache<Integer, Integer> cache = new CacheBuilder<Integer, Integer>()
+        .expireAfterWrite(100, TimeUnit.MILLISECONDS)
+        .build();
+    cache.put(1, 1);
+    assertEquals(Integer.valueOf(1), cache.getIfPresent(1));
+    Thread.sleep(200);
+    assertNull(cache.getIfPresent(1));
+    cache.cleanUp();
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testExpireAfterAccess() throws InterruptedException {
+    Cache<Integer, Integer> cache = new CacheBuilder<Integer, Integer>()
+        .expireAfterAccess(300, TimeUnit.MILLISECONDS)
+        .build();
+    cache.put(1, 1);
+    cache.put(2, 2);
+    for (int i = 0; i < 6; i++) {
+      Thread.sleep(100);
+      assertEquals(Integer.valueOf(1), cache.getIfPresent(1));
+    }
+    assertNull(cache.getIfPresent(2));
+    Thread.sleep(400);
+    assertNull(cache.getIfPresent(1));
+  }
+
+  @Test
+  public void testZeroExpiryExpiresImmediately() {
+    Cache<Integer, Integer> writeCache = new CacheBuilder<Integer, Integer>()
+        .expireAfterWrite(0, TimeUnit.SECONDS)
+        .build();
+    Cache<Integer, Integer> accessCache = new CacheBuilder<Integer, Integer>()
+        .expireAfterAccess(0, TimeUnit.SECONDS)
+        .build();
+    for (Cache<Integer, Integer> cache : Arrays.asList(writeCache, accessCache)) {
+      cache.put(1, 1);
+      assertNull(cache.getIfPresent(1));
+      assertEquals(Integer.valueOf(2), cache.get(2, k -> 2));
+      assertNull(cache.getIfPresent(2));
+      cache.cleanUp();
+      assertEquals(0, cache.size());
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeExpiryRejected() {
+    new CacheBuilder<Integer, Integer>().expireAfterWrite(-1, TimeUnit.SECONDS);
+  }
+
+  @Test(timeout = 10000)
+  public void testConcurrentLoadsRunLoaderOnce() throws Exception {
+    final Cache<String, Integer> cache = new CacheBuilder<String, Integer>()
+        .maximumSize(100)
+        .build();
+    final AtomicInteger loads = new AtomicInteger();
+    final CountDownLatch start = new CountDownLatch(1);
+    final CountDownLatch loaderEntered = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(16);
+    try {
+      List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+      for (int t = 0; t < 16; t++) {
+        results.add(executor.submit(() -> {
+          start.await();
+          return cache.get("key", k -> {
+            loads.incrementAndGet();
+            loaderEntered.countDown();
+            try {
+              release.await();
+            } catch (InterruptedException e) {
+              throw new RuntimeException(e);
+            }
+            return 42;
+          });
+        }));
+      }
+      start.countDown();
+      loaderEntered.await();
+
+      /* Give the other threads time to find the load in progress. */
+      Thread.sleep(100);
+      release.countDown();
+      for (Future<Integer> result : results) {
+        assertEquals(Integer.valueOf(42), result.get());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(1, loads.get());
+    assertEquals(1, cache.stats().getLoadSuccessCount());
+    assertEquals(16, cache.stats().getRequestCount());
+  }
+
+  @Test(timeout = 10000)
+  public void testLoadFailureIsRethrownToWaiters() throws Exception {
+    final Cache<String, Integer> cache = new CacheBuilder<String, Integer>().build();
+    final CountDownLatch loaderEntered = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<Integer> first = executor.submit(() -> cache.get("key", k -> {
+        loaderEntered.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+        throw new IllegalStateException("load failed");
+      }));
+      loaderEntered.await();
+      Future<Integer> second = executor.submit(() -> cache.get("key", k -> 0));
+      Thread.sleep(100);
+      release.countDown();
+      for (Future<Integer> result : Arrays.asList(first, second)) {
+        try {
+          result.get();
+          fail("load should have failed");
+        } catch (ExecutionException e) {
+          assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(1, cache.stats().getLoadFailureCount());
+  }
+
+  @Test(timeout = 10000)
+  public void testRecursiveLoadIsDetected() {
+    final Cache<String, Integer> cache = new CacheBuilder<String, Integer>().build();
+    try {
+      cache.get("key", k -> cache.get("key", k2 -> 1));
+      fail("recursive load should have been detected");
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage().contains("recursive load"));
+    }
+
+    /* The failed load must not leave the key locked. */
+    assertEquals(Integer.valueOf(2), cache.get("key", k -> 2));
+
+    /* Loading a different key from within a loader is allowed. */
+    assertEquals(Integer.valueOf(4), cache.get("a", k -> cache.get("b", k2 -> 3) + 1));
+  }
+
+  @Test
+  public void testStatistics() {
+    Cache<Integer, Integer> cache = new CacheBuilder<Integer, Integer>()
+        .maximumSize(10)
+        .build();
+    cache.get(1, k -> k);
+    cache.get(1, k -> k);
+    cache.getIfPresent(2);
+    cache.get(3, k -> null);
+    CacheStats stats = cache.stats();
+    assertEquals(1, stats.getHitCount());
+    assertEquals(3, stats.getMissCount());
+    assertEquals(1, stats.getLoadSuccessCount());
+    assertEquals(1, stats.getLoadFailureCount());
+    assertEquals(0.25, stats.getHitRate(), 1e-9);
+  }
+
+  @Test
+  public void testInvalidate() {
+    Cache<Integer, Integer> cache = new CacheBuilder<Integer, Integer>()
+        .maximumSize(10)
+        .build();
+    Integer value = 1000;
+    cache.put(1, value);
+    cache.put(2, 2);
+    assertSame(value, cache.getIfPresent(1));
+    cache.invalidate(1);
+    assertNull(cache.getIfPresent(1));
+    cache.invalidateAll();
+    assertEquals(0, cache.size());
+  }
+
+}
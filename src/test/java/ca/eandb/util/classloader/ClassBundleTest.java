@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.classloader;
+
+import static ca.eandb.util.classloader.StrategyClassLoaderTest.readClass;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+import ca.eandb.util.classloader.StrategyClassLoaderTest.Base;
+import ca.eandb.util.classloader.StrategyClassLoaderTest.Fixture0;
+import ca.eandb.util.classloader.StrategyClassLoaderTest.Fixture1;
+
+/**
+ * Tests for {@link ClassBundle}.
+ *
+ * @author Brad Kimmel
+ */
+public final class ClassBundleTest {
+
+  /** The classes placed in the bundles under test. */
+  private static final List<Class<?>> CLASSES = Arrays.<Class<?>>asList(
+      Base.class, Fixture0.class, Fixture1.class);
+
+  private static ClassBundle createBundle(List<Class<?>> classes, String algorithm)
+      throws IOException {
+    ClassBundle bundle = new ClassBundle(algorithm);
+    for (Class<?> cl : classes) {
+      bundle.add(cl.getName(), readClass(cl));
+    }
+    return bundle;
+  }
+
+  private static byte[] toBytes(ClassBundle bundle) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    bundle.write(new DataOutputStream(bytes));
+    return bytes.toByteArray();
+  }
+
+  private static ClassBundle fromBytes(byte[] bytes) throws IOException {
+    return ClassBundle.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+  }
+
+  private static byte[] getDefinition(ClassBundle bundle, String name) {
+    ByteBuffer buffer = bundle.getClassDefinition(name);
+    byte[] def = new byte[buffer.remaining()];
+    buffer.get(def);
+    return def;
+  }
+
+  @Test
+  public void testContents() throws Exception {
+    ClassBundle bundle = createBundle(CLASSES, ClassBundle.DEFAULT_ALGORITHM);
+    assertEquals(3, bundle.size());
+    assertEquals(Arrays.asList(Base.class.getName(), Fixture0.class.getName(),
+        Fixture1.class.getName()), new ArrayList<String>(bundle.getClassNames()));
+    assertFalse(bundle.contains(ClassBundleTest.class.getName()));
+    assertNull(bundle.getClassDefinition(ClassBundleTest.class.getName()));
+    assertNull(bundle.getDigest(ClassBundleTest.class.getName()));
+
+    long total = 0;
+    MessageDigest md = MessageDigest.getInstance(ClassBundle.DEFAULT_ALGORITHM);
+    for (Class<?> cl : CLASSES) {
+      byte[] def = readClass(cl);
+      total += def.length;
+      assertTrue(bundle.contains(cl.getName()));
+      assertTrue(bundle.getClassDefinition(cl.getName()).isReadOnly());
+      assertArrayEquals(def, getDefinition(bundle, cl.getName()));
+      assertArrayEquals(md.digest(def), bundle.getDigest(cl.getName()));
+    }
+    assertEquals(total, bundle.getTotalSize());
+  }
+
+  @Test
+  public void testAddCopiesDefinition() throws IOException {
+    byte[] def = readClass(Base.class);
+    ClassBundle bundle = new ClassBundle();
+    bundle.add(Base.class.getName(), def);
+    def[0] = 0;
+    assertArrayEquals(readClass(Base.class), getDefinition(bundle, Base.class.getName()));
+
+    byte[] digest = bundle.getDigest(Base.class.getName());
+    digest[0] ^= 1;
+    assertFalse(Arrays.equals(digest, bundle.getDigest(Base.class.getName())));
+  }
+
+  @Test
+  public void testFingerprintIgnoresOrder() throws IOException {
+    List<Class<?>> reversed = new ArrayList<Class<?>>(CLASSES);
+    Collections.reverse(reversed);
+    String fingerprint = createBundle(CLASSES, "SHA-256").getFingerprint();
+    assertEquals(fingerprint, createBundle(reversed, "SHA-256").getFingerprint());
+    assertFalse(fingerprint.equals(
+        createBundle(CLASSES.subList(0, 2), "SHA-256").getFingerprint()));
+  }
+
+  @Test
+  public void testWriteRead() throws Exception {
+    for (String algorithm : new String[] { "SHA-256", "SHA-1", "MD5" }) {
+      ClassBundle bundle = createBundle(CLASSES, algorithm);
+      ClassBundle copy = fromBytes(toBytes(bundle));
+      assertEquals(algorithm, copy.getAlgorithm());
+      assertEquals(new ArrayList<String>(bundle.getClassNames()),
+          new ArrayList<String>(copy.getClassNames()));
+      assertEquals(bundle.getFingerprint(), copy.getFingerprint());
+      for (String name : bundle.getClassNames()) {
+        assertArrayEquals(getDefinition(bundle, name), getDefinition(copy, name));
+        assertArrayEquals(bundle.getDigest(name), copy.getDigest(name));
+      }
+      assertArrayEquals(toBytes(bundle), toBytes(copy));
+    }
+
+    ClassBundle empty = fromBytes(toBytes(new ClassBundle()));
+    assertEquals(0, empty.size());
+  }
+
+  /** A bundle that has been read back may be used to define its classes. */
+  @Test
+  public void testDefineClassesFromBundle() throws Exception {
+    ClassBundle copy = fromBytes(toBytes(createBundle(CLASSES, "SHA-256")));
+    StrategyClassLoader loader = new StrategyClassLoader(copy,
+        Supplier.class.getClassLoader());
+    Class<?> cl = loader.loadClass(Fixture1.class.getName());
+    assertNotSame(Fixture1.class, cl);
+    assertEquals(loader, cl.getClassLoader());
+    assertEquals(loader, cl.getSuperclass().getClassLoader());
+    @SuppressWarnings("unchecked")
+    Supplier<String> instance = (Supplier<String>) cl.getDeclaredConstructor().newInstance();
+    assertEquals(Fixture1.class.getName(), instance.get());
+  }
+
+  private static void assertCorrupt(byte[] bytes) {
+    try {
+      fromBytes(bytes);
+      fail("Expected IOException");
+    } catch (IOException e) {
+      /* expected */
+    }
+  }
+
+  @Test
+  public void testTruncated() throws IOException {
+    byte[] bytes = toBytes(createBundle(CLASSES, "SHA-256"));
+    for (int length = 0; length < bytes.length; length++) {
+      assertCorrupt(Arrays.copyOf(bytes, length));
+    }
+  }
+
+  @Test
+  public void testCorrupt() throws IOException {
+    ClassBundle bundle = createBundle(CLASSES.subList(0, 1), "SHA-256");
+    byte[] valid = toBytes(bundle);
+    String name = Base.class.getName();
+    int countOffset = 4 + 2 + "SHA-256".length();
+    int lengthOffset = countOffset + 4 + 2 + name.getBytes(StandardCharsets.UTF_8).length;
+    int defLength = ByteBuffer.wrap(valid, lengthOffset, 4).getInt();
+    assertEquals(readClass(Base.class).length, defLength);
+    int digestLengthOffset = lengthOffset + 4 + defLength;
+
+    /* Wrong magic number. */
+    byte[] bytes = valid.clone();
+    bytes[0] ^= 1;
+    assertCorrupt(bytes);
+
+    /* Unknown digest algorithm. */
+    bytes = valid.clone();
+    bytes[6] = 'X';
+    assertCorrupt(bytes);
+
+    /* Negative class count. */
+    bytes = valid.clone();
+    ByteBuffer.wrap(bytes).putInt(countOffset, -1);
+    assertCorrupt(bytes);
+
+    /* Negative and oversized definition lengths. */
+    for (int length : new int[] { -1, Integer.MIN_VALUE, Integer.MAX_VALUE, defLength + 1000 }) {
+      bytes = valid.clone();
+      ByteBuffer.wrap(bytes).putInt(lengthOffset, length);
+      assertCorrupt(bytes);
+    }
+
+    /* Wrong digest length. */
+    bytes = valid.clone();
+    bytes[digestLengthOffset] = 31;
+    assertCorrupt(bytes);
+
+    /* Definition does not match its digest. */
+    bytes = valid.clone();
+    bytes[lengthOffset + 4 + defLength / 2] ^= 1;
+    assertCorrupt(bytes);
+
+    /* Digest does not match the definition. */
+    bytes = valid.clone();
+    bytes[bytes.length - 1] ^= 1;
+    assertCorrupt(bytes);
+
+    fromBytes(valid);
+  }
+
+}
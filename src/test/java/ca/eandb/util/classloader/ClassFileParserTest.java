@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.classloader;
+
+import static ca.eandb.util.classloader.StrategyClassLoaderTest.readClass;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link ClassFileParser}.
+ *
+ * @author Brad Kimmel
+ */
+public final class ClassFileParserTest {
+
+  /** A class referring to other classes in a variety of ways. */
+  static final class Sample extends AbstractList<String>
+      implements Serializable, Comparable<Sample> {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Referenced only by a field descriptor. */
+    AtomicLong counter;
+
+    /** Referenced only by an array field descriptor. */
+    UUID[][] ids;
+
+    /** Referenced only by a method descriptor. */
+    BigDecimal convert(Duration duration) {
+      return null;
+    }
+
+    Object task() {
+      return (Runnable) () -> {};
+    }
+
+    public String get(int index) {
+      return new StringBuilder().append(index).toString();
+    }
+
+    public int size() {
+      return 0;
+    }
+
+    public int compareTo(Sample other) {
+      return 0;
+    }
+
+  }
+
+  @Test
+  public void testGetClassName() throws IOException {
+    for (Class<?> cl : new Class<?>[] {
+        Sample.class, ClassFileParserTest.class, ClassFileParser.class }) {
+      byte[] def = readClass(cl);
+      assertEquals(cl.getName(), ClassFileParser.getClassName(def));
+    }
+  }
+
+  @Test
+  public void testGetReferencedClasses() throws IOException {
+    Set<String> names = ClassFileParser.getReferencedClasses(readClass(Sample.class));
+    for (Class<?> cl : new Class<?>[] {
+        AbstractList.class, Serializable.class, Comparable.class,
+        AtomicLong.class, UUID.class, BigDecimal.class, Duration.class,
+        Runnable.class, StringBuilder.class, String.class, Object.class }) {
+      assertTrue(cl.getName(), names.contains(cl.getName()));
+    }
+    assertFalse(names.contains(Sample.class.getName()));
+    for (String name : names) {
+      assertFalse(name, name.startsWith("[") || name.contains("/") || name.endsWith(";"));
+    }
+  }
+
+  /** Buffers at an offset, read-only and direct buffers are handled. */
+  @Test
+  public void testBuffers() throws IOException {
+    byte[] def = readClass(Sample.class);
+    Set<String> expected = ClassFileParser.getReferencedClasses(def);
+
+    byte[] padded = new byte[def.length + 20];
+    System.arraycopy(def, 0, padded, 10, def.length);
+    ByteBuffer slice = ByteBuffer.wrap(padded, 10, def.length).slice();
+    ByteBuffer direct = ByteBuffer.allocateDirect(def.length);
+    direct.put(def).flip();
+    ByteBuffer offset = ByteBuffer.wrap(padded);
+    offset.position(10).limit(10 + def.length);
+
+    for (ByteBuffer buffer : Arrays.asList(slice, slice.asReadOnlyBuffer(), direct, offset)) {
+      int position = buffer.position();
+      assertEquals(Sample.class.getName(), ClassFileParser.getClassName(buffer));
+      assertEquals(expected, ClassFileParser.getReferencedClasses(buffer));
+      assertEquals(position, buffer.position());
+    }
+  }
+
+  @Test
+  public void testInvalid() throws IOException {
+    byte[] def = readClass(Sample.class);
+    for (int length = 0; length < def.length; length += length < 64 || length > def.length - 64 ? 1 : 37) {
+      byte[] truncated = Arrays.copyOf(def, length);
+      try {
+        ClassFileParser.getReferencedClasses(truncated);
+        fail("Expected IllegalArgumentException for length " + length);
+      } catch (IllegalArgumentException e) {
+        /* expected */
+      }
+    }
+
+    try {
+      ClassFileParser.getReferencedClasses(Arrays.copyOf(def, def.length + 1));
+      fail("Expected IllegalArgumentException for trailing data");
+    } catch (IllegalArgumentException e) {
+      /* expected */
+    }
+
+    byte[] bad = def.clone();
+    bad[0] = 0;
+    try {
+      ClassFileParser.getClassName(bad);
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      /* expected */
+    }
+  }
+
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.classloader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link PrefetchingClassLoaderStrategy}, using an in-process
+ * stand-in for a remote <code>BatchClassLoaderStrategy</code>.
+ *
+ * @author Brad Kimmel
+ */
+public final class PrefetchingClassLoaderStrategyTest {
+
+  /** The simulated round trip time, in milliseconds. */
+  private static final long LATENCY = 20;
+
+  /* A small graph of classes: Root -> Left, Right; Left -> Leaf1; Right -> Leaf2. */
+  static final class Root { Left left; Right right; }
+  static final class Left { Leaf1 leaf; }
+  static final class Right { Leaf2 leaf; }
+  static final class Leaf1 {}
+  static final class Leaf2 {}
+
+  /** The classes in the graph, in the order a class loader would need them. */
+  private static final List<Class<?>> GRAPH = Arrays.<Class<?>>asList(
+      Root.class, Left.class, Right.class, Leaf1.class, Leaf2.class);
+
+  /**
+   * A <code>BatchClassLoaderStrategy</code> that serves definitions from
+   * memory after a fixed delay, counting round trips.
+   */
+  private static final class RemoteStrategy implements BatchClassLoaderStrategy {
+
+    final Map<String, byte[]> defs = new HashMap<String, byte[]>();
+
+    final AtomicInteger trips = new AtomicInteger();
+
+    volatile boolean failBatches = false;
+
+    public ByteBuffer getClassDefinition(String name) {
+      roundTrip();
+      byte[] def = defs.get(name);
+      return def != null ? ByteBuffer.wrap(def) : null;
+    }
+
+    public Map<String, ByteBuffer> getClassDefinitions(Collection<String> names) {
+      roundTrip();
+      if (failBatches) {
+        throw new IllegalStateException("Connection reset.");
+      }
+      Map<String, ByteBuffer> result = new HashMap<String, ByteBuffer>();
+      for (String name : names) {
+        byte[] def = defs.get(name);
+        if (def != null) {
+          result.put(name, ByteBuffer.wrap(def));
+        }
+      }
+      return result;
+    }
+
+    private void roundTrip() {
+      trips.incrementAndGet();
+      try {
+        Thread.sleep(LATENCY);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+  }
+
+  private RemoteStrategy remote;
+
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() throws Exception {
+    remote = new RemoteStrategy();
+    for (Class<?> cl : GRAPH) {
+      remote.defs.put(cl.getName(), StrategyClassLoaderTest.readClass(cl));
+    }
+    executor = Executors.newSingleThreadExecutor();
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  private PrefetchingClassLoaderStrategy prefetching(Predicate<String> filter) {
+    return new PrefetchingClassLoaderStrategy(remote, filter, executor);
+  }
+
+  /**
+   * Requests every class in the graph and checks the definitions returned.
+   * @param strategy The <code>ClassLoaderStrategy</code> to request classes
+   *     from.
+   */
+  private void loadGraph(ClassLoaderStrategy strategy) {
+    for (Class<?> cl : GRAPH) {
+      ByteBuffer def = strategy.getClassDefinition(cl.getName());
+      assertEquals(cl.getName(), ByteBuffer.wrap(remote.defs.get(cl.getName())), def);
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void testPrefetchSavesRoundTrips() {
+    loadGraph(remote);
+    assertEquals(GRAPH.size(), remote.trips.getAndSet(0));
+
+    /* One direct request for Root, then one batch per level of the graph. */
+    loadGraph(prefetching(name -> !name.startsWith("java.")));
+    assertEquals(3, remote.trips.get());
+  }
+
+  @Test(timeout = 10000)
+  public void testFailedBatchFallsBack() {
+    remote.failBatches = true;
+    loadGraph(prefetching(name -> !name.startsWith("java.")));
+  }
+
+  @Test(timeout = 10000)
+  public void testFailingFilterDoesNotHang() {
+    loadGraph(prefetching(name -> {
+      if (name.equals(Leaf1.class.getName())) {
+        throw new IllegalStateException("Filter failed.");
+      }
+      return !name.startsWith("java.");
+    }));
+  }
+
+  @Test(timeout = 10000)
+  public void testTruncatedDefinitionDoesNotHang() {
+    byte[] def = remote.defs.get(Left.class.getName());
+    remote.defs.put(Left.class.getName(), Arrays.copyOf(def, def.length / 2));
+    loadGraph(prefetching(name -> !name.startsWith("java.")));
+  }
+
+  @Test(timeout = 10000)
+  public void testMissingClass() {
+    PrefetchingClassLoaderStrategy strategy = prefetching(name -> true);
+    loadGraph(strategy);
+    assertNull(strategy.getClassDefinition("ca.eandb.util.classloader.Missing"));
+  }
+
+}
@@ -0,0 +1,467 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ca.eandb.util.classloader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ProfilingTransformer} and {@link ProbeRuntime}.  The
+ * instrumented classes are defined by a {@link StrategyClassLoader}, so they
+ * are verified as they are linked.
+ *
+ * @author Brad Kimmel
+ */
+public final class ProfilingTransformerTest {
+
+  /** The number of <code>long</code> parameters of {@link Work#wide}. */
+  private static final int WIDE_PARAMS = 127;
+
+  /** The class to instrument. */
+  public static class Work {
+
+    /** The number of calls to {@link #accumulate(long, double, int)}. */
+    public long count = 0;
+
+    public static int square(int x) {
+      return x * x;
+    }
+
+    public static int sumOfSquares(int n) {
+      int sum = 0;
+      for (int i = 1; i <= n; i++) {
+        sum += square(i);
+      }
+      return sum;
+    }
+
+    public long accumulate(long a, double b, int c) {
+      long total = a;
+      double scaled = b * 2.0;
+      try {
+        if (c < 0) {
+          throw new IllegalArgumentException();
+        }
+        total += (long) scaled + c;
+      } catch (IllegalArgumentException e) {
+        total = -1L;
+      } finally {
+        count++;
+      }
+      return total;
+    }
+
+    public static double parse(String s, double fallback) {
+      try {
+        return Double.parseDouble(s);
+      } catch (NumberFormatException e) {
+        return fallback;
+      }
+    }
+
+    public static void fail(String message) {
+      throw new IllegalStateException(message);
+    }
+
+    public synchronized String describe(long[] values, Object[][] grid, float f) {
+      return values.length + "x" + grid.length + ":" + f;
+    }
+
+    /* The parameters occupy 254 local variable slots, so the locals that
+     * follow them, both here and in the wrapper, need wide instructions.
+     */
+    public static long wide(
+        long a0, long a1, long a2, long a3, long a4, long a5, long a6, long
+        a7, long a8, long a9, long a10, long a11, long a12, long a13, long
+        a14, long a15, long a16, long a17, long a18, long a19, long a20, long
+        a21, long a22, long a23, long a24, long a25, long a26, long a27, long
+        a28, long a29, long a30, long a31, long a32, long a33, long a34, long
+        a35, long a36, long a37, long a38, long a39, long a40, long a41, long
+        a42, long a43, long a44, long a45, long a46, long a47, long a48, long
+        a49, long a50, long a51, long a52, long a53, long a54, long a55, long
+        a56, long a57, long a58, long a59, long a60, long a61, long a62, long
+        a63, long a64, long a65, long a66, long a67, long a68, long a69, long
+        a70, long a71, long a72, long a73, long a74, long a75, long a76, long
+        a77, long a78, long a79, long a80, long a81, long a82, long a83, long
+        a84, long a85, long a86, long a87, long a88, long a89, long a90, long
+        a91, long a92, long a93, long a94, long a95, long a96, long a97, long
+        a98, long a99, long a100, long a101, long a102, long a103, long a104,
+        long a105, long a106, long a107, long a108, long a109, long a110, long
+        a111, long a112, long a113, long a114, long a115, long a116, long
+        a117, long a118, long a119, long a120, long a121, long a122, long
+        a123, long a124, long a125, long a126) {
+      long sum =
+          a0 + a1 + a2 + a3 + a4 + a5 + a6 + a7 + a8 + a9 + a10 + a11 + a12
+          + a13 + a14 + a15 + a16 + a17 + a18 + a19 + a20 + a21 + a22 + a23
+          + a24 + a25 + a26 + a27 + a28 + a29 + a30 + a31 + a32 + a33 + a34
+          + a35 + a36 + a37 + a38 + a39 + a40 + a41 + a42 + a43 + a44 + a45
+          + a46 + a47 + a48 + a49 + a50 + a51 + a52 + a53 + a54 + a55 + a56
+          + a57 + a58 + a59 + a60 + a61 + a62 + a63 + a64 + a65 + a66 + a67
+          + a68 + a69 + a70 + a71 + a72 + a73 + a74 + a75 + a76 + a77 + a78
+          + a79 + a80 + a81 + a82 + a83 + a84 + a85 + a86 + a87 + a88 + a89
+          + a90 + a91 + a92 + a93 + a94 + a95 + a96 + a97 + a98 + a99 + a100
+          + a101 + a102 + a103 + a104 + a105 + a106 + a107 + a108 + a109 +
+          a110 + a111 + a112 + a113 + a114 + a115 + a116 + a117 + a118 +
+          a119 + a120 + a121 + a122 + a123 + a124 + a125 + a126;
+      double half = sum * 0.5;
+      try {
+        if (half < 0.0) {
+          throw new ArithmeticException();
+        }
+      } catch (ArithmeticException e) {
+        return -1L;
+      }
+      return (long) half;
+    }
+
+  }
+
+  /** An interface, which is left alone. */
+  public interface Task {
+    int run(int x);
+  }
+
+  /** Records the definitions passed through the pipeline. */
+  private static final class RecordingTransformer implements ClassTransformer {
+
+    final List<String> names = new ArrayList<String>();
+
+    final List<byte[]> definitions = new ArrayList<byte[]>();
+
+    public ByteBuffer transform(String name, ByteBuffer def) {
+      byte[] bytes = new byte[def.remaining()];
+      def.duplicate().get(bytes);
+      names.add(name);
+      definitions.add(bytes);
+      return null;
+    }
+
+  }
+
+  @Before
+  public void setUp() {
+    ProbeRuntime.setEnabled(true);
+    ProbeRuntime.reset();
+  }
+
+  @After
+  public void tearDown() {
+    ProbeRuntime.setEnabled(true);
+    ProbeRuntime.reset();
+  }
+
+  @Test
+  public void testCallCounts() throws Exception {
+    Class<?> work = loadWork(newLoader());
+
+    assertEquals(49, invoke(work, "square", null, 7));
+    assertEquals(55, invoke(work, "sumOfSquares", null, 5));
+    assertEquals(1, calls("sumOfSquares", "(I)I"));
+    assertEquals(6, calls("square", "(I)I"));
+
+    Object instance = work.getConstructor().newInstance();
+    assertEquals(11L, invoke(work, "accumulate", instance, 2L, 4.0, 1));
+    assertEquals(-1L, invoke(work, "accumulate", instance, 2L, 4.0, -1));
+    assertEquals(2L, work.getField("count").get(instance));
+    assertEquals(2, calls("accumulate", "(JDI)J"));
+
+    assertEquals(1.5, invoke(work, "parse", null, "1.5", 0.0));
+    assertEquals(-2.0, invoke(work, "parse", null, "x", -2.0));
+    assertEquals(2, calls("parse", "(Ljava/lang/String;D)D"));
+
+    assertEquals("3x2:0.5", invoke(work, "describe", instance,
+        new long[3], new Object[2][], 0.5f));
+    assertEquals(1, calls("describe", "([J[[Ljava/lang/Object;F)Ljava/lang/String;"));
+
+    /* Constructors are not instrumented. */
+    assertEquals(0, calls("<init>", "()V"));
+
+    for (ProbeRuntime.MethodProfile profile : ProbeRuntime.snapshot()) {
+      assertTrue(profile.getTotalNanos() >= 0);
+    }
+  }
+
+  @Test
+  public void testExceptionalExit() throws Exception {
+    Class<?> work = loadWork(newLoader());
+    for (int i = 0; i < 3; i++) {
+      try {
+        invoke(work, "fail", null, "boom" + i);
+        fail("Expected an exception.");
+      } catch (InvocationTargetException e) {
+        assertTrue(e.getCause() instanceof IllegalStateException);
+        assertEquals("boom" + i, e.getCause().getMessage());
+      }
+    }
+    assertEquals(3, calls("fail", "(Ljava/lang/String;)V"));
+  }
+
+  @Test
+  public void testWideLocals() throws Exception {
+    Class<?> work = loadWork(newLoader());
+    Object[] args = new Object[WIDE_PARAMS];
+    Class<?>[] types = new Class<?>[WIDE_PARAMS];
+    long sum = 0;
+    for (int i = 0; i < WIDE_PARAMS; i++) {
+      args[i] = (long) (2 * i);
+      types[i] = long.class;
+      sum += 2 * i;
+    }
+    Method wide = work.getMethod("wide", types);
+    assertEquals(sum / 2, wide.invoke(null, args));
+    args[0] = -sum - 2;
+    assertEquals(-1L, wide.invoke(null, args));
+
+    char[] descriptor = new char[WIDE_PARAMS + 3];
+    Arrays.fill(descriptor, 'J');
+    descriptor[0] = '(';
+    descriptor[WIDE_PARAMS + 1] = ')';
+    assertEquals(2, calls("wide", new String(descriptor)));
+  }
+
+  @Test
+  public void testRenamedMethods() throws Exception {
+    Class<?> work = loadWork(newLoader());
+    Method renamed = work.getDeclaredMethod("square$probe$original", int.class);
+    assertTrue(Modifier.isPrivate(renamed.getModifiers()));
+    assertTrue(Modifier.isStatic(renamed.getModifiers()));
+    assertTrue(renamed.isSynthetic());
+
+    Method wrapper = work.getMethod("describe", long[].class, Object[][].class, float.class);
+    assertTrue(Modifier.isPublic(wrapper.getModifiers()));
+    assertFalse(Modifier.isSynchronized(wrapper.getModifiers()));
+    assertTrue(Modifier.isSynchronized(work.getDeclaredMethod("describe$probe$original",
+        long[].class, Object[][].class, float.class).getModifiers()));
+  }
+
+  @Test
+  public void testReregistration() throws Exception {
+    Class<?> first = loadWork(newLoader());
+    Class<?> second = loadWork(newLoader());
+    assertNotSame(first, second);
+
+    invoke(first, "square", null, 2);
+    invoke(second, "square", null, 3);
+    invoke(second, "square", null, 4);
+
+    int profiles = 0;
+    for (ProbeRuntime.MethodProfile profile : ProbeRuntime.snapshot()) {
+      if (profile.getClassName().equals(Work.class.getName())
+          && profile.getMethodName().equals("square")) {
+        profiles++;
+      }
+    }
+    assertEquals(1, profiles);
+    assertEquals(3, calls("square", "(I)I"));
+
+    String name = Work.class.getName();
+    assertEquals(ProbeRuntime.register(name, "square", "(I)I"),
+        ProbeRuntime.register(name, "square", "(I)I"));
+  }
+
+  @Test
+  public void testDisabled() throws Exception {
+    Class<?> work = loadWork(newLoader());
+    ProbeRuntime.setEnabled(false);
+    assertFalse(ProbeRuntime.isEnabled());
+    assertEquals(9, invoke(work, "square", null, 3));
+    assertEquals(0, calls("square", "(I)I"));
+
+    ProbeRuntime.setEnabled(true);
+    assertEquals(9, invoke(work, "square", null, 3));
+    assertEquals(1, calls("square", "(I)I"));
+
+    ProbeRuntime.reset();
+    assertEquals(0, calls("square", "(I)I"));
+  }
+
+  @Test
+  public void testPipeline() throws Exception {
+    MapClassLoaderStrategy classes = new MapClassLoaderStrategy();
+    classes.setClassDefinition(Work.class.getName(), StrategyClassLoaderTest.readClass(Work.class));
+    classes.setClassDefinition(Task.class.getName(), StrategyClassLoaderTest.readClass(Task.class));
+    StrategyClassLoader loader = new StrategyClassLoader(classes);
+
+    RecordingTransformer before = new RecordingTransformer();
+    RecordingTransformer after = new RecordingTransformer();
+    RecordingTransformer removed = new RecordingTransformer();
+    loader.addTransformer(before);
+    new ProfilingTransformer(
+        name -> name.startsWith(ProfilingTransformerTest.class.getName() + "$"))
+        .install(loader);
+    loader.addTransformer(after);
+    loader.addTransformer(removed);
+    assertTrue(loader.removeTransformer(removed));
+    assertFalse(loader.removeTransformer(removed));
+
+    Class<?> work = loader.loadClass(Work.class.getName());
+    Class<?> task = loader.loadClass(Task.class.getName());
+    assertSame(loader, work.getClassLoader());
+    assertSame(loader, task.getClassLoader());
+
+    /* Later transformers see the output of earlier ones, and interfaces
+     * pass through unchanged.
+     */
+    assertEquals(Arrays.asList(Work.class.getName(), Task.class.getName()), before.names);
+    assertEquals(before.names, after.names);
+    assertTrue(removed.names.isEmpty());
+    assertFalse(contains(before.definitions.get(0), "$probe$original"));
+    assertTrue(contains(after.definitions.get(0), "$probe$original"));
+    assertTrue(Arrays.equals(before.definitions.get(1), after.definitions.get(1)));
+
+    assertNotNull(work.getDeclaredMethod("square$probe$original", int.class));
+    assertEquals(16, invoke(work, "square", null, 4));
+    assertEquals(1, calls("square", "(I)I"));
+  }
+
+  @Test
+  public void testPackageFilter() throws Exception {
+
+    /* Only whole package names match. */
+    Class<?> work = loadWork(newLoader(new ProfilingTransformer(
+        "ca.eandb.util.class", "ca.eandb.util.classloader.other")));
+    try {
+      work.getDeclaredMethod("square$probe$original", int.class);
+      fail("Class should not have been instrumented.");
+    } catch (NoSuchMethodException e) {
+      /* expected */
+    }
+    assertEquals(4, invoke(work, "square", null, 2));
+    assertEquals(0, calls("square", "(I)I"));
+
+    /* Subpackages are included. */
+    work = loadWork(newLoader(new ProfilingTransformer("ca.eandb.util")));
+    assertNotNull(work.getDeclaredMethod("square$probe$original", int.class));
+    assertEquals(4, invoke(work, "square", null, 2));
+    assertEquals(1, calls("square", "(I)I"));
+  }
+
+
+  /**
+   * Creates a class loader that defines an instrumented copy of
+   * {@link Work}.
+   * @return The new <code>StrategyClassLoader</code>.
+   * @throws Exception If the class file of {@link Work} cannot be read.
+   */
+  private static StrategyClassLoader newLoader() throws Exception {
+    return newLoader(new ProfilingTransformer(name -> name.equals(Work.class.getName())));
+  }
+
+  /**
+   * Creates a class loader that defines a copy of {@link Work}.
+   * @param transformer The <code>ProfilingTransformer</code> to install.
+   * @return The new <code>StrategyClassLoader</code>.
+   * @throws Exception If the class file of {@link Work} cannot be read.
+   */
+  private static StrategyClassLoader newLoader(ProfilingTransformer transformer)
+      throws Exception {
+    MapClassLoaderStrategy classes = new MapClassLoaderStrategy();
+    classes.setClassDefinition(Work.class.getName(), StrategyClassLoaderTest.readClass(Work.class));
+    StrategyClassLoader loader = new StrategyClassLoader(classes);
+    transformer.install(loader);
+    return loader;
+  }
+
+  /**
+   * Loads and initializes {@link Work} in a class loader.
+   * @param loader The <code>ClassLoader</code> to load from.
+   * @return The <code>Class</code> that was loaded.
+   * @throws Exception If the class cannot be loaded or fails verification.
+   */
+  private static Class<?> loadWork(ClassLoader loader) throws Exception {
+    Class<?> work = Class.forName(Work.class.getName(), true, loader);
+    assertSame(loader, work.getClassLoader());
+    assertNotSame(Work.class, work);
+    return work;
+  }
+
+  /**
+   * Invokes the unique public method of a class with the given name.
+   * @param cl The <code>Class</code> declaring the method.
+   * @param name The name of the method.
+   * @param target The instance to invoke the method on, or
+   *     <code>null</code> for a static method.
+   * @param args The arguments to pass.
+   * @return The value returned by the method.
+   * @throws Exception If the method cannot be invoked or throws an
+   *     exception.
+   */
+  private static Object invoke(Class<?> cl, String name, Object target,
+      Object... args) throws Exception {
+    for (Method method : cl.getMethods()) {
+      if (method.getName().equals(name)) {
+        return method.invoke(target, args);
+      }
+    }
+    throw new NoSuchMethodException(name);
+  }
+
+  /**
+   * Gets the number of recorded calls to a method of {@link Work}.
+   * @param method The name of the method.
+   * @param descriptor The descriptor of the method.
+   * @return The number of calls in the current snapshot.
+   */
+  private static long calls(String method, String descriptor) {
+    long calls = 0;
+    for (ProbeRuntime.MethodProfile profile : ProbeRuntime.snapshot()) {
+      if (profile.getClassName().equals(Work.class.getName())
+          && profile.getMethodName().equals(method)
+          && profile.getDescriptor().equals(descriptor)) {
+        calls += profile.getCallCount();
+      }
+    }
+    return calls;
+  }
+
+  /**
+   * Determines if a class file contains a string.
+   * @param def The class file.
+   * @param s The ASCII string to search for.
+   * @return A value indicating if <code>s</code> occurs in <code>def</code>.
+   */
+  private static boolean contains(byte[] def, String s) {
+    return new String(def, StandardCharsets.ISO_8859_1).contains(s);
+  }
+
+}
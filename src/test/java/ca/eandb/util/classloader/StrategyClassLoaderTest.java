@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.classloader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Tests for {@link StrategyClassLoader} and {@link MapClassLoaderStrategy}
+ * under concurrent use.
+ *
+ * @author Brad Kimmel
+ */
+public final class StrategyClassLoaderTest {
+
+  /** The number of threads loading classes at once. */
+  private static final int THREADS = 32;
+
+  /** The number of times to repeat the test with a fresh class loader. */
+  private static final int ROUNDS = 50;
+
+  /** The classes to load, each of which extends {@link Base}. */
+  private static final Class<?>[] FIXTURES = {
+    Fixture0.class, Fixture1.class, Fixture2.class, Fixture3.class,
+    Fixture4.class, Fixture5.class, Fixture6.class, Fixture7.class
+  };
+
+  /** The common superclass of the fixtures, loaded along with each one. */
+  public static class Base implements Supplier<String> {
+    public String get() {
+      return getClass().getName();
+    }
+  }
+
+  /* Distinct classes to load concurrently. */
+  public static final class Fixture0 extends Base {}
+  public static final class Fixture1 extends Base {}
+  public static final class Fixture2 extends Base {}
+  public static final class Fixture3 extends Base {}
+  public static final class Fixture4 extends Base {}
+  public static final class Fixture5 extends Base {}
+  public static final class Fixture6 extends Base {}
+  public static final class Fixture7 extends Base {}
+
+  /**
+   * Counts the definitions served by a <code>ClassLoaderStrategy</code>, by
+   * class name.
+   */
+  private static final class CountingStrategy implements ClassLoaderStrategy {
+
+    private final ClassLoaderStrategy inner;
+
+    private final ConcurrentHashMap<String, AtomicInteger> counts =
+        new ConcurrentHashMap<String, AtomicInteger>();
+
+    CountingStrategy(ClassLoaderStrategy inner) {
+      this.inner = inner;
+    }
+
+    public ByteBuffer getClassDefinition(String name) {
+      counts.computeIfAbsent(name, k -> new AtomicInteger()).incrementAndGet();
+      return inner.getClassDefinition(name);
+    }
+
+    int count(String name) {
+      AtomicInteger count = counts.get(name);
+      return count != null ? count.get() : 0;
+    }
+
+  }
+
+  /**
+   * Serves class definitions from another <code>ClassLoaderStrategy</code>,
+   * blocking lookups of one class until released.
+   */
+  private static final class BlockingStrategy implements ClassLoaderStrategy {
+
+    private final ClassLoaderStrategy inner;
+
+    private final String blockedName;
+
+    /** Counted down once a lookup of <code>blockedName</code> has begun. */
+    final CountDownLatch entered = new CountDownLatch(1);
+
+    /** Counted down to allow the lookup of <code>blockedName</code>. */
+    final CountDownLatch release = new CountDownLatch(1);
+
+    BlockingStrategy(ClassLoaderStrategy inner, String blockedName) {
+      this.inner = inner;
+      this.blockedName = blockedName;
+    }
+
+    public ByteBuffer getClassDefinition(String name) {
+      if (name.equals(blockedName)) {
+        entered.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return null;
+        }
+      }
+      return inner.getClassDefinition(name);
+    }
+
+  }
+
+  @Test
+  public void testRegisteredAsParallelCapable() throws Exception {
+    Method method;
+    try {
+      method = ClassLoader.class.getMethod("isRegisteredAsParallelCapable");
+    } catch (NoSuchMethodException e) {
+      Assume.assumeNoException("Requires Java 9 or later.", e);
+      return;
+    }
+    StrategyClassLoader loader = new StrategyClassLoader(new MapClassLoaderStrategy());
+    assertTrue((Boolean) method.invoke(loader));
+  }
+
+  @Test
+  public void testDisjointClassLoadsWhileAnotherIsBlocked() throws Exception {
+    MapClassLoaderStrategy classes = new MapClassLoaderStrategy();
+    classes.setClassDefinition(Base.class.getName(), readClass(Base.class));
+    classes.setClassDefinition(Fixture0.class.getName(), readClass(Fixture0.class));
+    classes.setClassDefinition(Fixture1.class.getName(), readClass(Fixture1.class));
+
+    BlockingStrategy strategy = new BlockingStrategy(classes, Fixture0.class.getName());
+    StrategyClassLoader loader = new StrategyClassLoader(strategy);
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<Class<?>> blocked = executor.submit(new Callable<Class<?>>() {
+        public Class<?> call() throws Exception {
+          return loader.loadClass(Fixture0.class.getName());
+        }
+      });
+      assertTrue(strategy.entered.await(30, TimeUnit.SECONDS));
+
+      /* A loader that locks on itself would not get past the blocked
+       * definition of Fixture0.
+       */
+      Future<Class<?>> disjoint = executor.submit(new Callable<Class<?>>() {
+        public Class<?> call() throws Exception {
+          return loader.loadClass(Fixture1.class.getName());
+        }
+      });
+      Class<?> fixture1 = disjoint.get(30, TimeUnit.SECONDS);
+      assertSame(loader, fixture1.getClassLoader());
+      assertSame(loader, fixture1.getSuperclass().getClassLoader());
+      assertFalse(blocked.isDone());
+
+      strategy.release.countDown();
+      Class<?> fixture0 = blocked.get(30, TimeUnit.SECONDS);
+      assertSame(loader, fixture0.getClassLoader());
+      assertSame(fixture1.getSuperclass(), fixture0.getSuperclass());
+    } finally {
+      strategy.release.countDown();
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testConcurrentLoading() throws Exception {
+    MapClassLoaderStrategy classes = new MapClassLoaderStrategy();
+    classes.setClassDefinition(Base.class.getName(), readClass(Base.class));
+    List<String> names = new ArrayList<String>();
+    for (Class<?> fixture : FIXTURES) {
+      classes.setClassDefinition(fixture.getName(), readClass(fixture));
+      names.add(fixture.getName());
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      for (int round = 0; round < ROUNDS; round++) {
+        CountingStrategy strategy = new CountingStrategy(classes);
+        StrategyClassLoader loader = new StrategyClassLoader(strategy);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<Class<?>>>> results = new ArrayList<Future<List<Class<?>>>>();
+        for (int t = 0; t < THREADS; t++) {
+          List<String> order = new ArrayList<String>(names);
+          Collections.shuffle(order, new Random(round * THREADS + t));
+          results.add(executor.submit(new Callable<List<Class<?>>>() {
+            public List<Class<?>> call() throws Exception {
+              start.await();
+              List<Class<?>> loaded = new ArrayList<Class<?>>();
+              for (String name : order) {
+                loaded.add(Class.forName(name, true, loader));
+              }
+              return loaded;
+            }
+          }));
+        }
+        start.countDown();
+
+        for (Future<List<Class<?>>> result : results) {
+          for (Class<?> cl : result.get(30, TimeUnit.SECONDS)) {
+            assertSame(loader, cl.getClassLoader());
+            assertSame(cl, loader.loadClass(cl.getName()));
+            assertNotSame(cl, Class.forName(cl.getName()));
+            @SuppressWarnings("unchecked")
+            Supplier<String> instance = (Supplier<String>) cl.getConstructor().newInstance();
+            assertEquals(cl.getName(), instance.get());
+          }
+        }
+
+        /* Each class is looked up exactly once per loader. */
+        assertEquals(1, strategy.count(Base.class.getName()));
+        for (String name : names) {
+          assertEquals(name, 1, strategy.count(name));
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Reads the class file of a class.
+   * @param cl The <code>Class</code> whose class file to read.
+   * @return The contents of the class file.
+   * @throws IOException If an error occurs while reading the class file.
+   */
+  static byte[] readClass(Class<?> cl) throws IOException {
+    String resource = cl.getName().replace('.', '/') + ".class";
+    try (InputStream in = cl.getClassLoader().getResourceAsStream(resource)) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      int n;
+      while ((n = in.read(buffer)) >= 0) {
+        out.write(buffer, 0, n);
+      }
+      return out.toByteArray();
+    }
+  }
+
+}
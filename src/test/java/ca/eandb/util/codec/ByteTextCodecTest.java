@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.codec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link HexCodec}, {@link Base32Codec} and {@link Base64Codec}.
+ *
+ * @author Brad Kimmel
+ */
+public final class ByteTextCodecTest {
+
+  /** The inputs of the test vectors of RFC 4648, section 10. */
+  private static final String[] RFC4648_INPUTS = {
+      "", "f", "fo", "foo", "foob", "fooba", "foobar" };
+
+  private static void checkVectors(ByteTextCodec codec, String... expected) {
+    for (int i = 0; i < RFC4648_INPUTS.length; i++) {
+      byte[] data = RFC4648_INPUTS[i].getBytes(StandardCharsets.US_ASCII);
+      assertEquals(expected[i], codec.encodeToString(data));
+      assertEquals(expected[i].length(), codec.encodedLength(data.length));
+      assertArrayEquals(data, codec.decode(expected[i]));
+    }
+  }
+
+  @Test
+  public void testHexVectors() {
+    checkVectors(HexCodec.UPPER,
+        "", "66", "666F", "666F6F", "666F6F62", "666F6F6261", "666F6F626172");
+    checkVectors(HexCodec.LOWER,
+        "", "66", "666f", "666f6f", "666f6f62", "666f6f6261", "666f6f626172");
+    assertArrayEquals(new byte[] { (byte) 0xab, (byte) 0xcd },
+        HexCodec.LOWER.decode("AbcD"));
+  }
+
+  @Test
+  public void testBase32Vectors() {
+    checkVectors(Base32Codec.STANDARD, "", "MY======", "MZXQ====",
+        "MZXW6===", "MZXW6YQ=", "MZXW6YTB", "MZXW6YTBOI======");
+    checkVectors(Base32Codec.HEX, "", "CO======", "CPNG====", "CPNMU===",
+        "CPNMUOG=", "CPNMUOJ1", "CPNMUOJ1E8======");
+    checkVectors(Base32Codec.STANDARD.withoutPadding(), "", "MY", "MZXQ",
+        "MZXW6", "MZXW6YQ", "MZXW6YTB", "MZXW6YTBOI");
+  }
+
+  @Test
+  public void testBase64Vectors() {
+    checkVectors(Base64Codec.STANDARD,
+        "", "Zg==", "Zm8=", "Zm9v", "Zm9vYg==", "Zm9vYmE=", "Zm9vYmFy");
+    checkVectors(Base64Codec.STANDARD.withoutPadding(),
+        "", "Zg", "Zm8", "Zm9v", "Zm9vYg", "Zm9vYmE", "Zm9vYmFy");
+  }
+
+  @Test
+  public void testBase64MatchesJdk() {
+    Random random = new Random(1);
+    for (int length = 0; length < 300; length++) {
+      byte[] data = new byte[length];
+      random.nextBytes(data);
+      assertEquals(Base64.getEncoder().encodeToString(data),
+          Base64Codec.STANDARD.encodeToString(data));
+      assertEquals(Base64.getUrlEncoder().encodeToString(data),
+          Base64Codec.URL_SAFE.encodeToString(data));
+      assertEquals(Base64.getEncoder().withoutPadding().encodeToString(data),
+          Base64Codec.STANDARD.withoutPadding().encodeToString(data));
+    }
+  }
+
+  @Test
+  public void testRoundTrip() {
+    ByteTextCodec[] codecs = {
+        HexCodec.LOWER, HexCodec.UPPER,
+        Base32Codec.STANDARD, Base32Codec.HEX, Base32Codec.HEX.withoutPadding(),
+        Base64Codec.STANDARD, Base64Codec.URL_SAFE, Base64Codec.URL_SAFE.withoutPadding() };
+    Random random = new Random(2);
+    for (ByteTextCodec codec : codecs) {
+      for (int length = 0; length < 100; length++) {
+        byte[] data = new byte[length];
+        random.nextBytes(data);
+
+        /* char[] and ASCII byte[] forms agree. */
+        char[] chars = new char[codec.encodedLength(length) + 3];
+        byte[] ascii = new byte[codec.encodedLength(length) + 3];
+        int n = codec.encode(data, 0, length, chars, 3);
+        assertEquals(n, codec.encode(data, 0, length, ascii, 3));
+        String text = new String(chars, 3, n);
+        assertEquals(text, new String(ascii, 3, n, StandardCharsets.US_ASCII));
+        assertEquals(text, codec.encodeToString(data));
+
+        byte[] decoded = new byte[length + 2];
+        assertEquals(length, codec.decode(text, 0, n, decoded, 2));
+        assertEquals(length, codec.decode(ascii, 3, n, decoded, 0));
+        byte[] expected = new byte[length];
+        System.arraycopy(data, 0, expected, 0, length);
+        byte[] actual = new byte[length];
+        System.arraycopy(decoded, 0, actual, 0, length);
+        assertArrayEquals(expected, actual);
+
+        /* Heap and direct buffers. */
+        for (boolean direct : new boolean[] { false, true }) {
+          ByteBuffer src = direct ? ByteBuffer.allocateDirect(length) : ByteBuffer.allocate(length);
+          src.put(data).flip();
+          ByteBuffer enc = direct ? ByteBuffer.allocateDirect(n) : ByteBuffer.allocate(n);
+          codec.encode(src, enc);
+          enc.flip();
+          ByteBuffer dec = direct ? ByteBuffer.allocateDirect(length) : ByteBuffer.allocate(length);
+          codec.decode(enc, dec);
+          dec.flip();
+          byte[] result = new byte[length];
+          dec.get(result);
+          assertArrayEquals(data, result);
+        }
+      }
+    }
+  }
+
+  private static void checkInvalid(ByteTextCodec codec, String text) {
+    try {
+      codec.decode(text);
+      fail("Expected IllegalArgumentException decoding \"" + text + "\"");
+    } catch (IllegalArgumentException e) {
+      /* expected */
+    }
+    byte[] ascii = text.getBytes(StandardCharsets.ISO_8859_1);
+    try {
+      codec.decode(ascii, 0, ascii.length, new byte[ascii.length], 0);
+      fail("Expected IllegalArgumentException decoding \"" + text + "\"");
+    } catch (IllegalArgumentException e) {
+      /* expected */
+    }
+  }
+
+  @Test
+  public void testInvalidInput() {
+    checkInvalid(HexCodec.LOWER, "abc");
+    checkInvalid(HexCodec.LOWER, "0g");
+    checkInvalid(HexCodec.LOWER, "0 ");
+    checkInvalid(HexCodec.LOWER, "é0");
+    checkInvalid(Base32Codec.STANDARD, "MY=====");
+    checkInvalid(Base32Codec.STANDARD, "M1======");
+    checkInvalid(Base64Codec.STANDARD, "Zg=");
+    checkInvalid(Base64Codec.STANDARD, "Z*==");
+    checkInvalid(Base64Codec.STANDARD, "Zm9v-A==");
+  }
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link MpmcArrayBlockingQueue}.
+ *
+ * @author Brad Kimmel
+ */
+public final class MpmcArrayBlockingQueueTest {
+
+  /** The number of producer threads and of consumer threads. */
+  private static final int THREADS = 4;
+
+  /**
+   * Checks that every element put by several producers is taken exactly
+   * once by several consumers, and that each consumer sees the elements of
+   * any one producer in the order they were put.
+   */
+  @Test
+  public void testNoElementLostOrDuplicated() throws Exception {
+    final int perProducer = 50000;
+    final MpmcArrayBlockingQueue<Integer> queue = new MpmcArrayBlockingQueue<Integer>(8);
+    final AtomicIntegerArray seen = new AtomicIntegerArray(THREADS * perProducer);
+    ExecutorService executor = Executors.newFixedThreadPool(2 * THREADS);
+    try {
+      List<Future<?>> futures = new ArrayList<Future<?>>();
+      for (int p = 0; p < THREADS; p++) {
+        final int base = p * perProducer;
+        futures.add(executor.submit(new Callable<Void>() {
+          public Void call() throws InterruptedException {
+            for (int i = 0; i < perProducer; i++) {
+              queue.put(base + i);
+            }
+            return null;
+          }
+        }));
+      }
+      for (int c = 0; c < THREADS; c++) {
+        futures.add(executor.submit(new Callable<Void>() {
+          public Void call() throws InterruptedException {
+            int[] last = new int[THREADS];
+            Arrays.fill(last, -1);
+            for (int i = 0; i < perProducer; i++) {
+              int e = queue.take();
+              int producer = e / perProducer;
+              assertTrue(e > last[producer]);
+              last[producer] = e;
+              seen.incrementAndGet(e);
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get(60, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertTrue(queue.isEmpty());
+    for (int i = 0; i < seen.length(); i++) {
+      assertEquals(1, seen.get(i));
+    }
+  }
+
+  /**
+   * Checks that when several threads race to fill the queue, exactly
+   * <code>capacity()</code> offers succeed, and when several threads race
+   * to empty it, exactly those elements are polled.
+   */
+  @Test
+  public void testCapacityBound() throws Exception {
+    final MpmcArrayBlockingQueue<Integer> queue = new MpmcArrayBlockingQueue<Integer>(64);
+    final int attempts = 100;
+    final CyclicBarrier barrier = new CyclicBarrier(THREADS);
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      for (int round = 0; round < 100; round++) {
+        final int base = round * THREADS * attempts;
+        List<Future<Integer>> offers = new ArrayList<Future<Integer>>();
+        for (int t = 0; t < THREADS; t++) {
+          final int offset = base + t * attempts;
+          offers.add(executor.submit(new Callable<Integer>() {
+            public Integer call() throws Exception {
+              barrier.await();
+              int accepted = 0;
+              for (int i = 0; i < attempts; i++) {
+                if (queue.offer(offset + i)) {
+                  accepted++;
+                }
+              }
+              return accepted;
+            }
+          }));
+        }
+        int accepted = 0;
+        for (Future<Integer> future : offers) {
+          accepted += future.get(60, TimeUnit.SECONDS);
+        }
+        assertEquals(queue.capacity(), accepted);
+        assertEquals(queue.capacity(), queue.size());
+
+        final AtomicIntegerArray seen = new AtomicIntegerArray(THREADS * attempts);
+        List<Future<Integer>> polls = new ArrayList<Future<Integer>>();
+        for (int t = 0; t < THREADS; t++) {
+          polls.add(executor.submit(new Callable<Integer>() {
+            public Integer call() throws Exception {
+              barrier.await();
+              int polled = 0;
+              Integer e;
+              while ((e = queue.poll()) != null) {
+                seen.incrementAndGet(e - base);
+                polled++;
+              }
+              return polled;
+            }
+          }));
+        }
+        int polled = 0;
+        for (Future<Integer> future : polls) {
+          polled += future.get(60, TimeUnit.SECONDS);
+        }
+        assertEquals(accepted, polled);
+        assertTrue(queue.isEmpty());
+        for (int i = 0; i < seen.length(); i++) {
+          assertTrue(seen.get(i) <= 1);
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+}
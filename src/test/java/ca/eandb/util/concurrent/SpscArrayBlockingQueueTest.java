@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link SpscArrayBlockingQueue}.
+ *
+ * @author Brad Kimmel
+ */
+public final class SpscArrayBlockingQueueTest {
+
+  @Test
+  public void testCapacity() {
+    SpscArrayBlockingQueue<Integer> queue = new SpscArrayBlockingQueue<Integer>(5);
+    assertEquals(8, queue.capacity());
+    for (int i = 0; i < 8; i++) {
+      assertTrue(queue.offer(i));
+    }
+    assertFalse(queue.offer(8));
+    assertEquals(8, queue.size());
+    assertEquals(0, queue.remainingCapacity());
+    assertEquals(Integer.valueOf(0), queue.poll());
+    assertTrue(queue.offer(8));
+
+    List<Integer> drained = new ArrayList<Integer>();
+    assertEquals(8, queue.drainTo(drained));
+    for (int i = 0; i < 8; i++) {
+      assertEquals(Integer.valueOf(i + 1), drained.get(i));
+    }
+    assertNull(queue.poll());
+    assertTrue(queue.isEmpty());
+  }
+
+  @Test
+  public void testProducerConsumer() throws Exception {
+    final int count = 50000;
+    final SpscArrayBlockingQueue<Integer> queue = new SpscArrayBlockingQueue<Integer>(16);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<?> producer = executor.submit(new Callable<Void>() {
+        public Void call() throws InterruptedException {
+          for (int i = 0; i < count; i++) {
+            queue.put(i);
+          }
+          return null;
+        }
+      });
+      Future<Integer> consumer = executor.submit(new Callable<Integer>() {
+        public Integer call() throws InterruptedException {
+          List<Integer> batch = new ArrayList<Integer>();
+          int expected = 0;
+          while (expected < count) {
+            if (expected % 3 == 0) {
+              batch.clear();
+              queue.drainTo(batch, 5);
+              for (Integer e : batch) {
+                assertEquals(expected++, e.intValue());
+              }
+            } else {
+              assertEquals(expected++, queue.take().intValue());
+            }
+          }
+          return expected;
+        }
+      });
+      producer.get(60, TimeUnit.SECONDS);
+      assertEquals(count, consumer.get(60, TimeUnit.SECONDS).intValue());
+      assertTrue(queue.isEmpty());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+}
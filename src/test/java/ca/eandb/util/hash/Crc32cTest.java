@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.hash;
+
+import static ca.eandb.util.hash.HasherChecks.ascii;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link Crc32c}.  Both the JDK and the table-driven
+ * implementations are checked, whichever is used by default.
+ *
+ * @author Brad Kimmel
+ */
+public final class Crc32cTest {
+
+  private static long crc(boolean allowNative, byte[] data) {
+    Crc32c crc = new Crc32c(allowNative);
+    crc.update(data);
+    return crc.getValue();
+  }
+
+  /** The test vectors of RFC 3720, appendix B.4, and the check value. */
+  @Test
+  public void testKnownAnswers() {
+    byte[] zeros = new byte[32];
+    byte[] ones = new byte[32];
+    byte[] increasing = new byte[32];
+    byte[] decreasing = new byte[32];
+    for (int i = 0; i < 32; i++) {
+      ones[i] = (byte) 0xff;
+      increasing[i] = (byte) i;
+      decreasing[i] = (byte) (31 - i);
+    }
+    for (boolean allowNative : new boolean[] { false, true }) {
+      assertEquals(0x00000000L, crc(allowNative, new byte[0]));
+      assertEquals(0x8a9136aaL, crc(allowNative, zeros));
+      assertEquals(0x62a8ab43L, crc(allowNative, ones));
+      assertEquals(0x46dd794eL, crc(allowNative, increasing));
+      assertEquals(0x113fdb5cL, crc(allowNative, decreasing));
+      assertEquals(0xe3069283L, crc(allowNative, ascii("123456789")));
+    }
+    assertEquals(0xe3069283L, Crc32c.hash(ascii("123456789")));
+  }
+
+  @Test
+  public void testStreaming() throws IOException {
+    HasherChecks.checkStreaming(Crc32c::new);
+    HasherChecks.checkStreaming(() -> new Crc32c(false));
+  }
+
+}
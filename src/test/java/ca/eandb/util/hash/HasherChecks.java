@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.hash;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.function.LongFunction;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+import ca.eandb.util.ByteArray;
+
+/**
+ * Checks shared by the tests of the {@link Hasher} implementations.
+ *
+ * @author Brad Kimmel
+ */
+final class HasherChecks {
+
+  /**
+   * Gets the ASCII bytes of a string.
+   * @param s The string.
+   * @return The bytes of <code>s</code>.
+   */
+  static byte[] ascii(String s) {
+    return s.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * Computes the SMHasher verification code of a hash function: the keys
+   * <code>{}, {0}, {0, 1}, ..., {0, ..., 254}</code> are hashed with seeds
+   * <code>256, 255, ..., 1</code>, and the concatenated little-endian
+   * hashes are hashed with a seed of zero.
+   * @param hashBytes The number of bytes of each hash to use.
+   * @param factory Creates a hasher given a seed.
+   * @param high Gets the high 64 bits of a 128-bit hash, or
+   *     <code>null</code> for a 64-bit hash.
+   * @return The low 32 bits of the final hash.
+   */
+  static int verificationCode(int hashBytes,
+      LongFunction<? extends Hasher> factory, ToLongFunction<Hasher> high) {
+    byte[] key = new byte[256];
+    byte[] hashes = new byte[256 * hashBytes];
+    for (int i = 0; i < 256; i++) {
+      key[i] = (byte) i;
+      Hasher hasher = factory.apply(256 - i);
+      hasher.update(key, 0, i);
+      long lo = hasher.getValue();
+      long hi = high != null ? high.applyAsLong(hasher) : 0;
+      for (int j = 0; j < hashBytes; j++) {
+        hashes[i * hashBytes + j] = (byte) ((j < 8 ? lo : hi) >>> (8 * (j & 7)));
+      }
+    }
+    Hasher hasher = factory.apply(0);
+    hasher.update(hashes);
+    return (int) hasher.getValue();
+  }
+
+  /**
+   * Checks that hashing data incrementally, in any way the
+   * <code>Hasher</code> API allows, gives the same result as hashing it all
+   * at once, for lengths that straddle the block sizes of all the
+   * implementations.
+   * @param factory Creates fresh hashers.
+   * @throws IOException Never.
+   */
+  static void checkStreaming(Supplier<? extends Hasher> factory) throws IOException {
+    Random random = new Random(1);
+    byte[] data = new byte[1100];
+    random.nextBytes(data);
+    Hasher reused = factory.get();
+    for (int length = 0; length <= data.length; length += length < 130 ? 1 : 97) {
+      Hasher oneShot = factory.get();
+      oneShot.update(data, 0, length);
+      long expected = oneShot.getValue();
+
+      Hasher bytewise = factory.get();
+      for (int i = 0; i < length; i++) {
+        bytewise.update(data[i]);
+      }
+      assertEquals(expected, bytewise.getValue());
+
+      /* Random chunk boundaries, including empty chunks. */
+      for (int trial = 0; trial < 3; trial++) {
+        Hasher chunked = factory.get();
+        int off = 0;
+        while (off < length) {
+          int n = Math.min(length - off, random.nextInt(40));
+          chunked.update(data, off, n);
+          off += n;
+        }
+        assertEquals(expected, chunked.getValue());
+      }
+
+      /* A byte at a time interleaved with arrays. */
+      Hasher mixed = factory.get();
+      for (int off = 0; off < length;) {
+        if (off % 3 == 0) {
+          mixed.update(data[off++]);
+        } else {
+          int n = Math.min(length - off, 9);
+          mixed.update(data, off, n);
+          off += n;
+        }
+      }
+      assertEquals(expected, mixed.getValue());
+
+      for (boolean direct : new boolean[] { false, true }) {
+        ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(length + 4)
+            : ByteBuffer.allocate(length + 4);
+        buffer.position(4);
+        buffer.put(data, 0, length);
+        buffer.position(4);
+        Hasher buffered = factory.get();
+        buffered.update(buffer);
+        assertEquals(length + 4, buffer.position());
+        assertEquals(expected, buffered.getValue());
+      }
+
+      Hasher streamed = factory.get();
+      assertEquals(length, streamed.update(new ByteArrayInputStream(data, 0, length)));
+      assertEquals(expected, streamed.getValue());
+
+      ByteArray array = new ByteArray(length + 8);
+      array.add(data, 0, length);
+      Hasher fromArray = factory.get();
+      fromArray.update(array);
+      assertEquals(expected, fromArray.getValue());
+
+      reused.reset();
+      reused.update(data, 0, length);
+      assertEquals(expected, reused.getValue());
+    }
+  }
+
+  /** Declared private to prevent this class from being instantiated. */
+  private HasherChecks() {}
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.hash;
+
+import static ca.eandb.util.hash.HasherChecks.ascii;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link Murmur3}.
+ *
+ * @author Brad Kimmel
+ */
+public final class Murmur3Test {
+
+  private static void checkHash(String s, long low, long high) {
+    Murmur3 hasher = new Murmur3();
+    hasher.update(ascii(s));
+    assertEquals(low, hasher.getValue());
+    assertEquals(high, hasher.getHighValue());
+    assertEquals(low, Murmur3.hash(ascii(s)));
+  }
+
+  /**
+   * Reference values for MurmurHash3_x64_128 with a seed of zero.  The
+   * published digests are byte strings, each half of which is the
+   * little-endian encoding of one of the values here.
+   */
+  @Test
+  public void testKnownAnswers() {
+    checkHash("", 0L, 0L);
+    checkHash("hello", 0xcbd8a7b341bd9b02L, 0x5b1e906a48ae1d19L);
+    checkHash("The quick brown fox jumps over the lazy dog",
+        0xe34bbc7bbc071b6cL, 0x7a433ca9c49a9347L);
+  }
+
+  /**
+   * The SMHasher verification code for MurmurHash3_x64_128, which
+   * exercises every tail length and a range of seeds.
+   */
+  @Test
+  public void testVerificationCode() {
+    assertEquals(0x6384ba69, HasherChecks.verificationCode(16,
+        seed -> new Murmur3((int) seed),
+        hasher -> ((Murmur3) hasher).getHighValue()));
+  }
+
+  @Test
+  public void testStreaming() throws IOException {
+    HasherChecks.checkStreaming(Murmur3::new);
+    HasherChecks.checkStreaming(() -> new Murmur3(0x9747b28c));
+  }
+
+  @Test
+  public void testHighValueStreaming() {
+    byte[] data = ascii("The quick brown fox jumps over the lazy dog");
+    Murmur3 hasher = new Murmur3();
+    for (byte b : data) {
+      hasher.update(b);
+    }
+    assertEquals(0x7a433ca9c49a9347L, hasher.getHighValue());
+  }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.hash;
+
+import static ca.eandb.util.hash.HasherChecks.ascii;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link XxHash64}.
+ *
+ * @author Brad Kimmel
+ */
+public final class XxHash64Test {
+
+  /**
+   * Reference values from the xxHash distribution, covering inputs shorter
+   * and longer than one 32-byte stripe.
+   */
+  @Test
+  public void testKnownAnswers() {
+    assertEquals(0xef46db3751d8e999L, XxHash64.hash(ascii("")));
+    assertEquals(0xd24ec4f1a98c6e5bL, XxHash64.hash(ascii("a")));
+    assertEquals(0x44bc2cf5ad770999L, XxHash64.hash(ascii("abc")));
+    assertEquals(0xfbcea83c8a378bf1L,
+        XxHash64.hash(ascii("Nobody inspects the spammish repetition")));
+    assertEquals(0x0b242d361fda71bcL,
+        XxHash64.hash(ascii("The quick brown fox jumps over the lazy dog")));
+  }
+
+  /** The SMHasher verification code for XXH64, which exercises seeds. */
+  @Test
+  public void testVerificationCode() {
+    assertEquals(0x024b7cf4,
+        HasherChecks.verificationCode(8, XxHash64::new, null));
+  }
+
+  @Test
+  public void testSeed() {
+    byte[] data = ascii("The quick brown fox jumps over the lazy dog");
+    XxHash64 hasher = new XxHash64(42);
+    hasher.update(data);
+    assertEquals(XxHash64.hash(data, 0, data.length, 42), hasher.getValue());
+    hasher = new XxHash64(0);
+    hasher.update(data);
+    assertEquals(XxHash64.hash(data), hasher.getValue());
+  }
+
+  @Test
+  public void testStreaming() throws IOException {
+    HasherChecks.checkStreaming(XxHash64::new);
+    HasherChecks.checkStreaming(() -> new XxHash64(0x123456789abcdefL));
+  }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ca.eandb.util.hash.Crc32c;
+import ca.eandb.util.hash.Hasher;
+import ca.eandb.util.hash.Murmur3;
+import ca.eandb.util.hash.XxHash64;
+
+/**
+ * Tests for {@link HashingOutputStream}.
+ *
+ * @author Brad Kimmel
+ */
+public final class HashingOutputStreamTest {
+
+  @Test
+  public void testMatchesOneShotHash() throws IOException {
+    Random random = new Random(1);
+    byte[] data = new byte[10000];
+    random.nextBytes(data);
+    for (int trial = 0; trial < 10; trial++) {
+      int length = trial == 0 ? 0 : random.nextInt(data.length);
+      Hasher[] hashers = { new XxHash64(), new Murmur3(), new Crc32c() };
+      long[] expected = {
+          XxHash64.hash(data, 0, length),
+          Murmur3.hash(data, 0, length),
+          Crc32c.hash(data, 0, length) };
+      for (int i = 0; i < hashers.length; i++) {
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        HashingOutputStream out = new HashingOutputStream(copy, hashers[i]);
+        int off = 0;
+        while (off < length) {
+          if (random.nextInt(4) == 0) {
+            out.write(data[off++]);
+          } else {
+            int n = Math.min(length - off, random.nextInt(100));
+            out.write(data, off, n);
+            off += n;
+          }
+        }
+        out.close();
+        assertEquals(expected[i], out.getValue());
+        assertSame(hashers[i], out.getHasher());
+
+        byte[] written = copy.toByteArray();
+        assertEquals(length, written.length);
+        byte[] prefix = new byte[length];
+        System.arraycopy(data, 0, prefix, 0, length);
+        assertArrayEquals(prefix, written);
+      }
+    }
+  }
+
+  @Test
+  public void testWithoutOutput() throws IOException {
+    byte[] data = "The quick brown fox jumps over the lazy dog".getBytes("US-ASCII");
+    HashingOutputStream out = new HashingOutputStream(new XxHash64());
+    out.write(data, 0, 10);
+    out.write(data, 10, data.length - 10);
+    out.flush();
+    out.close();
+    assertEquals(0x0b242d361fda71bcL, out.getValue());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRejectsNullHasher() {
+    new HashingOutputStream(null);
+  }
+
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ca.eandb.util.codec.HexCodec;
+
+/**
+ * Tests for {@link HexInputStream} and {@link HexOutputStream}.
+ *
+ * @author Brad Kimmel
+ */
+public final class HexStreamTest {
+
+  private static InputStream hex(String text) {
+    return new HexInputStream(
+        new ByteArrayInputStream(text.getBytes(StandardCharsets.US_ASCII)));
+  }
+
+  private static byte[] readFully(InputStream in, int chunk) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[chunk];
+    int n;
+    while ((n = in.read(buffer)) > 0) {
+      out.write(buffer, 0, n);
+    }
+    return out.toByteArray();
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    Random random = new Random(1);
+    for (int length : new int[] { 0, 1, 2, 4095, 4096, 4097, 20000 }) {
+      byte[] data = new byte[length];
+      random.nextBytes(data);
+
+      ByteArrayOutputStream text = new ByteArrayOutputStream();
+      HexOutputStream out = new HexOutputStream(text, HexCodec.UPPER);
+      out.write(data, 0, length / 3);
+      for (int i = length / 3; i < length / 2; i++) {
+        out.write(data[i]);
+      }
+      out.write(data, length / 2, length - length / 2);
+      out.close();
+      assertEquals(HexCodec.UPPER.encodeToString(data),
+          new String(text.toByteArray(), StandardCharsets.US_ASCII));
+
+      for (int chunk : new int[] { 1, 7, 8192, 50000 }) {
+        InputStream in = new HexInputStream(new ByteArrayInputStream(text.toByteArray()));
+        assertArrayEquals(data, readFully(in, chunk));
+      }
+    }
+  }
+
+  @Test
+  public void testWhitespace() throws IOException {
+    byte[] expected = { 0x01, 0x23, 0x45, 0x67, (byte) 0x89, (byte) 0xab };
+    String text = " 0 1\t23\r\n4567 \n\n89aB \n";
+    assertArrayEquals(expected, readFully(hex(text), 1));
+    assertArrayEquals(expected, readFully(hex(text), 100));
+
+    InputStream in = hex(text);
+    for (byte b : expected) {
+      assertEquals(b & 0xff, in.read());
+    }
+    assertEquals(-1, in.read());
+  }
+
+  /** Whitespace spanning buffer refills is skipped. */
+  @Test
+  public void testWhitespaceAcrossBuffers() throws IOException {
+    StringBuilder text = new StringBuilder();
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    Random random = new Random(2);
+    for (int i = 0; i < 10000; i++) {
+      int b = random.nextInt(256);
+      expected.write(b);
+      HexCodec.LOWER.encode((byte) b, text);
+      for (int j = random.nextInt(4); j > 0; j--) {
+        text.append(random.nextBoolean() ? ' ' : '\n');
+      }
+    }
+    assertArrayEquals(expected.toByteArray(), readFully(hex(text.toString()), 333));
+  }
+
+  @Test
+  public void testAvailableCountsOnlyDigits() throws IOException {
+    InputStream in = hex("00 11 22 33  \n 44 55");
+    assertEquals(0, in.available());
+    assertEquals(0x00, in.read());
+    assertEquals(5, in.available());
+    assertEquals(0x11, in.read());
+    assertEquals(4, in.available());
+
+    /* A byte split by whitespace counts once both digits are buffered. */
+    in = hex("0 1 2");
+    assertEquals(0x01, in.read());
+    assertEquals(0, in.available());
+
+    /* Counting stops at an invalid character. */
+    in = hex("0011zz2233");
+    assertEquals(0x00, in.read());
+    assertEquals(1, in.available());
+  }
+
+  @Test
+  public void testAvailableIsLowerBound() throws IOException {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 5000; i++) {
+      text.append("ab \n");
+    }
+    InputStream in = hex(text.toString());
+    int remaining = 5000;
+    while (remaining > 0) {
+      assertEquals(0xab, in.read());
+      remaining--;
+      int available = in.available();
+      assertTrue(available <= remaining);
+      byte[] buffer = new byte[available];
+      assertEquals(available, readExactly(in, buffer));
+      remaining -= available;
+    }
+    assertEquals(-1, in.read());
+  }
+
+  private static int readExactly(InputStream in, byte[] buffer) throws IOException {
+    int n = 0;
+    while (n < buffer.length) {
+      int r = in.read(buffer, n, buffer.length - n);
+      if (r < 0) {
+        break;
+      }
+      n += r;
+    }
+    return n;
+  }
+
+  @Test
+  public void testOddNumberOfDigits() throws IOException {
+    for (int chunk : new int[] { 1, 100 }) {
+      try {
+        readFully(hex("0123 4"), chunk);
+        fail("Expected EOFException");
+      } catch (EOFException e) {
+        /* expected */
+      }
+    }
+  }
+
+  @Test
+  public void testInvalidCharacter() throws IOException {
+    for (String text : new String[] { "01x2", "0x12", "01-23", "01é" }) {
+      InputStream in = new HexInputStream(new ByteArrayInputStream(
+          text.getBytes(StandardCharsets.ISO_8859_1)));
+      try {
+        readFully(in, 100);
+        fail("Expected IOException for \"" + text + "\"");
+      } catch (EOFException e) {
+        fail("Expected a non-EOF IOException for \"" + text + "\"");
+      } catch (IOException e) {
+        /* expected */
+      }
+    }
+  }
+
+  @Test
+  public void testSkip() throws IOException {
+    InputStream in = hex("00 11 22 33 44");
+    assertEquals(2, in.skip(2));
+    assertEquals(0x22, in.read());
+    assertEquals(2, in.skip(10));
+    assertEquals(-1, in.read());
+  }
+
+}
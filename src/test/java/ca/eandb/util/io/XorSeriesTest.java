@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ca.eandb.util.DoubleArray;
+import ca.eandb.util.FloatArray;
+
+/**
+ * Tests for {@link XorSeriesWriter} and {@link XorSeriesReader}.
+ *
+ * @author Brad Kimmel
+ */
+public final class XorSeriesTest {
+
+  /** Values whose bit patterns exercise the edge cases of the encoding. */
+  private static final double[] SPECIAL_DOUBLES = {
+    0.0, -0.0, Double.NaN, Double.longBitsToDouble(0x7ff0000000000001L),
+    Double.longBitsToDouble(0xfff8000000000123L), Double.POSITIVE_INFINITY,
+    Double.NEGATIVE_INFINITY, Double.MIN_VALUE, -Double.MIN_VALUE,
+    Double.MAX_VALUE, Double.MIN_NORMAL, 1.0, 1.0, 1.0, -1.0, 1.0,
+    Math.nextUp(1.0), 0.0, 0.0, Double.NaN, Double.NaN, 42.0
+  };
+
+  /** Values whose bit patterns exercise the edge cases of the encoding. */
+  private static final float[] SPECIAL_FLOATS = {
+    0.0f, -0.0f, Float.NaN, Float.intBitsToFloat(0x7fc00123),
+    Float.intBitsToFloat(0xffc00001), Float.POSITIVE_INFINITY,
+    Float.NEGATIVE_INFINITY, Float.MIN_VALUE, -Float.MIN_VALUE,
+    Float.MAX_VALUE, Float.MIN_NORMAL, 1.0f, 1.0f, 1.0f, -1.0f, 1.0f,
+    Math.nextUp(1.0f), 0.0f, 0.0f, Float.NaN, Float.NaN, 42.0f
+  };
+
+  private static byte[] encode(double[] values, int blockSize) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (XorSeriesWriter writer = new XorSeriesWriter(bytes, false, blockSize)) {
+      writer.write(DoubleArray.wrap(values));
+    }
+    return bytes.toByteArray();
+  }
+
+  private static byte[] encode(float[] values, int blockSize) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (XorSeriesWriter writer = new XorSeriesWriter(bytes, true, blockSize)) {
+      writer.write(FloatArray.wrap(values));
+    }
+    return bytes.toByteArray();
+  }
+
+  private static void assertBitsEqual(double[] expected, DoubleArray actual) {
+    assertEquals(expected.length, actual.size());
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals("index " + i, Double.doubleToRawLongBits(expected[i]),
+          Double.doubleToRawLongBits(actual.get(i)));
+    }
+  }
+
+  private static void assertBitsEqual(float[] expected, FloatArray actual) {
+    assertEquals(expected.length, actual.size());
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals("index " + i, Float.floatToRawIntBits(expected[i]),
+          Float.floatToRawIntBits(actual.get(i)));
+    }
+  }
+
+  private static double[] randomWalk(int n, long seed) {
+    Random random = new Random(seed);
+    double[] values = new double[n];
+    double x = 100.0;
+    for (int i = 0; i < n; i++) {
+      x += random.nextGaussian() * 0.01;
+      values[i] = random.nextInt(10) == 0 ? values[Math.max(i - 1, 0)] : x;
+    }
+    return values;
+  }
+
+  @Test
+  public void testSpecialDoublesRoundTrip() throws IOException {
+    for (int blockSize : new int[] { 1, 2, 3, 7, 1024 }) {
+      byte[] bytes = encode(SPECIAL_DOUBLES, blockSize);
+      assertBitsEqual(SPECIAL_DOUBLES, XorSeriesReader.decode(new ByteArrayInputStream(bytes)));
+    }
+  }
+
+  @Test
+  public void testSpecialFloatsRoundTrip() throws IOException {
+    for (int blockSize : new int[] { 1, 2, 3, 7, 1024 }) {
+      byte[] bytes = encode(SPECIAL_FLOATS, blockSize);
+      assertBitsEqual(SPECIAL_FLOATS, XorSeriesReader.decodeFloats(new ByteArrayInputStream(bytes)));
+    }
+  }
+
+  @Test
+  public void testStaticFloatArrayRoundTrip() throws IOException {
+    Random random = new Random(1);
+    float[] values = new float[5000];
+    float x = 0.0f;
+    for (int i = 0; i < values.length; i++) {
+      x += (float) random.nextGaussian();
+      values[i] = x;
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    XorSeriesWriter.encode(FloatArray.wrap(values), bytes);
+    XorSeriesReader reader = new XorSeriesReader(new ByteArrayInputStream(bytes.toByteArray()));
+    assertTrue(reader.isSinglePrecision());
+    FloatArray decoded = new FloatArray();
+    assertEquals(values.length, reader.read(decoded));
+    assertBitsEqual(values, decoded);
+  }
+
+  @Test
+  public void testRandomWalkRoundTrip() throws IOException {
+    double[] values = randomWalk(100000, 2);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    XorSeriesWriter.encode(DoubleArray.wrap(values), bytes);
+    assertBitsEqual(values, XorSeriesReader.decode(new ByteArrayInputStream(bytes.toByteArray())));
+  }
+
+  @Test
+  public void testRepeatedValuesCompress() throws IOException {
+    double[] values = new double[10000];
+    Arrays.fill(values, Math.PI);
+    byte[] bytes = encode(values, 1024);
+
+    /* A repeated value costs a single bit after the first of each block. */
+    assertTrue(bytes.length < values.length / 4);
+    assertBitsEqual(values, XorSeriesReader.decode(new ByteArrayInputStream(bytes)));
+  }
+
+  @Test
+  public void testFlushStartsNewBlock() throws IOException {
+    double[] values = randomWalk(100, 3);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (XorSeriesWriter writer = new XorSeriesWriter(bytes)) {
+      for (int i = 0; i < values.length; i++) {
+        writer.write(values[i]);
+        if (i % 13 == 0) {
+          writer.flush();
+        }
+      }
+    }
+    assertBitsEqual(values, XorSeriesReader.decode(new ByteArrayInputStream(bytes.toByteArray())));
+  }
+
+  @Test
+  public void testSkip() throws IOException {
+    double[] values = randomWalk(1000, 4);
+    byte[] bytes = encode(values, 64);
+    for (long[] steps : new long[][] {
+        { 0 }, { 1 }, { 63 }, { 64 }, { 65 }, { 10, 54, 64, 1 }, { 500, 0, 497 },
+        { 999 }, { 1000 } }) {
+      XorSeriesReader reader = new XorSeriesReader(new ByteArrayInputStream(bytes));
+      long position = 0;
+      for (long step : steps) {
+        assertEquals(step, reader.skip(step));
+        position += step;
+        assertEquals(position, reader.position());
+        if (position < values.length) {
+          assertEquals(Double.doubleToRawLongBits(values[(int) position]),
+              Double.doubleToRawLongBits(reader.readDouble()));
+          position++;
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testSkipPastEnd() throws IOException {
+    double[] values = randomWalk(100, 5);
+    XorSeriesReader reader = new XorSeriesReader(new ByteArrayInputStream(encode(values, 16)));
+    reader.readDouble();
+    assertEquals(99, reader.skip(1000));
+    assertFalse(reader.hasNext());
+    assertEquals(0, reader.skip(1));
+  }
+
+  @Test
+  public void testEmptySeries() throws IOException {
+    byte[] bytes = encode(new double[0], 16);
+    assertEquals(0, XorSeriesReader.decode(new ByteArrayInputStream(bytes)).size());
+  }
+
+  @Test(expected = IOException.class)
+  public void testRejectsForeignStream() throws IOException {
+    new XorSeriesReader(new ByteArrayInputStream(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9 }));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testReadFloatFromDoubleSeries() throws IOException {
+    XorSeriesReader.decodeFloats(new ByteArrayInputStream(encode(new double[] { 1.0 }, 16)));
+  }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.sketch;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link BlockedBloomFilter}.
+ *
+ * @author Brad Kimmel
+ */
+public final class BlockedBloomFilterTest {
+
+  /** The number of items added to each filter. */
+  private static final int N = 100000;
+
+  /** The number of absent items to test for false positives. */
+  private static final int PROBES = 1000000;
+
+  /**
+   * Fills a filter sized for <code>N</code> items and checks that there are
+   * no false negatives and that the false positive rate is within 20% of
+   * the target (more than five standard deviations at these sizes).
+   */
+  private static void checkFalsePositiveRate(double fpp) {
+    BlockedBloomFilter filter = new BlockedBloomFilter(N, fpp);
+    for (long i = 0; i < N; i++) {
+      filter.add(i);
+    }
+    for (long i = 0; i < N; i++) {
+      assertTrue(filter.mightContain(i));
+    }
+    int falsePositives = 0;
+    for (long i = N; i < N + PROBES; i++) {
+      if (filter.mightContain(i)) {
+        falsePositives++;
+      }
+    }
+    double rate = (double) falsePositives / PROBES;
+    assertEquals(fpp, rate, 0.2 * fpp);
+    assertEquals(rate, filter.getExpectedFpp(), 0.2 * fpp);
+  }
+
+  @Test
+  public void testFalsePositiveRate() {
+    checkFalsePositiveRate(0.01);
+    checkFalsePositiveRate(0.001);
+  }
+
+  @Test
+  public void testNoFalseNegatives() {
+    BlockedBloomFilter filter = new BlockedBloomFilter(1000, 0.01);
+    for (int i = 0; i < 1000; i++) {
+      filter.add("item-" + i);
+      filter.add(new byte[] { (byte) i, (byte) (i >>> 8) });
+    }
+    for (int i = 0; i < 1000; i++) {
+      assertTrue(filter.mightContain("item-" + i));
+      assertTrue(filter.mightContain(new byte[] { (byte) i, (byte) (i >>> 8) }));
+      assertFalse(filter.add("item-" + i));
+    }
+  }
+
+  @Test
+  public void testMergeIsUnion() throws IOException {
+    BlockedBloomFilter a = new BlockedBloomFilter(N, 0.01);
+    BlockedBloomFilter b = new BlockedBloomFilter(N, 0.01);
+    BlockedBloomFilter all = new BlockedBloomFilter(N, 0.01);
+    for (long i = 0; i < N; i++) {
+      (i % 2 == 0 ? a : b).add(i);
+      all.add(i);
+    }
+    a.merge(b);
+    for (long i = 0; i < N; i++) {
+      assertTrue(a.mightContain(i));
+    }
+    assertArrayEquals(toBytes(all), toBytes(a));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMergeRejectsIncompatible() {
+    new BlockedBloomFilter(16, 4).merge(new BlockedBloomFilter(16, 5));
+  }
+
+  @Test
+  public void testWriteRead() throws IOException {
+    BlockedBloomFilter filter = new BlockedBloomFilter(1000, 0.01);
+    for (long i = 0; i < 1000; i++) {
+      filter.add(i);
+    }
+    BlockedBloomFilter copy = BlockedBloomFilter.read(
+        new DataInputStream(new ByteArrayInputStream(toBytes(filter))));
+    assertEquals(filter.getBlockCount(), copy.getBlockCount());
+    assertEquals(filter.getHashCount(), copy.getHashCount());
+    for (long i = 0; i < 2000; i++) {
+      assertEquals(filter.mightContain(i), copy.mightContain(i));
+    }
+  }
+
+  private static byte[] toBytes(BlockedBloomFilter filter) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    filter.write(new DataOutputStream(bytes));
+    return bytes.toByteArray();
+  }
+
+}
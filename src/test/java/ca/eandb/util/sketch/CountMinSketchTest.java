@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.sketch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link CountMinSketch}.
+ *
+ * @author Brad Kimmel
+ */
+public final class CountMinSketchTest {
+
+  /** The number of distinct items. */
+  private static final int ITEMS = 10000;
+
+  /**
+   * Generates a skewed stream of counts: item <code>i</code> occurs about
+   * <code>1 / (i + 1)</code> as often as item zero.
+   */
+  private static long[] zipfCounts(long seed) {
+    Random random = new Random(seed);
+    long[] counts = new long[ITEMS];
+    for (int i = 0; i < ITEMS; i++) {
+      counts[i] = 1 + (long) (100000.0 / (i + 1) * (0.5 + random.nextDouble()));
+    }
+    return counts;
+  }
+
+  @Test
+  public void testNeverUnderestimates() {
+    double epsilon = 0.001, delta = 0.01;
+    CountMinSketch sketch = new CountMinSketch(epsilon, delta);
+    long[] counts = zipfCounts(1);
+    long total = 0;
+    for (int i = 0; i < ITEMS; i++) {
+      sketch.add(i, counts[i]);
+      total += counts[i];
+    }
+    assertEquals(total, sketch.getTotalCount());
+
+    int exceeded = 0;
+    for (int i = 0; i < ITEMS; i++) {
+      long estimate = sketch.estimateCount(i);
+      assertTrue(estimate >= counts[i]);
+      if (estimate > counts[i] + epsilon * total) {
+        exceeded++;
+      }
+    }
+    assertTrue(exceeded <= 3 * delta * ITEMS);
+
+    /* Items never added are estimated within the same bound. */
+    for (long i = ITEMS; i < 2 * ITEMS; i++) {
+      assertTrue(sketch.estimateCount(i) >= 0);
+    }
+  }
+
+  @Test
+  public void testUnitIncrements() {
+    CountMinSketch sketch = new CountMinSketch(256, 4);
+    for (int i = 0; i < 100; i++) {
+      for (int j = 0; j <= i; j++) {
+        sketch.add("item-" + i);
+      }
+    }
+    for (int i = 0; i < 100; i++) {
+      assertTrue(sketch.estimateCount("item-" + i) >= i + 1);
+    }
+  }
+
+  @Test
+  public void testMergeAddsCounts() {
+    CountMinSketch a = new CountMinSketch(1024, 5);
+    CountMinSketch b = new CountMinSketch(1024, 5);
+    CountMinSketch all = new CountMinSketch(1024, 5);
+    long[] counts = zipfCounts(2);
+    for (int i = 0; i < ITEMS; i++) {
+      (i % 2 == 0 ? a : b).add(i, counts[i]);
+      all.add(i, counts[i]);
+    }
+    a.merge(b);
+    assertEquals(all.getTotalCount(), a.getTotalCount());
+    for (int i = 0; i < ITEMS; i++) {
+      assertEquals(all.estimateCount(i), a.estimateCount(i));
+      assertTrue(a.estimateCount(i) >= counts[i]);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMergeRejectsIncompatible() {
+    new CountMinSketch(1024, 4).merge(new CountMinSketch(1024, 5));
+  }
+
+  @Test
+  public void testWriteRead() throws IOException {
+    CountMinSketch sketch = new CountMinSketch(512, 3);
+    for (int i = 0; i < 1000; i++) {
+      sketch.add(i, i);
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    sketch.write(new DataOutputStream(bytes));
+    CountMinSketch copy = CountMinSketch.read(
+        new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    assertEquals(sketch.getWidth(), copy.getWidth());
+    assertEquals(sketch.getDepth(), copy.getDepth());
+    assertEquals(sketch.getTotalCount(), copy.getTotalCount());
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(sketch.estimateCount(i), copy.estimateCount(i));
+    }
+  }
+
+}
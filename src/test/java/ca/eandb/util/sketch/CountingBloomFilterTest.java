@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.sketch;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link CountingBloomFilter}.
+ *
+ * @author Brad Kimmel
+ */
+public final class CountingBloomFilterTest {
+
+  /** The number of items added to each filter. */
+  private static final int N = 100000;
+
+  /** The number of absent items to test for false positives. */
+  private static final int PROBES = 1000000;
+
+  /**
+   * Counts the false positives among <code>PROBES</code> items starting at
+   * <code>first</code>, none of which are present.
+   */
+  private static double falsePositiveRate(CountingBloomFilter filter, long first) {
+    int falsePositives = 0;
+    for (long i = first; i < first + PROBES; i++) {
+      if (filter.mightContain(i)) {
+        falsePositives++;
+      }
+    }
+    return (double) falsePositives / PROBES;
+  }
+
+  @Test
+  public void testFalsePositiveRate() {
+    for (double fpp : new double[] { 0.01, 0.001 }) {
+      CountingBloomFilter filter = new CountingBloomFilter(N, fpp);
+      for (long i = 0; i < N; i++) {
+        filter.add(i);
+      }
+      for (long i = 0; i < N; i++) {
+        assertTrue(filter.mightContain(i));
+      }
+      assertEquals(fpp, falsePositiveRate(filter, N), 0.2 * fpp);
+    }
+  }
+
+  @Test
+  public void testRemove() {
+    double fpp = 0.01;
+    CountingBloomFilter filter = new CountingBloomFilter(N, fpp);
+    for (long i = 0; i < 2 * N; i++) {
+      filter.add(i);
+    }
+
+    /* Remove half the items, leaving the number the filter is sized for. */
+    for (long i = 0; i < 2 * N; i += 2) {
+      filter.remove(i);
+    }
+    int stillPresent = 0;
+    for (long i = 0; i < 2 * N; i++) {
+      if (i % 2 == 1) {
+        assertTrue(filter.mightContain(i));
+      } else if (filter.mightContain(i)) {
+        stillPresent++;
+      }
+    }
+
+    /* Removed items now behave like items never added, except for those
+     * sharing a saturated counter, which are rare.
+     */
+    assertEquals(fpp, (double) stillPresent / N, 0.5 * fpp);
+    assertEquals(fpp, falsePositiveRate(filter, 2 * N), 0.2 * fpp);
+
+    for (long i = 1; i < 2 * N; i += 2) {
+      filter.remove(i);
+    }
+    for (long i = 0; i < 2 * N; i++) {
+      assertFalse(filter.mightContain(i));
+    }
+  }
+
+  @Test
+  public void testRemoveStrings() {
+    CountingBloomFilter filter = new CountingBloomFilter(100, 0.01);
+    filter.add("a");
+    filter.add("a");
+    filter.add(new byte[] { 1, 2, 3 });
+    filter.remove("a");
+    assertTrue(filter.mightContain("a"));
+    filter.remove("a");
+    assertFalse(filter.mightContain("a"));
+    assertTrue(filter.mightContain(new byte[] { 1, 2, 3 }));
+    filter.remove(new byte[] { 1, 2, 3 });
+    assertFalse(filter.mightContain(new byte[] { 1, 2, 3 }));
+  }
+
+  @Test
+  public void testMergeAddsCounts() throws IOException {
+    CountingBloomFilter a = new CountingBloomFilter(N, 0.01);
+    CountingBloomFilter b = new CountingBloomFilter(N, 0.01);
+    CountingBloomFilter all = new CountingBloomFilter(N, 0.01);
+    for (long i = 0; i < N; i++) {
+      (i % 3 == 0 ? a : b).add(i);
+      all.add(i);
+    }
+    a.merge(b);
+    assertArrayEquals(toBytes(all), toBytes(a));
+
+    /* Items from either filter may be removed after merging. */
+    for (long i = 0; i < N; i++) {
+      a.remove(i);
+    }
+    for (long i = 0; i < N; i++) {
+      assertFalse(a.mightContain(i));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMergeRejectsIncompatible() {
+    new CountingBloomFilter(1000, 4).merge(new CountingBloomFilter(1001, 4));
+  }
+
+  @Test
+  public void testWriteRead() throws IOException {
+    CountingBloomFilter filter = new CountingBloomFilter(1000, 0.01);
+    for (long i = 0; i < 1000; i++) {
+      filter.add(i);
+    }
+    CountingBloomFilter copy = CountingBloomFilter.read(
+        new DataInputStream(new ByteArrayInputStream(toBytes(filter))));
+    assertEquals(filter.getCounterCount(), copy.getCounterCount());
+    assertEquals(filter.getHashCount(), copy.getHashCount());
+    for (long i = 0; i < 2000; i++) {
+      assertEquals(filter.mightContain(i), copy.mightContain(i));
+    }
+  }
+
+  private static byte[] toBytes(CountingBloomFilter filter) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    filter.write(new DataOutputStream(bytes));
+    return bytes.toByteArray();
+  }
+
+}
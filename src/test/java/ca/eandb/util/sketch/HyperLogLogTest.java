@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2008 Bradley W. Kimmel
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package ca.eandb.util.sketch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link HyperLogLog}.
+ *
+ * @author Brad Kimmel
+ */
+public final class HyperLogLogTest {
+
+  /** The number of standard errors by which an estimate may deviate. */
+  private static final double TOLERANCE = 4.0;
+
+  private static void checkCardinality(long n) {
+    HyperLogLog hll = new HyperLogLog();
+    for (long i = 0; i < n; i++) {
+      hll.add(i * 0x9e3779b97f4a7c15L);
+    }
+    double error = (double) hll.cardinality() / n - 1.0;
+    assertTrue(Math.abs(error) < TOLERANCE * hll.getRelativeError());
+  }
+
+  @Test
+  public void testCardinality() {
+    checkCardinality(1000);
+    checkCardinality(1000000);
+  }
+
+  @Test
+  public void testSmallCardinalities() {
+    HyperLogLog hll = new HyperLogLog();
+    assertEquals(0, hll.cardinality());
+    for (int i = 1; i <= 100; i++) {
+      hll.add("item-" + i);
+      assertEquals(i, hll.cardinality(), Math.max(1.0, 0.02 * i));
+    }
+  }
+
+  @Test
+  public void testDuplicatesAreNotCounted() {
+    HyperLogLog hll = new HyperLogLog();
+    for (int round = 0; round < 10; round++) {
+      for (long i = 0; i < 10000; i++) {
+        hll.add(i);
+      }
+    }
+    double error = hll.cardinality() / 10000.0 - 1.0;
+    assertTrue(Math.abs(error) < TOLERANCE * hll.getRelativeError());
+  }
+
+  @Test
+  public void testMergeIsUnion() {
+    HyperLogLog a = new HyperLogLog(12);
+    HyperLogLog b = new HyperLogLog(12);
+    HyperLogLog all = new HyperLogLog(12);
+    for (long i = 0; i < 300000; i++) {
+      if (i < 200000) {
+        a.add(i);
+      }
+      if (i >= 100000) {
+        b.add(i);
+      }
+      all.add(i);
+    }
+    a.merge(b);
+    assertEquals(all.cardinality(), a.cardinality());
+    double error = a.cardinality() / 300000.0 - 1.0;
+    assertTrue(Math.abs(error) < TOLERANCE * a.getRelativeError());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMergeRejectsDifferentPrecision() {
+    new HyperLogLog(10).merge(new HyperLogLog(11));
+  }
+
+  @Test
+  public void testWriteRead() throws IOException {
+    HyperLogLog hll = new HyperLogLog(10);
+    for (long i = 0; i < 50000; i++) {
+      hll.add(i);
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    hll.write(new DataOutputStream(bytes));
+    HyperLogLog copy = HyperLogLog.read(
+        new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    assertEquals(hll.getPrecision(), copy.getPrecision());
+    assertEquals(hll.cardinality(), copy.cardinality());
+  }
+
+}